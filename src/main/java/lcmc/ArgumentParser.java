@@ -50,6 +50,7 @@ import lcmc.common.domain.UserConfig;
 import lcmc.common.ui.Access;
 import lcmc.common.ui.main.MainData;
 import lcmc.common.ui.utils.SwingUtils;
+import lcmc.host.domain.Compression;
 import lcmc.host.domain.Host;
 import lcmc.host.domain.HostOptions;
 import lcmc.logger.Logger;
@@ -99,6 +100,7 @@ public class ArgumentParser {
     private static final String USER_OP = "user";
     private static final String SUDO_OP = "sudo";
     private static final String PORT_OP = "port";
+    private static final String COMPRESSION_OP = "compression";
     private static final String ADVANCED_OP = "advanced";
     private static final String ONE_HOST_CLUSTER_OP = "one-host-cluster";
     private static final String NO_PASSPHRASE_OP = "no-passphrase";
@@ -174,6 +176,10 @@ public class ArgumentParser {
         options.addOption(null, SUDO_OP, false, "whether to use sudo, used with --cluster option");
         options.addOption(null, USER_OP, true, "user to use with sudo, used with --cluster option");
         options.addOption(null, PORT_OP, true, "ssh port, used with --cluster option");
+        options.addOption(null,
+                          COMPRESSION_OP,
+                          true,
+                          "compression: none, ssh, frames or all, used with --cluster option");
         options.addOption(null, ADVANCED_OP, false, "start in an advanced mode");
         options.addOption(null, ONE_HOST_CLUSTER_OP, false, "allow one host cluster");
         options.addOption(null, NO_PASSPHRASE_OP, false, "try no passphrase first");
@@ -383,6 +389,17 @@ public class ArgumentParser {
                 for (final HostOptions ho : hostsOptions) {
                     ho.setPort(port);
                 }
+            } else if (COMPRESSION_OP.equals(op)) {
+                if (hostsOptions == null) {
+                    throw new ParseException(COMPRESSION_OP + " must be defined after " + HOST_OP);
+                }
+                final Compression compression = Compression.fromName(option.getValue());
+                if (compression == null) {
+                    throw new ParseException("could not parse " + COMPRESSION_OP + " option");
+                }
+                for (final HostOptions ho : hostsOptions) {
+                    ho.setCompression(compression);
+                }
             } else if (PCMKTEST_OP.equals(op)) {
                 final String index = option.getValue();
                 if (index != null && !index.isEmpty()) {
@@ -499,6 +516,7 @@ public class ArgumentParser {
                         hostOptions.getPort(),
                         null,
                         hostOptions.getUseSudo(),
+                        hostOptions.getCompression(),
                         false);
             }
         }
@@ -167,6 +167,7 @@ public final class LCMC extends JPanel {
         mainFrame.setGlassPane(mainGlassPane);
         mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         mainFrame.addWindowListener(new ExitListener());
+        mainFrame.addWindowListener(new MinimizeListener());
         mainFrame.setJMenuBar(getMenuBar());
         mainFrame.setContentPane(getMainPanel());
     }
@@ -184,6 +185,19 @@ public final class LCMC extends JPanel {
 
     }
 
+    /** Pauses the updates from the hosts, while the window is minimized. */
+    public class MinimizeListener extends WindowAdapter {
+        @Override
+        public final void windowIconified(final WindowEvent event) {
+            mainData.getClustersPanel().setMinimized(true);
+        }
+
+        @Override
+        public final void windowDeiconified(final WindowEvent event) {
+            mainData.getClustersPanel().setMinimized(false);
+        }
+    }
+
     /** Cleanup before closing. */
     private void cleanupBeforeClosing() {
         final Thread t = new Thread(() -> {
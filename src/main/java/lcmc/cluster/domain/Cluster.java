@@ -98,6 +98,9 @@ public class Cluster implements Comparable<Cluster> {
             cb.stopDrbdStatusOnAllHosts();
             cb.stopCrmStatus();
         }
+        for (final Host host : hosts) {
+            host.stopHelperAgent();
+        }
     }
 
     public void addHost(final Host host) {
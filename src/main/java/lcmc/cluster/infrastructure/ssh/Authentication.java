@@ -64,8 +64,12 @@ public class Authentication {
     }
 
     public void authenticate(final SshConnection sshConnection) throws IOException {
-        LOG.debug2("authenticate: start");
-        final String username = host.getFirstUsername();
+        authenticate(sshConnection, host.getFirstUsername());
+    }
+
+    /** Authenticates the user on the host, that is behind the first one. */
+    public void authenticate(final SshConnection sshConnection, final String username) throws IOException {
+        LOG.debug2("authenticate: start: " + username);
         while (!sshConnection.isCanceled() && !authenticated) {
             if (lastSuccessfulPassword.getPassword() == null) {
                 String lastPassword = application.getAutoOptionHost("pw");
@@ -88,6 +92,10 @@ public class Authentication {
         }
     }
 
+    LastSuccessfulPassword getLastSuccessfulPassword() {
+        return lastSuccessfulPassword;
+    }
+
     private void authenticateWithKey(final SshConnection sshConnection, final String username) throws IOException {
         final File dsaKey = new File(application.getIdDSAPath());
         final File rsaKey = new File(application.getIdRSAPath());
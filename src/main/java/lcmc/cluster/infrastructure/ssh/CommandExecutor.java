@@ -0,0 +1,215 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs the ssh commands of all hosts in a pool of threads. At most
+ * SSH.Command.Max commands run at once and at most SSH.Command.MaxPerHost
+ * on one host, the other commands wait in the queue in the order, in which
+ * they were submitted.
+ *
+ * The long running commands, like the helper agent, are not bounded, they
+ * would block the other commands forever. The commands that are submitted
+ * from a running command, e.g. from its callback, are not bounded either,
+ * because the running command may wait for them.
+ */
+@Named
+@Singleton
+public class CommandExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(CommandExecutor.class);
+    private static final ThreadLocal<Boolean> IN_COMMAND = ThreadLocal.withInitial(() -> false);
+
+    private final int maxCommands;
+    private final int maxCommandsPerHost;
+    private final ExecutorService workers = Executors.newCachedThreadPool(new NamedThreadFactory("lcmc-command-"));
+    private final ScheduledExecutorService timer;
+    /** Guarded by this. */
+    private final Deque<Task> queue = new ArrayDeque<>();
+    /** Guarded by this. */
+    private final Map<Host, Integer> runningPerHost = new HashMap<>();
+    /** Guarded by this. */
+    private int running = 0;
+
+    public CommandExecutor() {
+        this(Tools.getDefaultInt("SSH.Command.Max"), Tools.getDefaultInt("SSH.Command.MaxPerHost"));
+    }
+
+    CommandExecutor(final int maxCommands, final int maxCommandsPerHost) {
+        this.maxCommands = maxCommands;
+        this.maxCommandsPerHost = maxCommandsPerHost;
+        final ScheduledThreadPoolExecutor scheduledExecutor =
+                new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("lcmc-command-timer-"));
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        timer = scheduledExecutor;
+    }
+
+    /**
+     * Runs the command on the host, or queues it, if there are too many
+     * commands running. If it is not bounded it runs right away.
+     */
+    public Task submit(final Host host, final boolean bounded, final Runnable command) {
+        final Task task = new Task(host, bounded && !IN_COMMAND.get(), command);
+        synchronized (this) {
+            if (task.bounded && !canStart(host)) {
+                LOG.debug2("submit: " + host.getName() + ": queued, running: " + running);
+                queue.add(task);
+                return task;
+            }
+            started(task);
+        }
+        workers.execute(task);
+        return task;
+    }
+
+    /** Runs the action after the delay in the timer thread, it must not block. */
+    public ScheduledFuture<?> schedule(final Runnable action, final long delayMillis) {
+        return timer.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized int getRunning() {
+        return running;
+    }
+
+    synchronized int getQueued() {
+        return queue.size();
+    }
+
+    private boolean canStart(final Host host) {
+        return running < maxCommands && runningPerHost.getOrDefault(host, 0) < maxCommandsPerHost;
+    }
+
+    /** Must be called with the lock held. */
+    private void started(final Task task) {
+        task.queued = false;
+        if (task.bounded) {
+            running++;
+            runningPerHost.merge(task.host, 1, Integer::sum);
+        }
+    }
+
+    private void finished(final Task task) {
+        if (!task.bounded) {
+            return;
+        }
+        final Deque<Task> ready = new ArrayDeque<>();
+        synchronized (this) {
+            running--;
+            if (runningPerHost.merge(task.host, -1, Integer::sum) == 0) {
+                runningPerHost.remove(task.host);
+            }
+            final Iterator<Task> it = queue.iterator();
+            while (it.hasNext() && running < maxCommands) {
+                final Task next = it.next();
+                if (canStart(next.host)) {
+                    it.remove();
+                    started(next);
+                    ready.add(next);
+                }
+            }
+        }
+        for (final Task next : ready) {
+            workers.execute(next);
+        }
+    }
+
+    private synchronized boolean removeQueued(final Task task) {
+        if (!task.queued) {
+            return false;
+        }
+        task.queued = false;
+        return queue.remove(task);
+    }
+
+    /** A submitted command. */
+    public final class Task implements Runnable {
+        private final Host host;
+        private final boolean bounded;
+        private final Runnable command;
+        /** Guarded by CommandExecutor.this. */
+        private boolean queued = true;
+
+        private Task(final Host host, final boolean bounded, final Runnable command) {
+            this.host = host;
+            this.bounded = bounded;
+            this.command = command;
+        }
+
+        /**
+         * Removes the command from the queue, returns false, if it is
+         * already running or finished.
+         */
+        public boolean cancel() {
+            return removeQueued(this);
+        }
+
+        @Override
+        public void run() {
+            IN_COMMAND.set(true);
+            try {
+                command.run();
+            } catch (final RuntimeException e) {
+                LOG.appWarning("run: " + host.getName() + ": command failed", e);
+            } finally {
+                IN_COMMAND.set(false);
+                finished(this);
+            }
+        }
+    }
+
+    static final class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        NamedThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
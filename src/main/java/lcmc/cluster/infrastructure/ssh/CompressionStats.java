@@ -0,0 +1,90 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How many bytes the compression of the gui helper agent frames saved and
+ * what it cost. The cpu time on the host is sent by the agent, it includes
+ * the frames, that were not sent compressed, because they didn't get
+ * smaller.
+ */
+public final class CompressionStats {
+    private final AtomicLong rawBytes = new AtomicLong(0);
+    private final AtomicLong sentBytes = new AtomicLong(0);
+    private final AtomicLong inflateNanos = new AtomicLong(0);
+    private volatile long hostCpuMicros = 0;
+    /** Negotiated compression method, null if it was not negotiated yet. */
+    private volatile String method = null;
+
+    void addFrame(final long frameRawBytes, final long frameSentBytes, final long frameInflateNanos) {
+        rawBytes.addAndGet(frameRawBytes);
+        sentBytes.addAndGet(frameSentBytes);
+        inflateNanos.addAndGet(frameInflateNanos);
+    }
+
+    void setHostCpuMicros(final long hostCpuMicros) {
+        this.hostCpuMicros = hostCpuMicros;
+    }
+
+    void setMethod(final String method) {
+        this.method = method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /** Returns the size of the compressed frames before the compression. */
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public long getSavedBytes() {
+        return rawBytes.get() - sentBytes.get();
+    }
+
+    public long getSavedPercent() {
+        final long raw = rawBytes.get();
+        if (raw == 0) {
+            return 0;
+        }
+        return getSavedBytes() * 100 / raw;
+    }
+
+    public long getLocalCpuMillis() {
+        return inflateNanos.get() / 1000000;
+    }
+
+    public long getHostCpuMillis() {
+        return hostCpuMicros / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "method: " + method
+               + ", raw: " + getRawBytes()
+               + ", saved: " + getSavedBytes() + " (" + getSavedPercent() + "%)"
+               + ", cpu: " + getLocalCpuMillis() + " ms, host cpu: " + getHostCpuMillis() + " ms";
+    }
+}
@@ -38,6 +38,8 @@ import lcmc.logger.LoggerFactory;
 @Named
 public class ConnectionThread extends Thread {
     private static final Logger LOG = LoggerFactory.getLogger(ConnectionThread.class);
+    /** The ssh port of the hosts behind the first host. */
+    private static final int HOP_SSH_PORT = 22;
     private String hostname;
     private SSHGui sshGui;
     private Host host;
@@ -55,12 +57,15 @@ public class ConnectionThread extends Thread {
     private final Application application;
     private final SwingUtils swingUtils;
     private final Provider<PopupHostKeyVerifier> popupHostKeyVerifierProvider;
+    private final Provider<Authentication> authenticationProvider;
 
     public ConnectionThread(Application application, SwingUtils swingUtils,
-            Provider<PopupHostKeyVerifier> popupHostKeyVerifierProvider) {
+            Provider<PopupHostKeyVerifier> popupHostKeyVerifierProvider,
+            Provider<Authentication> authenticationProvider) {
         this.application = application;
         this.swingUtils = swingUtils;
         this.popupHostKeyVerifierProvider = popupHostKeyVerifierProvider;
+        this.authenticationProvider = authenticationProvider;
     }
 
     void init(final Host host, final SSHGui sshGui, final ProgressBar progressBar, final ConnectionCallback connectionCallback,
@@ -95,7 +100,7 @@ public class ConnectionThread extends Thread {
             if (hostname == null) {
                 throw new IOException("hostname is not set");
             }
-            connect(newSshConnection);
+            connect(newSshConnection, hostname);
             authenticate(newSshConnection);
         } catch (final IOException e) {
             handleFailedConnection(e.getMessage());
@@ -110,9 +115,11 @@ public class ConnectionThread extends Thread {
         return connectionEstablished;
     }
 
+    /** Closes the connection and the connections to the jump hosts. */
     public void closeConnectionForGood() {
         closeConnection();
         sshConnection.disconnectForGood();
+        sshConnection.closeWithJumpConnections();
     }
 
     public boolean isConnectionFailed() {
@@ -143,12 +150,16 @@ public class ConnectionThread extends Thread {
         }
     }
 
-    private void connect(final SshConnection newSshConnection) throws IOException {
+    private void connect(final SshConnection newSshConnection, final String hostname) throws IOException {
         LOG.debug2("run: verify host keys: " + hostname);
         final String[] hostKeyAlgorithms = application.getKnownHosts().getPreferredServerHostkeyAlgorithmOrder(hostname);
         if (hostKeyAlgorithms != null) {
             newSshConnection.setServerHostKeyAlgorithms(hostKeyAlgorithms);
         }
+        if (host.getCompression().isSsh()) {
+            /* zlib is used, if the sshd allows it */
+            newSshConnection.setCompression(true);
+        }
         final int connectTimeout = Tools.getDefaultInt("SSH.ConnectTimeout");
         final int kexTimeout = Tools.getDefaultInt("SSH.KexTimeout");
         if (progressBar != null) {
@@ -180,13 +191,50 @@ public class ConnectionThread extends Thread {
         LOG.debug2("run: authenticate: end");
         if (newSshConnection.isCanceled()) {
             authenticationCanceledOrTimeout(newSshConnection);
+            return;
+        }
+        final SshConnection hopConnection = connectHops(newSshConnection);
+        if (hopConnection == null) {
+            authenticationCanceledOrTimeout(newSshConnection);
         } else {
-            authenticationOk(newSshConnection);
+            authenticationOk(hopConnection);
+        }
+    }
+
+    /**
+     * Connects the hosts behind the first host, one through another, and
+     * returns the connection of the last one. The commands run directly on
+     * the last host then. Returns null, if the authentication was canceled.
+     */
+    private SshConnection connectHops(final SshConnection firstConnection) throws IOException {
+        final String[] ips = host.getIpAddress().split(",");
+        final String[] usernames = host.getUsername().split(",");
+        SshConnection connection = firstConnection;
+        for (int i = 1; i < ips.length; i++) {
+            final String hopIp = ips[i].trim();
+            final String hopUsername = i < usernames.length ? usernames[i].trim() : Host.ROOT_USER;
+            LOG.debug1("connectHops: " + host.getName() + ": " + hopUsername + '@' + hopIp);
+            final SshConnection hopConnection = connection.createTunneledConnection(hopIp, HOP_SSH_PORT);
+            try {
+                connect(hopConnection, hopIp);
+                final Authentication hopAuthentication = authenticationProvider.get();
+                hopAuthentication.init(authentication.getLastSuccessfulPassword(), host, sshGui);
+                hopAuthentication.authenticate(hopConnection, hopUsername);
+            } catch (final IOException e) {
+                hopConnection.closeWithJumpConnections();
+                throw e;
+            }
+            if (hopConnection.isCanceled()) {
+                hopConnection.closeWithJumpConnections();
+                return null;
+            }
+            connection = hopConnection;
         }
+        return connection;
     }
 
     private void authenticationCanceledOrTimeout(final SshConnection newSshConnection) {
-        newSshConnection.close();
+        newSshConnection.closeWithJumpConnections();
         LOG.debug("authenticate: closing canceled connection");
         closeConnection();
         host.setConnected();
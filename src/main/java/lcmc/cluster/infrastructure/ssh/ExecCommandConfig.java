@@ -24,6 +24,7 @@ import lcmc.cluster.ui.SSHGui;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.ExecCallback;
 import lcmc.common.domain.NewOutputCallback;
+import lcmc.common.domain.OutputCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.MainPanel;
 import lcmc.common.ui.ProgressBar;
@@ -37,11 +38,13 @@ public class ExecCommandConfig {
 
     private Host host;
     private ConnectionThread connectionThread;
+    private CommandExecutor commandExecutor;
+    private ShellSessionPool shellSessionPool;
     private SSHGui sshGui;
     private String command = null;
     private String commandString = null;
     private ExecCallback execCallback = null;
-    private NewOutputCallback newOutputCallback = null;
+    private OutputCallback outputCallback = null;
     private boolean commandVisible = true;
     private boolean outputVisible = true;
     private int sshCommandTimeout = Ssh.DEFAULT_COMMAND_TIMEOUT;
@@ -60,6 +63,16 @@ public class ExecCommandConfig {
         return this;
     }
 
+    public ExecCommandConfig commandExecutor(final CommandExecutor commandExecutor) {
+        this.commandExecutor = commandExecutor;
+        return this;
+    }
+
+    public ExecCommandConfig shellSessionPool(final ShellSessionPool shellSessionPool) {
+        this.shellSessionPool = shellSessionPool;
+        return this;
+    }
+
     public ExecCommandConfig sshGui(final SSHGui sshGui) {
         this.sshGui = sshGui;
         return this;
@@ -81,7 +94,12 @@ public class ExecCommandConfig {
     }
 
     public ExecCommandConfig newOutputCallback(final NewOutputCallback newOutputCallback) {
-        this.newOutputCallback = newOutputCallback;
+        this.outputCallback = newOutputCallback == null ? null : OutputCallback.of(newOutputCallback);
+        return this;
+    }
+
+    public ExecCommandConfig outputCallback(final OutputCallback outputCallback) {
+        this.outputCallback = outputCallback;
         return this;
     }
 
@@ -166,6 +184,14 @@ public class ExecCommandConfig {
         return connectionThread;
     }
 
+    public CommandExecutor getCommandExecutor() {
+        return commandExecutor;
+    }
+
+    public ShellSessionPool getShellSessionPool() {
+        return shellSessionPool;
+    }
+
     public SSHGui getSshGui() {
         return sshGui;
     }
@@ -184,8 +210,8 @@ public class ExecCommandConfig {
         return execCallback;
     }
 
-    public NewOutputCallback getNewOutputCallback() {
-        return newOutputCallback;
+    public OutputCallback getOutputCallback() {
+        return outputCallback;
     }
 
     public boolean isCommandVisible() {
@@ -23,7 +23,10 @@ package lcmc.cluster.infrastructure.ssh;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -32,7 +35,7 @@ import com.trilead.ssh2.Session;
 
 import lcmc.cluster.ui.SSHGui;
 import lcmc.common.domain.ExecCallback;
-import lcmc.common.domain.NewOutputCallback;
+import lcmc.common.domain.OutputCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.MainPanel;
 import lcmc.common.ui.main.ProgressIndicator;
@@ -42,8 +45,11 @@ import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 import lombok.SneakyThrows;
 
-/** This class is a thread that executes commands. */
-public final class ExecCommandThread extends Thread {
+/**
+ * This class executes commands. It runs in the command executor, that
+ * limits, how many commands run at once.
+ */
+public final class ExecCommandThread implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(ExecCommandThread.class);
 
     private final Host host;
@@ -51,32 +57,44 @@ public final class ExecCommandThread extends Thread {
     private final SSHGui sshGui;
     private final String command;
     private final ExecCallback execCallback;
-    private final NewOutputCallback newOutputCallback;
+    private final OutputCallback outputCallback;
     private final boolean outputVisible;
     private final boolean commandVisible;
     private final MainPanel mainPanel;
     private final ProgressIndicator progressIndicator;
+    private final CommandExecutor commandExecutor;
+    private final ShellSessionPool shellSessionPool;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+    private volatile CommandExecutor.Task task = null;
 
     private volatile boolean cancelIt = false;
     private final Lock mSessionLock = new ReentrantLock();
     private Session session = null;
+    /** The pooled shell, that runs the command. Guarded by mSessionLock. */
+    private ShellSession shellSession = null;
     private final int sshCommandTimeout;
+    /** The output is read to the reused buffers. */
+    private final byte[] buff = new byte[EXEC_OUTPUT_BUFFER_SIZE];
+    private final Utf8StreamDecoder stdoutDecoder = new Utf8StreamDecoder(EXEC_OUTPUT_BUFFER_SIZE);
+    private final Utf8StreamDecoder stderrDecoder = new Utf8StreamDecoder(EXEC_OUTPUT_BUFFER_SIZE);
 
     private static final int ERROR_EXIT_CODE = 255;
     private static final int EXEC_OUTPUT_BUFFER_SIZE = 8192;
     private static final int DEFAULT_EXIT_CODE = 100;
-    private static final String ENCODING = "UTF-8";
+    private static final int CANCELED_EXIT_CODE = 130;
 
     ExecCommandThread(final MainPanel mainPanel, final ProgressIndicator progressIndicator, final ExecCommandConfig execCommandConfig) {
         this.mainPanel = mainPanel;
         this.progressIndicator = progressIndicator;
+        commandExecutor = execCommandConfig.getCommandExecutor();
+        shellSessionPool = execCommandConfig.getShellSessionPool();
 
         host = execCommandConfig.getHost();
         connectionThread = execCommandConfig.getConnectionThread();
         sshGui = execCommandConfig.getSshGui();
 
         execCallback = execCommandConfig.getExecCallback();
-        newOutputCallback = execCommandConfig.getNewOutputCallback();
+        outputCallback = execCommandConfig.getOutputCallback();
         commandVisible = execCommandConfig.isCommandVisible();
         sshCommandTimeout = execCommandConfig.getSshCommandTimeout();
 
@@ -93,29 +111,67 @@ public final class ExecCommandThread extends Thread {
         LOG.debug2("ExecCommandThread: command: " + command);
     }
 
+    /**
+     * Submits the command to the executor. The commands with the output
+     * callback or without timeout run as long as they are needed, so they are
+     * not bounded.
+     */
+    void start() {
+        final boolean longRunning = outputCallback != null || sshCommandTimeout <= 0;
+        task = commandExecutor.submit(host, !longRunning, this);
+    }
+
     /**
      * Reconnects, connects if there is no connection and executes a
      * command.
      */
     @Override
     public void run() {
-        if (!connectionThread.isConnectionEstablished()) {
-            if (execCallback != null) {
-                execCallback.doneError("not connected", 139);
-            }
-        } else {
-            if (commandVisible || outputVisible) {
-                mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.EXPAND);
-            }
-            exec();
-            if (commandVisible || outputVisible) {
-                mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.COLLAPSE);
+        try {
+            if (cancelIt) {
+                if (execCallback != null) {
+                    execCallback.doneError("", CANCELED_EXIT_CODE);
+                }
+            } else if (!connectionThread.isConnectionEstablished()) {
+                if (execCallback != null) {
+                    execCallback.doneError("not connected", 139);
+                }
+            } else {
+                if (commandVisible || outputVisible) {
+                    mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.EXPAND);
+                }
+                exec();
+                if (commandVisible || outputVisible) {
+                    mainPanel.expandTerminalSplitPane(MainPanel.TerminalSize.COLLAPSE);
+                }
             }
+        } finally {
+            finishedLatch.countDown();
         }
     }
 
+    /**
+     * Cancels the command. If it still waits in the queue, it won't run and
+     * the error callback is called right away.
+     */
     public void cancelTheSession() {
         cancelIt = true;
+        final CommandExecutor.Task thisTask = task;
+        if (thisTask != null && thisTask.cancel()) {
+            LOG.debug1("cancelTheSession: " + host.getName() + ": removed from queue: " + command);
+            try {
+                if (execCallback != null) {
+                    execCallback.doneError("", CANCELED_EXIT_CODE);
+                }
+            } finally {
+                finishedLatch.countDown();
+            }
+            return;
+        }
+        final ShellSession thisShellSession = takeShellSession();
+        if (thisShellSession != null) {
+            shellSessionPool.discard(thisShellSession);
+        }
         mSessionLock.lock();
         final Session thisSession;
         try {
@@ -129,8 +185,24 @@ public final class ExecCommandThread extends Thread {
         }
     }
 
+    /** Writes the input to the stdin of the running command. */
+    public void write(final String input) throws IOException {
+        mSessionLock.lock();
+        try {
+            if (session == null) {
+                throw new IOException("session is closed");
+            }
+            final OutputStream stdin = session.getStdin();
+            stdin.write(input.getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } finally {
+            mSessionLock.unlock();
+        }
+    }
+
     static private class ConnectionTimeout {
-        private boolean timeout = false;
+        private volatile boolean timeout = false;
+        private ScheduledFuture<?> timer = null;
 
         private void setTimeout() {
             timeout = true;
@@ -139,11 +211,18 @@ public final class ExecCommandThread extends Thread {
         private boolean wasTimeout() {
             return timeout;
         }
+
+        private void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
     }
 
+    /** Waits till the command is finished. */
     public ExecCommandThread block() {
         try {
-            join();
+            finishedLatch.await();
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -156,16 +235,23 @@ public final class ExecCommandThread extends Thread {
         final String[] commands = command.split(";;;");
         final StringBuilder ans = new StringBuilder();
         for (final String command1 : commands) {
-            final ConnectionTimeout connectionTimeout = setupConnectionTimeout();
-            try {
-                openSshSession(connectionTimeout);
-            } catch (final IOException e) {
-                handleSshSessionFailure();
-                break;
-            }
             final String cmd = command1.trim();
-            writeCommandToTerminal(cmd);
-            final SshOutput ret = execOneCommand(cmd);
+            final ShellSession pooledShellSession = borrowShellSession(cmd);
+            final SshOutput ret;
+            if (pooledShellSession == null) {
+                final ConnectionTimeout connectionTimeout = setupConnectionTimeout();
+                try {
+                    openSshSession(connectionTimeout);
+                } catch (final IOException e) {
+                    handleSshSessionFailure();
+                    break;
+                }
+                writeCommandToTerminal(cmd);
+                ret = execOneCommand(cmd);
+            } else {
+                writeCommandToTerminal(cmd);
+                ret = execInShellSession(cmd, pooledShellSession);
+            }
             ans.append(ret.getOutput());
             final int exitCode = ret.getExitCode();
             if (exitCode != 0) {
@@ -207,7 +293,12 @@ public final class ExecCommandThread extends Thread {
             throws IOException {
         /* it may hang here if we lost connection, so it will be
          * interrupted after a timeout. */
-        final Session newSession = connectionThread.getConnection().openSession();
+        final Session newSession;
+        try {
+            newSession = connectionThread.getConnection().openSession();
+        } finally {
+            connectionTimeout.cancelTimer();
+        }
         mSessionLock.lock();
         try {
             session = newSession;
@@ -222,8 +313,7 @@ public final class ExecCommandThread extends Thread {
 
     private ConnectionTimeout setupConnectionTimeout() {
         final ConnectionTimeout connectionTimeout = new ConnectionTimeout();
-        final Thread thread = new Thread(() -> {
-            Tools.sleep(Tools.getDefaultInt("SSH.ConnectTimeout"));
+        connectionTimeout.timer = commandExecutor.schedule(() -> {
             if (!connectionTimeout.wasTimeout()) {
                 LOG.debug1("run: " + host.getName() + ": open ssh session: timeout");
                 connectionTimeout.setTimeout();
@@ -236,11 +326,97 @@ public final class ExecCommandThread extends Thread {
                     LOG.appWarning("run: " + host.getName() + ": setting timeout failed");
                 }
             }
-        });
-        thread.start();
+        }, Tools.getDefaultInt("SSH.ConnectTimeout"));
         return connectionTimeout;
     }
 
+    /**
+     * Returns a pooled shell for the command or null, if the command needs
+     * its own session with pty. The long running commands and the commands
+     * with output callback need it. With sudo, the command runs in the root
+     * shell only, if it would run under the sudo as a whole, the commands
+     * without sudo run in the plain shell.
+     */
+    private ShellSession borrowShellSession(final String oneCommand) {
+        if (shellSessionPool == null || outputCallback != null || sshCommandTimeout <= 0) {
+            return null;
+        }
+        final boolean useSudo = host.isUseSudo() != null && host.isUseSudo();
+        final boolean privileged = useSudo && oneCommand.contains(DistResource.SUDO);
+        if (privileged && !ShellSessionPool.runsWhollyWithSudo(oneCommand)) {
+            return null;
+        }
+        try {
+            return shellSessionPool.borrow(host, connectionThread.getConnection(), privileged);
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Executes the command in the pooled shell, the root shell runs as root
+     * already, and returns the shell to the pool.
+     */
+    private SshOutput execInShellSession(final String oneCommand, final ShellSession pooledShellSession) {
+        mSessionLock.lock();
+        try {
+            shellSession = pooledShellSession;
+        } finally {
+            mSessionLock.unlock();
+        }
+        if (cancelIt) {
+            returnShellSession(true);
+            return new SshOutput("", CANCELED_EXIT_CODE);
+        }
+        final String shellCommand = oneCommand.replaceAll(DistResource.SUDO, " ");
+        LOG.debug2("execInShellSession: command: " + host.getName() + ": " + shellCommand);
+        int exitCode;
+        String outputString = "";
+        try {
+            final SshOutput ret = pooledShellSession.exec(shellCommand,
+                                                          sshCommandTimeout,
+                                                          outputVisible ? host.getTerminalPanel()::addContent : null);
+            outputString = ret.getOutput();
+            exitCode = ret.getExitCode();
+            returnShellSession(!cancelIt);
+            if (cancelIt) {
+                return new SshOutput("", CANCELED_EXIT_CODE);
+            }
+            if (commandVisible) {
+                host.getTerminalPanel().nextCommand();
+            }
+        } catch (final IOException e) {
+            LOG.appWarning("execInShellSession: " + host.getName() + ':' + e.getMessage() + ':' + oneCommand);
+            if (e instanceof ShellSession.TimeoutException) {
+                progressIndicator.progressIndicatorFailed(host.getName(),
+                        "SSH timeout: " + oneCommand.replaceAll(DistResource.SUDO, ""));
+            }
+            exitCode = ERROR_EXIT_CODE;
+            returnShellSession(false);
+        }
+        LOG.debug2("execInShellSession: output: " + exitCode + ": " + host.getName() + ": " + outputString);
+        return new SshOutput(outputString, exitCode);
+    }
+
+    /** Returns the shell to the pool, unless the cancel has closed it already. */
+    private void returnShellSession(final boolean reusable) {
+        final ShellSession thisShellSession = takeShellSession();
+        if (thisShellSession != null) {
+            shellSessionPool.release(thisShellSession, reusable);
+        }
+    }
+
+    private ShellSession takeShellSession() {
+        mSessionLock.lock();
+        try {
+            final ShellSession thisShellSession = shellSession;
+            shellSession = null;
+            return thisShellSession;
+        } finally {
+            mSessionLock.unlock();
+        }
+    }
+
     @SneakyThrows
     private SshOutput execOneCommand(final String oneCommand) {
         if (sshCommandTimeout > 0 && sshCommandTimeout < 2000) {
@@ -261,7 +437,7 @@ public final class ExecCommandThread extends Thread {
                 mSessionLock.unlock();
             }
             if (thisSession == null) {
-                return new SshOutput("", 130);
+                return new SshOutput("", CANCELED_EXIT_CODE);
             }
             /* requestPTY mixes stdout and strerr together, but it works
             better at the moment.
@@ -272,14 +448,13 @@ public final class ExecCommandThread extends Thread {
             LOG.debug2("execOneCommand: command: "
                        + host.getName()
                        + ": "
-                       + host.getSudoCommand(host.getHoppedCommand(oneCommand), true));
+                       + host.getSudoCommand(oneCommand, true));
             thisSession.execCommand("bash -c '"
                                     + Tools.escapeSingleQuotes("export LC_ALL=C;"
-                                                               + host.getSudoCommand(host.getHoppedCommand(oneCommand),
-                                                                                     false), 1) + '\'');
+                                                               + host.getSudoCommand(oneCommand, false), 1) + '\'');
             outputString = execCommandAndCaptureOutput(oneCommand, thisSession);
             if (cancelIt) {
-                return new SshOutput("", 130);
+                return new SshOutput("", CANCELED_EXIT_CODE);
             }
             if (commandVisible) {
                 host.getTerminalPanel().nextCommand();
@@ -305,7 +480,6 @@ public final class ExecCommandThread extends Thread {
         final InputStream stdout = thisSession.getStdout();
         final OutputStream stdin = thisSession.getStdin();
         final InputStream stderr = thisSession.getStderr();
-        final byte[] buff = new byte[EXEC_OUTPUT_BUFFER_SIZE];
         boolean skipNextLine = false;
         final StringBuilder res = new StringBuilder();
         while (true) {
@@ -348,8 +522,8 @@ public final class ExecCommandThread extends Thread {
                 /* OK, either STDOUT_DATA or STDERR_DATA (or both) */
                 /* ... is set. */
             }
-            final StringBuilder output = readStdout(stdout, buff);
-            if (output.indexOf(Ssh.SUDO_PROMPT) >= 0) {
+            final CharBuffer output = readStdout(stdout);
+            if (contains(output, Ssh.SUDO_PROMPT)) {
                 if (sudoPwd == null) {
                     enterSudoPassword();
                 }
@@ -357,74 +531,77 @@ public final class ExecCommandThread extends Thread {
                 stdin.write(pwd.getBytes(StandardCharsets.UTF_8));
                 skipNextLine = true;
                 continue;
-            } else if (output.indexOf(Ssh.SUDO_FAIL) >= 0) {
+            } else if (contains(output, Ssh.SUDO_FAIL)) {
                 host.setSudoPassword(null);
             } else {
-                if (skipNextLine) {
+                if (skipNextLine && output.hasRemaining()) {
                     /* this is the "enter" after pwd */
                     skipNextLine = false;
-                    if (output.charAt(0) == 13 && output.charAt(1) == 10) {
-                        output.delete(0, 2);
+                    if (output.length() >= 2 && output.charAt(0) == 13 && output.charAt(1) == 10) {
+                        output.position(output.position() + 2);
                         if (output.length() == 0) {
                             continue;
                         }
                     }
                 }
             }
-            final StringBuilder errOutput = readStderr(stderr, buff);
-            res.append(errOutput);
-            if (newOutputCallback != null && !cancelIt) {
-                LOG.debug2("execOneCommand: output: " + ": " + host.getName() + ": " + output);
-                newOutputCallback.output(output.toString());
+            readStderr(stderr, res);
+            if (outputCallback != null && !cancelIt && output.hasRemaining()) {
+                outputCallback.output(output);
             }
             if (cancelIt) {
                 return res.toString();
             }
-            if (newOutputCallback == null) {
+            if (outputCallback == null) {
                 res.append(output);
             }
         }
         return res.toString();
     }
 
-    /** If you below replace "while" with "if", then the way
-     * the output appears on the local stdout and stder streams
-     * is more "balanced". Addtionally reducing the buffer size
-     * will also improve the interleaving, but performance will
-     * slightly suffer. OKOK, that all matters only if you get
-     * HUGE amounts of stdout and stderr data =)
+    /**
+     * Reads the next chunk of the stdout, the returned chars are valid till
+     * the next read.
      */
-    private StringBuilder readStdout(final InputStream stdout, final byte[] buff) throws IOException {
-        final StringBuilder output = new StringBuilder();
-        while (stdout.available() > 0 && !cancelIt) {
-            final int len = stdout.read(buff);
-            if (len > 0) {
-                final String buffString = new String(buff, 0, len, ENCODING);
-                output.append(buffString);
-                if (outputVisible) {
-                    host.getTerminalPanel().addContent(buffString);
-                }
-            }
+    private CharBuffer readStdout(final InputStream stdout) throws IOException {
+        int len = 0;
+        if (stdout.available() > 0 && !cancelIt) {
+            len = stdout.read(buff);
+        }
+        final CharBuffer output = stdoutDecoder.decode(buff, Math.max(len, 0));
+        if (outputVisible && output.hasRemaining()) {
+            host.getTerminalPanel().addContent(output.toString());
         }
         return output;
     }
 
-    private StringBuilder readStderr(final InputStream stderr, final byte[] buff) throws IOException {
-        final StringBuilder output = new StringBuilder();
+    private void readStderr(final InputStream stderr, final StringBuilder res) throws IOException {
         while (stderr.available() > 0 && !cancelIt) {
             // this is unreachable.
             // stdout and stderr are mixed in the stdout
             // if pty is requested.
             final int len = stderr.read(buff);
             if (len > 0) {
-                final String buffString = new String(buff, 0, len, ENCODING);
-                output.append(buffString);
+                final CharBuffer output = stderrDecoder.decode(buff, len);
+                res.append(output);
                 if (outputVisible) {
-                    host.getTerminalPanel().addContentErr(buffString);
+                    host.getTerminalPanel().addContentErr(output.toString());
                 }
             }
         }
-        return output;
+    }
+
+    private static boolean contains(final CharSequence chars, final String s) {
+        for (int i = 0; i + s.length() <= chars.length(); i++) {
+            int j = 0;
+            while (j < s.length() && chars.charAt(i + j) == s.charAt(j)) {
+                j++;
+            }
+            if (j == s.length()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
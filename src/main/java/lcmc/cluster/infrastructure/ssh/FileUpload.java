@@ -0,0 +1,150 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One file, that is uploaded to the host. It is written to the file with
+ * the ".new" suffix first, that gets the mode and is installed with the
+ * install command, by default it is renamed to the file.
+ */
+public final class FileUpload {
+    private byte[] content = new byte[0];
+    private String remoteFilename;
+    private String mode = null;
+    private boolean makeBackup = false;
+    private String installCommand = null;
+    private String preCommand = null;
+    private String postCommand = null;
+
+    /** The file content as it is. */
+    public FileUpload content(final byte[] content) {
+        this.content = content;
+        return this;
+    }
+
+    /** The text is written with a newline at the end, like with echo. */
+    public FileUpload text(final String text) {
+        content = (text + '\n').getBytes(StandardCharsets.UTF_8);
+        return this;
+    }
+
+    public FileUpload remoteFilename(final String remoteFilename) {
+        this.remoteFilename = remoteFilename;
+        return this;
+    }
+
+    public FileUpload mode(final String mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public FileUpload makeBackup(final boolean makeBackup) {
+        this.makeBackup = makeBackup;
+        return this;
+    }
+
+    /** The command, that installs the file.new, instead of the rename. */
+    public FileUpload installCommand(final String installCommand) {
+        this.installCommand = installCommand;
+        return this;
+    }
+
+    public FileUpload preCommand(final String preCommand) {
+        this.preCommand = preCommand;
+        return this;
+    }
+
+    public FileUpload postCommand(final String postCommand) {
+        this.postCommand = postCommand;
+        return this;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public String getRemoteFilename() {
+        return remoteFilename;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public boolean isMakeBackup() {
+        return makeBackup;
+    }
+
+    public String getInstallCommand() {
+        if (installCommand == null) {
+            return "mv " + remoteFilename + ".new " + remoteFilename;
+        }
+        return installCommand;
+    }
+
+    public String getPreCommand() {
+        return preCommand;
+    }
+
+    public String getPostCommand() {
+        return postCommand;
+    }
+
+    /**
+     * Returns the commands, that write the file.new with the write command,
+     * install it and make the backup, if the file changed.
+     */
+    String getCommands(final String writeCommand) {
+        final StringBuilder commands = new StringBuilder(200);
+        if (preCommand != null) {
+            commands.append(preCommand).append(';');
+        }
+        if (makeBackup) {
+            commands.append("cp ").append(remoteFilename).append("{,.bak} 2>/dev/null;");
+        }
+        final int index = remoteFilename.lastIndexOf('/');
+        if (index > 0) {
+            commands.append("mkdir -p ").append(remoteFilename, 0, index + 1).append(';');
+        }
+        commands.append(writeCommand);
+        if (mode != null) {
+            commands.append(" && chmod ").append(mode).append(' ').append(remoteFilename).append(".new");
+        }
+        commands.append("&& ").append(getInstallCommand());
+        if (postCommand != null) {
+            commands.append(" && ").append(postCommand);
+        }
+        if (makeBackup) {
+            commands.append(" && if ! diff ")
+                    .append(remoteFilename)
+                    .append("{,.bak}>/dev/null 2>&1; then mv ")
+                    .append(remoteFilename)
+                    .append("{.bak,.`date +'%s'`} 2>/dev/null;true; else rm -f ")
+                    .append(remoteFilename)
+                    .append(".bak; fi ");
+        }
+        return commands.toString();
+    }
+}
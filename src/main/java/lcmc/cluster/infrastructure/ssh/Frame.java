@@ -0,0 +1,77 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.infrastructure.ssh;
+
+/**
+ * A frame of the gui helper agent's output. The info frames, like "hw",
+ * "vm" and "drbd", have the timestamp in the first line of the payload.
+ */
+public final class Frame {
+    /** The agent is ready for commands. */
+    public static final String READY = "ready";
+    /** The payload is the cpu time of the compression in microseconds, if it's on. */
+    public static final String KEEPALIVE = "keepalive";
+    public static final String WARNING = "warning";
+    /** The payload is the exit code of the stream. */
+    public static final String EXIT = "exit";
+    /** The payload is the negotiated compression method or "none". */
+    public static final String COMPRESS = "compress";
+    public static final String PING = "ping";
+    /** A line of the output outside of the marked sections. */
+    public static final String OUT = "out";
+    /** Drbd module is not loaded. */
+    public static final String NO_MODULE = "nm";
+    /** Snapshot of the cluster status from ---start--- to ---done---. */
+    public static final String CLUSTER = "cluster";
+    /** The whole output of a request. */
+    public static final String RESPONSE = "response";
+
+    private final String type;
+    private final int stream;
+    private final String payload;
+
+    public Frame(final String type, final int stream, final String payload) {
+        this.type = type;
+        this.stream = stream;
+        this.payload = payload;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getStream() {
+        return stream;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public boolean isType(final String otherType) {
+        return type.equals(otherType);
+    }
+
+    @Override
+    public String toString() {
+        return type + ' ' + stream + ' ' + payload.length();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Decodes the frames of the gui helper agent:
+ *
+ *   #version type stream length [zlib]\npayload
+ *
+ * The length is in UTF-8 bytes. Every character of the output is looked at
+ * only once and the frames are returned as soon as they are complete. The
+ * output, that is not in a frame, like a sudo prompt, is skipped. If the
+ * compression was negotiated, the payload of the bigger frames is zlib
+ * compressed and base64 encoded, it's marked in the header.
+ */
+public final class FrameDecoder {
+    private static final Logger LOG = LoggerFactory.getLogger(FrameDecoder.class);
+    public static final int VERSION = 1;
+    private static final String HEADER_START = "#" + VERSION + ' ';
+    public static final String ZLIB = "zlib";
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+
+    private final StringBuilder buffer = new StringBuilder();
+    /** Start of the current frame's header or payload. */
+    private int frameStart = 0;
+    /** Where the decoding continues. */
+    private int position = 0;
+    /** Header of the current frame, null if the header is not complete. */
+    private String type = null;
+    private int stream;
+    private int length;
+    private int payloadBytes;
+    private boolean compressed;
+    private final CompressionStats compressionStats;
+
+    public FrameDecoder() {
+        this(new CompressionStats());
+    }
+
+    public FrameDecoder(final CompressionStats compressionStats) {
+        this.compressionStats = compressionStats;
+    }
+
+    public List<Frame> decode(final CharSequence output) {
+        buffer.append(output);
+        final List<Frame> frames = new ArrayList<>();
+        while (true) {
+            if (type == null && !decodeHeader()) {
+                break;
+            }
+            while (payloadBytes < length && position < buffer.length()) {
+                payloadBytes += utf8Length(buffer.charAt(position));
+                position++;
+            }
+            if (payloadBytes < length) {
+                break;
+            }
+            if (payloadBytes > length) {
+                LOG.appWarning("decode: wrong frame length: " + type + ' ' + stream + ' ' + length);
+            }
+            final String payload = buffer.substring(frameStart, position);
+            if (!compressed) {
+                frames.add(new Frame(type, stream, payload));
+            } else {
+                final String inflated = inflate(payload);
+                if (inflated != null) {
+                    frames.add(new Frame(type, stream, inflated));
+                }
+            }
+            type = null;
+            frameStart = position;
+        }
+        if (frameStart > 0) {
+            buffer.delete(0, frameStart);
+            position -= frameStart;
+            frameStart = 0;
+        }
+        return frames;
+    }
+
+    /** Returns whether the header of the next frame was decoded. */
+    private boolean decodeHeader() {
+        while (true) {
+            final int end = buffer.indexOf("\n", position);
+            if (end < 0) {
+                position = buffer.length();
+                return false;
+            }
+            final String header = buffer.substring(frameStart, end);
+            frameStart = end + 1;
+            position = frameStart;
+            if (parseHeader(header)) {
+                payloadBytes = 0;
+                return true;
+            }
+            LOG.debug1("decodeHeader: skipping: " + header);
+        }
+    }
+
+    private boolean parseHeader(final String header) {
+        if (!header.startsWith(HEADER_START)) {
+            return false;
+        }
+        final String[] fields = header.substring(HEADER_START.length()).split(" ");
+        if (fields.length == 4 && ZLIB.equals(fields[3])) {
+            compressed = true;
+        } else if (fields.length == 3) {
+            compressed = false;
+        } else {
+            return false;
+        }
+        try {
+            stream = Integer.parseInt(fields[1]);
+            length = Integer.parseInt(fields[2]);
+        } catch (final NumberFormatException e) {
+            return false;
+        }
+        type = fields[0];
+        return true;
+    }
+
+    /** Returns the decompressed payload or null, if it's broken. */
+    private String inflate(final String payload) {
+        final long start = System.nanoTime();
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(payload));
+            final byte[] out = new byte[INFLATE_BUFFER_SIZE];
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length() * 4);
+            while (!inflater.finished()) {
+                final int len = inflater.inflate(out);
+                if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated");
+                }
+                bytes.write(out, 0, len);
+            }
+            compressionStats.addFrame(bytes.size(), payload.length(), System.nanoTime() - start);
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        } catch (final IllegalArgumentException | DataFormatException e) {
+            LOG.appWarning("inflate: broken frame: " + type + ' ' + stream + ' ' + length, e);
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int utf8Length(final char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isHighSurrogate(c)) {
+            return 0;
+        } else if (Character.isLowSurrogate(c)) {
+            return 4;
+        }
+        return 3;
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lcmc.common.domain.ConvertCmdCallback;
+import lcmc.common.domain.ExecCallback;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs the long running helper actions, like the hw info daemon, drbd and
+ * cluster events and the ping, in one gui helper agent per host. The agent
+ * multiplexes their output over one ssh session in frames, that have the
+ * stream id. The stream 0 is the agent itself.
+ *
+ * The short helper actions, like getting of the resource agents, are sent
+ * as requests. The agent answers them with the whole output in one frame,
+ * the stream id is the id of the request.
+ *
+ * The agent is started with the first stream and restarted with the first
+ * stream after it exited. If the agent exits, all its streams fail.
+ */
+public final class HelperAgent {
+    private static final Logger LOG = LoggerFactory.getLogger(HelperAgent.class);
+    /** The agent sends a keepalive every 10 seconds. */
+    private static final int AGENT_TIMEOUT = 40000;
+    private static final int CONTROL_STREAM = 0;
+    /** Exit code of the streams, if the agent is gone. */
+    private static final int AGENT_EXITED = 255;
+    /** Exit code of the request after the timeout. */
+    private static final int REQUEST_CANCELED = 130;
+
+    private final Host host;
+    private final Ssh ssh;
+    private final AtomicInteger lastStreamId = new AtomicInteger(0);
+    private final CompressionStats compressionStats = new CompressionStats();
+    /** Guarded by this. */
+    private AgentSession agentSession = null;
+
+    public HelperAgent(final Host host, final Ssh ssh) {
+        this.host = host;
+        this.ssh = ssh;
+    }
+
+    /**
+     * Starts a stream. The command string is a dist command with the helper
+     * action and its options.
+     */
+    public HelperStream startStream(final String commandString,
+                                    final ConvertCmdCallback convertCmdCallback,
+                                    final ExecCallback execCallback,
+                                    final FrameCallback frameCallback) {
+        return start("start", commandString, convertCmdCallback, execCallback, frameCallback);
+    }
+
+    /**
+     * Runs the helper action and waits for its output. The command string is
+     * a dist command with the helper action and its arguments. The timeout
+     * 0 means no timeout.
+     */
+    public SshOutput request(final String commandString,
+                             final ConvertCmdCallback convertCmdCallback,
+                             final int timeoutMillis) {
+        final StringBuilder output = new StringBuilder();
+        final int[] exitCode = {AGENT_EXITED};
+        final HelperStream stream = start("request",
+                                          commandString,
+                                          convertCmdCallback,
+                                          new ExecCallback() {
+                                              @Override
+                                              public void done(final String answer) {
+                                                  exitCode[0] = 0;
+                                              }
+
+                                              @Override
+                                              public void doneError(final String answer, final int errorCode) {
+                                                  exitCode[0] = errorCode;
+                                              }
+                                          },
+                                          frames -> {
+                                              for (final Frame frame : frames) {
+                                                  if (frame.isType(Frame.RESPONSE)) {
+                                                      output.append(frame.getPayload());
+                                                  }
+                                              }
+                                          });
+        if (timeoutMillis > 0 && !stream.block(timeoutMillis)) {
+            LOG.appWarning("request: " + host.getName() + ": timeout: " + commandString);
+            stream.cancel();
+            return new SshOutput("", REQUEST_CANCELED);
+        }
+        stream.block();
+        return new SshOutput(output.toString(), exitCode[0]);
+    }
+
+    private HelperStream start(final String operation,
+                               final String commandString,
+                               final ConvertCmdCallback convertCmdCallback,
+                               final ExecCallback execCallback,
+                               final FrameCallback frameCallback) {
+        final String action = host.getHostParser().getDistCommand(commandString, convertCmdCallback);
+        final int id = lastStreamId.incrementAndGet();
+        synchronized (this) {
+            if (agentSession == null || agentSession.isExited()) {
+                agentSession = new AgentSession();
+                agentSession.start();
+            }
+            final AgentSession session = agentSession;
+            final HelperStream stream = new HelperStream(id,
+                                                         execCallback,
+                                                         frameCallback,
+                                                         () -> session.send("stop " + id));
+            session.addStream(stream);
+            session.send(operation + ' ' + id + ' ' + action);
+            return stream;
+        }
+    }
+
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /** Stops the agent, all its streams fail. */
+    public synchronized void stop() {
+        if (agentSession != null) {
+            agentSession.cancel();
+            agentSession = null;
+        }
+    }
+
+    /** One ssh session with the running agent. */
+    private final class AgentSession {
+        private final Map<Integer, HelperStream> streams = new ConcurrentHashMap<>();
+        /** Commands, that wait till the agent is ready. Guarded by HelperAgent.this. */
+        private final List<String> pendingCommands = new ArrayList<>();
+        private final FrameDecoder frameDecoder = new FrameDecoder(compressionStats);
+        /** Guarded by HelperAgent.this. */
+        private boolean ready = false;
+        private volatile boolean exited = false;
+        /**
+         * Set after the agent was started, the ready frame may come before
+         * that, the commands wait till both happened. Guarded by
+         * HelperAgent.this.
+         */
+        private ExecCommandThread agentThread = null;
+
+        void start() {
+            LOG.debug1("start: " + host.getName() + ": starting helper agent");
+            final ExecCommandThread thread = ssh.execCommand(new ExecCommandConfig()
+                                                  .commandString("Helper.Agent")
+                                                  .inBash(false)
+                                                  .inSudo(false)
+                                                  .execCallback(new ExecCallback() {
+                                                      @Override
+                                                      public void done(final String answer) {
+                                                          agentExited(AGENT_EXITED);
+                                                      }
+
+                                                      @Override
+                                                      public void doneError(final String answer, final int exitCode) {
+                                                          LOG.debug1("doneError: " + host.getName()
+                                                                     + ": helper agent exited: " + exitCode);
+                                                          agentExited(exitCode);
+                                                      }
+                                                  })
+                                                  .outputCallback(this::demultiplex)
+                                                  .silentCommand()
+                                                  .silentOutput()
+                                                  .sshCommandTimeout(AGENT_TIMEOUT));
+            synchronized (HelperAgent.this) {
+                agentThread = thread;
+                writePendingCommands();
+            }
+        }
+
+        boolean isExited() {
+            return exited;
+        }
+
+        void addStream(final HelperStream stream) {
+            streams.put(stream.getId(), stream);
+        }
+
+        void send(final String command) {
+            synchronized (HelperAgent.this) {
+                if (exited) {
+                    return;
+                }
+                pendingCommands.add(command);
+                writePendingCommands();
+            }
+        }
+
+        void cancel() {
+            final ExecCommandThread thread;
+            synchronized (HelperAgent.this) {
+                thread = agentThread;
+            }
+            if (thread != null) {
+                thread.cancelTheSession();
+            }
+        }
+
+        /** Writes the pending commands, if the agent is ready. Must be called with the lock held. */
+        private void writePendingCommands() {
+            if (!ready || agentThread == null) {
+                return;
+            }
+            final List<String> commands = new ArrayList<>(pendingCommands);
+            pendingCommands.clear();
+            for (final String command : commands) {
+                try {
+                    agentThread.write(command + '\n');
+                } catch (final IOException e) {
+                    LOG.appWarning("write: " + host.getName() + ": could not send: " + command, e);
+                    agentThread.cancelTheSession();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Decodes the frames and passes them to the streams. Every stream gets
+         * its frames from one chunk at once.
+         */
+        private void demultiplex(final CharSequence output) {
+            final Map<HelperStream, List<Frame>> streamFrames = new LinkedHashMap<>();
+            for (final Frame frame : frameDecoder.decode(output)) {
+                if (frame.getStream() == CONTROL_STREAM) {
+                    control(frame);
+                } else if (frame.isType(Frame.EXIT)) {
+                    flush(streamFrames);
+                    exit(frame);
+                } else {
+                    final HelperStream stream = streams.get(frame.getStream());
+                    if (stream != null) {
+                        streamFrames.computeIfAbsent(stream, s -> new ArrayList<>()).add(frame);
+                    }
+                }
+            }
+            flush(streamFrames);
+        }
+
+        private void flush(final Map<HelperStream, List<Frame>> streamFrames) {
+            for (final Map.Entry<HelperStream, List<Frame>> entry : streamFrames.entrySet()) {
+                entry.getKey().frames(entry.getValue());
+            }
+            streamFrames.clear();
+        }
+
+        private void control(final Frame frame) {
+            if (frame.isType(Frame.READY)) {
+                synchronized (HelperAgent.this) {
+                    ready = true;
+                    if (host.getCompression().isFrames()) {
+                        pendingCommands.add(0, "compress " + FrameDecoder.ZLIB);
+                    }
+                    writePendingCommands();
+                }
+            } else if (frame.isType(Frame.WARNING)) {
+                LOG.appWarning("control: " + host.getName() + ": " + frame.getPayload());
+            } else if (frame.isType(Frame.COMPRESS)) {
+                LOG.debug1("control: " + host.getName() + ": compression: " + frame.getPayload());
+                compressionStats.setMethod(frame.getPayload());
+            } else if (frame.isType(Frame.KEEPALIVE)) {
+                if (!frame.getPayload().isEmpty()) {
+                    setHostCpu(frame.getPayload());
+                }
+            } else {
+                LOG.debug1("control: " + host.getName() + ": unknown frame: " + frame);
+            }
+        }
+
+        /** The keepalive has the cpu time of the compression on the host. */
+        private void setHostCpu(final String hostCpuMicros) {
+            try {
+                compressionStats.setHostCpuMicros(Long.parseLong(hostCpuMicros.trim()));
+                LOG.debug2("setHostCpu: " + host.getName() + ": " + compressionStats);
+            } catch (final NumberFormatException e) {
+                LOG.appWarning("setHostCpu: " + host.getName() + ": wrong keepalive: " + hostCpuMicros);
+            }
+        }
+
+        private void exit(final Frame frame) {
+            final HelperStream stream = streams.remove(frame.getStream());
+            if (stream == null) {
+                return;
+            }
+            try {
+                stream.finish(Integer.parseInt(frame.getPayload().trim()));
+            } catch (final NumberFormatException e) {
+                LOG.appWarning("exit: " + host.getName() + ": wrong exit code: " + frame.getPayload());
+                stream.finish(AGENT_EXITED);
+            }
+        }
+
+        private void agentExited(final int exitCode) {
+            synchronized (HelperAgent.this) {
+                exited = true;
+                pendingCommands.clear();
+                if (agentSession == this) {
+                    agentSession = null;
+                }
+            }
+            final int streamExitCode = exitCode == 0 ? AGENT_EXITED : exitCode;
+            for (final HelperStream stream : streams.values()) {
+                stream.finish(streamExitCode);
+            }
+            streams.clear();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lcmc.common.domain.ExecCallback;
+
+/**
+ * One stream of the gui helper agent, it is a helper action, whose output
+ * is multiplexed with other streams over one ssh session.
+ */
+public final class HelperStream {
+    private final int id;
+    private final ExecCallback execCallback;
+    private final FrameCallback frameCallback;
+    /** Sends the stop command to the agent. */
+    private final Runnable stopCommand;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private volatile boolean canceled = false;
+
+    HelperStream(final int id,
+                 final ExecCallback execCallback,
+                 final FrameCallback frameCallback,
+                 final Runnable stopCommand) {
+        this.id = id;
+        this.execCallback = execCallback;
+        this.frameCallback = frameCallback;
+        this.stopCommand = stopCommand;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /** Stops the action on the host, the output is ignored from now on. */
+    public void cancel() {
+        canceled = true;
+        if (!finished.get()) {
+            stopCommand.run();
+        }
+    }
+
+    /** Waits till the stream is finished. */
+    public HelperStream block() {
+        try {
+            finishedLatch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return this;
+    }
+
+    /** Waits till the stream is finished or the timeout, returns whether it finished. */
+    public boolean block(final long timeoutMillis) {
+        try {
+            return finishedLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    void frames(final List<Frame> frames) {
+        if (!canceled && frameCallback != null) {
+            frameCallback.frames(frames);
+        }
+    }
+
+    /** Called once, when the action exited or the agent is gone. */
+    void finish(final int exitCode) {
+        if (finished.getAndSet(true)) {
+            return;
+        }
+        if (execCallback != null) {
+            if (exitCode == 0) {
+                execCallback.done("");
+            } else {
+                execCallback.doneError("", exitCode);
+            }
+        }
+        finishedLatch.countDown();
+    }
+}
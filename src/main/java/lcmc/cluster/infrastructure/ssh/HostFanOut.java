@@ -0,0 +1,265 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs an operation, like creating of a config, on several hosts at once
+ * and waits till it is finished on all of them. At most SSH.FanOut.Max
+ * hosts run it at once. If the operation doesn't finish on a host in
+ * SSH.FanOut.Timeout from its submission, the host is reported as failed
+ * and its thread is interrupted, a host, that still waits for a free thread
+ * then, doesn't run at all. The interrupt stops only the waiting here, the
+ * command, that the operation started on the host, keeps running there till
+ * it finishes or its own ssh timeout.
+ *
+ * The errors are in the report, that the caller shows with showErrors.
+ *
+ * The operations that are started from a running operation run in its
+ * thread one host after another, so that they can't wait for each other.
+ */
+@Named
+@Singleton
+public class HostFanOut {
+    private static final Logger LOG = LoggerFactory.getLogger(HostFanOut.class);
+    private static final ThreadLocal<Boolean> IN_OPERATION = ThreadLocal.withInitial(() -> false);
+
+    private final ExecutorService workers;
+    private final long timeoutMillis;
+
+    public HostFanOut() {
+        this(Tools.getDefaultInt("SSH.FanOut.Max"), Tools.getDefaultInt("SSH.FanOut.Timeout"));
+    }
+
+    HostFanOut(final int maxHosts, final long timeoutMillis) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxHosts,
+                                                                   maxHosts,
+                                                                   60,
+                                                                   TimeUnit.SECONDS,
+                                                                   new LinkedBlockingQueue<>(),
+                                                                   new CommandExecutor.NamedThreadFactory("lcmc-fan-out-"));
+        executor.allowCoreThreadTimeOut(true);
+        workers = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /** Runs the operation on the hosts and returns its results. */
+    public <T> Report<T> call(final String name, final Collection<Host> hosts, final Function<Host, T> operation) {
+        return fanOut(name, hosts, operation);
+    }
+
+    /** Runs the operation on the hosts. */
+    public Report<Void> run(final String name, final Collection<Host> hosts, final Consumer<Host> operation) {
+        return call(name, hosts, host -> {
+            operation.accept(host);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the operation on the hosts, the hosts, where it returns false,
+     * are reported as failed.
+     */
+    public Report<Boolean> check(final String name, final Collection<Host> hosts, final Predicate<Host> operation) {
+        final Report<Boolean> report = call(name, hosts, operation::test);
+        report.failedIfFalse();
+        return report;
+    }
+
+    <T> Report<T> fanOut(final String name, final Collection<Host> hosts, final Function<Host, T> operation) {
+        final Report<T> report = new Report<>(name);
+        final Collection<Host> distinctHosts = new LinkedHashSet<>(hosts);
+        if (IN_OPERATION.get() || distinctHosts.size() < 2) {
+            for (final Host host : distinctHosts) {
+                runInThisThread(report, host, operation);
+            }
+            return report;
+        }
+        final List<HostTask<T>> tasks = new ArrayList<>(distinctHosts.size());
+        for (final Host host : distinctHosts) {
+            final HostTask<T> task = new HostTask<>(host, operation, System.currentTimeMillis() + timeoutMillis);
+            task.future = workers.submit(task);
+            tasks.add(task);
+        }
+        for (final HostTask<T> task : tasks) {
+            waitFor(report, task);
+        }
+        return report;
+    }
+
+    private <T> void runInThisThread(final Report<T> report, final Host host, final Function<Host, T> operation) {
+        try {
+            report.ok(host, operation.apply(host));
+        } catch (final RuntimeException e) {
+            report.failed(host, e.toString(), e);
+        }
+    }
+
+    private <T> void waitFor(final Report<T> report, final HostTask<T> task) {
+        try {
+            if (!task.started.await(task.getRemainingMillis(), TimeUnit.MILLISECONDS)) {
+                task.future.cancel(true);
+                report.failed(task.host, "timeout in the queue after " + timeoutMillis + " ms", null);
+                return;
+            }
+            report.ok(task.host, task.future.get(task.getRemainingMillis(), TimeUnit.MILLISECONDS));
+        } catch (final TimeoutException e) {
+            task.future.cancel(true);
+            report.failed(task.host, "timeout after " + timeoutMillis + " ms", null);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            report.failed(task.host, cause.toString(), cause instanceof Exception ? (Exception) cause : null);
+        } catch (final CancellationException e) {
+            report.failed(task.host, "canceled", null);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.cancel(true);
+            report.failed(task.host, "interrupted", null);
+        }
+    }
+
+    /** The operation on one host. */
+    private static final class HostTask<T> implements Callable<T> {
+        private final Host host;
+        private final Function<Host, T> operation;
+        private final CountDownLatch started = new CountDownLatch(1);
+        /** The timeout counts from the submission, the time in the queue too. */
+        private final long deadlineMillis;
+        private volatile Future<T> future;
+
+        HostTask(final Host host, final Function<Host, T> operation, final long deadlineMillis) {
+            this.host = host;
+            this.operation = operation;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public T call() {
+            started.countDown();
+            IN_OPERATION.set(true);
+            try {
+                return operation.apply(host);
+            } finally {
+                IN_OPERATION.set(false);
+            }
+        }
+
+        long getRemainingMillis() {
+            return deadlineMillis - System.currentTimeMillis();
+        }
+    }
+
+    /** Results of the operation and the errors, in the order of the hosts. */
+    public static final class Report<T> {
+        private final String name;
+        private final Map<Host, T> results = new LinkedHashMap<>();
+        private final Map<Host, String> errors = new LinkedHashMap<>();
+
+        Report(final String name) {
+            this.name = name;
+        }
+
+        /** Returns the results of the hosts, where the operation didn't fail. */
+        public Map<Host, T> getResults() {
+            return Collections.unmodifiableMap(results);
+        }
+
+        /** Returns the errors of the hosts, where the operation failed. */
+        public Map<Host, String> getErrors() {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        public boolean isOk() {
+            return errors.isEmpty();
+        }
+
+        /** Shows the errors of the failed hosts in the progress indicator. */
+        public void showErrors() {
+            for (final Map.Entry<Host, String> error : errors.entrySet()) {
+                error.getKey().progressIndicatorFailed(name + ": " + error.getValue());
+            }
+        }
+
+        void ok(final Host host, final T result) {
+            results.put(host, result);
+        }
+
+        /** Moves the hosts with the false result to the errors. */
+        void failedIfFalse() {
+            final Collection<Host> hosts = new ArrayList<>(results.keySet());
+            for (final Host host : hosts) {
+                if (Boolean.FALSE.equals(results.get(host))) {
+                    results.remove(host);
+                    failed(host, "failed", null);
+                }
+            }
+        }
+
+        void failed(final Host host, final String error, final Exception e) {
+            if (e == null) {
+                LOG.appWarning(name + ": " + host.getName() + ": " + error);
+            } else {
+                LOG.appWarning(name + ": " + host.getName() + ": " + error, e);
+            }
+            errors.put(host, error);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder report = new StringBuilder(name);
+            report.append(": ").append(results.size()).append(" ok, ").append(errors.size()).append(" failed");
+            for (final Map.Entry<Host, String> error : errors.entrySet()) {
+                report.append('\n').append(error.getKey().getName()).append(": ").append(error.getValue());
+            }
+            return report.toString();
+        }
+    }
+}
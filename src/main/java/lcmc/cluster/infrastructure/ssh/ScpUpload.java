@@ -0,0 +1,267 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.Hashing;
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.configs.DistResource;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Uploads the files to the host in one session with the scp protocol. The
+ * "scp -t" runs on the host with sudo, if it is needed, and receives the
+ * files into a temporary directory. After that the checksums of all files
+ * are checked, and only if they are all right, the files are installed one
+ * after another, like the files written with echo were. The temporary
+ * directory is removed at the end.
+ *
+ * The sudo without password is tried first and then the sudo with the
+ * password, if it is known. If the scp can't be started, e.g. the scp is
+ * not installed or the sudo password is not known, or it doesn't receive
+ * the files, the upload returns null and the files have to be uploaded
+ * otherwise. Nothing is installed in this case.
+ */
+final class ScpUpload {
+    private static final Logger LOG = LoggerFactory.getLogger(ScpUpload.class);
+    /** Milliseconds without any answer from the host. */
+    private static final int TIMEOUT = 10000;
+    private static final int ERROR_EXIT_CODE = 255;
+    private static final String DEFAULT_MODE = "0644";
+    /** The mode, with which the file is received, if its mode is not octal. */
+    private static final String PRIVATE_MODE = "0600";
+    private static final Pattern OCTAL_MODE = Pattern.compile("[0-7]{1,4}");
+
+    private final Host host;
+    private final SshConnection connection;
+    private final List<FileUpload> uploads;
+    private final byte[] buffer = new byte[8192];
+
+    ScpUpload(final Host host, final SshConnection connection, final List<FileUpload> uploads) {
+        this.host = host;
+        this.connection = connection;
+        this.uploads = uploads;
+    }
+
+    /**
+     * Uploads and installs the files. Returns the output of the install
+     * commands, or null, if the scp couldn't be started or receive the files.
+     */
+    SshOutput upload() throws IOException {
+        final boolean useSudo = host.isUseSudo() != null && host.isUseSudo();
+        SshOutput output = upload(useSudo ? "sudo -E -n " : "", null);
+        final String sudoPassword = host.getSudoPassword();
+        if (output == null && useSudo && sudoPassword != null) {
+            /* the sudo needs the password */
+            output = upload("sudo -E -S -p '' ", sudoPassword);
+        }
+        return output;
+    }
+
+    private SshOutput upload(final String sudoPrefix, final String sudoPassword) throws IOException {
+        final Session session = connection.openSession();
+        try {
+            final String script = "bash -c '" + Tools.escapeSingleQuotes(getScript(), 1) + '\'';
+            session.execCommand("bash -c '"
+                                + Tools.escapeSingleQuotes("export LC_ALL=C;" + sudoPrefix + script, 1)
+                                + '\'');
+            final OutputStream stdin = session.getStdin();
+            if (sudoPassword != null) {
+                stdin.write((sudoPassword + '\n').getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+            }
+            if (!readAck(session)) {
+                LOG.debug1("upload: " + host.getName() + ": scp could not be started: " + sudoPrefix);
+                return null;
+            }
+            try {
+                for (int i = 0; i < uploads.size(); i++) {
+                    sendFile(session, i, uploads.get(i));
+                }
+            } catch (final IOException e) {
+                LOG.debug1("upload: " + host.getName() + ": scp failed: " + e.getMessage());
+                return null;
+            }
+            stdin.close();
+            final String output = readOutput(session);
+            session.waitForCondition(ChannelCondition.EXIT_STATUS, TIMEOUT);
+            final Integer exitCode = session.getExitStatus();
+            return new SshOutput(output, exitCode == null ? ERROR_EXIT_CODE : exitCode);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Returns the script, that receives the files and installs them. The
+     * files are named by their index in the temporary directory. The whole
+     * script runs with sudo, so that the sudo is removed from the commands.
+     */
+    private String getScript() {
+        final StringBuilder checksums = new StringBuilder(80 * uploads.size());
+        final StringBuilder installs = new StringBuilder(300 * uploads.size());
+        for (int i = 0; i < uploads.size(); i++) {
+            final FileUpload upload = uploads.get(i);
+            if (i > 0) {
+                checksums.append('\n');
+            }
+            checksums.append(Hashing.sha256().hashBytes(upload.getContent())).append("  ").append(i);
+            installs.append("{ ")
+                    .append(upload.getCommands("cp \"$d/" + i + "\" " + upload.getRemoteFilename() + ".new"))
+                    .append("; } || rc=1\n");
+        }
+        final String script = "d=`mktemp -d /tmp/lcmc-upload.XXXXXX` || exit 1\n"
+                              + "trap 'rm -rf \"$d\"' EXIT\n"
+                              + "scp -t -d \"$d\" || exit 1\n"
+                              + "if ! echo '" + checksums + "' | (cd \"$d\" && sha256sum -c --status); then\n"
+                              + "    echo 'error: upload failed: wrong checksum'\n"
+                              + "    exit 1\n"
+                              + "fi\n"
+                              + "rc=0\n"
+                              + installs
+                              + "exit $rc\n";
+        return host.getHostParser().replaceVars(script).replaceAll(DistResource.SUDO, " ");
+    }
+
+    /**
+     * Sends one file, it has the mode of the installed file from the
+     * start, so that it is never readable by others, if it shouldn't.
+     */
+    private void sendFile(final Session session, final int index, final FileUpload upload) throws IOException {
+        final OutputStream stdin = session.getStdin();
+        final String mode = getScpMode(upload.getMode());
+        final byte[] content = upload.getContent();
+        stdin.write(('C' + mode + ' ' + content.length + ' ' + index + '\n').getBytes(StandardCharsets.UTF_8));
+        stdin.flush();
+        if (!readAck(session)) {
+            throw new IOException("scp exited: " + upload.getRemoteFilename());
+        }
+        stdin.write(content);
+        stdin.write(0);
+        stdin.flush();
+        if (!readAck(session)) {
+            throw new IOException("scp exited: " + upload.getRemoteFilename());
+        }
+    }
+
+    /**
+     * Returns the mode in the four digits, that the scp expects. If the mode
+     * is not octal, the file is received readable only by the owner and
+     * the chmod in the install commands sets the mode.
+     */
+    static String getScpMode(final String mode) {
+        if (mode == null) {
+            return DEFAULT_MODE;
+        }
+        if (!OCTAL_MODE.matcher(mode).matches()) {
+            return PRIVATE_MODE;
+        }
+        return String.format("%04o", Integer.parseInt(mode, 8));
+    }
+
+    /**
+     * Reads the answer of the scp. Returns false, if the scp exited, throws
+     * an exception, if it failed. The stderr, e.g. of the sudo, is logged.
+     */
+    private boolean readAck(final Session session) throws IOException {
+        final InputStream stdout = session.getStdout();
+        while (stdout.available() == 0) {
+            final int conditions = waitForData(session);
+            final String errors = readStderr(session);
+            if (!errors.isEmpty()) {
+                LOG.debug1("readAck: " + host.getName() + ": " + errors);
+            }
+            if ((conditions & ChannelCondition.EOF) != 0 && stdout.available() == 0) {
+                return false;
+            }
+        }
+        final int ack = stdout.read();
+        if (ack == 0) {
+            return true;
+        }
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int c;
+        while ((c = stdout.read()) >= 0 && c != '\n') {
+            message.write(c);
+        }
+        throw new IOException("scp: " + message.toString(StandardCharsets.UTF_8));
+    }
+
+    /** Reads the output of the install commands till the end. */
+    private String readOutput(final Session session) throws IOException {
+        final StringBuilder output = new StringBuilder();
+        final InputStream stdout = session.getStdout();
+        final ByteArrayOutputStream stdoutBytes = new ByteArrayOutputStream();
+        while (true) {
+            final int conditions = waitForData(session);
+            output.append(readStderr(session));
+            while (stdout.available() > 0) {
+                final int len = stdout.read(buffer);
+                if (len > 0) {
+                    stdoutBytes.write(buffer, 0, len);
+                }
+            }
+            if ((conditions & ChannelCondition.EOF) != 0
+                && stdout.available() == 0
+                && session.getStderr().available() == 0) {
+                return stdoutBytes.toString(StandardCharsets.UTF_8) + output;
+            }
+        }
+    }
+
+    private String readStderr(final Session session) throws IOException {
+        final InputStream stderr = session.getStderr();
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        while (stderr.available() > 0) {
+            final int len = stderr.read(buffer);
+            if (len > 0) {
+                errors.write(buffer, 0, len);
+            }
+        }
+        return errors.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Waits for the output and returns the conditions. */
+    private int waitForData(final Session session) throws IOException {
+        final int conditions = session.waitForCondition(ChannelCondition.STDOUT_DATA
+                                                        | ChannelCondition.STDERR_DATA
+                                                        | ChannelCondition.EOF,
+                                                        TIMEOUT);
+        if ((conditions & ChannelCondition.TIMEOUT) != 0) {
+            throw new IOException("upload: " + host.getName() + ": timeout");
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.function.Consumer;
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+
+import lcmc.common.domain.util.Tools;
+
+/**
+ * One shell on the host, that runs the commands one after another, without
+ * a pty. Every command runs in its own bash -c and its output is followed by
+ * a line with the sentinel and the exit code. The sentinel is random for
+ * every shell, so that it can't be in the output of the commands.
+ *
+ * The stderr is redirected to the stdout and the newlines are converted to
+ * "\r\n", so that the output looks like in the pty.
+ */
+final class ShellSession {
+    private static final int BUFFER_SIZE = 8192;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SshConnection connection;
+    private final Session session;
+    private final String key;
+    private final String sentinel;
+    private final InputStream stdout;
+    private final InputStream stderr;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final Utf8StreamDecoder decoder = new Utf8StreamDecoder(BUFFER_SIZE);
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private ShellSession(final SshConnection connection, final Session session, final String key) {
+        this.connection = connection;
+        this.session = session;
+        this.key = key;
+        sentinel = "__lcmc_" + Long.toHexString(RANDOM.nextLong()) + "__";
+        stdout = session.getStdout();
+        stderr = session.getStderr();
+    }
+
+    /**
+     * Starts the shell with the shell command, the password, if it is not
+     * null, is written to its stdin first. The key is the kind of the shell
+     * in the pool. Returns, when the shell is ready.
+     */
+    static ShellSession open(final SshConnection connection,
+                             final String shellCommand,
+                             final String password,
+                             final String key,
+                             final int timeoutMillis) throws IOException {
+        final Session session = connection.openSession();
+        try {
+            session.execCommand(shellCommand);
+            final ShellSession shellSession = new ShellSession(connection, session, key);
+            if (password != null) {
+                shellSession.write(password + '\n');
+            }
+            shellSession.write("export LC_ALL=C\n");
+            if (!shellSession.check(timeoutMillis)) {
+                throw new IOException("shell is not ready: " + shellCommand);
+            }
+            return shellSession;
+        } catch (final IOException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the command and waits for its exit code. The output is passed to
+     * the output consumer, if it is not null, as it comes. An exception is
+     * thrown, if the shell is gone or the command doesn't finish in the
+     * timeout, the shell can't be used after that.
+     */
+    SshOutput exec(final String command,
+                   final int timeoutMillis,
+                   final Consumer<String> outputConsumer) throws IOException {
+        write("bash -c '" + Tools.escapeSingleQuotes(command, 1) + "' </dev/null 2>&1; echo \"" + sentinel + " $?\"\n");
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        final StringBuilder output = new StringBuilder();
+        int consumed = 0;
+        while (true) {
+            final int end = output.indexOf(sentinel, Math.max(0, consumed - sentinel.length()));
+            if (end >= 0) {
+                final int lineEnd = output.indexOf("\n", end);
+                if (lineEnd >= 0) {
+                    passOutput(output, consumed, end, outputConsumer);
+                    lastUsed = System.currentTimeMillis();
+                    return new SshOutput(toPtyNewlines(output.substring(0, end)),
+                                         parseExitCode(output.substring(end + sentinel.length(), lineEnd)));
+                }
+            } else {
+                final int safe = output.length() - sentinel.length();
+                if (safe > consumed) {
+                    passOutput(output, consumed, safe, outputConsumer);
+                    consumed = safe;
+                }
+            }
+            read(output, deadline);
+        }
+    }
+
+    /** Returns whether the shell still runs commands. */
+    boolean check(final int timeoutMillis) {
+        try {
+            return exec("true", timeoutMillis, null).getExitCode() == 0;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    boolean isClosed() {
+        final int conditions = session.waitForCondition(ChannelCondition.EOF | ChannelCondition.CLOSED, 1);
+        return (conditions & (ChannelCondition.EOF | ChannelCondition.CLOSED)) != 0;
+    }
+
+    SshConnection getConnection() {
+        return connection;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void close() {
+        session.close();
+    }
+
+    private void write(final String input) throws IOException {
+        session.getStdin().write(input.getBytes(StandardCharsets.UTF_8));
+        session.getStdin().flush();
+    }
+
+    /**
+     * Waits for and reads the available output, the stderr of the shell is
+     * thrown away. Throws the timeout exception after the deadline.
+     */
+    private void read(final StringBuilder output, final long deadline) throws IOException {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new TimeoutException();
+        }
+        if (stdout.available() == 0 && stderr.available() == 0) {
+            final int conditions = session.waitForCondition(ChannelCondition.STDOUT_DATA
+                                                            | ChannelCondition.STDERR_DATA
+                                                            | ChannelCondition.EOF,
+                                                            remaining);
+            if ((conditions & ChannelCondition.TIMEOUT) != 0) {
+                throw new TimeoutException();
+            }
+            if ((conditions & ChannelCondition.EOF) != 0
+                && (conditions & (ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA)) == 0) {
+                throw new IOException("shell exited");
+            }
+        }
+        while (stderr.available() > 0) {
+            if (stderr.read(buffer) < 0) {
+                break;
+            }
+        }
+        while (stdout.available() > 0) {
+            final int len = stdout.read(buffer);
+            if (len <= 0) {
+                break;
+            }
+            output.append(decoder.decode(buffer, len));
+        }
+    }
+
+    private void passOutput(final StringBuilder output,
+                            final int start,
+                            final int end,
+                            final Consumer<String> outputConsumer) {
+        if (outputConsumer != null && end > start) {
+            outputConsumer.accept(toPtyNewlines(output.substring(start, end)));
+        }
+    }
+
+    private static String toPtyNewlines(final String output) {
+        return output.replace("\n", "\r\n");
+    }
+
+    /** The command didn't finish in the timeout. */
+    static final class TimeoutException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TimeoutException() {
+            super("Timeout while waiting for the command to finish.");
+        }
+    }
+
+    private static int parseExitCode(final String exitCode) throws IOException {
+        try {
+            return Integer.parseInt(exitCode.trim());
+        } catch (final NumberFormatException e) {
+            throw new IOException("wrong exit code: " + exitCode, e);
+        }
+    }
+}
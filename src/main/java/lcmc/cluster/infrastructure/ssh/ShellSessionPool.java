@@ -0,0 +1,271 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import lcmc.common.domain.util.Tools;
+import lcmc.configs.DistResource;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Keeps the shells of one host open, so that the short commands don't have
+ * to open a new session and run the sudo every time. There are two kinds of
+ * shells: the plain shells, that run as the login user, and the root shells,
+ * that were started with sudo. The sudo without password is tried first and
+ * then the sudo with the password, if it is known.
+ *
+ * A root shell runs only the commands, that would run under the sudo as a
+ * whole in their own session, see {@link #runsWhollyWithSudo(String)}. If
+ * the sudo setting of the host changes, the idle shells are closed and the
+ * busy ones are closed, when they are released.
+ *
+ * At most SSH.ShellSession.Max shells are open, if all of them are busy,
+ * the command runs in its own session. The shells, that were not used for
+ * SSH.ShellSession.Idle milliseconds, are closed. A shell, that was not used
+ * for a while, is checked, before it runs the next command.
+ *
+ * If the shell can't be started, no shell of this kind is started again till
+ * the sudo password changes or the host is connected again.
+ */
+public final class ShellSessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(ShellSessionPool.class);
+    private static final int SHELL_TIMEOUT = 10000;
+    private static final long CHECK_AFTER_MILLIS = 10000;
+    private static final String SHELL = "bash --noprofile --norc";
+
+    private final int maxSessions;
+    private final long maxIdleMillis;
+    /** Idle shells by their key, the last used shell is at the end. Guarded by this. */
+    private final Map<String, Deque<ShellSession>> idleSessions = new HashMap<>();
+    /** The sudo password, with which the shell of the key failed. Guarded by this. */
+    private final Map<String, String> failedSudoPasswords = new HashMap<>();
+    /** Idle and busy shells. Guarded by this. */
+    private int openSessions = 0;
+    /** The sudo setting, the open shells were started with. Guarded by this. */
+    private String sudoSetting = null;
+
+    public ShellSessionPool() {
+        this(Tools.getDefaultInt("SSH.ShellSession.Max"), Tools.getDefaultInt("SSH.ShellSession.Idle"));
+    }
+
+    ShellSessionPool(final int maxSessions, final long maxIdleMillis) {
+        this.maxSessions = maxSessions;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * Returns whether the command runs under the sudo as a whole, when it
+     * runs in its own session: it starts with the sudo placeholder, that is
+     * not anywhere else, and has no redirections, pipes, command lists or
+     * command substitutions, that the shell would run as the login user.
+     * Only such a command can run in the root shell.
+     */
+    static boolean runsWhollyWithSudo(final String command) {
+        final String trimmed = command.trim();
+        if (!trimmed.startsWith(DistResource.SUDO) || trimmed.indexOf(DistResource.SUDO, 1) >= 0) {
+            return false;
+        }
+        boolean inSingleQuotes = false;
+        boolean inDoubleQuotes = false;
+        for (int i = DistResource.SUDO.length(); i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            final boolean substitution = c == '`' || (c == '$' && i + 1 < trimmed.length() && trimmed.charAt(i + 1) == '(');
+            if (inSingleQuotes) {
+                inSingleQuotes = c != '\'';
+            } else if (c == '\\') {
+                i++;
+            } else if (inDoubleQuotes) {
+                if (substitution) {
+                    return false;
+                }
+                inDoubleQuotes = c != '"';
+            } else if (substitution || ";|&<>()\n".indexOf(c) >= 0) {
+                return false;
+            } else if (c == '\'') {
+                inSingleQuotes = true;
+            } else if (c == '"') {
+                inDoubleQuotes = true;
+            }
+        }
+        return !inSingleQuotes && !inDoubleQuotes;
+    }
+
+    /**
+     * Returns a plain or root shell for the command, or null, if the command
+     * should run in its own session.
+     */
+    ShellSession borrow(final Host host, final SshConnection connection, final boolean privileged) {
+        final String key = getKey(host, privileged);
+        while (true) {
+            final ShellSession idleSession;
+            synchronized (this) {
+                closeExpired(System.currentTimeMillis());
+                if (!key.startsWith(Objects.toString(sudoSetting) + ':')) {
+                    LOG.debug1("borrow: " + host.getName() + ": sudo setting changed");
+                    closeAll();
+                    sudoSetting = getSudoSetting(host);
+                }
+                final Deque<ShellSession> sessions = idleSessions.get(key);
+                idleSession = sessions == null ? null : sessions.pollLast();
+                if (idleSession == null) {
+                    if (openSessions >= maxSessions
+                        || (failedSudoPasswords.containsKey(key)
+                            && Objects.equals(failedSudoPasswords.get(key), host.getSudoPassword()))) {
+                        return null;
+                    }
+                    openSessions++;
+                }
+            }
+            if (idleSession == null) {
+                return open(host, connection, key, privileged);
+            }
+            if (isHealthy(idleSession, connection)) {
+                return idleSession;
+            }
+            LOG.debug1("borrow: " + host.getName() + ": shell is gone");
+            discard(idleSession);
+        }
+    }
+
+    /**
+     * Returns the shell to the pool, if it can run the next command and the
+     * sudo setting didn't change.
+     */
+    void release(final ShellSession shellSession, final boolean reusable) {
+        if (reusable && !shellSession.isClosed()) {
+            synchronized (this) {
+                if (shellSession.getKey().startsWith(Objects.toString(sudoSetting) + ':')) {
+                    idleSessions.computeIfAbsent(shellSession.getKey(), k -> new ArrayDeque<>()).addLast(shellSession);
+                    return;
+                }
+            }
+        }
+        discard(shellSession);
+    }
+
+    /** Closes a shell, that failed or was canceled. */
+    void discard(final ShellSession shellSession) {
+        synchronized (this) {
+            openSessions--;
+        }
+        shellSession.close();
+    }
+
+    /** Closes the idle shells, the busy ones are closed, when they are released. */
+    public void close() {
+        synchronized (this) {
+            closeAll();
+            sudoSetting = null;
+        }
+    }
+
+    /** Must be called with the lock held. */
+    private void closeAll() {
+        final List<ShellSession> sessions = new ArrayList<>();
+        for (final Deque<ShellSession> keySessions : idleSessions.values()) {
+            sessions.addAll(keySessions);
+        }
+        idleSessions.clear();
+        failedSudoPasswords.clear();
+        openSessions -= sessions.size();
+        for (final ShellSession shellSession : sessions) {
+            shellSession.close();
+        }
+    }
+
+    private ShellSession open(final Host host,
+                              final SshConnection connection,
+                              final String key,
+                              final boolean privileged) {
+        final String sudoPassword = host.getSudoPassword();
+        try {
+            ShellSession shellSession;
+            try {
+                shellSession = ShellSession.open(connection, privileged ? "sudo -E -n " + SHELL : SHELL, null, key, SHELL_TIMEOUT);
+            } catch (final IOException e) {
+                if (!privileged || sudoPassword == null) {
+                    throw e;
+                }
+                /* the sudo needs the password */
+                shellSession = ShellSession.open(connection, "sudo -E -S -p '' " + SHELL, sudoPassword, key, SHELL_TIMEOUT);
+            }
+            LOG.debug1("open: " + host.getName() + ": shell started: " + key);
+            synchronized (this) {
+                failedSudoPasswords.remove(key);
+            }
+            return shellSession;
+        } catch (final IOException e) {
+            LOG.debug1("open: " + host.getName() + ": shell failed: " + key + ": " + e.getMessage());
+            synchronized (this) {
+                openSessions--;
+                failedSudoPasswords.put(key, sudoPassword);
+            }
+            return null;
+        }
+    }
+
+    private boolean isHealthy(final ShellSession shellSession, final SshConnection connection) {
+        if (shellSession.getConnection() != connection || shellSession.isClosed()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - shellSession.getLastUsed() < CHECK_AFTER_MILLIS) {
+            return true;
+        }
+        return shellSession.check(SHELL_TIMEOUT);
+    }
+
+    /** Must be called with the lock held. */
+    private void closeExpired(final long now) {
+        for (final Deque<ShellSession> sessions : idleSessions.values()) {
+            final Iterator<ShellSession> it = sessions.iterator();
+            while (it.hasNext()) {
+                final ShellSession shellSession = it.next();
+                if (now - shellSession.getLastUsed() > maxIdleMillis) {
+                    it.remove();
+                    openSessions--;
+                    shellSession.close();
+                }
+            }
+        }
+    }
+
+    /** The shells started with another sudo setting can't be used. */
+    private static String getSudoSetting(final Host host) {
+        final boolean useSudo = host.isUseSudo() != null && host.isUseSudo();
+        return useSudo ? "sudo/" + host.getUsername() : "nosudo/" + host.getUsername();
+    }
+
+    private static String getKey(final Host host, final boolean privileged) {
+        return getSudoSetting(host) + ':' + (privileged ? "root" : "user");
+    }
+}
@@ -24,6 +24,8 @@ package lcmc.cluster.infrastructure.ssh;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -82,10 +84,13 @@ public class Ssh {
     private final SwingUtils swingUtils;
     private final Provider<Authentication> authenticationProvider;
     private final GuiHelperFiles guiHelperFiles;
+    private final CommandExecutor commandExecutor;
+    private final ShellSessionPool shellSessionPool = new ShellSessionPool();
 
     public Ssh(Provider<ConnectionThread> connectionThreadProvider, MainData mainData, MainPanel mainPanel,
             ProgressIndicator progressIndicator, Application application, SwingUtils swingUtils,
-            Provider<Authentication> authenticationProvider, GuiHelperFiles guiHelperFiles) {
+            Provider<Authentication> authenticationProvider, GuiHelperFiles guiHelperFiles,
+            CommandExecutor commandExecutor) {
         this.connectionThreadProvider = connectionThreadProvider;
         this.mainData = mainData;
         this.mainPanel = mainPanel;
@@ -94,6 +99,7 @@ public class Ssh {
         this.swingUtils = swingUtils;
         this.authenticationProvider = authenticationProvider;
         this.guiHelperFiles = guiHelperFiles;
+        this.commandExecutor = commandExecutor;
     }
 
     boolean reconnect() {
@@ -237,6 +243,8 @@ public class Ssh {
         } finally {
             mConnectionLock.unlock();
         }
+        shellSessionPool.close();
+        host.stopHelperAgent();
         LOG.debug("disconnect: host: " + host.getName());
         host.getTerminalPanel().addCommand(LOGOUT_COMMAND);
         host.getTerminalPanel().nextCommand();
@@ -279,6 +287,8 @@ public class Ssh {
         } finally {
             mConnectionLock.unlock();
         }
+        shellSessionPool.close();
+        host.stopHelperAgent();
         LOG.debug("forceDisconnect: host: " + host.getName());
         host.getTerminalPanel().addCommand("logout");
         host.getTerminalPanel().nextCommand();
@@ -334,6 +344,8 @@ public class Ssh {
 
         execCommandConfig.host(host)
                          .connectionThread(connectionThread)
+                         .commandExecutor(commandExecutor)
+                         .shellSessionPool(shellSessionPool)
                          .sshGui(sshGui)
                          .execCallback(execCallback)
                          .execute(mainPanel, progressIndicator).block();
@@ -341,14 +353,16 @@ public class Ssh {
     }
 
     /**
-     * Executes command. Command is executed in a new thread, after command
-     * is finished execCallback.done function will be called. In case of error,
-     * execCallback.doneError is called.
+     * Executes command. Command is executed in the command executor, after
+     * command is finished execCallback.done function will be called. In case
+     * of error, execCallback.doneError is called.
      */
     public ExecCommandThread execCommand(final ExecCommandConfig execCommandConfig) {
         reconnect();
         return execCommandConfig.host(host)
                                 .connectionThread(connectionThread)
+                                .commandExecutor(commandExecutor)
+                                .shellSessionPool(shellSessionPool)
                                 .sshGui(sshGui)
                                 .execute(mainPanel, progressIndicator);
     }
@@ -357,15 +371,41 @@ public class Ssh {
         reconnect();
         return execCommandConfig.host(host)
                                 .connectionThread(connectionThread)
+                                .commandExecutor(commandExecutor)
+                                .shellSessionPool(shellSessionPool)
                                 .sshGui(sshGui)
                                 .capture(mainPanel, progressIndicator);
     }
 
-    /** Installs gui-helper on the remote host. */
+    /**
+     * Installs gui-helper on the remote host, if the installed one is
+     * different or missing.
+     */
     public void installGuiHelper() {
-        if (!application.getKeepHelper()) {
-            scp(guiHelperFiles.readGuiHelper(), "@GUI-HELPER-PROG@", "0700", false, null, null, null);
+        if (application.getKeepHelper()) {
+            return;
+        }
+        final String hash = guiHelperFiles.getGuiHelperHash();
+        if (hash.equals(getInstalledGuiHelperHash())) {
+            LOG.debug1("installGuiHelper: " + host.getName() + ": gui helper is up to date");
+            return;
         }
+        scp(guiHelperFiles.getGuiHelper(), "@GUI-HELPER-PROG@", "0700", false, null, null, null);
+    }
+
+    /** Returns sha256 of the installed gui-helper or null, if it's not there. */
+    private String getInstalledGuiHelperHash() {
+        final SshOutput sshOutput = execCommandAndWait(new ExecCommandConfig()
+                                                           .command(DistResource.SUDO
+                                                                    + "sha256sum @GUI-HELPER-PROG@ 2>/dev/null")
+                                                           .silentCommand()
+                                                           .silentOutput()
+                                                           .sshCommandTimeout(10000));
+        if (!sshOutput.isSuccess()) {
+            return null;
+        }
+        final String[] fields = sshOutput.getOutput().trim().split("\\s+");
+        return fields[0];
     }
 
     /** Installs test suite on the remote host. */
@@ -418,7 +458,7 @@ public class Ssh {
     }
 
     /**
-     * Copies file to the /tmp/ dir on the remote host.
+     * Copies the text file to the remote host, it gets a newline at the end.
      *
      * @param remoteFilename
      *          new file name on the other host
@@ -427,41 +467,58 @@ public class Ssh {
                     final String remoteFilename,
                     final String mode,
                     final boolean makeBackup,
-                    String installCommand,
+                    final String installCommand,
                     final String preCommand,
                     final String postCommand) {
-        if  (!isConnected()) {
+        upload(Collections.singletonList(new FileUpload().text(fileContent)
+                                                         .remoteFilename(remoteFilename)
+                                                         .mode(mode)
+                                                         .makeBackup(makeBackup)
+                                                         .installCommand(installCommand)
+                                                         .preCommand(preCommand)
+                                                         .postCommand(postCommand)));
+    }
+
+    /**
+     * Uploads the files to the remote host in one scp session and installs
+     * them in the order, in which they are in the list. If the scp can't be
+     * used on the host, they are written with echo one after another.
+     */
+    public void upload(final List<FileUpload> uploads) {
+        if (!isConnected() || uploads.isEmpty()) {
             return;
         }
-        final String commands = buildScpCommand(remoteFilename, makeBackup, preCommand);
-        String modeString = "";
-        if (mode != null) {
-            modeString = " && chmod " + mode + ' ' + remoteFilename + ".new";
+        final SshOutput output;
+        try {
+            output = new ScpUpload(host, connectionThread.getConnection(), uploads).upload();
+        } catch (final IOException e) {
+            LOG.appWarning("upload: " + host.getName() + ": " + e.getMessage());
+            scpCommandFailed("error: upload failed: " + e.getMessage());
+            return;
         }
-        String postCommandString = "";
-        if (postCommand != null) {
-            postCommandString = " && " + postCommand;
+        if (output == null) {
+            LOG.debug1("upload: " + host.getName() + ": scp not available, using echo");
+            for (final FileUpload upload : uploads) {
+                echoUpload(upload);
+            }
+            return;
         }
-        final String backupString = buildBackupScpCommands(remoteFilename, makeBackup);
-        if (installCommand == null) {
-            installCommand = "mv " + remoteFilename + ".new " + remoteFilename;
+        if (!output.isSuccess()) {
+            LOG.debug1("upload: " + host.getName() + ": failed: " + output.getExitCode() + ": " + output.getOutput());
+            scpCommandFailed(output.getOutput());
         }
-        final String commandTail = "\">" + remoteFilename + ".new"
-                                   + modeString
-
-                                   + "&& "
-                                   + installCommand
-
-                                   + postCommandString
-                                   + backupString;
-        LOG.debug1("scp: " + commands + "echo \"..." + commandTail);
-        final String escapedBashCommand = DistResource.SUDO
-                                          + "bash -c \""
-                                          + Tools.escapeQuotes(commands
-                                                               + "echo \""
-                                                               + Tools.escapeQuotes(fileContent, 1)
-                                                               + commandTail, 1)
-                                          + '"';
+    }
+
+    /** Writes the text file with echo in the command. */
+    private void echoUpload(final FileUpload upload) {
+        final String fileContent = new String(upload.getContent(), StandardCharsets.UTF_8);
+        final String newFilename = upload.getRemoteFilename() + ".new";
+        LOG.debug1("echoUpload: " + upload.getCommands("echo -n \"...\">" + newFilename));
+        final String commands = upload.getCommands("echo -n \""
+                                                   + Tools.escapeQuotes(fileContent, 1)
+                                                   + "\">"
+                                                   + newFilename);
+        final String escapedBashCommand = DistResource.SUDO + "bash -c \"" + Tools.escapeQuotes(commands, 1) + '"';
         execCommand(new ExecCommandConfig()
                         .command(escapedBashCommand)
                         .execCallback(new ExecCallback() {
@@ -515,43 +572,4 @@ public class Ssh {
         newConnectionThread.start();
         connectionThread = newConnectionThread;
     }
-
-    private String buildScpCommand(final String remoteFilename, final boolean makeBackup, final String preCommand) {
-        final StringBuilder commands = new StringBuilder(40);
-        if (preCommand != null) {
-            commands.append(preCommand);
-            commands.append(';');
-        }
-        if (makeBackup) {
-            commands.append("cp ");
-            commands.append(remoteFilename);
-            commands.append("{,.bak} 2>/dev/null;");
-        }
-        final int index = remoteFilename.lastIndexOf('/');
-        if (index > 0) {
-            final String dir = remoteFilename.substring(0, index + 1);
-            commands.append("mkdir -p ");
-            commands.append(dir);
-            commands.append(';');
-        }
-        return commands.toString();
-    }
-
-    private String buildBackupScpCommands(final String remoteFilename, final boolean makeBackup) {
-        final StringBuilder backupString = new StringBuilder(50);
-        if (makeBackup) {
-            backupString.append(" && if ! diff ");
-            backupString.append(remoteFilename);
-            backupString.append("{,.bak}>/dev/null 2>&1; then ");
-            backupString.append("mv ");
-            backupString.append(remoteFilename);
-            backupString.append("{.bak,.`date +'%s'`} 2>/dev/null;true;");
-            backupString.append(" else ");
-            backupString.append("rm -f ");
-            backupString.append(remoteFilename);
-            backupString.append(".bak;");
-            backupString.append(" fi ");
-        }
-        return backupString.toString();
-    }
 }
@@ -19,15 +19,107 @@
  */
 package lcmc.cluster.infrastructure.ssh;
 
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
 import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.ConnectionInfo;
+import com.trilead.ssh2.LocalPortForwarder;
+import com.trilead.ssh2.ServerHostKeyVerifier;
 
-/** Connection class that can cancel it's connection during openSession. */
+/**
+ * Connection class that can cancel it's connection during openSession.
+ *
+ * The connection to a host behind a jump host goes through a direct-tcpip
+ * channel of the jump host's connection, that is forwarded from a local
+ * port on the loopback. The host key is verified for the host behind the
+ * jump host, not for the local port.
+ */
 public class SshConnection extends Connection {
+    private static final int TUNNEL_BIND_ATTEMPTS = 5;
     private boolean canceled = false;
     private boolean disconnectForGood = false;
+    /** The connection through which this connection goes, or null. */
+    private final SshConnection jumpConnection;
+    private final LocalPortForwarder tunnel;
+    private final String tunneledHostname;
+    private final int tunneledPort;
 
     SshConnection(final String hostname, final int port) {
         super(hostname, port);
+        jumpConnection = null;
+        tunnel = null;
+        tunneledHostname = null;
+        tunneledPort = 0;
+    }
+
+    private SshConnection(final SshConnection jumpConnection,
+                          final LocalPortForwarder tunnel,
+                          final int localPort,
+                          final String tunneledHostname,
+                          final int tunneledPort) {
+        super(InetAddress.getLoopbackAddress().getHostAddress(), localPort);
+        this.jumpConnection = jumpConnection;
+        this.tunnel = tunnel;
+        this.tunneledHostname = tunneledHostname;
+        this.tunneledPort = tunneledPort;
+    }
+
+    /**
+     * Returns a not yet connected connection to the host behind this one.
+     * The forwarder can't bind to the port 0 and say which port it got, so
+     * a free port is looked up first and it is tried again, if another
+     * process took the port in the meantime.
+     */
+    SshConnection createTunneledConnection(final String hostname, final int port) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            final int localPort;
+            try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                localPort = serverSocket.getLocalPort();
+            }
+            try {
+                final LocalPortForwarder tunnel =
+                        createLocalPortForwarder(new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort),
+                                                 hostname,
+                                                 port);
+                return new SshConnection(this, tunnel, localPort, hostname, port);
+            } catch (final BindException e) {
+                if (attempt >= TUNNEL_BIND_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized ConnectionInfo connect(final ServerHostKeyVerifier verifier,
+                                               final int connectTimeout,
+                                               final int kexTimeout) throws IOException {
+        if (tunneledHostname == null || verifier == null) {
+            return super.connect(verifier, connectTimeout, kexTimeout);
+        }
+        return super.connect((hostname, port, algorithm, hostKey) ->
+                                     verifier.verifyServerHostKey(tunneledHostname, tunneledPort, algorithm, hostKey),
+                             connectTimeout,
+                             kexTimeout);
+    }
+
+    /** Closes this connection and the connections through which it goes. */
+    void closeWithJumpConnections() {
+        close();
+        if (tunnel != null) {
+            try {
+                tunnel.close();
+            } catch (final IOException e) {
+                /* the jump connection is closed anyway */
+            }
+        }
+        if (jumpConnection != null) {
+            jumpConnection.closeWithJumpConnections();
+        }
     }
 
     void cancel() {
@@ -0,0 +1,68 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the UTF-8 output of a command, as it is read, into one char
+ * buffer, that is reused. A character, that is split between two reads, is
+ * decoded with the next read. The wrong bytes are replaced.
+ */
+public final class Utf8StreamDecoder {
+    /** A split character has at most 3 bytes in the previous read. */
+    private static final int MAX_SPLIT_BYTES = 3;
+
+    private final int bufferSize;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                                                                 .onMalformedInput(CodingErrorAction.REPLACE)
+                                                                 .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+
+    public Utf8StreamDecoder(final int bufferSize) {
+        this.bufferSize = bufferSize;
+        bytes = ByteBuffer.allocate(bufferSize + MAX_SPLIT_BYTES);
+        chars = CharBuffer.allocate(bufferSize + MAX_SPLIT_BYTES);
+    }
+
+    /**
+     * Decodes the next len bytes, len must not be bigger than the buffer
+     * size. The returned chars are valid till the next call.
+     */
+    public CharBuffer decode(final byte[] buff, final int len) {
+        if (len > bufferSize) {
+            throw new IllegalArgumentException("decode: " + len + " bytes don't fit in " + bufferSize);
+        }
+        bytes.put(buff, 0, len);
+        bytes.flip();
+        chars.clear();
+        decoder.decode(bytes, chars, false);
+        bytes.compact();
+        chars.flip();
+        return chars;
+    }
+}
@@ -64,12 +64,13 @@ import lcmc.ClusterEventBus;
 import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.Network;
 import lcmc.cluster.domain.NetworkService;
+import lcmc.cluster.infrastructure.ssh.Frame;
+import lcmc.cluster.infrastructure.ssh.FrameCallback;
 import lcmc.cluster.ui.network.InfoPresenter;
 import lcmc.cluster.ui.network.NetworkFactory;
 import lcmc.cluster.ui.network.NetworkPresenter;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.ExecCallback;
-import lcmc.common.domain.NewOutputCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.Access;
 import lcmc.common.ui.Browser;
@@ -168,7 +169,9 @@ public class ClusterBrowser extends Browser {
                     CRM_START_DELAY_PARAMETER, CRM_DISABLED_PARAMETER, CRM_ROLE_PARAMETER, CRM_PREREQ_PARAMETER,
                     CRM_ON_FAIL_PARAMETER};
     public static final String STARTING_PTEST_TOOLTIP = Tools.getString("ClusterBrowser.StartingPtest");
-    private static final String CLUSTER_STATUS_ERROR = "---start---\r\nerror\r\n\r\n---done---\r\n";
+    private static final String CLUSTER_STATUS_START = "---start---";
+    private static final String CLUSTER_STATUS_DONE = "---done---";
+    private static final String CLUSTER_STATUS_ERROR = "---start---\nerror\n\n---done---\n";
     public static final ImageIcon CLUSTER_ICON_SMALL = Tools.createImageIcon(Tools.getDefault("ClusterBrowser.ClusterIconSmall"));
     /**
      * String that appears as a tooltip in menu items if status was disabled.
@@ -176,8 +179,6 @@ public class ClusterBrowser extends Browser {
     public static final String UNKNOWN_CLUSTER_STATUS_STRING = "unknown cluster status";
     private static final Collection<String> DEFAULT_OPERATION_PARAMS =
             new ArrayList<>(Arrays.asList(CRM_TIMEOUT_PARAMETER, CRM_INTERVAL_PARAMETER));
-    private static final String RESET_STRING = "---reset---\r\n";
-    private static final int RESET_STRING_LEN = RESET_STRING.length();
     /**
      * Match ...by-res/r0 or by-res/r0/0 from DRBD 8.4.
      */
@@ -673,7 +674,7 @@ public class ClusterBrowser extends Browser {
     private void startPing(final Host host) {
         do {
             host.startPing();
-            Tools.sleep(10000);
+            Tools.sleep(host.getPollingMode().getPingRestartDelay());
         } while (!serverStatusCanceled);
     }
 
@@ -687,6 +688,7 @@ public class ClusterBrowser extends Browser {
             }
 
             host.setIsLoading();
+            host.sendPollingMode();
             host.getHostParser().startHWInfoDaemon(infosToUpdate, new ResourceGraph[]{drbdGraph, crmGraph});
             if (serverStatusCanceled) {
                 break;
@@ -849,12 +851,10 @@ public class ClusterBrowser extends Browser {
                                            }
                                        },
 
-                    new NewOutputCallback() {
-                        private final StringBuffer outputBuffer = new StringBuffer(300);
-
+                    new FrameCallback() {
                         @Override
-                        public void output(final String output) {
-                            if ("--nm--".equals(output.trim())) {
+                        public void frames(final List<Frame> frames) {
+                            if (frames.stream().allMatch(frame -> frame.isType(Frame.NO_MODULE))) {
                                 if (host.isDrbdStatusOk()) {
                                     LOG.debug1("startDrbdStatus: host: " + host.getName());
                                     host.setDrbdStatusOk(false);
@@ -871,32 +871,31 @@ public class ClusterBrowser extends Browser {
                                 drbdGraph.repaint();
                                 clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
                             }
-                            outputBuffer.append(output);
-                            String drbdConfig, event;
                             boolean drbdUpdate = false;
                             boolean eventUpdate = false;
-                            do {
-                                host.drbdStatusLock();
-                                drbdConfig = host.getHostParser()
-                                                 .getOutput("drbd", outputBuffer);
-                                if (drbdConfig != null) {
-                                    final DrbdXml newDrbdXml = drbdXmlProvider.get();
-                                    newDrbdXml.init(cluster.getHostsArray(), hostDrbdParameters);
-                                    newDrbdXml.update(drbdConfig);
-                                    drbdXml = newDrbdXml;
-                                    drbdUpdate = true;
-                                    firstTime.countDown();
-                                }
-                                host.drbdStatusUnlock();
-                                event = host.getHostParser()
-                                            .getOutput("event", outputBuffer);
-                                if (event != null && drbdXml.parseDrbdEvent(host.getName(), otherHosts.stream().map(it -> it.getName()).collect(
-                                        Collectors.toList()), drbdGraph, event)) {
-                                    host.setDrbdStatusOk(true);
-                                    eventUpdate = true;
+                            final List<String> otherHostNames =
+                                    otherHosts.stream().map(Host::getName).collect(Collectors.toList());
+                            for (final Frame frame : frames) {
+                                if (frame.isType("drbd")) {
+                                    host.drbdStatusLock();
+                                    final String drbdConfig = host.getHostParser().getInfo(frame);
+                                    if (drbdConfig != null) {
+                                        final DrbdXml newDrbdXml = drbdXmlProvider.get();
+                                        newDrbdXml.init(cluster.getHostsArray(), hostDrbdParameters);
+                                        newDrbdXml.update(drbdConfig);
+                                        drbdXml = newDrbdXml;
+                                        drbdUpdate = true;
+                                        firstTime.countDown();
+                                    }
+                                    host.drbdStatusUnlock();
+                                } else if (frame.isType(Frame.OUT)) {
+                                    /* a line of drbdsetup events */
+                                    if (drbdXml.parseDrbdEvent(host.getName(), otherHostNames, drbdGraph, frame.getPayload())) {
+                                        host.setDrbdStatusOk(true);
+                                        eventUpdate = true;
+                                    }
                                 }
-                            } while (event != null || drbdConfig != null);
-                            Tools.chomp(outputBuffer);
+                            }
                             if (drbdUpdate) {
                                 swingUtils.invokeLater(() -> {
                                     globalInfo.setParameters();
@@ -976,8 +975,25 @@ public class ClusterBrowser extends Browser {
         }
     }
 
-    public void parseClusterOutput(final String output, final StringBuffer clusterStatusOutput, final Host host,
-            final CountDownLatch firstTime, final Application.RunMode runMode) {
+    /**
+     * Parses the frames of the cluster events. Only the last snapshot is
+     * parsed, the older ones are counted as skipped.
+     */
+    void parseClusterFrames(final List<Frame> frames, final Host host, final CountDownLatch firstTime,
+            final Application.RunMode runMode) {
+        String status = null;
+        int skipped = 0;
+        for (final Frame frame : frames) {
+            if (frame.isType(Frame.CLUSTER)) {
+                if (status != null) {
+                    skipped++;
+                }
+                status = frame.getPayload();
+            }
+        }
+        if (status == null) {
+            return;
+        }
         final ClusterStatus clusterStatus0 = clusterStatus;
         clStatusLock();
         if (crmStatusCanceledByUser || clusterStatus0 == null) {
@@ -985,66 +1001,63 @@ public class ClusterBrowser extends Browser {
             firstTime.countDown();
             return;
         }
-        if (output == null || "".equals(output)) {
+        if (skipped > 0) {
+            clusterStatus0.addSkippedSnapshots(skipped);
+        }
+        if (isEmptySnapshot(status)) {
             clusterStatus0.setOnlineNode(host.getName(), "no");
             setCrmStatus(host, false);
-            firstTime.countDown();
-        } else {
-            // TODO: if we get ERROR:... show it somewhere
-            clusterStatusOutput.append(output);
-            /* removes the string from the output. */
-            int s = clusterStatusOutput.indexOf(RESET_STRING);
-            while (s >= 0) {
-                clusterStatusOutput.delete(s, s + RESET_STRING_LEN);
-                s = clusterStatusOutput.indexOf(RESET_STRING);
+        } else if (!status.contains("is stopped")) {
+            parseClusterStatus(clusterStatus0, status, host, firstTime, runMode);
+        }
+        firstTime.countDown();
+        clStatusUnlock();
+    }
+
+    /** Returns whether there is nothing between ---start--- and ---done---. */
+    private static boolean isEmptySnapshot(final String status) {
+        return status.replace(CLUSTER_STATUS_START, "").replace(CLUSTER_STATUS_DONE, "").trim().isEmpty();
+    }
+
+    /** Parses one snapshot of the cluster status, clStatusLock must be held. */
+    private void parseClusterStatus(final ClusterStatus clusterStatus0, final String status, final Host host,
+            final CountDownLatch firstTime, final Application.RunMode runMode) {
+        if (CLUSTER_STATUS_ERROR.equals(status.replace("\r\n", "\n"))) {
+            final boolean oldStatus = host.isCrmStatusOk();
+            clusterStatus0.setOnlineNode(host.getName(), "no");
+            setCrmStatus(host, false);
+            if (oldStatus) {
+                crmGraph.repaint();
             }
-            if (clusterStatusOutput.length() > 12) {
-                final String e = clusterStatusOutput.substring(clusterStatusOutput.length() - 12);
-                if (e.trim().equals("---done---")) {
-                    final int i = clusterStatusOutput.lastIndexOf("---start---");
-                    if (i >= 0) {
-                        if (clusterStatusOutput.indexOf("is stopped") >= 0) {
-                            /* TODO: heartbeat's not running. */
-                        } else {
-                            final String status = clusterStatusOutput.substring(i);
-                            clusterStatusOutput.delete(0, clusterStatusOutput.length());
-                            if (CLUSTER_STATUS_ERROR.equals(status)) {
-                                final boolean oldStatus = host.isCrmStatusOk();
-                                clusterStatus0.setOnlineNode(host.getName(), "no");
-                                setCrmStatus(host, false);
-                                if (oldStatus) {
-                                   crmGraph.repaint();
-                                }
-                            } else {
-                                if (clusterStatus0.parseStatus(status)) {
-                                    LOG.debug1("processClusterOutput: host: " + host.getName());
-                                    final ServicesInfo ssi = servicesInfo;
-                                    rscDefaultsInfo.setParameters(clusterStatus0.getRscDefaultsValuePairs());
-                                    ssi.setGlobalConfig(clusterStatus0);
-                                    resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
-                                    if (firstTime.getCount() == 1) {
-                                        /* one more time so that id-refs work.*/
-                                        resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
-                                    }
-                                    clusterTreeMenu.repaintMenuTree();
-                                    clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
-                                }
-                                final String online = clusterStatus0.isOnlineNode(host.getName());
-                                if ("yes".equals(online)) {
-                                    setCrmStatus(host, true);
-                                    setCrmStatus();
-                                } else {
-                                    setCrmStatus(host, false);
-                                }
-                            }
-                        }
-                        firstTime.countDown();
-                    }
+        } else {
+            if (clusterStatus0.parseStatus(status)) {
+                LOG.debug1("processClusterOutput: host: " + host.getName()
+                           + ", coalesced: " + clusterStatus0.getCoalescedEvents()
+                           + ", emitted: " + clusterStatus0.getEmittedSnapshots()
+                           + ", skipped: " + clusterStatus0.getSkippedSnapshots());
+                final ServicesInfo ssi = servicesInfo;
+                rscDefaultsInfo.setParameters(clusterStatus0.getRscDefaultsValuePairs());
+                ssi.setGlobalConfig(clusterStatus0);
+                resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
+                if (firstTime.getCount() == 1) {
+                    /* one more time so that id-refs work.*/
+                    resourceUpdaterProvider.get().updateAllResources(ssi, ssi.getBrowser(), clusterStatus0, runMode);
                 }
+                clusterTreeMenu.repaintMenuTree();
+                clusterHostsInfo.updateTable(ClusterHostsInfo.MAIN_TABLE);
+            }
+            if (clusterStatus0.takeCibResyncNeeded()) {
+                LOG.debug1("processClusterOutput: restart cluster events: " + host.getName());
+                host.stopCrmStatus();
+            }
+            final String online = clusterStatus0.isOnlineNode(host.getName());
+            if ("yes".equals(online)) {
+                setCrmStatus(host, true);
+                setCrmStatus();
+            } else {
+                setCrmStatus(host, false);
             }
-            Tools.chomp(clusterStatusOutput);
         }
-        clStatusUnlock();
     }
 
     void startCrmStatus() {
@@ -1107,15 +1120,7 @@ public class ClusterBrowser extends Browser {
                         }
                     },
 
-                    new NewOutputCallback() {
-                        //TODO: check this buffer's size
-                        private final StringBuffer clusterStatusOutput = new StringBuffer(300);
-
-                        @Override
-                        public void output(final String output) {
-                            parseClusterOutput(output, clusterStatusOutput, host, firstTime, runMode);
-                        }
-                    });
+                    frames -> parseClusterFrames(frames, host, firstTime, runMode));
             host.waitForCrmStatusFinish();
             if (crmStatusCanceledByUser) {
                 break;
@@ -1155,7 +1160,15 @@ public class ClusterBrowser extends Browser {
      * Updates VM nodes.
      */
     public void updateVms() {
-        LOG.debug1("updateVMS: status update");
+        updateVms(null);
+    }
+
+    /**
+     * Updates VM nodes. Parameters are updated only for the existing domains
+     * that changed, or for all of them if changedDomains is null.
+     */
+    public void updateVms(final Collection<String> changedDomains) {
+        LOG.debug1("updateVMS: status update: " + (changedDomains == null ? "all" : changedDomains));
         final Collection<String> domainNames = new TreeSet<>();
         for (final Host host : getClusterHosts()) {
             final VmsXml vmsXml = getVmsXml(host);
@@ -1175,7 +1188,9 @@ public class ClusterBrowser extends Browser {
                     /* keeping */
                     currentVMSVDIs.add(domainInfo);
                     domainNames.remove(domainInfo.toString());
-                    domainInfo.updateParameters(); /* update old */
+                    if (changedDomains == null || changedDomains.contains(domainInfo.toString())) {
+                        domainInfo.updateParameters(); /* update old */
+                    }
                 } else {
                     if (!domainInfo.getResource().isNew()) {
                         /* remove not existing vms */
@@ -23,6 +23,7 @@
 package lcmc.cluster.ui;
 
 import java.awt.Color;
+import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Insets;
@@ -44,6 +45,8 @@ import lcmc.common.domain.UserConfig;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.main.MainData;
 import lcmc.common.ui.main.MainPresenter;
+import lcmc.host.domain.Host;
+import lcmc.host.domain.PollingMode;
 import lcmc.logger.Logger;
 import lcmc.logger.LoggerFactory;
 
@@ -66,6 +69,7 @@ public final class ClustersPanel extends JPanel {
     private final MainData mainData;
     private final MainPresenter mainPresenter;
     private final Application application;
+    private boolean minimized = false;
 
     public ClustersPanel(Provider<ClusterTabFactory> clusterTabFactory, UserConfig userConfig, MainData mainData,
             MainPresenter mainPresenter, Application application) {
@@ -93,6 +97,7 @@ public final class ClustersPanel extends JPanel {
             final JTabbedPane prevSource = (JTabbedPane) changeEvent.getSource();
             final ClusterTab source = previouslySelectedTab;
             previouslySelectedTab = (ClusterTab) prevSource.getSelectedComponent();
+            updatePollingModes();
 
             /* show dialogs only if got here from other tab. */
             if (source == null || source.getName() == null) {
@@ -154,6 +159,37 @@ public final class ClustersPanel extends JPanel {
         tabbedPane.repaint();
     }
 
+    /** Pauses the updates from all hosts, while the application is minimized. */
+    public void setMinimized(final boolean minimized) {
+        this.minimized = minimized;
+        updatePollingModes();
+    }
+
+    /**
+     * Hosts in the visible cluster send updates often, hosts in other tabs
+     * less often and none of them, if the application is minimized.
+     */
+    private void updatePollingModes() {
+        final Component selected = tabbedPane.getSelectedComponent();
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            final ClusterTab clusterTab = (ClusterTab) tabbedPane.getComponentAt(i);
+            final PollingMode pollingMode;
+            if (minimized) {
+                pollingMode = PollingMode.PAUSED;
+            } else if (clusterTab == selected) {
+                pollingMode = PollingMode.FOREGROUND;
+            } else {
+                pollingMode = PollingMode.BACKGROUND;
+            }
+            clusterTab.getCluster()
+                      .ifPresent(cluster -> {
+                          for (final Host host : cluster.getHosts()) {
+                              host.setPollingMode(pollingMode);
+                          }
+                      });
+        }
+    }
+
     public Optional<ClusterTab> getClusterTab() {
         return Optional.ofNullable(tabbedPane.getSelectedComponent())
                        .map(sp -> (ClusterTab) sp);
@@ -53,6 +53,7 @@ import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.NetworkService;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
 import lcmc.cluster.infrastructure.ssh.ExecCommandThread;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.widget.Check;
 import lcmc.cluster.ui.widget.Widget;
 import lcmc.cluster.ui.widget.WidgetFactory;
@@ -130,9 +131,11 @@ final class CoroConfig extends DialogCluster {
     private MyButton makeConfigButton;
     private final NetworkService networkService;
     private final Access access;
+    private final HostFanOut hostFanOut;
 
     public CoroConfig(MainData mainData, InitCluster initClusterDialog, Application application, SwingUtils swingUtils,
-            WidgetFactory widgetFactory, NetworkService networkService, Access access, Provider<ProgressBar> progressBarProvider) {
+            WidgetFactory widgetFactory, NetworkService networkService, Access access, Provider<ProgressBar> progressBarProvider,
+            HostFanOut hostFanOut) {
         super(application, swingUtils, widgetFactory, mainData, progressBarProvider);
         this.initClusterDialog = initClusterDialog;
         this.application = application;
@@ -140,6 +143,7 @@ final class CoroConfig extends DialogCluster {
         this.widgetFactory = widgetFactory;
         this.networkService = networkService;
         this.access = access;
+        this.hostFanOut = hostFanOut;
     }
 
     @Override
@@ -166,9 +170,9 @@ final class CoroConfig extends DialogCluster {
                 String corosyncVersion = hosts[0].getHostParser().getCorosyncVersion();
                 config.append(new CorosyncPacemakerConfig("\t", serviceVersion, corosyncVersion, hosts).create());
                 if (hosts[0].getHostParser().isCorosyncInstalled()) {
-                    Corosync.createCorosyncConfig(hosts, config);
+                    Corosync.createCorosyncConfig(hostFanOut, hosts, config);
                 } else {
-                    Openais.createAISConfig(hosts, config);
+                    Openais.createAISConfig(hostFanOut, hosts, config);
                 }
                 final boolean configOk = updateOldAisConfig();
                 if (hosts[0].getHostParser().isCorosyncInstalled() && !hosts[0].getHostParser().isOpenaisWrapper()) {
@@ -366,11 +370,7 @@ final class CoroConfig extends DialogCluster {
         }
         for (final ExecCommandThread t : ts) {
             /* wait for all of them */
-            try {
-                t.join();
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            t.block();
         }
 
         boolean noConfigs = true;
@@ -55,6 +55,7 @@ import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.NetworkService;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
 import lcmc.cluster.infrastructure.ssh.ExecCommandThread;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.widget.Check;
 import lcmc.cluster.ui.widget.Widget;
 import lcmc.cluster.ui.widget.WidgetFactory;
@@ -194,9 +195,11 @@ final class HbConfig extends DialogCluster {
     private final InitCluster initCluster;
     private final NetworkService networkService;
     private final Access access;
+    private final HostFanOut hostFanOut;
 
     public HbConfig(Application application, SwingUtils swingUtils, WidgetFactory widgetFactory, MainData mainData,
-            InitCluster initCluster, NetworkService networkService, Access access, Provider<ProgressBar> progressBarProvider) {
+            InitCluster initCluster, NetworkService networkService, Access access, Provider<ProgressBar> progressBarProvider,
+            HostFanOut hostFanOut) {
         super(application, swingUtils, widgetFactory, mainData, progressBarProvider);
         this.application = application;
         this.swingUtils = swingUtils;
@@ -204,6 +207,7 @@ final class HbConfig extends DialogCluster {
         this.initCluster = initCluster;
         this.networkService = networkService;
         this.access = access;
+        this.hostFanOut = hostFanOut;
     }
 
     @Override
@@ -258,7 +262,7 @@ final class HbConfig extends DialogCluster {
                 config1.append(hbConfigDopd(dopdWidget.isSelected()));
                 config1.append(hbConfigMgmtd(mgmtdWidget.isSelected()));
 
-                Heartbeat.createHBConfig(hosts, config1);
+                Heartbeat.createHBConfig(hostFanOut, hosts, config1);
                 final boolean configOk = updateOldHbConfig();
                 if (dopdWidget.isSelected()) {
                     for (final Host h : hosts) {
@@ -449,11 +453,7 @@ final class HbConfig extends DialogCluster {
         }
         for (final ExecCommandThread t : ts) {
             /* wait for all of them */
-            try {
-                t.join();
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            t.block();
         }
 
         boolean configOk = false;
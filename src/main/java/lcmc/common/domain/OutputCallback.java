@@ -0,0 +1,39 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.common.domain;
+
+/**
+ * Gets the output of a command as it comes, without copying it to new
+ * strings.
+ */
+public interface OutputCallback {
+    /**
+     * The chars are only valid during the call, they are overwritten with
+     * the next output. They must be copied, if they are needed later.
+     */
+    void output(CharSequence chars);
+
+    /** Returns the callback, that passes the output as strings. */
+    static OutputCallback of(final NewOutputCallback newOutputCallback) {
+        return chars -> newOutputCallback.output(chars.toString());
+    }
+}
@@ -56,6 +56,7 @@ import org.w3c.dom.NodeList;
 import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.Clusters;
 import lcmc.cluster.ui.ClusterBrowser;
+import lcmc.host.domain.Compression;
 import lcmc.host.domain.Host;
 import lcmc.host.domain.HostFactory;
 import lcmc.host.domain.Hosts;
@@ -74,6 +75,7 @@ public final class UserConfig extends XMLTools {
     private static final String HOST_SSHPORT_ATTR = "ssh";
     private static final String HOST_COLOR_ATTR = "color";
     private static final String HOST_USESUDO_ATTR = "sudo";
+    private static final String HOST_COMPRESSION_ATTR = "compression";
     private static final String CLUSTER_NAME_ATTR = "name";
     private static final String HOST_NODE_STRING = "host";
     private static final String PROXY_HOST_NODE_STRING = "proxy-host";
@@ -234,6 +236,8 @@ public final class UserConfig extends XMLTools {
                             final String sshPort = getAttribute(hostNode, HOST_SSHPORT_ATTR);
                             final String color = getAttribute(hostNode, HOST_COLOR_ATTR);
                             final String useSudo = getAttribute(hostNode, HOST_USESUDO_ATTR);
+                            final Compression compression =
+                                    Compression.fromName(getAttribute(hostNode, HOST_COMPRESSION_ATTR));
                             final Node ipNode = getChildNode(hostNode, "ip");
                             String ip = null;
                             if (ipNode != null) {
@@ -241,7 +245,15 @@ public final class UserConfig extends XMLTools {
                             }
                             final Node usernameNode = getChildNode(hostNode, "user");
                             final String username = getText(usernameNode);
-                            setHost(hostMap, username, nodeName, ip, sshPort, color, "true".equals(useSudo), true);
+                            setHost(hostMap,
+                                    username,
+                                    nodeName,
+                                    ip,
+                                    sshPort,
+                                    color,
+                                    "true".equals(useSudo),
+                                    compression,
+                                    true);
                         }
                     }
                 }
@@ -275,6 +287,7 @@ public final class UserConfig extends XMLTools {
                         String sshPort,
                         final String color,
                         final boolean sudo,
+                        final Compression compression,
                         final boolean savable) {
         application.setLastEnteredUser(username);
         final Host host = hostFactory.get()
@@ -291,6 +304,9 @@ public final class UserConfig extends XMLTools {
         }
         host.setUseSudo(sudo);
         application.setLastEnteredUseSudo(sudo);
+        if (compression != null) {
+            host.setCompression(compression);
+        }
         application.addHostToHosts(host);
 
         host.setIpAddress(ip);
@@ -363,6 +379,9 @@ public final class UserConfig extends XMLTools {
         if (useSudo != null && useSudo) {
             hostNode.setAttribute(HOST_USESUDO_ATTR, "true");
         }
+        if (host.getCompression() != Compression.NONE) {
+            hostNode.setAttribute(HOST_COMPRESSION_ATTR, host.getCompression().getName());
+        }
         if (ip != null) {
             final Node ipNode = hostNode.appendChild(doc.createElement("ip"));
 
@@ -1,6 +1,7 @@
 package lcmc.common.domain.util;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -9,6 +10,9 @@ import java.util.Collections;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import com.google.common.hash.Hashing;
+
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.Synchronized;
 import lombok.val;
@@ -17,6 +21,16 @@ public class GuiHelperFiles {
     private static final String GUI_HELPER_DIR = "/help-progs/lcmc-gui-helper/";
     private static final String GUI_HELPER_FILENAME = GUI_HELPER_DIR + "Main.pl";
     private final URI dirUri;
+    /**
+     * Sha256 of the helper, as it is installed on the hosts, it is uploaded
+     * as a text with a newline at the end.
+     */
+    @Getter(lazy = true)
+    private final String guiHelperHash = Hashing.sha256().hashString(getGuiHelper() + '\n', StandardCharsets.UTF_8)
+                                                .toString();
+    /** The helper with the modules, it is read only once. */
+    @Getter(lazy = true)
+    private final String guiHelper = readGuiHelper();
 
     @SneakyThrows
     public GuiHelperFiles() {
@@ -45,6 +45,7 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -82,6 +83,7 @@ import javax.swing.text.html.HTMLDocument;
 
 import lcmc.Exceptions;
 import lcmc.cluster.domain.Cluster;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.common.domain.StringValue;
 import lcmc.common.domain.Value;
 import lcmc.common.ui.main.MainPresenter;
@@ -594,17 +596,19 @@ public final class Tools {
 
     /**
      * Creates config on all hosts with specified name in the specified
-     * directory.
+     * directory. The hosts get it at once.
      */
-    public static void createConfigOnAllHosts(final Host[] hosts,
+    public static void createConfigOnAllHosts(final HostFanOut hostFanOut,
+                                              final Host[] hosts,
                                               final String config,
                                               final String fileName,
                                               final String dir,
                                               final String mode,
                                               final boolean makeBackup) {
-        for (final Host host : hosts) {
-            host.getSSH().createConfig(config, fileName, dir, mode, makeBackup, null, null);
-        }
+        hostFanOut.run("createConfigOnAllHosts: " + dir + fileName,
+                       Arrays.asList(hosts),
+                       host -> host.getSSH().createConfig(config, fileName, dir, mode, makeBackup, null, null))
+                  .showErrors();
     }
 
     /** Returns border with title. */
@@ -178,11 +178,7 @@ public final class EditConfig extends ConfigDialog {
             i++;
         }
         for (final ExecCommandThread t : threads) {
-            try {
-                t.join(0);
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            t.block();
         }
         i = 0;
         for (final Host host : hosts) {
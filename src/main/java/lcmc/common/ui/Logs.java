@@ -53,6 +53,7 @@ import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.ExecCommandThread;
 import lcmc.cluster.ui.widget.WidgetFactory;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.ExecCallback;
@@ -158,7 +159,7 @@ public class Logs extends ConfigDialog {
     protected final void refreshLogs() {
         enableAllComponents(false);
         final Host[] hosts = getHosts();
-        final Thread[] threads = new Thread[hosts.length];
+        final ExecCommandThread[] threads = new ExecCommandThread[hosts.length];
         final String[] texts = new String[hosts.length];
 
         final Map<String, String> replaceHash = getOptionsHash();
@@ -189,12 +190,8 @@ public class Logs extends ConfigDialog {
         }
         i = 0;
         final StringBuilder ans = new StringBuilder();
-        for (final Thread t : threads) {
-            try {
-                t.join();
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+        for (final ExecCommandThread t : threads) {
+            t.block();
             ans.append(texts[i]);
             i++;
         }
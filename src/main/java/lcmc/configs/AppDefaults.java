@@ -339,9 +339,25 @@ public final class AppDefaults extends ListResourceBundle {
         {"SSH.KexTimeout",           0}, /* milliseconds, 0 no timeout */
         {"SSH.Command.Timeout.Long", 0},     /* milliseconds, 0 no timeout */
         {"SSH.Command.Timeout",      180000}, /* milliseconds */
+        {"SSH.Command.Max",          32},    /* commands running at once */
+        {"SSH.Command.MaxPerHost",   8},     /* commands running at once on a host */
+        {"SSH.ShellSession.Max",     4},     /* open shells for short commands per host */
+        {"SSH.ShellSession.Idle",    60000}, /* milliseconds */
+        {"SSH.FanOut.Max",           16},    /* hosts with an operation running at once */
+        {"SSH.FanOut.Timeout",       300000}, /* milliseconds per host */
         {"ProgressBar.Sleep",        100},   /* milliseconds */
         {"ProgressBar.Delay",        50},    /* milliseconds */
 
+        /* cluster events are coalesced in the helper */
+        {"ClusterEvents.QuietPeriod",         500},  /* milliseconds */
+        {"ClusterEvents.MaxLatency",          2000}, /* milliseconds */
+
+        /* helper polling, when the cluster tab is not visible */
+        {"Polling.Background.HwInfo",         60},    /* seconds */
+        {"Polling.Background.DrbdInfo",       10},    /* seconds */
+        {"Polling.Background.ClusterInfo",    10},    /* seconds */
+        {"Polling.Background.PingRestart",    20000}, /* milliseconds */
+
         /* score */
         {"Score.Infinity",                    100000},
         {"Score.MinusInfinity",               -100000},
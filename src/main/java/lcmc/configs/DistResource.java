@@ -89,13 +89,35 @@ public final class DistResource extends ListResourceBundle {
         {"TestCommand", "uptime"},
 
         {"GetHostAllInfo", SUDO + "@GUI-HELPER@ all"},
-        {"HostHWInfoDaemon", SUDO + "@GUI-HELPER@ hw-info-daemon"},
         {"GetHostHWInfo", SUDO + "@GUI-HELPER@ hw-info"},
         {"GetHostHWInfoLVM", SUDO + "@GUI-HELPER@ hw-info-lvm"},
         {"GetHostHWInfoLazy", "nice -n 19 " + SUDO + "@GUI-HELPER@ hw-info-lazy"},
         {"GetNetInfo",  SUDO + "@GUI-HELPER@ get-net-info"},
 
-        {"PingCommand", "while true; do echo; sleep 5; done"},
+        /* one gui helper agent per host runs the status streams */
+        {"Helper.Agent", SUDO + "@GUI-HELPER@ agent"},
+        {"Agent.HWInfoDaemon", "hw-info-daemon"},
+        {"Agent.DrbdEvents", "get-drbd-events"},
+        {"Agent.ClusterEvents",
+         "--events-quiet-period=@QUIET-PERIOD@ --events-max-latency=@MAX-LATENCY@ get-cluster-events"},
+        {"Agent.Ping", "ping"},
+        /* requests, that are answered by the agent */
+        {"Agent.GetOCFParametersQuick", "get-resource-agents quick"},
+        {"Agent.GetOCFParametersConfigured", "get-resource-agents configured"},
+        {"Agent.GetOCFParameters", "get-resource-agents"},
+        {"Agent.GetResourceAgentHashes", "get-resource-agents hashes"},
+        {"Agent.GetOCFParametersSelected", "get-resource-agents selected @AGENTS@"},
+        {"Agent.GetClusterMetadata", "get-cluster-metadata"},
+        {"Agent.GetDrbdParameters", "get-drbd-xml"},
+        {"Agent.GetVMInfo", "get-vm-info"},
+
+        /* the gui helper daemons poll the control file for their intervals */
+        {"Helper.SetIntervals",
+         "f=`" + SUDO + "mktemp /tmp/lcmc.control.XXXXXX` && "
+         + "{ printf 'hw:%s\\ndrbd:%s\\ncluster:%s\\n' @HW@ @DRBD@ @CLUSTER@"
+         + " | " + SUDO + "tee $f >/dev/null && "
+         + SUDO + "mv -f $f /tmp/lcmc.control.@CONTROL-ID@ || "
+         + SUDO + "rm -f $f; }"},
 
         /* heartbeat crm commands */
         {"CRM.cleanupResource", SUDO + "/usr/sbin/crm_resource -C -r @ID@ -H @HOST@; true"},
@@ -134,21 +156,8 @@ public final class DistResource extends ListResourceBundle {
         {"CRM.unmigrateResource",
          SUDO + "/usr/sbin/crm_resource -r @ID@ --clear"},
 
-        {"Heartbeat.getOCFParametersQuick",
-         SUDO + "@GUI-HELPER@ get-resource-agents quick;"},
-
-        {"Heartbeat.getOCFParametersConfigured",
-         SUDO + "@GUI-HELPER@ get-resource-agents configured;"},
-
-        {"Heartbeat.getOCFParameters",
-         SUDO + "@GUI-HELPER@ get-resource-agents;"},
-
-        /* vmxpath env is needed so that vmware meta-data does not hang */
-        {"Heartbeat.getClusterMetadata",
-         SUDO + "@GUI-HELPER@ get-cluster-metadata"},
-
-        {"Heartbeat.getClStatus",
-         SUDO + "@GUI-HELPER@ get-cluster-events"},
+        {"Heartbeat.getAllocationScores",
+         SUDO + "@GUI-HELPER@ get-allocation-scores"},
 
         {"Heartbeat.startHeartbeat",
          SUDO + "/etc/init.d/heartbeat start"},
@@ -235,7 +244,6 @@ public final class DistResource extends ListResourceBundle {
 
 
         /* drbd commands */
-        {"Drbd.getParameters", SUDO + "@GUI-HELPER@ get-drbd-xml"},
         {"Drbd.getConfig",     SUDO + "@GUI-HELPER@ get-drbd-info"},
 
         {"DRBD.get-gi",        "echo|" + SUDO + "/sbin/drbdadm @DRYRUN@ get-gi @RES-VOL@"},
@@ -280,9 +288,6 @@ public final class DistResource extends ListResourceBundle {
         {"DRBD.verify",
          "echo|" + SUDO + "/sbin/drbdadm @DRYRUN@ verify @RES-VOL@"},
 
-        {"DRBD.getDrbdStatus",
-         SUDO + "@GUI-HELPER@ get-drbd-events"},
-
         {"DRBD.proxyUp",
          SUDO + "/sbin/drbdadm @DRYRUN@ proxy-up @RES-VOL@"},
 
@@ -389,11 +394,12 @@ public final class DistResource extends ListResourceBundle {
         {"MakeKernelPanic", SUDO + "bash -c 'echo c > /proc/sysrq-trigger'"},
         {"MakeKernelReboot", SUDO + "bash -c 'echo b > /proc/sysrq-trigger'"},
 
-        {"VMSXML.GetData",
-         SUDO + "@GUI-HELPER@ get-vm-info"},
+        /* more virsh commands, separated by " ; ", in one virsh process */
+        {"VIRSH.Batch",
+         SUDO + "/usr/bin/virsh @OPTIONS@ \"@COMMANDS@\""},
 
-        {"VIRSH.Autostart",
-         SUDO + "/usr/bin/virsh @OPTIONS@ autostart @VALUE@ @DOMAIN@ 2>/dev/null"},
+        {"VIRSH.Batch.Autostart",
+         "autostart @VALUE@ @DOMAIN@"},
 
         {"VIRSH.Start",
          SUDO + "/usr/bin/virsh @OPTIONS@ start @DOMAIN@"},
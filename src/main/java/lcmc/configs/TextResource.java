@@ -1570,6 +1570,9 @@ public final class TextResource extends ListResourceBundle {
         {"HostBrowser.ProxyHostWizard",
          "Proxy Host Wizard"},
 
+        {"HostBrowser.Compression",
+         "Compression @METHOD@: @SAVED@ KiB saved (@PERCENT@%), CPU @CPU@ ms, on the host @HOST-CPU@ ms"},
+
         {"HostBrowser.Drbd.NoInfoAvailable",
          "unknown..."},
 
@@ -2086,6 +2089,24 @@ public final class TextResource extends ListResourceBundle {
         {"DRBD.ExecutingCommand",
          "Executing DRBD command..."},
 
+        {"DrbdMetricsPanel.Title",
+         "Statistics of the volume @VOLUME@"},
+
+        {"DrbdMetricsPanel.RESYNC_RATE",
+         "Resync KiB/s"},
+
+        {"DrbdMetricsPanel.OUT_OF_SYNC",
+         "Out of sync KiB"},
+
+        {"DrbdMetricsPanel.SENT",
+         "Sent KiB/s"},
+
+        {"DrbdMetricsPanel.RECEIVED",
+         "Received KiB/s"},
+
+        {"DrbdMetricsPanel.AL_WRITES",
+         "AL writes/s"},
+
         {"DrbdXML.GetConfig",
          "Getting DRBD configuration..."},
 
@@ -0,0 +1,286 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.crm.domain;
+
+import java.io.StringWriter;
+import java.util.Optional;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import lcmc.common.domain.XMLTools;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Keeps the last full cib document and applies pacemaker's v2 patchsets
+ * (crm_diff output) to it in place. The patch is applied only if its source
+ * version matches the cached admin_epoch, epoch and num_updates, otherwise
+ * the full cib must be obtained again.
+ */
+final class CibPatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(CibPatcher.class);
+    private static final String[] VERSION_ATTRIBUTES = {"admin_epoch", "epoch", "num_updates"};
+
+    private Document cibDocument = null;
+
+    /**
+     * Caches the parsed full cib query, <pcmk> with <fenced> and <cib> nodes.
+     * The document is changed by the following patches.
+     */
+    synchronized void setCib(final Document document) {
+        if (document == null || getCibNode(document) == null) {
+            cibDocument = null;
+            return;
+        }
+        cibDocument = document;
+    }
+
+    synchronized void reset() {
+        cibDocument = null;
+    }
+
+    /**
+     * Applies the patch, <pcmk> with <fenced> and <diff> nodes, to the cached
+     * cib document and returns it. Returns empty optional if the patch can't
+     * be applied and full resync is needed.
+     */
+    synchronized Optional<Document> applyPatch(final String patch) {
+        final Document document = cibDocument;
+        if (document == null) {
+            LOG.debug1("applyPatch: no cached cib");
+            return Optional.empty();
+        }
+        final Document patchDocument = XMLTools.getXMLDocument(patch);
+        if (patchDocument == null) {
+            return resync("could not parse the patch");
+        }
+        final Node pcmkPatchNode = XMLTools.getChildNode(patchDocument, "pcmk");
+        if (pcmkPatchNode == null) {
+            return resync("there is no pcmk node");
+        }
+        final Node diffNode = XMLTools.getChildNode(pcmkPatchNode, "diff");
+        if (diffNode == null || !"2".equals(XMLTools.getAttribute(diffNode, "format"))) {
+            return resync("unsupported diff format");
+        }
+        final Node versionNode = XMLTools.getChildNode(diffNode, "version");
+        if (versionNode == null) {
+            return resync("version is missing");
+        }
+        final Node sourceNode = XMLTools.getChildNode(versionNode, "source");
+        final Node targetNode = XMLTools.getChildNode(versionNode, "target");
+        if (sourceNode == null || targetNode == null) {
+            return resync("source or target version is missing");
+        }
+        final Element cibNode = getCibNode(document);
+        for (final String attribute : VERSION_ATTRIBUTES) {
+            final String cached = cibNode.getAttribute(attribute);
+            final String source = XMLTools.getAttribute(sourceNode, attribute);
+            if (source == null || !source.equals(cached)) {
+                return resync("version mismatch: " + attribute + ": " + cached + " != " + source);
+            }
+        }
+        final XPath xpath = XPathFactory.newInstance().newXPath();
+        try {
+            final NodeList changes = diffNode.getChildNodes();
+            for (int i = 0; i < changes.getLength(); i++) {
+                final Node change = changes.item(i);
+                if ("change".equals(change.getNodeName()) && !applyChange(xpath, document, change)) {
+                    return resync("could not apply change: " + XMLTools.getAttribute(change, "path"));
+                }
+            }
+        } catch (final XPathExpressionException e) {
+            LOG.appWarning("applyPatch: could not evaluate path", e);
+            return resync("wrong path");
+        }
+        for (final String attribute : VERSION_ATTRIBUTES) {
+            final String target = XMLTools.getAttribute(targetNode, attribute);
+            if (target != null) {
+                getCibNode(document).setAttribute(attribute, target);
+            }
+        }
+        replaceFencedNode(document, XMLTools.getChildNode(pcmkPatchNode, "fenced"));
+        return Optional.of(document);
+    }
+
+    /** Returns the cached cib query as string, or null if there is none. */
+    synchronized String getCibXml() {
+        if (cibDocument == null) {
+            return null;
+        }
+        return serialize(cibDocument).orElse(null);
+    }
+
+    private boolean applyChange(final XPath xpath, final Document document, final Node change)
+            throws XPathExpressionException {
+        final String operation = XMLTools.getAttribute(change, "operation");
+        final String path = XMLTools.getAttribute(change, "path");
+        if (operation == null || path == null) {
+            return false;
+        }
+        final Node target = (Node) xpath.evaluate("/pcmk" + path, document, XPathConstants.NODE);
+        if (target == null) {
+            return false;
+        }
+        switch (operation) {
+            case "create":
+                final Node created = getFirstElement(change);
+                if (created == null) {
+                    return false;
+                }
+                insertAt(target, document.importNode(created, true), getPosition(change));
+                return true;
+            case "delete":
+                target.getParentNode().removeChild(target);
+                return true;
+            case "modify":
+                return modifyAttributes((Element) target, XMLTools.getChildNode(change, "change-list"));
+            case "move":
+                final Node parent = target.getParentNode();
+                parent.removeChild(target);
+                insertAt(parent, target, getPosition(change));
+                return true;
+            default:
+                LOG.appWarning("applyChange: unknown operation: " + operation);
+                return false;
+        }
+    }
+
+    private boolean modifyAttributes(final Element target, final Node changeList) {
+        if (changeList == null) {
+            return false;
+        }
+        final NodeList changeAttrs = changeList.getChildNodes();
+        for (int i = 0; i < changeAttrs.getLength(); i++) {
+            final Node changeAttr = changeAttrs.item(i);
+            if (!"change-attr".equals(changeAttr.getNodeName())) {
+                continue;
+            }
+            final String name = XMLTools.getAttribute(changeAttr, "name");
+            final String op = XMLTools.getAttribute(changeAttr, "operation");
+            if (name == null) {
+                return false;
+            }
+            if ("set".equals(op)) {
+                target.setAttribute(name, XMLTools.getAttribute(changeAttr, "value"));
+            } else if ("unset".equals(op)) {
+                target.removeAttribute(name);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the child at the position, that counts only elements and
+     * comments, like pacemaker does. Whitespace from pretty printing is
+     * ignored.
+     */
+    private void insertAt(final Node parent, final Node child, final int position) {
+        final NodeList children = parent.getChildNodes();
+        int pos = 0;
+        for (int i = 0; i < children.getLength(); i++) {
+            final Node n = children.item(i);
+            if (n.getNodeType() == Node.ELEMENT_NODE || n.getNodeType() == Node.COMMENT_NODE) {
+                if (pos == position) {
+                    parent.insertBefore(child, n);
+                    return;
+                }
+                pos++;
+            }
+        }
+        parent.appendChild(child);
+    }
+
+    private int getPosition(final Node change) {
+        final String position = XMLTools.getAttribute(change, "position");
+        if (position == null) {
+            return Integer.MAX_VALUE;
+        }
+        try {
+            return Integer.parseInt(position);
+        } catch (final NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private Node getFirstElement(final Node node) {
+        final NodeList children = node.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            if (children.item(i).getNodeType() == Node.ELEMENT_NODE) {
+                return children.item(i);
+            }
+        }
+        return null;
+    }
+
+    private void replaceFencedNode(final Document document, final Node fencedNode) {
+        final Node pcmkNode = XMLTools.getChildNode(document, "pcmk");
+        final Node oldFencedNode = XMLTools.getChildNode(pcmkNode, "fenced");
+        if (oldFencedNode != null) {
+            pcmkNode.removeChild(oldFencedNode);
+        }
+        if (fencedNode != null) {
+            pcmkNode.insertBefore(document.importNode(fencedNode, true), pcmkNode.getFirstChild());
+        }
+    }
+
+    private Element getCibNode(final Document document) {
+        final Node pcmkNode = XMLTools.getChildNode(document, "pcmk");
+        if (pcmkNode == null) {
+            return null;
+        }
+        return (Element) XMLTools.getChildNode(pcmkNode, "cib");
+    }
+
+    private Optional<String> serialize(final Document document) {
+        try {
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            final StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            return Optional.of(writer.toString());
+        } catch (final TransformerException e) {
+            LOG.appWarning("serialize: could not serialize the cib", e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<Document> resync(final String reason) {
+        LOG.debug1("applyPatch: full resync needed: " + reason);
+        cibDocument = null;
+        return Optional.empty();
+    }
+}
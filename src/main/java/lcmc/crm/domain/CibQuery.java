@@ -76,6 +76,8 @@ final class CibQuery {
     private Map<String, String> cloneToResource = new HashMap<>();
     private List<String> masterList = new ArrayList<>();
     private String designatedCoOrdinator = null;
+    /** admin_epoch:epoch:num_updates of the cib. */
+    private String cibVersion = null;
     private Table<String, String, String> nodeFailedCount = HashBasedTable.create();
     /**
      * Map from rsc id to list of clone ids for failed clones.
@@ -375,6 +377,14 @@ final class CibQuery {
         return designatedCoOrdinator;
     }
 
+    void setCibVersion(final String cibVersion) {
+        this.cibVersion = cibVersion;
+    }
+
+    String getCibVersion() {
+        return cibVersion;
+    }
+
     void setNodeFailedCount(final Table<String, String, String> nodeFailedCount) {
         this.nodeFailedCount = nodeFailedCount;
     }
@@ -25,21 +25,28 @@ package lcmc.crm.domain;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Named;
 
+import org.w3c.dom.Document;
+
 import com.google.common.collect.Table;
 
+import lcmc.cluster.infrastructure.ssh.CommandExecutor;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.Ssh;
 import lcmc.common.domain.Application;
-import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.Value;
+import lcmc.common.domain.XMLTools;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.Access;
 import lcmc.host.domain.Host;
@@ -64,11 +71,29 @@ public class ClusterStatus {
     private String oldStatus = null;
     private String oldCib = null;
     private boolean oldAdvancedMode = false;
+    private final CibPatcher cibPatcher = new CibPatcher();
+    /** Set if a cib patch could not be applied and the full cib is needed. */
+    private volatile boolean cibResyncNeeded = false;
+    /** Cluster events coalesced by the helper into one snapshot. */
+    private volatile int coalescedEvents = 0;
+    /** Snapshots emitted by the helper. */
+    private volatile int emittedSnapshots = 0;
+    /** Snapshots that came in one output chunk and only the last was parsed. */
+    private final AtomicInteger skippedSnapshots = new AtomicInteger(0);
+    /**
+     * Allocation scores are not part of the live status, they are fetched
+     * only when they are shown and cached for the cib version.
+     */
+    private volatile Map<String, Map<String, String>> allocationScores = Collections.emptyMap();
+    private volatile String allocationScoresCibVersion = null;
+    private final AtomicBoolean allocationScoresUpdating = new AtomicBoolean(false);
     private Host host;
     private final Access access;
+    private final CommandExecutor commandExecutor;
 
-    public ClusterStatus(Access access) {
+    public ClusterStatus(Access access, CommandExecutor commandExecutor) {
         this.access = access;
+        this.commandExecutor = commandExecutor;
     }
 
     /**
@@ -77,12 +102,9 @@ public class ClusterStatus {
     public void init(final Host host, final CrmXml crmXML) {
         this.host = host;
         this.crmXML = crmXML;
-        final String command = host.getHostParser()
-                                   .getDistCommand("Heartbeat.getClusterMetadata", (ConvertCmdCallback) null);
-        final var ret = host.captureCommandProgressIndicator(Tools.getString("Heartbeat.getClusterMetadata"),
-                new ExecCommandConfig().command(command)
-                                       .silentCommand()
-                                       .silentOutput());
+        final var ret = host.captureHelperRequestProgressIndicator(Tools.getString("Heartbeat.getClusterMetadata"),
+                                                                   "Agent.GetClusterMetadata",
+                                                                   Ssh.DEFAULT_COMMAND_TIMEOUT);
         final String output = ret.getOutput();
         if (ret.getExitCode() != 0) {
             return;
@@ -380,15 +402,53 @@ public class ClusterStatus {
         return resourceStatus.getMasterOnNodes();
     }
 
+    /**
+     * Returns allocation scores for the resource. If they are not known for
+     * the current cib version, they are fetched in the background and the
+     * old ones are returned in the meantime.
+     */
     public Map<String, String> getAllocationScores(final String crmId, final Application.RunMode runMode) {
-        if (resStateMap == null) {
-            return Collections.emptyMap();
+        if (resStateMap != null) {
+            final CrmXml.ResourceStatus resourceStatus = resStateMap.get(crmId);
+            if (resourceStatus != null && !resourceStatus.getAllocationScores().isEmpty()) {
+                /* status from crm_simulate has them already */
+                return resourceStatus.getAllocationScores();
+            }
         }
-        final CrmXml.ResourceStatus resourceStatus = resStateMap.get(crmId);
-        if (resourceStatus == null) {
-            return Collections.emptyMap();
+        final String cibVersion = cibQuery.getCibVersion();
+        if (cibVersion != null && !cibVersion.equals(allocationScoresCibVersion)) {
+            updateAllocationScores(cibVersion);
         }
-        return resourceStatus.getAllocationScores();
+        return allocationScores.getOrDefault(crmId, Collections.emptyMap());
+    }
+
+    /** Fetches the allocation scores in the shared command executor. */
+    private void updateAllocationScores(final String cibVersion) {
+        if (host == null || !allocationScoresUpdating.compareAndSet(false, true)) {
+            return;
+        }
+        commandExecutor.submit(host, true, () -> {
+            try {
+                final var ret = host.captureCommand(new ExecCommandConfig().commandString("Heartbeat.getAllocationScores")
+                                                                           .silentCommand()
+                                                                           .silentOutput());
+                if (ret.getExitCode() != 0) {
+                    return;
+                }
+                final Map<String, CrmXml.ResourceStatus> status = crmXML.parseResStatus(ret.getOutput());
+                final Map<String, Map<String, String>> scores = new HashMap<>();
+                if (status != null) {
+                    for (final Map.Entry<String, CrmXml.ResourceStatus> entry : status.entrySet()) {
+                        scores.put(entry.getKey(), entry.getValue().getAllocationScores());
+                    }
+                }
+                LOG.debug1("updateAllocationScores: cib version: " + cibVersion);
+                allocationScores = scores;
+                allocationScoresCibVersion = cibVersion;
+            } finally {
+                allocationScoresUpdating.set(false);
+            }
+        });
     }
 
     /**
@@ -467,9 +527,27 @@ public class ClusterStatus {
                     LOG.debug1("parseCommand: cib update: " + host.getName());
                     oldCib = cib;
                     oldAdvancedMode = advancedMode;
-                    parseCibQuery(cib);
+                    final Document document = XMLTools.getXMLDocument(cib);
+                    cibPatcher.setCib(document);
+                    parseCibQuery(document);
                     return true;
                 }
+            } else if ("events".equals(cmd)) {
+                parseEventCounts(data);
+            } else if ("cibpatch".equals(cmd)) {
+                final String patch = Tools.join("\n", data.toArray(new String[0]));
+                final Optional<Document> cib = cibPatcher.applyPatch(patch);
+                if (cib.isEmpty()) {
+                    LOG.debug1("parseCommand: cib patch failed, resync: " + host.getName());
+                    cibResyncNeeded = true;
+                    return false;
+                }
+                LOG.debug1("parseCommand: cib patch: " + host.getName());
+                /* the patched cib is serialized only, when it's asked for */
+                oldCib = null;
+                oldAdvancedMode = access.isAdvancedMode();
+                parseCibQuery(cib.get());
+                return true;
             }
         } else {
             LOG.appError("parseCommand: unknown command: " + command);
@@ -525,12 +603,57 @@ public class ClusterStatus {
         return updated;
     }
 
+    /** Parses coalesced:N and emitted:N lines from the helper. */
+    private void parseEventCounts(final List<String> data) {
+        for (final String line : data) {
+            final String[] parts = line.split(":", 2);
+            if (parts.length != 2 || !Tools.isNumber(parts[1])) {
+                continue;
+            }
+            if ("coalesced".equals(parts[0])) {
+                coalescedEvents = Integer.parseInt(parts[1]);
+            } else if ("emitted".equals(parts[0])) {
+                emittedSnapshots = Integer.parseInt(parts[1]);
+            }
+        }
+    }
+
+    public void addSkippedSnapshots(final int count) {
+        skippedSnapshots.addAndGet(count);
+    }
+
+    public int getCoalescedEvents() {
+        return coalescedEvents;
+    }
+
+    public int getEmittedSnapshots() {
+        return emittedSnapshots;
+    }
+
+    public int getSkippedSnapshots() {
+        return skippedSnapshots.get();
+    }
+
     private void parseResStatus(final String resStatus) {
         resStateMap = crmXML.parseResStatus(resStatus);
     }
 
-    private void parseCibQuery(final String query) {
-        cibQuery = crmXML.parseCibQuery(query);
+    private void parseCibQuery(final Document document) {
+        cibQuery = crmXML.parseCibQuery(document);
+    }
+
+    /**
+     * Returns true once, if the cib patch could not be applied and the cluster
+     * events have to be restarted to get the full cib again.
+     */
+    public boolean takeCibResyncNeeded() {
+        if (cibResyncNeeded) {
+            cibResyncNeeded = false;
+            oldCib = null;
+            cibPatcher.reset();
+            return true;
+        }
+        return false;
     }
 
     public void setPtestResult(final PtestData ptestResult) {
@@ -545,6 +668,10 @@ public class ClusterStatus {
 
     /** Return last known raw cib. */
     public String getCibXml() {
-        return oldCib;
+        final String cib = oldCib;
+        if (cib == null) {
+            return cibPatcher.getCibXml();
+        }
+        return cib;
     }
 }
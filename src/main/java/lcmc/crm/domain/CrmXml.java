@@ -51,12 +51,10 @@ import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Table;
 
-import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.network.InfoPresenter;
 import lcmc.common.domain.AccessMode;
 import lcmc.common.domain.Application;
-import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.StringValue;
 import lcmc.common.domain.Unit;
 import lcmc.common.domain.Value;
@@ -697,10 +695,24 @@ public class CrmXml {
         groupResourceAgent.setMetaDataLoaded(true);
 
         initResourceAgentsWithoutMetaData();
-        initOCFMetaDataConfigured();
+        final ResourceAgentCache resourceAgentCache = ResourceAgentCache.forHost(host.getName(),
+                                                                                 host.getHostParser().getPacemakerVersion());
+        resourceAgentCache.load();
+        final Map<String, String> resourceAgentHashes = getResourceAgentHashes();
+        final String cachedMetaData = resourceAgentCache.getMetaData(resourceAgentHashes);
+        if (cachedMetaData.isEmpty()) {
+            initOCFMetaDataConfigured();
+        } else {
+            LOG.debug("CRMXML: cached RAs loaded");
+            parseOCFResourceAgentsWithMetaData(cachedMetaData);
+        }
         LOG.debug("CRMXML: cluster loaded");
         final Thread t = new Thread(() -> {
-            initOCFMetaDataAll();
+            if (resourceAgentHashes.isEmpty()) {
+                initOCFMetaDataAll();
+            } else {
+                updateOCFMetaData(resourceAgentCache, resourceAgentHashes);
+            }
             final String hn = host.getName();
             final String text = Tools.getString("CRMXML.GetRAMetaData.Done");
             progressIndicator.startProgressIndicator(hn, text);
@@ -727,13 +739,9 @@ public class CrmXml {
     }
 
     private void initResourceAgentsWithoutMetaData() {
-        final String command = host.getHostParser()
-                                   .getDistCommand("Heartbeat.getOCFParametersQuick", (ConvertCmdCallback) null);
-        final var ret = host.captureCommandProgressIndicator(Tools.getString("CRMXML.GetRAMetaData"),
-                new ExecCommandConfig().command(command)
-                                       .silentCommand()
-                                       .silentOutput()
-                                       .sshCommandTimeout(60000));
+        final var ret = host.captureHelperRequestProgressIndicator(Tools.getString("CRMXML.GetRAMetaData"),
+                                                                   "Agent.GetOCFParametersQuick",
+                                                                   60000);
         boolean linbitDrbdPresent0 = false;
         boolean drbddiskPresent0 = false;
         if (ret.getExitCode() != 0) {
@@ -812,23 +820,49 @@ public class CrmXml {
      * Initialize resource agents with their meta data, the configured ones. For faster start up.
      */
     private void initOCFMetaDataConfigured() {
-        initOCFResourceAgentsWithMetaData(host.getHostParser()
-                                              .getDistCommand("Heartbeat.getOCFParametersConfigured", (ConvertCmdCallback) null));
+        initOCFResourceAgentsWithMetaData("Agent.GetOCFParametersConfigured");
     }
 
     /**
      * Initialize resource agents with their meta data.
      */
     private void initOCFMetaDataAll() {
-        initOCFResourceAgentsWithMetaData(host.getHostParser()
-                                              .getDistCommand("Heartbeat.getOCFParameters", (ConvertCmdCallback) null));
+        initOCFResourceAgentsWithMetaData("Agent.GetOCFParameters");
     }
 
-    private void initOCFResourceAgentsWithMetaData(final String command) {
-        final var ret = host.captureCommand(new ExecCommandConfig().command(command)
-                                                                   .silentCommand()
-                                                                   .silentOutput()
-                                                                   .sshCommandTimeout(300000));
+    /** Returns the md5 of the agents on the host or an empty map, if it failed. */
+    private Map<String, String> getResourceAgentHashes() {
+        final var ret = host.captureHelperRequest("Agent.GetResourceAgentHashes", 60000);
+        if (ret.getExitCode() != 0 || ret.getOutput() == null) {
+            return new HashMap<>();
+        }
+        return ResourceAgentCache.parseHashes(ret.getOutput());
+    }
+
+    /**
+     * Fetches the meta-data of the agents, that are not cached or that
+     * changed on the host, and stores them in the cache.
+     */
+    private void updateOCFMetaData(final ResourceAgentCache resourceAgentCache, final Map<String, String> hashes) {
+        final List<String> staleAgents = resourceAgentCache.getStaleAgents(hashes);
+        Map<String, String> metaData = new HashMap<>();
+        if (!staleAgents.isEmpty()) {
+            LOG.debug("updateOCFMetaData: fetching " + staleAgents.size() + " RAs");
+            final var ret = host.captureHelperRequest("Agent.GetOCFParametersSelected",
+                                                      command -> command.replaceAll("@AGENTS@",
+                                                                                    String.join(" ", staleAgents)),
+                                                      300000);
+            if (ret.getExitCode() == 0 && ret.getOutput() != null) {
+                metaData = ResourceAgentCache.parseMetaData(ret.getOutput());
+                parseOCFResourceAgentsWithMetaData(String.join("", metaData.values()));
+            }
+        }
+        resourceAgentCache.update(hashes, metaData);
+        resourceAgentCache.save();
+    }
+
+    private void initOCFResourceAgentsWithMetaData(final String commandString) {
+        final var ret = host.captureHelperRequest(commandString, 300000);
         if (ret.getExitCode() != 0) {
             return;
         }
@@ -836,6 +870,10 @@ public class CrmXml {
         if (output == null) {
             return;
         }
+        parseOCFResourceAgentsWithMetaData(output);
+    }
+
+    private void parseOCFResourceAgentsWithMetaData(final String output) {
         final String[] lines = output.split("\\r?\\n");
         final Pattern pp = Pattern.compile("^provider:\\s*(.*?)\\s*$");
         final Pattern mp = Pattern.compile("^master:\\s*(.*?)\\s*$");
@@ -2328,9 +2366,18 @@ public class CrmXml {
      */
     CibQuery parseCibQuery(final String query) {
         final Document document = XMLTools.getXMLDocument(query);
-        final CibQuery cibQueryData = new CibQuery();
         if (document == null) {
             LOG.appWarning("parseCibQuery: cib error: " + query);
+            return new CibQuery();
+        }
+        return parseCibQuery(document);
+    }
+
+    /** Parses the cib query document, <pcmk> with <fenced> and <cib> nodes. */
+    CibQuery parseCibQuery(final Document document) {
+        final CibQuery cibQueryData = new CibQuery();
+        if (document == null) {
+            LOG.appWarning("parseCibQuery: cib error");
             return cibQueryData;
         }
         /* get root <pacemaker> */
@@ -2365,6 +2412,11 @@ public class CrmXml {
         }
         /* Designated Co-ordinator */
         final String dcUuid = XMLTools.getAttribute(cibNode, "dc-uuid");
+        final String epoch = XMLTools.getAttribute(cibNode, "epoch");
+        if (epoch != null) {
+            cibQueryData.setCibVersion(XMLTools.getAttribute(cibNode, "admin_epoch") + ':' + epoch + ':'
+                                       + XMLTools.getAttribute(cibNode, "num_updates"));
+        }
         //TODO: more attributes are here
 
         /* <configuration> */
@@ -0,0 +1,209 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.crm.domain;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Keeps the meta-data of the resource agents of one host on the disk, so
+ * that they don't have to be fetched again by every start. Every agent has
+ * the md5 of its file from the host. The agents with a different hash and
+ * the new agents are fetched again. The whole cache is dropped, if the
+ * pacemaker version is different.
+ *
+ * The meta-data of an agent is the output of the gui helper for that agent,
+ * with the provider, master and ra-name lines.
+ */
+final class ResourceAgentCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceAgentCache.class);
+    private static final String HEADER = "lcmc-resource-agents 1";
+    private static final String PACEMAKER = "pacemaker ";
+    private static final String AGENT = "agent ";
+    private static final Pattern HASH_PATTERN = Pattern.compile("^ra-hash:(\\S+)\\s+(\\S+)\\s*$");
+    private static final Pattern META_DATA_PATTERN = Pattern.compile("^ra-cache:(\\S+)\\s*$");
+
+    private final Path file;
+    private final String pacemakerVersion;
+    /** Agent -> hash and meta-data, guarded by this. */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    ResourceAgentCache(final Path file, final String pacemakerVersion) {
+        this.file = file;
+        this.pacemakerVersion = String.valueOf(pacemakerVersion);
+    }
+
+    static ResourceAgentCache forHost(final String hostName, final String pacemakerVersion) {
+        return new ResourceAgentCache(Paths.get(System.getProperty("user.home"),
+                                                ".lcmc",
+                                                "cache",
+                                                "resource-agents-" + hostName.replaceAll("[^\\w.-]", "_")),
+                                      pacemakerVersion);
+    }
+
+    /** Parses the "ra-hash:<agent> <md5>" lines. */
+    static Map<String, String> parseHashes(final String output) {
+        final Map<String, String> hashes = new LinkedHashMap<>();
+        for (final String line : output.split("\\r?\\n")) {
+            final Matcher m = HASH_PATTERN.matcher(line);
+            if (m.matches()) {
+                hashes.put(m.group(1), m.group(2));
+            }
+        }
+        return hashes;
+    }
+
+    /** Splits the output at the "ra-cache:<agent>" lines. */
+    static Map<String, String> parseMetaData(final String output) {
+        final Map<String, String> metaData = new LinkedHashMap<>();
+        String agent = null;
+        final StringBuilder text = new StringBuilder();
+        for (final String line : output.split("\\r?\\n")) {
+            final Matcher m = META_DATA_PATTERN.matcher(line);
+            if (m.matches()) {
+                if (agent != null) {
+                    metaData.put(agent, text.toString());
+                }
+                agent = m.group(1);
+                text.setLength(0);
+            } else if (agent != null) {
+                text.append(line).append('\n');
+            }
+        }
+        if (agent != null) {
+            metaData.put(agent, text.toString());
+        }
+        return metaData;
+    }
+
+    synchronized void load() {
+        entries.clear();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine()) || !(PACEMAKER + pacemakerVersion).equals(reader.readLine())) {
+                LOG.debug1("load: " + file + ": different version");
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith(AGENT)) {
+                    throw new IOException("wrong line: " + line);
+                }
+                final String[] fields = line.substring(AGENT.length()).split(" ");
+                final char[] text = new char[Integer.parseInt(fields[2])];
+                if (reader.read(text, 0, text.length) != text.length || reader.read() != '\n') {
+                    throw new IOException("truncated: " + fields[0]);
+                }
+                entries.put(fields[0], new Entry(fields[1], new String(text)));
+            }
+        } catch (final IOException | RuntimeException e) {
+            LOG.appWarning("load: could not read " + file, e);
+            entries.clear();
+        }
+    }
+
+    /** Returns the meta-data of the agents, that have the same hash. */
+    synchronized String getMetaData(final Map<String, String> hashes) {
+        final StringBuilder metaData = new StringBuilder();
+        for (final Map.Entry<String, String> hash : hashes.entrySet()) {
+            final Entry entry = entries.get(hash.getKey());
+            if (entry != null && entry.hash.equals(hash.getValue())) {
+                metaData.append(entry.metaData);
+            }
+        }
+        return metaData.toString();
+    }
+
+    /** Returns the agents, that are not cached or have a different hash. */
+    synchronized List<String> getStaleAgents(final Map<String, String> hashes) {
+        final List<String> agents = new ArrayList<>();
+        for (final Map.Entry<String, String> hash : hashes.entrySet()) {
+            final Entry entry = entries.get(hash.getKey());
+            if (entry == null || !entry.hash.equals(hash.getValue())) {
+                agents.add(hash.getKey());
+            }
+        }
+        return agents;
+    }
+
+    /**
+     * Stores the fetched meta-data and removes the agents, that are not on
+     * the host anymore.
+     */
+    synchronized void update(final Map<String, String> hashes, final Map<String, String> metaData) {
+        entries.keySet().retainAll(hashes.keySet());
+        for (final Map.Entry<String, String> agentMetaData : metaData.entrySet()) {
+            final String hash = hashes.get(agentMetaData.getKey());
+            if (hash != null) {
+                entries.put(agentMetaData.getKey(), new Entry(hash, agentMetaData.getValue()));
+            }
+        }
+    }
+
+    /** Writes the cache to a temporary file, that replaces the old one. */
+    synchronized void save() {
+        try {
+            Files.createDirectories(file.getParent());
+            final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                writer.write(HEADER + '\n');
+                writer.write(PACEMAKER + pacemakerVersion + '\n');
+                for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    final String metaData = entry.getValue().metaData;
+                    writer.write(AGENT + entry.getKey() + ' ' + entry.getValue().hash + ' ' + metaData.length() + '\n');
+                    writer.write(metaData);
+                    writer.write('\n');
+                }
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            LOG.appWarning("save: could not write " + file, e);
+        }
+    }
+
+    private static final class Entry {
+        private final String hash;
+        private final String metaData;
+
+        Entry(final String hash, final String metaData) {
+            this.hash = hash;
+            this.metaData = metaData;
+        }
+    }
+}
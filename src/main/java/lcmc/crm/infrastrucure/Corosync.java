@@ -23,6 +23,7 @@
 package lcmc.crm.infrastrucure;
 
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.host.domain.Host;
@@ -124,15 +125,17 @@ public final class Corosync {
     }
 
     /** Creates Corosync config on specified hosts. */
-    public static void createCorosyncConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createCorosyncConfig(final HostFanOut hostFanOut, final Host[] hosts, final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(hostFanOut,
+                                     hosts,
                                      config.toString(),
                                      COROSYNC_CONF_NAME,
                                      COROSYNC_CONF_DIR,
                                      COROSYNC_CONF_PERMS,
                                      true);
-        Tools.createConfigOnAllHosts(hosts,
+        Tools.createConfigOnAllHosts(hostFanOut,
+                                     hosts,
                                      Tools.getRandomSecret(128),
                                      AUTHKEYS_CONF_NAME,
                                      COROSYNC_CONF_DIR,
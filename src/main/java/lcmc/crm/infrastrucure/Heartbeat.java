@@ -23,6 +23,7 @@
 package lcmc.crm.infrastrucure;
 
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.host.domain.Host;
@@ -109,12 +110,12 @@ public final class Heartbeat {
     }
 
     /** Creates heartbeat config on specified hosts. */
-    public static void createHBConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createHBConfig(final HostFanOut hostFanOut, final Host[] hosts, final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts, config.toString(), HA_CONF_NAME, HA_CONF_DIR, HA_CONF_PERMS, true);
+        Tools.createConfigOnAllHosts(hostFanOut, hosts, config.toString(), HA_CONF_NAME, HA_CONF_DIR, HA_CONF_PERMS, true);
 
         String authkeys = "## generated by drbd-gui\n\n" + "auth 1\n" + "1 sha1 " + Tools.getRandomSecret(32) + '\n';
-        Tools.createConfigOnAllHosts(hosts, authkeys, AUTHKEYS_CONF_NAME, HA_CONF_DIR, AUTHKEYS_CONF_PERMS, true);
+        Tools.createConfigOnAllHosts(hostFanOut, hosts, authkeys, AUTHKEYS_CONF_NAME, HA_CONF_DIR, AUTHKEYS_CONF_PERMS, true);
     }
 
     /** Reloads heartbeats on all nodes. */
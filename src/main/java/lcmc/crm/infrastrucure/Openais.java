@@ -23,6 +23,7 @@
 package lcmc.crm.infrastrucure;
 
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.util.Tools;
 import lcmc.host.domain.Host;
@@ -102,10 +103,16 @@ public final class Openais {
         execCommand(host, command);
     }
 
-    public static void createAISConfig(final Host[] hosts, final StringBuilder config) {
+    public static void createAISConfig(final HostFanOut hostFanOut, final Host[] hosts, final StringBuilder config) {
         /* write heartbeat config on all hosts */
-        Tools.createConfigOnAllHosts(hosts, config.toString(), AIS_CONF_NAME, AIS_CONF_DIR, AIS_CONF_PERMS, true);
-        Tools.createConfigOnAllHosts(hosts, Tools.getRandomSecret(128), AUTHKEYS_CONF_NAME, AIS_CONF_DIR, AUTHKEYS_CONF_PERMS, true);
+        Tools.createConfigOnAllHosts(hostFanOut, hosts, config.toString(), AIS_CONF_NAME, AIS_CONF_DIR, AIS_CONF_PERMS, true);
+        Tools.createConfigOnAllHosts(hostFanOut,
+                                     hosts,
+                                     Tools.getRandomSecret(128),
+                                     AUTHKEYS_CONF_NAME,
+                                     AIS_CONF_DIR,
+                                     AUTHKEYS_CONF_PERMS,
+                                     true);
 
     }
 
@@ -0,0 +1,102 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.drbd.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * One line of the drbdsetup events2 output, like:
+ *
+ *   change peer-device name:r0 peer-node-id:1 conn-name:b volume:0 replication:SyncSource done:1.84
+ *
+ * The action is create, change, exists, destroy, call or response, the
+ * object is resource, device, connection, peer-device, path or helper and
+ * the rest are key:value fields.
+ */
+public final class DrbdEvent {
+    private static final Set<String> ACTIONS = ImmutableSet.of("create", "change", "exists", "destroy", "call", "response");
+    private static final Set<String> STATE_ACTIONS = ImmutableSet.of("create", "change", "exists");
+    private static final Set<String> HELPER_ACTIONS = ImmutableSet.of("call", "response");
+
+    private final String action;
+    private final String object;
+    private final Map<String, String> fields;
+
+    private DrbdEvent(final String action, final String object, final Map<String, String> fields) {
+        this.action = action;
+        this.object = object;
+        this.fields = fields;
+    }
+
+    /** Returns the event or empty, if it's not an events2 line. */
+    public static Optional<DrbdEvent> parse(final String line) {
+        final String[] tokens = line.trim().split("\\s+");
+        if (tokens.length < 2 || !ACTIONS.contains(tokens[0])) {
+            return Optional.empty();
+        }
+        final Map<String, String> fields = new HashMap<>();
+        for (int i = 2; i < tokens.length; i++) {
+            final int colon = tokens[i].indexOf(':');
+            if (colon > 0) {
+                fields.put(tokens[i].substring(0, colon), tokens[i].substring(colon + 1));
+            }
+        }
+        return Optional.of(new DrbdEvent(tokens[0], tokens[1], fields));
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    /** Returns the field or null. */
+    public String get(final String key) {
+        return fields.get(key);
+    }
+
+    public String getResourceName() {
+        return fields.get("name");
+    }
+
+    /** Returns the volume, the resource and connection events are for the volume 0. */
+    public String getVolume() {
+        return fields.getOrDefault("volume", "0");
+    }
+
+    /** Whether it's a create, change or exists event of the object. */
+    public boolean isState(final String stateObject) {
+        return STATE_ACTIONS.contains(action) && object.equals(stateObject);
+    }
+
+    /** Whether the helper was called or it returned. */
+    public boolean isHelper() {
+        return HELPER_ACTIONS.contains(action) && "helper".equals(object);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.drbd.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History of the replication and resync statistics of one volume on one
+ * host. The values come from the drbdsetup events2 --statistics output,
+ * every metric keeps the last CAPACITY samples in a ring buffer. The
+ * counters, like sent and received KiB, are stored as rates per second.
+ * The peer-device events come for every peer, so every peer has its own
+ * samples, keyed by the peer-node-id or the conn-name.
+ */
+public final class DrbdVolumeMetrics {
+    public static final int CAPACITY = 120;
+
+    public enum Metric {
+        RESYNC_RATE("dbdt1", false),
+        OUT_OF_SYNC("out-of-sync", false),
+        SENT("sent", true),
+        RECEIVED("received", true),
+        AL_WRITES("al-writes", true);
+
+        /** Field of the event. */
+        private final String field;
+        private final boolean counter;
+
+        Metric(final String field, final boolean counter) {
+            this.field = field;
+            this.counter = counter;
+        }
+
+        public String getField() {
+            return field;
+        }
+    }
+
+    /** Samples of the device events have the empty key. */
+    private final Map<String, Map<Metric, Samples>> peerSamples = new LinkedHashMap<>();
+
+    /** Records the statistics from the event, that has some. */
+    public synchronized void record(final DrbdEvent event, final long timeMillis) {
+        for (final Metric metric : Metric.values()) {
+            final String value = event.get(metric.field);
+            if (value == null) {
+                continue;
+            }
+            try {
+                getSamples(getPeer(event), metric).add(metric.counter, Double.parseDouble(value), timeMillis);
+            } catch (final NumberFormatException e) {
+                /* not a statistics field */
+            }
+        }
+    }
+
+    /**
+     * Returns the values from the oldest to the newest, summed over the
+     * peers. The samples of the peers are aligned at the newest one.
+     */
+    public synchronized double[] getValues(final Metric metric) {
+        final List<double[]> series = new ArrayList<>();
+        int size = 0;
+        for (final Map<Metric, Samples> samples : peerSamples.values()) {
+            final Samples s = samples.get(metric);
+            if (s != null) {
+                final double[] values = s.toArray();
+                series.add(values);
+                size = Math.max(size, values.length);
+            }
+        }
+        final double[] result = new double[size];
+        for (final double[] values : series) {
+            final int offset = size - values.length;
+            for (int i = 0; i < values.length; i++) {
+                result[offset + i] += values[i];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the values of one peer from the oldest to the newest. */
+    public synchronized double[] getValues(final String peer, final Metric metric) {
+        final Map<Metric, Samples> samples = peerSamples.get(peer);
+        if (samples == null || !samples.containsKey(metric)) {
+            return new double[0];
+        }
+        return samples.get(metric).toArray();
+    }
+
+    public synchronized Collection<String> getPeers() {
+        return new ArrayList<>(peerSamples.keySet());
+    }
+
+    private static String getPeer(final DrbdEvent event) {
+        final String peerNodeId = event.get("peer-node-id");
+        if (peerNodeId != null) {
+            return peerNodeId;
+        }
+        final String connName = event.get("conn-name");
+        return connName == null ? "" : connName;
+    }
+
+    private Samples getSamples(final String peer, final Metric metric) {
+        return peerSamples.computeIfAbsent(peer, p -> new EnumMap<>(Metric.class))
+                          .computeIfAbsent(metric, m -> new Samples());
+    }
+
+    private static final class Samples {
+        private final double[] values = new double[CAPACITY];
+        private int next = 0;
+        private int size = 0;
+        /** Last value and time of a counter. */
+        private double lastCounter = Double.NaN;
+        private long lastTime = 0;
+
+        void add(final boolean counter, final double value, final long timeMillis) {
+            if (!counter) {
+                put(value);
+                return;
+            }
+            /* counters restart, if the connection is reestablished */
+            if (!Double.isNaN(lastCounter) && value >= lastCounter && timeMillis > lastTime) {
+                put((value - lastCounter) * 1000 / (timeMillis - lastTime));
+            }
+            lastCounter = value;
+            lastTime = timeMillis;
+        }
+
+        private void put(final double value) {
+            values[next] = value;
+            next = (next + 1) % CAPACITY;
+            if (size < CAPACITY) {
+                size++;
+            }
+        }
+
+        double[] toArray() {
+            final double[] result = new double[size];
+            final int start = (next - size + CAPACITY) % CAPACITY;
+            for (int i = 0; i < size; i++) {
+                result[i] = values[(start + i) % CAPACITY];
+            }
+            return result;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +50,7 @@ import com.google.common.collect.TreeBasedTable;
 
 import lcmc.Exceptions;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.Ssh;
 import lcmc.common.domain.AccessMode;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.StringValue;
@@ -78,8 +80,19 @@ import lombok.val;
 public class DrbdXml {
     private static final Logger LOG = LoggerFactory.getLogger(DrbdXml.class);
     private static final String[] EMPTY_STRING = new String[0];
+    private static final String DRBD_INFO_START = "--drbd-info-start--";
+    private static final String DRBD_INFO_END = "--drbd-info-end--";
 
     private static final Pattern UNIT_PATTERN = Pattern.compile("(\\d*)([kmgtsKMGTS]?)");
+    /* since drbd 8.3 there is ro: instead of st: */
+    private static final Pattern DRBD_EVENT_STATE_PATTERN =
+            Pattern.compile("^(\\d+)\\s+ST\\s+(\\S+)\\s+\\{\\s+cs:(\\S+)\\s+"
+                            + "(?:st|ro):(\\S+)/(\\S+)\\s+ds:(\\S+)/(\\S+)\\s+(\\S+).*?");
+    /* 19 SP 0 16.9 */
+    private static final Pattern DRBD_EVENT_SYNC_PATTERN = Pattern.compile("^(\\d+)\\s+SP\\s+(\\S+)\\s(\\d+\\.\\d+).*");
+    /* 19 UH 1 split-brain */
+    private static final Pattern DRBD_EVENT_HELPER_PATTERN = Pattern.compile("^(\\d+)\\s+UH\\s+(\\S+)\\s([a-z-]+).*");
+    private static final Pattern DRBD_EVENT_DEV_PATTERN = Pattern.compile("^(\\d+),(\\S+)\\[(\\d+)]$");
     public static final String GLOBAL_SECTION = "global";
     public static final Value PROTOCOL_A = new StringValue("A", "A / Asynchronous");
     private static final Value PROTOCOL_B = new StringValue("B", "B / Semi-Synchronous");
@@ -408,11 +421,7 @@ public class DrbdXml {
     }
 
     public final String updateDrbdParameters(final Host host) {
-        final String command = host.getHostParser()
-                                   .getDistCommand("Drbd.getParameters", (ConvertCmdCallback) null);
-        final var ret = host.captureCommand(new ExecCommandConfig().command(command)
-                                                                   .silentCommand()
-                                                                   .silentOutput());
+        final var ret = host.captureHelperRequest("Agent.GetDrbdParameters", Ssh.DEFAULT_COMMAND_TIMEOUT);
         if (ret.getExitCode() != 0) {
             return null;
         }
@@ -466,12 +475,31 @@ public class DrbdXml {
                                                                    .silentCommand()
                                                                    .silentOutput());
         if (ret.getExitCode() == 0) {
-            final StringBuffer confSB = new StringBuffer(ret.getOutput());
-            return host.getHostParser().getOutput("drbd", confSB);
+            return getDrbdInfo(ret.getOutput());
         }
         return null;
     }
 
+    /**
+     * Returns the drbd info from the get-drbd-info output, the lines between
+     * the start line with the timestamp and the end line.
+     */
+    static String getDrbdInfo(final String output) {
+        if (output == null) {
+            return null;
+        }
+        final int start = output.indexOf(DRBD_INFO_START);
+        if (start < 0) {
+            return null;
+        }
+        final int startEol = output.indexOf('\n', start);
+        final int end = output.indexOf(DRBD_INFO_END, start);
+        if (startEol < 0 || end < startEol) {
+            return null;
+        }
+        return output.substring(startEol + 1, end);
+    }
+
     /**
      * Retrieves and updates all the data. This should be called if there is
      * a drbd event.
@@ -1296,12 +1324,11 @@ public class DrbdXml {
         } else {
             hostDrbdLoadedMap.put(hostName, true);
         }
-        /* since drbd 8.3 there is ro: instead of st: */
-        /* since drbd 8.4 there is ro: instead of st: */
-        Pattern p = Pattern.compile("^(\\d+)\\s+ST\\s+(\\S+)\\s+\\{\\s+cs:(\\S+)\\s+"
-                                    + "(?:st|ro):(\\S+)/(\\S+)\\s+ds:(\\S+)/(\\S+)\\s+(\\S+).*?");
-        Matcher m = p.matcher(output);
-        final Pattern pDev = Pattern.compile("^(\\d+),(\\S+)\\[(\\d+)]$");
+        final Optional<DrbdEvent> event = DrbdEvent.parse(output);
+        if (event.isPresent()) {
+            return parseDrbdEvent2(hostName, otherHostNames, drbdGraph, event.get());
+        }
+        Matcher m = DRBD_EVENT_STATE_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString  = m.group(2);
@@ -1312,7 +1339,7 @@ public class DrbdXml {
             final String ds2          = m.group(7);
             final String flags        = m.group(8);
 
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DRBD_EVENT_DEV_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
@@ -1339,15 +1366,13 @@ public class DrbdXml {
             }
             return false;
         }
-        /* 19 SP 0 16.9 */
-        p = Pattern.compile("^(\\d+)\\s+SP\\s+(\\S+)\\s(\\d+\\.\\d+).*");
-        m = p.matcher(output);
+        m = DRBD_EVENT_SYNC_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString = m.group(2);
             final String synced = m.group(3);
 
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DRBD_EVENT_DEV_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
@@ -1364,14 +1389,12 @@ public class DrbdXml {
             }
             return false;
         }
-        /* 19 UH 1 split-brain */
-        p = Pattern.compile("^(\\d+)\\s+UH\\s+(\\S+)\\s([a-z-]+).*");
-        m = p.matcher(output);
+        m = DRBD_EVENT_HELPER_PATTERN.matcher(output);
         if (m.matches()) {
             /* String counter      = m.group(1); // not used */
             final String devNrString = m.group(2);
             final String what = m.group(3);
-            final Matcher mDev = pDev.matcher(devNrString);
+            final Matcher mDev = DRBD_EVENT_DEV_PATTERN.matcher(devNrString);
             String devNr = devNrString;
             if (mDev.matches()) { /* since 8.4 */
                 devNr = mDev.group(1);
@@ -1392,155 +1415,111 @@ public class DrbdXml {
             }
             return false;
         }
+        return false;
+    }
 
-        boolean updateInfo = false;
-        p = Pattern.compile("^(?:create|change|exists) resource name:(\\S+)\\s+role:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String ro1 = m.group(2);
-            /* get blockdevice object from device */
-            final String disk = getBackingDiskByResName(resName, "0", hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice().setDrbdBackingDisk(disk);
-                    bdi.getBlockDevice().setNodeState(ro1);
-                    bdi.updateInfo();
-                    updateInfo = true;
-                }
-            }
+    /** Updates the block devices from the drbdsetup events2 event. */
+    private boolean parseDrbdEvent2(final String hostName,
+                                    final List<String> otherHostNames,
+                                    final DrbdGraph drbdGraph,
+                                    final DrbdEvent event) {
+        final String resName = event.getResourceName();
+        if (resName == null) {
+            return false;
         }
-        p = Pattern.compile("^(?:create|change|exists) device name:(\\S+)\\s+volume:(\\S+)\\s+minor(\\S+)\\s+backing_dev:(\\S+)\\s+disk:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String volume = m.group(2);
-            final String minor = m.group(3);
-            final String backingDev = m.group(4);
-            final String ds1 = m.group(5);
-            /* get blockdevice object from device */
-            final String disk = getBackingDiskByResName(resName, volume, hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice().setDrbdBackingDisk(disk);
-                    bdi.getBlockDevice().setDiskState(ds1);
-                    bdi.updateInfo();
-                    updateInfo = true;
-                }
+        final String otherHostName = otherHostNames.isEmpty() ? null : otherHostNames.get(0);
+        if (event.isState("device") || event.isState("peer-device")) {
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, event.getVolume(), hostName, drbdGraph);
+            if (bdi != null) {
+                bdi.getDrbdVolumeMetrics().record(event, System.currentTimeMillis());
             }
         }
-        p = Pattern.compile("^(?:create|change|exists) connection name:(\\S+).*?\\s+connection:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String cs = m.group(2);
-            /* get blockdevice object from device */
-            final String disk = getBackingDiskByResName(resName, "0", hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice().setDrbdBackingDisk(disk);
-                    bdi.getBlockDevice().setConnectionState(cs);
-                    bdi.updateInfo();
-                    updateInfo = true;
-                }
+        if (event.isState("resource")) {
+            final String ro1 = event.get("role");
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, "0", hostName, drbdGraph);
+            if (ro1 != null && bdi != null) {
+                bdi.getBlockDevice().setNodeState(ro1);
+                bdi.updateInfo();
+                return true;
             }
-        }
-        p = Pattern.compile("^(?:create|change|exists) connection name:(\\S+).*?\\s+role:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String ro2 = m.group(2);
-            /* get blockdevice object from device */
-            final String disk = getBackingDiskByResName(resName, "0", otherHostNames.get(0));
-            if (disk != null) {
-                val bdi = drbdGraph.findBlockDevInfo(otherHostNames.get(0), disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice().setDrbdBackingDisk(disk);
-                    bdi.getBlockDevice().setNodeState(ro2);
-                    bdi.updateInfo();
-                    updateInfo = true;
-                }
+        } else if (event.isState("device")) {
+            final String ds1 = event.get("disk");
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, event.getVolume(), hostName, drbdGraph);
+            if (ds1 != null && bdi != null) {
+                bdi.getBlockDevice().setDiskState(ds1);
+                bdi.updateInfo();
+                return true;
             }
-        }
-        p = Pattern.compile("^(?:create|change|exists) peer-device name:(\\S+).*?\\s+volume:(\\S+).*\\s+peer-disk:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String volume = m.group(2);
-            final String ds2 = m.group(3);
-            /* get blockdevice object from device */
-            final String otherDisk = getBackingDiskByResName(resName, volume, otherHostNames.get(0));
-            if (otherDisk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(otherHostNames.get(0), otherDisk);
-                if (bdi != null) {
-                    bdi.getBlockDevice()
-                       .setDrbdBackingDisk(otherDisk);
-                    bdi.getBlockDevice().setDiskState(ds2);
-                    bdi.updateInfo();
-                    updateInfo = true;
-                }
+        } else if (event.isState("connection")) {
+            boolean updateInfo = false;
+            final String cs = event.get("connection");
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, "0", hostName, drbdGraph);
+            if (cs != null && bdi != null) {
+                bdi.getBlockDevice().setConnectionState(cs);
+                bdi.updateInfo();
+                updateInfo = true;
             }
-        }
-        p = Pattern.compile("^(?:create|change|exists) peer-device name:(\\S+).*?\\s+volume:(\\S+).*?\\s+replication:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String volume = m.group(2);
-            final String replication = m.group(3);
-            final String disk = getBackingDiskByResName(resName, volume, hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice().setDrbdBackingDisk(disk);
+            final String ro2 = event.get("role");
+            final BlockDevInfo otherBdi = getEventBlockDevInfo(resName, "0", otherHostName, drbdGraph);
+            if (ro2 != null && otherBdi != null) {
+                otherBdi.getBlockDevice().setNodeState(ro2);
+                otherBdi.updateInfo();
+                updateInfo = true;
+            }
+            return updateInfo;
+        } else if (event.isState("peer-device")) {
+            boolean updateInfo = false;
+            final String ds2 = event.get("peer-disk");
+            final BlockDevInfo otherBdi = getEventBlockDevInfo(resName, event.getVolume(), otherHostName, drbdGraph);
+            if (ds2 != null && otherBdi != null) {
+                otherBdi.getBlockDevice().setDiskState(ds2);
+                otherBdi.updateInfo();
+                updateInfo = true;
+            }
+            final String replication = event.get("replication");
+            final String synced = event.get("done");
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, event.getVolume(), hostName, drbdGraph);
+            if ((replication != null || synced != null) && bdi != null) {
+                if (replication != null) {
                     bdi.getBlockDevice().setConnectionState(replication);
-                    bdi.updateInfo();
-                    updateInfo = true;
                 }
-            }
-        }
-        p = Pattern.compile("^(?:create|change|exists) peer-device name:(\\S+).*?\\s+volume:(\\S+).*?\\s+done:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String volume = m.group(2);
-            final String synced = m.group(3);
-            final String disk = getBackingDiskByResName(resName, volume, hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice()
-                       .setDrbdBackingDisk(disk);
+                if (synced != null) {
                     bdi.getBlockDevice().setSyncedProgressInPercents(synced);
-                    bdi.updateInfo();
-                    updateInfo = true;
                 }
+                bdi.updateInfo();
+                updateInfo = true;
             }
-        }
-        p = Pattern.compile("^(?:response|call) helper name:(\\S+).*?\\s+volume:(\\S+).*?\\s+helper:(\\S+).*");
-        m = p.matcher(output);
-        if (m.matches()) {
-            final String resName = m.group(1);
-            final String volume = m.group(2);
-            final String helper = m.group(3);
-            final String disk = getBackingDiskByResName(resName, volume, hostName);
-            if (disk != null) {
-                final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
-                if (bdi != null) {
-                    bdi.getBlockDevice()
-                       .setDrbdBackingDisk(disk);
-
-                    if ("split-brain".equals(helper)) {
-                        bdi.getBlockDevice().setSplitBrain(true);
-                    }
-                    bdi.updateInfo();
-                    updateInfo = true;
+            return updateInfo;
+        } else if (event.isHelper() && event.get("helper") != null) {
+            final BlockDevInfo bdi = getEventBlockDevInfo(resName, event.getVolume(), hostName, drbdGraph);
+            if (bdi != null) {
+                if ("split-brain".equals(event.get("helper"))) {
+                    bdi.getBlockDevice().setSplitBrain(true);
                 }
+                bdi.updateInfo();
+                return true;
             }
         }
-        return updateInfo;
+        return false;
+    }
+
+    /** Returns the block device of the event and sets its backing disk. Can return null. */
+    private BlockDevInfo getEventBlockDevInfo(final String resName,
+                                              final String volumeNr,
+                                              final String hostName,
+                                              final DrbdGraph drbdGraph) {
+        if (hostName == null) {
+            return null;
+        }
+        final String disk = getBackingDiskByResName(resName, volumeNr, hostName);
+        if (disk == null) {
+            return null;
+        }
+        final BlockDevInfo bdi = drbdGraph.findBlockDevInfo(hostName, disk);
+        if (bdi != null) {
+            bdi.getBlockDevice().setDrbdBackingDisk(disk);
+        }
+        return bdi;
     }
 
     /** Removes the resource from resources, so that it does not reappear. */
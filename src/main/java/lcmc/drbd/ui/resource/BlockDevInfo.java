@@ -45,6 +45,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
 import lcmc.Exceptions;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.widget.Check;
 import lcmc.cluster.ui.widget.Widget;
@@ -68,6 +69,7 @@ import lcmc.common.ui.utils.SwingUtils;
 import lcmc.common.ui.utils.UpdatableItem;
 import lcmc.drbd.domain.BlockDevice;
 import lcmc.drbd.domain.DRBDtestData;
+import lcmc.drbd.domain.DrbdVolumeMetrics;
 import lcmc.drbd.domain.DrbdXml;
 import lcmc.drbd.infrastructure.DRBD;
 import lcmc.drbd.ui.DrbdGraph;
@@ -111,15 +113,18 @@ public class BlockDevInfo extends EditableInfo {
     private final Application application;
     private final SwingUtils swingUtils;
     private final ClusterTreeMenu clusterTreeMenu;
+    private final HostFanOut hostFanOut;
 
     public BlockDevInfo(Application application, SwingUtils swingUtils, Access access, MainData mainData,
-            WidgetFactory widgetFactory, MainPanel mainPanel, BlockDevMenu blockDevMenu, ClusterTreeMenu clusterTreeMenu) {
+            WidgetFactory widgetFactory, MainPanel mainPanel, BlockDevMenu blockDevMenu, ClusterTreeMenu clusterTreeMenu,
+            HostFanOut hostFanOut) {
         super(application, swingUtils, access, mainData, widgetFactory);
         this.mainPanel = mainPanel;
         this.blockDevMenu = blockDevMenu;
         this.application = application;
         this.swingUtils = swingUtils;
         this.clusterTreeMenu = clusterTreeMenu;
+        this.hostFanOut = hostFanOut;
     }
 
     public void init(final String name, final BlockDevice blockDevice, final Browser browser) {
@@ -147,6 +152,11 @@ public class BlockDevInfo extends EditableInfo {
      * Cache for the info panel.
      */
     private JComponent infoPanel = null;
+    /**
+     * Statistics from the drbd events. The block device is created again
+     * with every hw info update, so that they are kept here.
+     */
+    private final DrbdVolumeMetrics drbdVolumeMetrics = new DrbdVolumeMetrics();
 
     /**
      * Returns object of the other block device that is connected via drbd to this block device.
@@ -890,9 +900,10 @@ public class BlockDevInfo extends EditableInfo {
                     getBrowser().getClusterBrowser().drbdStatusLock();
                     try {
                         getBrowser().getClusterBrowser().getGlobalInfo().createDrbdConfigLive();
-                        for (final Host h : getHost().getCluster().getHostsArray()) {
-                            DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-                        }
+                        hostFanOut.check("adjustApply",
+                                         getHost().getCluster().getHosts(),
+                                         h -> DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE) == 0)
+                                  .showErrors();
                         apply(Application.RunMode.LIVE);
                     } catch (final Exceptions.DrbdConfigException | UnknownHostException e1) {
                         LOG.appError("getInfoPanelBD: config failed", e1);
@@ -943,6 +954,10 @@ public class BlockDevInfo extends EditableInfo {
         return (BlockDevice) getResource();
     }
 
+    public DrbdVolumeMetrics getDrbdVolumeMetrics() {
+        return drbdVolumeMetrics;
+    }
+
     /** Removes this block device from drbd data structures. */
     public void removeFromDrbd() {
         setDrbd(false);
@@ -0,0 +1,156 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.drbd.ui.resource;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SpringLayout;
+import javax.swing.Timer;
+import javax.swing.border.TitledBorder;
+
+import lcmc.cluster.ui.ClusterBrowser;
+import lcmc.common.domain.util.Tools;
+import lcmc.common.ui.SpringUtilities;
+import lcmc.drbd.domain.DrbdVolumeMetrics;
+import lcmc.drbd.domain.DrbdVolumeMetrics.Metric;
+
+/**
+ * Shows the history of the drbd statistics of the block devices as
+ * sparklines. The statistics are collected from the drbd events, the panel
+ * only repaints them, while it is shown.
+ */
+final class DrbdMetricsPanel extends JPanel {
+    private static final int REPAINT_INTERVAL = 2000;
+    private static final int SPARKLINE_WIDTH = DrbdVolumeMetrics.CAPACITY;
+    private static final int SPARKLINE_HEIGHT = 16;
+    private static final Color SPARKLINE_COLOR = new Color(0, 96, 192);
+
+    private final List<Runnable> updates = new ArrayList<>();
+    private final Timer timer = new Timer(REPAINT_INTERVAL, e -> update());
+
+    DrbdMetricsPanel(final String title, final Iterable<BlockDevInfo> blockDevInfos) {
+        setBackground(ClusterBrowser.PANEL_BACKGROUND);
+        setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
+        setAlignmentX(java.awt.Component.LEFT_ALIGNMENT);
+        final TitledBorder titledBorder = BorderFactory.createTitledBorder(title);
+        titledBorder.setTitleJustification(TitledBorder.LEFT);
+        setBorder(titledBorder);
+        for (final BlockDevInfo bdi : blockDevInfos) {
+            add(createHostPanel(bdi));
+        }
+        update();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        timer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        timer.stop();
+        super.removeNotify();
+    }
+
+    private JPanel createHostPanel(final BlockDevInfo bdi) {
+        final DrbdVolumeMetrics metrics = bdi.getDrbdVolumeMetrics();
+        final JPanel panel = new JPanel(new SpringLayout());
+        panel.setBackground(ClusterBrowser.PANEL_BACKGROUND);
+        panel.setAlignmentX(java.awt.Component.LEFT_ALIGNMENT);
+        panel.add(new JLabel(bdi.getHost().getName()));
+        panel.add(new JLabel(""));
+        panel.add(new JLabel(""));
+        for (final Metric metric : Metric.values()) {
+            final Sparkline sparkline = new Sparkline();
+            final JLabel valueLabel = new JLabel();
+            panel.add(new JLabel(Tools.getString("DrbdMetricsPanel." + metric.name())));
+            panel.add(sparkline);
+            panel.add(valueLabel);
+            updates.add(() -> {
+                final double[] values = metrics.getValues(metric);
+                sparkline.setValues(values);
+                valueLabel.setText(values.length == 0
+                                   ? "" : String.format(Locale.ENGLISH, "%.0f", values[values.length - 1]));
+            });
+        }
+        SpringUtilities.makeCompactGrid(panel, Metric.values().length + 1, 3, /* rows, cols */
+                                               1, 1,                          /* initX, initY */
+                                               4, 1);                         /* xPad, yPad */
+        return panel;
+    }
+
+    private void update() {
+        for (final Runnable update : updates) {
+            update.run();
+        }
+    }
+
+    /** Line of the values scaled to its height, without axes and labels. */
+    private static final class Sparkline extends JComponent {
+        private double[] values = new double[0];
+
+        Sparkline() {
+            final Dimension size = new Dimension(SPARKLINE_WIDTH, SPARKLINE_HEIGHT);
+            setPreferredSize(size);
+            setMinimumSize(size);
+            setMaximumSize(size);
+        }
+
+        void setValues(final double[] values) {
+            this.values = values;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g) {
+            final double[] v = values;
+            if (v.length < 2) {
+                return;
+            }
+            double max = 0;
+            for (final double value : v) {
+                max = Math.max(max, value);
+            }
+            final int width = getWidth();
+            final int height = getHeight() - 1;
+            final int[] xs = new int[v.length];
+            final int[] ys = new int[v.length];
+            for (int i = 0; i < v.length; i++) {
+                xs[i] = width - v.length + i;
+                ys[i] = max > 0 ? height - (int) (v[i] * height / max) : height;
+            }
+            g.setColor(SPARKLINE_COLOR);
+            g.drawPolyline(xs, ys, v.length);
+        }
+    }
+}
@@ -51,6 +51,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
 
 import lcmc.Exceptions;
 import lcmc.cluster.domain.Cluster;
+import lcmc.cluster.infrastructure.ssh.FileUpload;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.widget.Check;
 import lcmc.cluster.ui.widget.Widget;
@@ -107,12 +109,13 @@ public class GlobalInfo extends AbstractDrbdInfo {
     private final SwingUtils swingUtils;
     private final ClusterTreeMenu clusterTreeMenu;
     private final Dialogs dialogs;
+    private final HostFanOut hostFanOut;
 
     public GlobalInfo(Application application, SwingUtils swingUtils, Access access, MainData mainData, WidgetFactory widgetFactory,
             GlobalMenu globalMenu, HostFactory hostFactory, Provider<VolumeInfo> volumeInfoProvider,
             Provider<AddDrbdConfigDialog> addDrbdConfigDialogProvider, Provider<ProxyHostInfo> proxyHostInfoProvider,
             Provider<ResourceInfo> resourceInfoProvider, Provider<DrbdXml> drbdXmlProvider, ClusterTreeMenu clusterTreeMenu,
-            Dialogs dialogs) {
+            Dialogs dialogs, HostFanOut hostFanOut) {
         super(application, swingUtils, access, mainData, widgetFactory);
         this.application = application;
         this.globalMenu = globalMenu;
@@ -125,6 +128,7 @@ public class GlobalInfo extends AbstractDrbdInfo {
         this.swingUtils = swingUtils;
         this.clusterTreeMenu = clusterTreeMenu;
         this.dialogs = dialogs;
+        this.hostFanOut = hostFanOut;
     }
 
     public void einit(final String name, final Browser browser) {
@@ -378,9 +382,10 @@ public class GlobalInfo extends AbstractDrbdInfo {
                 getBrowser().drbdStatusLock();
                 try {
                     createDrbdConfigLive();
-                    for (final Host h : getCluster().getHosts()) {
-                        DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, RunMode.LIVE);
-                    }
+                    hostFanOut.check("adjustApply",
+                                     getCluster().getHosts(),
+                                     h -> DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, RunMode.LIVE) == 0)
+                              .showErrors();
                     apply(RunMode.LIVE);
                 } catch (final Exceptions.DrbdConfigException | UnknownHostException dce) {
                     LOG.appError("getInfoPanel: config failed", dce);
@@ -802,6 +807,8 @@ public class GlobalInfo extends AbstractDrbdInfo {
         /* resources */
         final Collection<Host> hosts = new LinkedHashSet<>(getCluster().getHosts());
         hosts.addAll(getCluster().getProxyHosts());
+        /* the configs are made one host after another, but uploaded at once */
+        final Map<Host, Runnable> uploads = new LinkedHashMap<>();
         for (final Host host : hosts) {
             final StringBuilder globalConfig = new StringBuilder(160);
             globalConfig.append("## generated by drbd-gui\n\n");
@@ -885,69 +892,78 @@ public class GlobalInfo extends AbstractDrbdInfo {
                     preCommand = "cp -r /etc/drbd.d{,.bak.`date +'%s'`} 2>/dev/null";
                 }
             }
-            if (bigDRBDConf) {
-                /* one big drbd.conf */
-                host.getSSH().createConfig(globalConfig
-                                           + commonSectionConfig
-                                           + "\n\n"
-                                           + Tools.join("\n", resConfigs.values()),
-                                           configName,
-                                           dir,
-                                           "0600",
-                                           makeBackup,
-                                           preCommand,
-                                           null);
-            } else {
-                /* global */
-                host.getSSH().createConfig(globalConfig + commonSectionConfig,
-                                           "global_common.conf",
-                                           dir + "drbd.d.temp/",
-                                           "0600",
-                                           false,
-                                           preCommand,
-                                           null);
-                /* *.res */
-                for (final String resConfigName : resConfigs.keySet()) {
-                    host.getSSH().createConfig(
-                                   resConfigs.get(resConfigName),
-                                   resConfigName + ".res",
-                                   dir + "drbd.d.temp/",
-                                   "0600",
-                                   false,
-                                   null,
-                                   null);
-                }
-                /* drbd.conf */
-                final StringBuilder tempDRBDConf = new StringBuilder(200);
-                /* drbd.conf.temp -> drbd.d/ */
-                tempDRBDConf.append("## generated by drbd-gui\n\n")
-                            .append("include \"drbd.d/global_common.conf\";\n")
-                            .append("include \"drbd.d/*.res\";");
-                host.getSSH().createConfig(tempDRBDConf.toString(),
-                                           configName + ".temp",
-                                           dir,
-                                           "0600",
-                                           false,
-                                           null,
-                                           null);
-                final StringBuilder drbdConf = new StringBuilder(200);
-                /* drbd.conf -> drbd.d.temp/ (new config) */
-                drbdConf.append("## generated by drbd-gui\n\n");
-                drbdConf.append("include \"drbd.d.temp/global_common.conf\";\n");
-                drbdConf.append("include \"drbd.d.temp/*.res\";");
-                host.getSSH().createConfig(
-                               drbdConf.toString(),
-                               configName,
-                               dir,
-                               "0600",
-                               makeBackup,
-                               null,
-                               "rm -rf /etc/drbd.d 2>/dev/null; "
-                               + "cp -r /etc/drbd.d{.temp,} && "
-                               + "mv /etc/drbd.conf{.temp,} && "
-                               + "rm -rf /etc/drbd.d.temp/");
-                               /* all this is to stay atomic. */
+            final String globalAndCommonConfig = globalConfig + commonSectionConfig;
+            final boolean oneConfigFile = bigDRBDConf;
+            uploads.put(host, () -> uploadDrbdConfig(host,
+                                                     globalAndCommonConfig,
+                                                     resConfigs,
+                                                     oneConfigFile,
+                                                     dir,
+                                                     configName,
+                                                     makeBackup,
+                                                     preCommand));
+        }
+        hostFanOut.run("createDrbdConfig", uploads.keySet(), host -> uploads.get(host).run()).showErrors();
+    }
+
+    /** Uploads the drbd config to the host. */
+    private void uploadDrbdConfig(final Host host,
+                                  final String globalAndCommonConfig,
+                                  final Map<String, String> resConfigs,
+                                  final boolean bigDRBDConf,
+                                  final String dir,
+                                  final String configName,
+                                  final boolean makeBackup,
+                                  final String preCommand) {
+        if (bigDRBDConf) {
+            /* one big drbd.conf */
+            host.getSSH().createConfig(globalAndCommonConfig
+                                       + "\n\n"
+                                       + Tools.join("\n", resConfigs.values()),
+                                       configName,
+                                       dir,
+                                       "0600",
+                                       makeBackup,
+                                       preCommand,
+                                       null);
+        } else {
+            /* all the files are uploaded in one go */
+            final List<FileUpload> uploads = new ArrayList<>();
+            /* global */
+            uploads.add(new FileUpload().text(globalAndCommonConfig)
+                                        .remoteFilename(dir + "drbd.d.temp/global_common.conf")
+                                        .mode("0600")
+                                        .preCommand(preCommand));
+            /* *.res */
+            for (final Map.Entry<String, String> resConfig : resConfigs.entrySet()) {
+                uploads.add(new FileUpload().text(resConfig.getValue())
+                                            .remoteFilename(dir + "drbd.d.temp/" + resConfig.getKey() + ".res")
+                                            .mode("0600"));
             }
+            /* drbd.conf */
+            final StringBuilder tempDRBDConf = new StringBuilder(200);
+            /* drbd.conf.temp -> drbd.d/ */
+            tempDRBDConf.append("## generated by drbd-gui\n\n")
+                        .append("include \"drbd.d/global_common.conf\";\n")
+                        .append("include \"drbd.d/*.res\";");
+            uploads.add(new FileUpload().text(tempDRBDConf.toString())
+                                        .remoteFilename(dir + configName + ".temp")
+                                        .mode("0600"));
+            final StringBuilder drbdConf = new StringBuilder(200);
+            /* drbd.conf -> drbd.d.temp/ (new config) */
+            drbdConf.append("## generated by drbd-gui\n\n");
+            drbdConf.append("include \"drbd.d.temp/global_common.conf\";\n");
+            drbdConf.append("include \"drbd.d.temp/*.res\";");
+            uploads.add(new FileUpload().text(drbdConf.toString())
+                                        .remoteFilename(dir + configName)
+                                        .mode("0600")
+                                        .makeBackup(makeBackup)
+                                        .postCommand("rm -rf /etc/drbd.d 2>/dev/null; "
+                                                     + "cp -r /etc/drbd.d{.temp,} && "
+                                                     + "mv /etc/drbd.conf{.temp,} && "
+                                                     + "rm -rf /etc/drbd.d.temp/"));
+                                                     /* all this is to stay atomic. */
+            host.getSSH().upload(uploads);
         }
     }
 
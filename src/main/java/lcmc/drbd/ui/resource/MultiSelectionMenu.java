@@ -34,6 +34,7 @@ import javax.inject.Named;
 import javax.inject.Provider;
 import javax.swing.JColorChooser;
 
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.domain.AccessMode;
 import lcmc.common.domain.Application;
@@ -69,10 +70,11 @@ public class MultiSelectionMenu {
     private final Provider<VGCreate> vgCreateProvider;
     private final Provider<VGRemove> vgRemoveProvider;
     private final Provider<LVCreate> lvCreateProvider;
+    private final HostFanOut hostFanOut;
 
     public MultiSelectionMenu(MainData mainData, ProgressIndicator progressIndicator, MenuFactory menuFactory,
             Application application, Access access, Provider<VGCreate> vgCreateProvider, Provider<VGRemove> vgRemoveProvider,
-            Provider<LVCreate> lvCreateProvider) {
+            Provider<LVCreate> lvCreateProvider, HostFanOut hostFanOut) {
         this.mainData = mainData;
         this.progressIndicator = progressIndicator;
         this.menuFactory = menuFactory;
@@ -81,6 +83,7 @@ public class MultiSelectionMenu {
         this.vgCreateProvider = vgCreateProvider;
         this.vgRemoveProvider = vgRemoveProvider;
         this.lvCreateProvider = lvCreateProvider;
+        this.hostFanOut = hostFanOut;
     }
 
     public List<UpdatableItem> getPulldownMenu(final MultiSelectionInfo multiSelectionInfo, final List<Info> selectedInfos) {
@@ -123,9 +126,7 @@ public class MultiSelectionMenu {
             }
             return null;
         }).addAction(text -> {
-            for (final HostDrbdInfo hi : selectedHostInfos) {
-                DRBD.load(hi.getHost(), Application.RunMode.LIVE);
-            }
+            hostFanOut.check("load", getHosts(selectedHostInfos), h -> DRBD.load(h, Application.RunMode.LIVE)).showErrors();
             for (final HostDrbdInfo hi : selectedHostInfos) {
                 getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
             }
@@ -143,9 +144,10 @@ public class MultiSelectionMenu {
             }
             return null;
         }).addAction(text -> {
-            for (final HostDrbdInfo hi : selectedHostInfos) {
-                DRBD.adjustApply(hi.getHost(), DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-            }
+            hostFanOut.check("adjustApply",
+                             getHosts(selectedHostInfos),
+                             h -> DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE) == 0)
+                      .showErrors();
             for (final HostDrbdInfo hi : selectedHostInfos) {
                 getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
             }
@@ -170,9 +172,10 @@ public class MultiSelectionMenu {
             }
             return null;
         }).addAction(text -> {
-            for (final HostDrbdInfo hi : selectedHostInfos) {
-                DRBD.up(hi.getHost(), DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-            }
+            hostFanOut.check("up",
+                             getHosts(selectedHostInfos),
+                             h -> DRBD.up(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE))
+                      .showErrors();
         });
         items.add(upAllItem);
         final ButtonCallback upAllItemCallback = getBrowser().new DRBDMenuItemCallback(getBrowser().getDCHost()).addAction(host -> {
@@ -193,9 +196,8 @@ public class MultiSelectionMenu {
             }
             return false;
         }).addAction(text -> {
-            for (final HostDrbdInfo hi : selectedHostInfos) {
-                DRBD.stopProxy(hi.getHost(), Application.RunMode.LIVE);
-            }
+            hostFanOut.run("stopProxy", getHosts(selectedHostInfos), h -> DRBD.stopProxy(h, Application.RunMode.LIVE))
+                      .showErrors();
             for (final HostDrbdInfo hi : selectedHostInfos) {
                 getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
             }
@@ -213,9 +215,8 @@ public class MultiSelectionMenu {
             }
             return false;
         }).addAction(text -> {
-            for (final HostDrbdInfo hi : selectedHostInfos) {
-                DRBD.startProxy(hi.getHost(), Application.RunMode.LIVE);
-            }
+            hostFanOut.run("startProxy", getHosts(selectedHostInfos), h -> DRBD.startProxy(h, Application.RunMode.LIVE))
+                      .showErrors();
             for (final HostDrbdInfo hi : selectedHostInfos) {
                 getBrowser().updateHWInfo(hi.getHost(), !Host.UPDATE_LVM);
             }
@@ -240,6 +241,15 @@ public class MultiSelectionMenu {
         items.add(changeHostColorItem);
     }
 
+    /** Returns the hosts of the host infos. */
+    private static List<Host> getHosts(final Iterable<HostDrbdInfo> hostInfos) {
+        final List<Host> hosts = new ArrayList<>();
+        for (final HostDrbdInfo hi : hostInfos) {
+            hosts.add(hi.getHost());
+        }
+        return hosts;
+    }
+
     /** Returns 'PV create' menu item. */
     private UpdatableItem getPVCreateItem(final Iterable<BlockDevInfo> selectedBlockDevInfos) {
         return menuFactory.createMenuItem(Tools.getString("MultiSelectionInfo.PVCreate"), null,
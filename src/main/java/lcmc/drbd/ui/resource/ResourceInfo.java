@@ -51,6 +51,7 @@ import javax.swing.SpringLayout;
 
 import lcmc.Exceptions;
 import lcmc.cluster.domain.NetworkService;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.resource.ClusterViewFactory;
 import lcmc.cluster.ui.resource.NetInfo;
@@ -179,10 +180,12 @@ public class ResourceInfo extends AbstractDrbdInfo {
     private final ClusterTreeMenu clusterTreeMenu;
     private final NetworkService networkService;
     private final ClusterViewFactory clusterViewFactory;
+    private final HostFanOut hostFanOut;
 
     public ResourceInfo(Application application, SwingUtils swingUtils, Access access, MainData mainData,
             WidgetFactory widgetFactory, ResourceMenu resourceMenu, Provider<ProxyNetInfo> proxyNetInfoProvider,
-            ClusterTreeMenu clusterTreeMenu, NetworkService networkService, ClusterViewFactory clusterViewFactory) {
+            ClusterTreeMenu clusterTreeMenu, NetworkService networkService, ClusterViewFactory clusterViewFactory,
+            HostFanOut hostFanOut) {
         super(application, swingUtils, access, mainData, widgetFactory);
         this.application = application;
         this.swingUtils = swingUtils;
@@ -192,6 +195,7 @@ public class ResourceInfo extends AbstractDrbdInfo {
         this.clusterTreeMenu = clusterTreeMenu;
         this.networkService = networkService;
         this.clusterViewFactory = clusterViewFactory;
+        this.hostFanOut = hostFanOut;
     }
 
     public void init(final String name, final Set<Host> hosts, final Browser browser) {
@@ -565,9 +569,10 @@ public class ResourceInfo extends AbstractDrbdInfo {
                 getBrowser().drbdStatusLock();
                 try {
                     globalInfo.createDrbdConfigLive();
-                    for (final Host h : getHosts()) {
-                        DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-                    }
+                    hostFanOut.check("adjustApply",
+                                     getHosts(),
+                                     h -> DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE) == 0)
+                              .showErrors();
                     apply(Application.RunMode.LIVE);
                 } catch (final Exceptions.DrbdConfigException | UnknownHostException dce) {
                     LOG.appError("getInfoPanel: config failed", dce);
@@ -596,6 +601,9 @@ public class ResourceInfo extends AbstractDrbdInfo {
         addRevertButton(buttonPanel);
 
         mainPanel.add(optionsPanel);
+        for (final VolumeInfo dvi : drbdVolumes) {
+            mainPanel.add(new DrbdMetricsPanel(dvi.getMetricsTitle(), dvi.getBlockDevInfos()));
+        }
 
         final JPanel newPanel = new JPanel();
         newPanel.setBackground(ClusterBrowser.PANEL_BACKGROUND);
@@ -45,6 +45,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 
 import lcmc.Exceptions;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.resource.CommonDeviceInterface;
 import lcmc.cluster.ui.widget.Check;
@@ -157,10 +158,11 @@ public class VolumeInfo extends EditableInfo implements CommonDeviceInterface {
     private final VolumeMenu volumeMenu;
     private final Provider<DrbdLogs> drbdLogsProvider;
     private final ClusterTreeMenu clusterTreeMenu;
+    private final HostFanOut hostFanOut;
 
     public VolumeInfo(Application application, SwingUtils swingUtils, Access access, MainData mainData, WidgetFactory widgetFactory,
             AddDrbdSplitBrainDialog addDrbdSplitBrainDialog, Provider<DrbdXml> drbdXmlProvider, VolumeMenu volumeMenu,
-            Provider<DrbdLogs> drbdLogsProvider, ClusterTreeMenu clusterTreeMenu) {
+            Provider<DrbdLogs> drbdLogsProvider, ClusterTreeMenu clusterTreeMenu, HostFanOut hostFanOut) {
         super(application, swingUtils, access, mainData, widgetFactory);
         this.addDrbdSplitBrainDialog = addDrbdSplitBrainDialog;
         this.drbdXmlProvider = drbdXmlProvider;
@@ -169,6 +171,7 @@ public class VolumeInfo extends EditableInfo implements CommonDeviceInterface {
         this.volumeMenu = volumeMenu;
         this.drbdLogsProvider = drbdLogsProvider;
         this.clusterTreeMenu = clusterTreeMenu;
+        this.hostFanOut = hostFanOut;
     }
 
     void init(final String name, final String device, final ResourceInfo resourceInfo, final List<BlockDevInfo> blockDevInfos,
@@ -296,9 +299,10 @@ public class VolumeInfo extends EditableInfo implements CommonDeviceInterface {
                 getBrowser().drbdStatusLock();
                 try {
                     getBrowser().getGlobalInfo().createDrbdConfigLive();
-                    for (final Host h : getHosts()) {
-                        DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE);
-                    }
+                    hostFanOut.check("adjustApply",
+                                     getHosts(),
+                                     h -> DRBD.adjustApply(h, DRBD.ALL_DRBD_RESOURCES, null, Application.RunMode.LIVE) == 0)
+                              .showErrors();
                     apply(Application.RunMode.LIVE);
                 } catch (final Exceptions.DrbdConfigException | UnknownHostException dce) {
                     LOG.appError("getInfoPanelVolume: config failed", dce);
@@ -327,6 +331,7 @@ public class VolumeInfo extends EditableInfo implements CommonDeviceInterface {
         addRevertButton(buttonPanel);
 
         mainPanel.add(optionsPanel);
+        mainPanel.add(new DrbdMetricsPanel(getMetricsTitle(), getBlockDevInfos()));
 
         final JPanel newPanel = new JPanel();
         newPanel.setBackground(ClusterBrowser.PANEL_BACKGROUND);
@@ -358,6 +363,10 @@ public class VolumeInfo extends EditableInfo implements CommonDeviceInterface {
         }
     }
 
+    String getMetricsTitle() {
+        return Tools.getString("DrbdMetricsPanel.Title").replaceAll("@VOLUME@", getName());
+    }
+
     /** Return all block devices of this volume. */
     public Iterable<BlockDevInfo> getBlockDevInfos() {
         return blockDevInfos;
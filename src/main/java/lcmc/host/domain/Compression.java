@@ -0,0 +1,68 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.host.domain;
+
+/**
+ * Compression of the data, that come from the host. The ssh compression
+ * compresses everything in the connection, the frame compression only the
+ * bigger frames of the gui helper agent, like the cib or the drbd and vm
+ * xml. The frame compression is negotiated with the agent, if the host
+ * can't do it, the frames are sent uncompressed.
+ */
+public enum Compression {
+    NONE("none", false, false),
+    SSH("ssh", true, false),
+    FRAMES("frames", false, true),
+    ALL("all", true, true);
+
+    private final String name;
+    private final boolean ssh;
+    private final boolean frames;
+
+    Compression(final String name, final boolean ssh, final boolean frames) {
+        this.name = name;
+        this.ssh = ssh;
+        this.frames = frames;
+    }
+
+    /** Returns the compression from the config or the command line, null if it's unknown. */
+    public static Compression fromName(final String name) {
+        for (final Compression compression : values()) {
+            if (compression.name.equals(name)) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSsh() {
+        return ssh;
+    }
+
+    public boolean isFrames() {
+        return frames;
+    }
+}
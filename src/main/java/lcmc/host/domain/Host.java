@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -39,6 +40,9 @@ import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.domain.storage.BlockDeviceService;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
 import lcmc.cluster.infrastructure.ssh.ExecCommandThread;
+import lcmc.cluster.infrastructure.ssh.FrameCallback;
+import lcmc.cluster.infrastructure.ssh.HelperAgent;
+import lcmc.cluster.infrastructure.ssh.HelperStream;
 import lcmc.cluster.infrastructure.ssh.Ssh;
 import lcmc.cluster.infrastructure.ssh.SshOutput;
 import lcmc.cluster.ui.ClusterBrowser;
@@ -47,7 +51,6 @@ import lcmc.common.domain.Application;
 import lcmc.common.domain.ConnectionCallback;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.ExecCallback;
-import lcmc.common.domain.NewOutputCallback;
 import lcmc.common.domain.Unit;
 import lcmc.common.domain.Value;
 import lcmc.common.domain.util.Tools;
@@ -95,8 +98,9 @@ public class Host implements Comparable<Host>, Value {
     public static final String PROXY_NOT_CONNECTED_MENU_TOOLTIP_TEXT = "not connected to the proxy host";
     /** Timeout after which the connection is considered to be dead. */
     private static final int PING_TIMEOUT = 40000;
-    private static final int DRBD_EVENTS_TIMEOUT = 40000;
-    private static final int CLUSTER_EVENTS_TIMEOUT = 40000;
+    /** Cluster events that come within the quiet period are coalesced. */
+    private static final int CLUSTER_EVENTS_QUIET_PERIOD = Tools.getDefaultInt("ClusterEvents.QuietPeriod");
+    private static final int CLUSTER_EVENTS_MAX_LATENCY = Tools.getDefaultInt("ClusterEvents.MaxLatency");
 
     public static final String DEFAULT_HOSTNAME = "unknown";
 
@@ -119,10 +123,13 @@ public class Host implements Comparable<Host>, Value {
     private String username = null;
     private Color defaultHostColorInGraph;
     private Color savedHostColorInGraphs;
-    private ExecCommandThread drbdStatusThread = null;
-    private ExecCommandThread crmStatusThread = null;
+    private HelperStream drbdStatusStream = null;
+    private HelperStream crmStatusStream = null;
+    /** Runs the status streams over one ssh session. */
+    private HelperAgent helperAgent = null;
     private String sshPort = null;
     private Boolean useSudo = null;
+    private Compression compression = Compression.NONE;
     private String sudoPassword = "";
     /**
      * A gate that is used to synchronize the loading sequence.
@@ -142,6 +149,9 @@ public class Host implements Comparable<Host>, Value {
     private boolean inCluster = false;
 
     private boolean crmStatusOk = false;
+    /** Identifies the control file of the gui helper daemons. */
+    private final String helperControlId = UUID.randomUUID().toString();
+    private volatile PollingMode pollingMode = PollingMode.FOREGROUND;
 
     public void init() {
         if (allHosts.size() == 1) {
@@ -336,6 +346,37 @@ public class Host implements Comparable<Host>, Value {
         }
     }
 
+    /** Shows the failure on this host in the progress indicator. */
+    public void progressIndicatorFailed(final String text) {
+        progressIndicator.progressIndicatorFailed(getName(), text);
+    }
+
+    /**
+     * Runs the helper action in the gui helper agent and returns its output.
+     * The command string is a dist command with the action.
+     */
+    public SshOutput captureHelperRequest(final String commandString, final int timeoutMillis) {
+        return captureHelperRequest(commandString, null, timeoutMillis);
+    }
+
+    public SshOutput captureHelperRequest(final String commandString,
+                                          final ConvertCmdCallback convertCmdCallback,
+                                          final int timeoutMillis) {
+        return getHelperAgent().request(commandString, convertCmdCallback, timeoutMillis);
+    }
+
+    public SshOutput captureHelperRequestProgressIndicator(final String text,
+                                                           final String commandString,
+                                                           final int timeoutMillis) {
+        final String hostName = getName();
+        progressIndicator.startProgressIndicator(hostName, text);
+        try {
+            return captureHelperRequest(commandString, timeoutMillis);
+        } finally {
+            progressIndicator.stopProgressIndicator(hostName, text);
+        }
+    }
+
     public void execCommandProgressIndicator(final String text, final ExecCommandConfig execCommandConfig) {
         final String hostName = getName();
         progressIndicator.startProgressIndicator(hostName, text);
@@ -354,22 +395,32 @@ public class Host implements Comparable<Host>, Value {
         ssh.execCommand(execCommandConfig.inBash(true).inSudo(true));
     }
 
+    /** Returns the gui helper agent, that runs the status streams. */
+    public synchronized HelperAgent getHelperAgent() {
+        if (helperAgent == null) {
+            helperAgent = new HelperAgent(this, ssh);
+        }
+        return helperAgent;
+    }
+
+    /** Stops the gui helper agent, if it runs, it is started again with the next stream. */
+    public synchronized void stopHelperAgent() {
+        if (helperAgent != null) {
+            helperAgent.stop();
+        }
+    }
+
     /**
      * Executes get status command which runs in the background and updates the
      * block device object. The command is 'drbdsetup /dev/drbdX events'
-     * The session is stored, so that in can be stopped with 'stop' button.
+     * The stream is stored, so that in can be stopped with 'stop' button.
      */
-    public void execDrbdStatusCommand(final ExecCallback execCallback, final NewOutputCallback outputCallback) {
-        if (drbdStatusThread == null) {
-            drbdStatusThread = ssh.execCommand(new ExecCommandConfig()
-                                                   .commandString("DRBD.getDrbdStatus")
-                                                   .inBash(false)
-                                                   .inSudo(false)
-                                                   .execCallback(execCallback)
-                                                   .newOutputCallback(outputCallback)
-                                                   .silentCommand()
-                                                   .silentOutput()
-                                                   .sshCommandTimeout(DRBD_EVENTS_TIMEOUT));
+    public void execDrbdStatusCommand(final ExecCallback execCallback, final FrameCallback frameCallback) {
+        if (drbdStatusStream == null) {
+            drbdStatusStream = getHelperAgent().startStream("Agent.DrbdEvents",
+                                                            null,
+                                                            execCallback,
+                                                            frameCallback);
         } else {
             LOG.appWarning("execDrbdStatusCommand: trying to start started drbd status");
         }
@@ -377,66 +428,56 @@ public class Host implements Comparable<Host>, Value {
 
     /** Stops drbd status background process. */
     public void stopDrbdStatus() {
-        final ExecCommandThread dst = drbdStatusThread;
+        final HelperStream dst = drbdStatusStream;
         if (dst == null) {
             LOG.appWarning("execDrbdStatusCommand: trying to stop stopped drbd status");
             return;
         }
-        dst.cancelTheSession();
-        drbdStatusThread = null;
+        dst.cancel();
+        drbdStatusStream = null;
     }
 
     public void waitForDrbdStatusFinish() {
-        final ExecCommandThread dst = drbdStatusThread;
+        final HelperStream dst = drbdStatusStream;
         if (dst != null) {
-            try {
-                /* it probably hangs after this timeout, so it will be
-                 * killed. */
-                dst.join();
-            } catch (final InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            /* it fails, if the agent times out. */
+            dst.block();
             stopDrbdStatus();
         }
     }
 
     public void execCrmStatusCommand(final ExecCallback execCallback,
-                                     final NewOutputCallback outputCallback) {
-        if (crmStatusThread == null) {
-            crmStatusThread = ssh.execCommand(new ExecCommandConfig()
-                                                 .commandString("Heartbeat.getClStatus")
-                                                 .inBash(false)
-                                                 .inSudo(false)
-                                                 .execCallback(execCallback)
-                                                 .newOutputCallback(outputCallback)
-                                                 .silentCommand()
-                                                 .silentOutput()
-                                                 .sshCommandTimeout(CLUSTER_EVENTS_TIMEOUT));
+                                     final FrameCallback frameCallback) {
+        if (crmStatusStream == null) {
+            crmStatusStream = getHelperAgent().startStream("Agent.ClusterEvents",
+                                                           command -> command
+                                                                   .replaceAll("@QUIET-PERIOD@",
+                                                                               Integer.toString(CLUSTER_EVENTS_QUIET_PERIOD))
+                                                                   .replaceAll("@MAX-LATENCY@",
+                                                                               Integer.toString(CLUSTER_EVENTS_MAX_LATENCY)),
+                                                           execCallback,
+                                                           frameCallback);
         } else {
             LOG.appWarning("execClStatusCommand: trying to start started status");
         }
     }
 
     public void waitForCrmStatusFinish() {
-        final ExecCommandThread cst = crmStatusThread;
+        final HelperStream cst = crmStatusStream;
         if (cst == null) {
             return;
         }
-        try {
-            cst.join();
-        } catch (final InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-        crmStatusThread = null;
+        cst.block();
+        crmStatusStream = null;
     }
 
     public void stopCrmStatus() {
-        final ExecCommandThread cst = crmStatusThread;
+        final HelperStream cst = crmStatusStream;
         if (cst == null) {
             LOG.appWarning("stopClStatus: trying to stop stopped status");
             return;
         }
-        cst.cancelTheSession();
+        cst.cancel();
     }
 
     /** Gets ipAddress. There can be more ips, delimited with "," */
@@ -500,57 +541,6 @@ public class Host implements Comparable<Host>, Value {
         }
     }
 
-    /**
-     * Returns command with all the sshs that will be hopped.
-     *
-     * ssh -A   -tt -l root x.x.x.x "ssh -A   -tt -l root x.x.x.x \"ssh
-     * -A   -tt -l root x.x.x.x \\\"ls\\\"\""
-     */
-    public String getHoppedCommand(final String command) {
-        final int hops = Tools.charCount(ipAddress, ',') + 1;
-        final String[] usernames = username.split(",");
-        final String[] ipsA = ipAddress.split(",");
-        final StringBuilder s = new StringBuilder(200);
-        if (hops > 1) {
-            String sshAgentPid = "";
-            String sshAgentSock = "";
-            final Map<String, String> variables = System.getenv();
-            for (final String var : variables.keySet()) {
-                final String value = variables.get(var);
-                if ("SSH_AGENT_PID".equals(var)) {
-                    sshAgentPid = value;
-                } else if ("SSH_AUTH_SOCK".equals(var)) {
-                    sshAgentSock = value;
-                }
-            }
-
-            s.append("SSH_AGENT_PID=");
-            s.append(sshAgentPid);
-            s.append(" SSH_AUTH_SOCK=");
-            s.append(sshAgentSock);
-            s.append(' ');
-        }
-        for (int i = 1; i < hops; i++) {
-            s.append("ssh -q -A -tt -o 'StrictHostKeyChecking no' -o 'ForwardAgent yes' -l ");
-            if (i < usernames.length) {
-                s.append(usernames[i]);
-            } else {
-                s.append(ROOT_USER);
-            }
-            s.append(' ');
-            s.append(ipsA[i]);
-            s.append(' ');
-            s.append(Tools.escapeQuotes("\"", i - 1));
-        }
-
-        s.append(Tools.escapeQuotes(command, hops - 1));
-
-        for (int i = hops - 1; i > 0; i--) {
-            s.append(Tools.escapeQuotes("\"", i - 1));
-        }
-        return s.toString();
-    }
-
     public String getHostname() {
         return hostname;
     }
@@ -734,17 +724,41 @@ public class Host implements Comparable<Host>, Value {
     }
 
     public void startPing() {
-        ssh.execCommand(
-                        new ExecCommandConfig().commandString("PingCommand").inBash(true).inSudo(false).execCallback(new ExecCallback() {
-                            @Override
-                            public void done(final String ans) {
-                            }
+        getHelperAgent().startStream("Agent.Ping", null, null, frames -> ping.set(true)).block();
+    }
 
-                            @Override
-                            public void doneError(final String ans, final int exitCode) {
-                            }
-                        }).newOutputCallback(output -> ping.set(true)).silentCommand().silentOutput().sshCommandTimeout(PING_TIMEOUT))
-                .block();
+    public String getHelperControlId() {
+        return helperControlId;
+    }
+
+    public PollingMode getPollingMode() {
+        return pollingMode;
+    }
+
+    /**
+     * Sets how often the gui helper daemons send updates. The daemons pick up
+     * the change within a second.
+     */
+    public void setPollingMode(final PollingMode newPollingMode) {
+        if (pollingMode == newPollingMode) {
+            return;
+        }
+        pollingMode = newPollingMode;
+        if (isConnected()) {
+            sendPollingMode();
+        }
+    }
+
+    /** Sends the current polling mode to the gui helper daemons. */
+    public void sendPollingMode() {
+        final PollingMode mode = pollingMode;
+        ssh.execCommand(new ExecCommandConfig().commandString("Helper.SetIntervals")
+                                               .convertCmdCallback(command -> mode.replaceIntervals(command)
+                                                       .replaceAll("@CONTROL-ID@", helperControlId))
+                                               .inBash(false)
+                                               .inSudo(false)
+                                               .silentCommand()
+                                               .silentOutput());
     }
 
     public void startConnectionStatus() {
@@ -870,6 +884,15 @@ public class Host implements Comparable<Host>, Value {
         this.useSudo = useSudo;
     }
 
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /** Sets the compression, it's used after the next reconnect. */
+    public void setCompression(final Compression compression) {
+        this.compression = compression;
+    }
+
     public void setPacemakerInstallMethodIndex(final String pacemakerInstallMethodIndex) {
         this.pacemakerInstallMethodIndex = pacemakerInstallMethodIndex;
     }
@@ -28,6 +28,7 @@ public final class HostOptions {
     private String loginUser = null;
     private String port = null;
     private boolean useSudo = false;
+    private Compression compression = Compression.NONE;
 
     public HostOptions(final String host) {
         this.host = host;
@@ -61,4 +62,12 @@ public final class HostOptions {
     public void setUseSudo(final boolean useSudo) {
         this.useSudo = useSudo;
     }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(final Compression compression) {
+        this.compression = compression;
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.host.domain;
+
+import lcmc.common.domain.util.Tools;
+
+/**
+ * How often the gui helper daemons on the host send updates. The intervals
+ * are in seconds, null pauses the daemon. The intervals are minimal times
+ * between two hw info, drbd config and cluster status updates, the
+ * connection keepalives are not affected.
+ */
+public enum PollingMode {
+    /** The cluster is visible. */
+    FOREGROUND(10, 0, 0, 10000),
+    /** The cluster is in another tab. */
+    BACKGROUND(Tools.getDefaultInt("Polling.Background.HwInfo"),
+               Tools.getDefaultInt("Polling.Background.DrbdInfo"),
+               Tools.getDefaultInt("Polling.Background.ClusterInfo"),
+               Tools.getDefaultInt("Polling.Background.PingRestart")),
+    /** The application is minimized. */
+    PAUSED(null, null, null, Tools.getDefaultInt("Polling.Background.PingRestart"));
+
+    private static final String OFF = "off";
+
+    private final Integer hwInfoInterval;
+    private final Integer drbdInfoInterval;
+    private final Integer clusterInfoInterval;
+    private final int pingRestartDelay;
+
+    PollingMode(final Integer hwInfoInterval,
+                final Integer drbdInfoInterval,
+                final Integer clusterInfoInterval,
+                final int pingRestartDelay) {
+        this.hwInfoInterval = hwInfoInterval;
+        this.drbdInfoInterval = drbdInfoInterval;
+        this.clusterInfoInterval = clusterInfoInterval;
+        this.pingRestartDelay = pingRestartDelay;
+    }
+
+    /** Replaces the @HW@, @DRBD@ and @CLUSTER@ in the control command. */
+    public String replaceIntervals(final String command) {
+        return command.replaceAll("@HW@", toControlValue(hwInfoInterval))
+                      .replaceAll("@DRBD@", toControlValue(drbdInfoInterval))
+                      .replaceAll("@CLUSTER@", toControlValue(clusterInfoInterval));
+    }
+
+    /** Returns milliseconds to wait before the ping is started again. */
+    public int getPingRestartDelay() {
+        return pingRestartDelay;
+    }
+
+    private static String toControlValue(final Integer interval) {
+        if (interval == null) {
+            return OFF;
+        }
+        return Integer.toString(interval);
+    }
+}
@@ -25,6 +25,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -33,6 +34,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -50,12 +52,13 @@ import lcmc.Exceptions;
 import lcmc.HwEventBus;
 import lcmc.cluster.domain.Cluster;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
-import lcmc.cluster.infrastructure.ssh.ExecCommandThread;
+import lcmc.cluster.infrastructure.ssh.Frame;
+import lcmc.cluster.infrastructure.ssh.FrameCallback;
+import lcmc.cluster.infrastructure.ssh.HelperStream;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.ExecCallback;
-import lcmc.common.domain.NewOutputCallback;
 import lcmc.common.domain.StringValue;
 import lcmc.common.domain.Value;
 import lcmc.common.domain.util.Tools;
@@ -109,18 +112,21 @@ public class HostParser {
     private static final String GUI_OPTIONS_INFO_DELIM = "gui-options-info";
     private static final String VERSION_INFO_DELIM = "version-info";
     private static final String DRBD_PROXY_INFO_DELIM = "drbd-proxy-info";
+    /** Lines with section name and time, when the section was read. */
+    private static final String SECTION_TIMESTAMPS_DELIM = "section-timestamps";
 
     public static final Pattern BLOCK_DEV_FILE_PATTERN = Pattern.compile("(\\D+)\\d+");
     public static final Pattern DRBD_DEV_FILE_PATTERN = Pattern.compile(".*/drbd\\d+$");
     public static final Pattern USED_DISK_SPACE_PATTERN = Pattern.compile("^(.*) (\\d+)$");
 
     private static final String LOG_COMMANDS_ON_SERVER_OPTION = "--cmd-log";
+    private static final String HELPER_CONTROL_OPTION = "--control";
 
     private static final Collection<String> INFO_TYPES = new HashSet<>(
             Arrays.asList(NET_INFO_DELIM, BRIDGE_INFO_DELIM, DISK_INFO_DELIM, DISK_SPACE_DELIM, VG_INFO_DELIM,
                     FILESYSTEMS_INFO_DELIM, CRYPTO_INFO_DELIM, QEMU_KEYMAPS_INFO_DELIM, CPU_MAP_MODEL_INFO_DELIM,
                     CPU_MAP_VENDOR_INFO_DELIM, MOUNT_POINTS_INFO_DELIM, GUI_INFO_DELIM, INSTALLATION_INFO_DELIM,
-                    GUI_OPTIONS_INFO_DELIM, VERSION_INFO_DELIM, DRBD_PROXY_INFO_DELIM));
+                    GUI_OPTIONS_INFO_DELIM, VERSION_INFO_DELIM, DRBD_PROXY_INFO_DELIM, SECTION_TIMESTAMPS_DELIM));
 
     private Set<String> availableCryptoModules = Sets.newTreeSet();
     private Set<Value> availableQemuKeymaps = new TreeSet<>();
@@ -165,17 +171,27 @@ public class HostParser {
     private List<BlockDevice> physicalVolumes = new ArrayList<>();
     private Map<String, Long> volumeGroups = new LinkedHashMap<>();
     private Map<String, Set<String>> volumeGroupsWithLvs = Maps.newHashMap();
+    private Collection<BlockDevice> blockDevices = new ArrayList<>();
+    /** Last parsed installation info, it's not parsed again if it didn't change. */
+    private volatile List<String> lastInstallationInfo = null;
     private String heartbeatLibPath = null;
 
     private final Lock mInfoTimestampLock = new ReentrantLock();
     private final Lock mUpdateVMSlock = new ReentrantLock();
+    /** The vms updates from the helper, that were not applied yet. Guarded by itself. */
+    private final List<String> pendingVmUpdates = new ArrayList<>();
     private final Lock mDRBDStatusLock = new ReentrantLock();
-    private ExecCommandThread serverStatusThread = null;
+    private HelperStream serverStatusStream = null;
     private final CountDownLatch waitForServerStatusLatch = new CountDownLatch(1);
     /**
      * Time stamp hash.
      */
     private final Map<String, Double> infoTimestamp = Maps.newHashMap();
+    /**
+     * Time stamps of the hw info sections. The hw info daemon sends only the
+     * changed sections, older sections are not applied.
+     */
+    private final Map<String, Double> sectionTimestamps = new ConcurrentHashMap<>();
     private boolean drbdStatusOk = false;
 
     private static final String TOKEN_DISK_ID = "disk-id";
@@ -218,6 +234,8 @@ public class HostParser {
         final Collection<String> changedTypes = Sets.newHashSet();
 
         final Map<String, String> diskSpaces = Maps.newHashMap();
+        final Map<String, Double> newSectionTimestamps = Maps.newHashMap();
+        final List<String> installationLines = new ArrayList<>();
 
         mountPoints.add("/mnt/");
         String guiOptionName = null;
@@ -231,10 +249,17 @@ public class HostParser {
             }
             if (INFO_TYPES.contains(line)) {
                 type = line;
+                if (isOlderSection(type, newSectionTimestamps.get(type))) {
+                    LOG.debug1("parseHostInfo: " + host.getName() + ": skipping older section: " + type);
+                    type = "";
+                    continue;
+                }
                 changedTypes.add(type);
                 continue;
             }
-            if (NET_INFO_DELIM.equals(type)) {
+            if (SECTION_TIMESTAMPS_DELIM.equals(type)) {
+                parseSectionTimestamp(line, newSectionTimestamps);
+            } else if (NET_INFO_DELIM.equals(type)) {
                 try {
                     final NetInterface netInterface = new NetInterface(line);
                     if (netInterface.hasIp() && !application.isSkipNetInterface(netInterface.getName())) {
@@ -309,8 +334,8 @@ public class HostParser {
                 mountPoints.add(line);
             } else if ("gui-info".equals(type)) {
                 parseGuiInfo(line);
-            } else if ("installation-info".equals(type)) {
-                parseInstallationInfo(line);
+            } else if (INSTALLATION_INFO_DELIM.equals(type)) {
+                installationLines.add(line);
             } else if ("gui-options-info".equals(type)) {
                 guiOptionName = parseGuiOptionsInfo(line, guiOptionName, newGuiOptions);
             } else if (VERSION_INFO_DELIM.equals(type)) {
@@ -342,6 +367,15 @@ public class HostParser {
             }
         }
 
+        if (changedTypes.contains(INSTALLATION_INFO_DELIM)) {
+            if (installationLines.equals(lastInstallationInfo)) {
+                LOG.debug2("parseHostInfo: " + host.getName() + ": installation info didn't change");
+            } else {
+                installationLines.forEach(this::parseInstallationLine);
+                lastInstallationInfo = installationLines;
+            }
+        }
+
         LOG.debug1("parseHostInfo: "
                 + host.getName()
                 + ", pacemaker: " + pacemakerVersion
@@ -362,6 +396,7 @@ public class HostParser {
             drbdBlockDevices = newDrbdBlockDevices;
             physicalVolumes = newPhysicalVolumes;
             volumeGroupsWithLvs = newVolumeGroupsLVS;
+            blockDevices = newBlockDevices.values();
         }
 
         if (changedTypes.contains(DISK_SPACE_DELIM)) {
@@ -409,8 +444,39 @@ public class HostParser {
         }
 
         if (changedTypes.contains(DISK_INFO_DELIM) || changedTypes.contains(VG_INFO_DELIM)) {
-            hwEventBus.post(new HwBlockDevicesChangedEvent(host, newBlockDevices.values()));
+            /* the disk info may not be there, if only the vg info changed */
+            hwEventBus.post(new HwBlockDevicesChangedEvent(host, blockDevices));
+        }
+    }
+
+    private void parseSectionTimestamp(final String line, final Map<String, Double> newSectionTimestamps) {
+        final String[] sectionTimestamp = line.split("\\s+");
+        if (sectionTimestamp.length != 2) {
+            LOG.appWarning("parseSectionTimestamp: could not parse: " + line);
+            return;
+        }
+        try {
+            newSectionTimestamps.put(sectionTimestamp[0], Double.parseDouble(sectionTimestamp[1]));
+        } catch (final NumberFormatException e) {
+            LOG.appWarning("parseSectionTimestamp: could not parse: " + line);
+        }
+    }
+
+    /**
+     * Returns whether a newer version of the section was already applied and
+     * stores the time stamp otherwise. Sections without time stamps, that
+     * come from a single hw info command, are always applied.
+     */
+    private boolean isOlderSection(final String section, final Double timestamp) {
+        if (timestamp == null) {
+            return false;
+        }
+        final Double lastTimestamp = sectionTimestamps.get(section);
+        if (lastTimestamp != null && lastTimestamp > timestamp) {
+            return true;
         }
+        sectionTimestamps.put(section, timestamp);
+        return false;
     }
 
     public String getArch() {
@@ -483,6 +549,11 @@ public class HostParser {
     }
 
     public void parseInstallationInfo(final String line) {
+        lastInstallationInfo = null;
+        parseInstallationLine(line);
+    }
+
+    private void parseInstallationLine(final String line) {
         final String[] tokens = line.split(":|\\s+");
         if (tokens.length < 2) {
             return;
@@ -814,11 +885,8 @@ public class HostParser {
     /** Gets and stores hardware info about the host. */
     public void startHWInfoDaemon(final CategoryInfo[] infosToUpdate, final ResourceGraph[] graphs) {
         LOG.debug1("startHWInfoDaemon: " + host.getName());
-        serverStatusThread = host.getSSH().execCommand(new ExecCommandConfig()
-                .commandString("HostHWInfoDaemon")
-                .inBash(false)
-                .inSudo(false)
-                .execCallback(new ExecCallback() {
+        final HelperStream stream = host.getHelperAgent().startStream("Agent.HWInfoDaemon", null,
+                new ExecCallback() {
                     @Override
                     public void done(final String ans) {
                         parseHostInfo(ans);
@@ -845,53 +913,47 @@ public class HostParser {
                         }
                         host.setLoadingError();
                     }
-                })
-                .newOutputCallback(new NewOutputCallback() {
-                    private final StringBuffer outputBuffer = new StringBuffer(300);
+                },
+                new FrameCallback() {
                     @Override
-                    public void output(final String output) {
-                        outputBuffer.append(output);
+                    public void frames(final List<Frame> frames) {
                         final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
-                        String hw, vm, drbdConfig;
-                        String hwUpdate = null;
-                        String vmUpdate = null;
+                        final List<String> hwUpdates = new ArrayList<>();
                         String drbdUpdate = null;
-                        do {
-                            hw = getOutput("hw", outputBuffer);
-                            if (hw != null) {
-                                hwUpdate = hw;
-                            }
-                            vm = getOutput("vm", outputBuffer);
-                            if (vmStatusTryLock()) {
+                        for (final Frame frame : frames) {
+                            if (frame.isType("hw")) {
+                                final String hw = getInfo(frame);
+                                if (hw != null) {
+                                    /* every update has only the changed sections */
+                                    hwUpdates.add(hw);
+                                }
+                            } else if (frame.isType("vm")) {
+                                final String vm = getInfo(frame);
                                 if (vm != null) {
-                                    vmUpdate = vm;
+                                    queueVmUpdate(vm);
                                 }
-                                vmStatusUnlock();
+                            } else if (frame.isType("drbd")) {
+                                drbdStatusLock();
+                                final String drbdConfig = getInfo(frame);
+                                if (drbdConfig != null) {
+                                    drbdUpdate = drbdConfig;
+                                }
+                                drbdStatusUnlock();
                             }
-                            drbdStatusLock();
-                            drbdConfig = getOutput("drbd", outputBuffer);
-                            if (drbdConfig != null) {
-                                drbdUpdate = drbdConfig;
+                        }
+                        if (!hwUpdates.isEmpty()) {
+                            for (final String hwUpdate : hwUpdates) {
+                                parseHostInfo(hwUpdate);
                             }
-                            drbdStatusUnlock();
-                        } while (hw != null || vm != null || drbdConfig != null);
-
-                        Tools.chomp(outputBuffer);
-                        if (hwUpdate != null) {
-                            parseHostInfo(hwUpdate);
                             for (final ResourceGraph g : graphs) {
                                 if (g != null) {
                                     g.repaint();
                                 }
                             }
                         }
-                        if (vmUpdate != null) {
-                            final VmsXml newVmsXml = vmsXmlProvider.get();
-                            newVmsXml.init(host);
-                            if (newVmsXml.parseXml(vmUpdate)) {
-                                cb.vmsXmlPut(host, newVmsXml);
-                                cb.updateVms();
-                            }
+                        final List<String> vmUpdates = takeVmUpdates();
+                        for (final String vmUpdate : vmUpdates) {
+                            updateVms(cb, vmUpdate);
                         }
                         if (drbdUpdate != null) {
                             final DrbdXml dxml = drbdXmlProvider.get();
@@ -904,7 +966,7 @@ public class HostParser {
                             });
                         }
                         if (drbdUpdate != null
-                                || vmUpdate != null) {
+                                || !vmUpdates.isEmpty()) {
                             cb.updateHWInfo(host, !Host.UPDATE_LVM);
                         }
                         if (drbdUpdate != null) {
@@ -915,41 +977,101 @@ public class HostParser {
                         }
                         host.setLoadingDone();
                     }
-                })
-                .silentCommand()
-                .silentOutput()
-                .sshCommandTimeout(HW_INFO_TIMEOUT)).block();
-    }
-
-    public String getOutput(final String type, final StringBuffer buffer) {
-        final String infoStart = "--" + type + "-info-start--";
-        final String infoEnd = "--" + type + "-info-end--";
-        final int infoStartLength = infoStart.length();
-        final int infoEndLength = infoEnd.length();
-        final int s = buffer.indexOf(infoStart);
-        final int s2 = buffer.indexOf("\r\n", s);
-        final int e = buffer.indexOf(infoEnd, s);
-        String out = null;
-        if (s > -1 && s < s2 && s2 <= e) {
-            Double timestamp = null;
-            final String ts = buffer.substring(s + infoStartLength, s2);
-            try {
-                timestamp = Double.parseDouble(ts);
-            }  catch (final NumberFormatException nfe) {
-                LOG.debug("getOutput: could not parse: " + ts + ' ' + nfe);
-            }
-            mInfoTimestampLock.lock();
-            if (timestamp != null
-                    && (!infoTimestamp.containsKey(type) || timestamp >= infoTimestamp.get(type))) {
+                });
+        serverStatusStream = stream;
+        stream.block();
+    }
+
+    /**
+     * Returns the info from the frame of the helper agent, the first line is
+     * the timestamp. Returns null, if a newer info was already seen.
+     */
+    public String getInfo(final Frame frame) {
+        final String payload = frame.getPayload();
+        final int eol = payload.indexOf('\n');
+        if (eol < 0 || !isNewInfo(frame.getType(), payload.substring(0, eol))) {
+            return null;
+        }
+        return payload.substring(eol + 1);
+    }
+
+    private boolean isNewInfo(final String type, final String ts) {
+        final double timestamp;
+        try {
+            timestamp = Double.parseDouble(ts);
+        }  catch (final NumberFormatException nfe) {
+            LOG.debug("isNewInfo: could not parse: " + ts + ' ' + nfe);
+            return false;
+        }
+        mInfoTimestampLock.lock();
+        try {
+            if (!infoTimestamp.containsKey(type) || timestamp >= infoTimestamp.get(type)) {
                 infoTimestamp.put(type, timestamp);
-                mInfoTimestampLock.unlock();
-                out = buffer.substring(s2 + 2, e);
-            } else {
-                mInfoTimestampLock.unlock();
+                return true;
+            }
+            return false;
+        } finally {
+            mInfoTimestampLock.unlock();
+        }
+    }
+
+    /**
+     * Queues the vms update from the helper. The helper sends every change
+     * only once, so that no delta may be dropped, a full update makes the
+     * queued ones obsolete.
+     */
+    private void queueVmUpdate(final String vmUpdate) {
+        synchronized (pendingVmUpdates) {
+            if (!VmsXml.isDelta(vmUpdate)) {
+                pendingVmUpdates.clear();
             }
-            buffer.delete(0, e + infoEndLength + 2);
+            pendingVmUpdates.add(vmUpdate);
+        }
+    }
+
+    /**
+     * Returns the queued vms updates, if the vms are not being changed, in
+     * that case they stay queued till the next update.
+     */
+    private List<String> takeVmUpdates() {
+        if (!vmStatusTryLock()) {
+            return Collections.emptyList();
+        }
+        try {
+            synchronized (pendingVmUpdates) {
+                final List<String> vmUpdates = new ArrayList<>(pendingVmUpdates);
+                pendingVmUpdates.clear();
+                return vmUpdates;
+            }
+        } finally {
+            vmStatusUnlock();
+        }
+    }
+
+    /**
+     * Updates the vms from the helper output. The delta contains only the
+     * changed domains, they are parsed into a new vms xml, that gets the
+     * unchanged domains from the last one and replaces it. If that's not
+     * possible, the whole vms xml is fetched again.
+     */
+    private void updateVms(final ClusterBrowser cb, final String vmUpdate) {
+        final VmsXml oldVmsXml = cb.getVmsXml(host);
+        final VmsXml newVmsXml = vmsXmlProvider.get();
+        newVmsXml.init(host);
+        if (VmsXml.isDelta(vmUpdate)) {
+            if (oldVmsXml == null || !newVmsXml.mergeXml(oldVmsXml, vmUpdate)) {
+                cb.periodicalVmsUpdate(host);
+                return;
+            }
+        } else if (!newVmsXml.parseXml(vmUpdate)) {
+            return;
+        }
+        cb.vmsXmlPut(host, newVmsXml);
+        if (oldVmsXml == null) {
+            cb.updateVms();
+        } else {
+            cb.updateVms(newVmsXml.getChangedDomains(oldVmsXml));
         }
-        return out;
     }
 
     public void vmStatusLock() {
@@ -988,13 +1110,13 @@ public class HostParser {
 
     /** Stops server (hw) status background process. */
     public void stopServerStatus() {
-        final var sst = serverStatusThread;
+        final var sst = serverStatusStream;
         if (sst == null) {
             LOG.appWarning("trying to stop stopped server status");
             return;
         }
-        sst.cancelTheSession();
-        serverStatusThread = null;
+        sst.cancel();
+        serverStatusStream = null;
     }
 
     public long getFreeInVolumeGroup(final String volumeGroup) {
@@ -1099,6 +1221,7 @@ public class HostParser {
     }
 
     public void setPacemakerVersion(final String pacemakerVersion) {
+        lastInstallationInfo = null;
         this.pacemakerVersion = pacemakerVersion;
     }
 
@@ -1332,6 +1455,10 @@ public class HostParser {
                 helperProg.append(' ');
                 helperProg.append(LOG_COMMANDS_ON_SERVER_OPTION);
             }
+            helperProg.append(' ');
+            helperProg.append(HELPER_CONTROL_OPTION);
+            helperProg.append('=');
+            helperProg.append(host.getHelperControlId());
             command = command.replaceAll("@GUI-HELPER@", helperProg.toString());
         }
         if (command.contains("@GUI-HELPER-PROG@")) {
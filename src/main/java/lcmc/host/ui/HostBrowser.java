@@ -42,6 +42,7 @@ import com.google.common.eventbus.Subscribe;
 
 import lcmc.ClusterEventBus;
 import lcmc.cluster.domain.Cluster;
+import lcmc.cluster.infrastructure.ssh.CompressionStats;
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.resource.ClusterViewFactory;
@@ -359,6 +360,16 @@ public class HostBrowser extends Browser {
         }
         hostToolTip.append(host.getDrbdInfoAboutInstallation());
         hostToolTip.append(host.getPacemakerInfo());
+        final CompressionStats compressionStats = host.getHelperAgent().getCompressionStats();
+        if (compressionStats.getRawBytes() > 0) {
+            hostToolTip.append('\n');
+            hostToolTip.append(Tools.getString("HostBrowser.Compression")
+                                    .replaceAll("@METHOD@", compressionStats.getMethod())
+                                    .replaceAll("@SAVED@", Long.toString(compressionStats.getSavedBytes() / 1024))
+                                    .replaceAll("@PERCENT@", Long.toString(compressionStats.getSavedPercent()))
+                                    .replaceAll("@CPU@", Long.toString(compressionStats.getLocalCpuMillis()))
+                                    .replaceAll("@HOST-CPU@", Long.toString(compressionStats.getHostCpuMillis())));
+        }
         return hostToolTip.toString();
     }
 
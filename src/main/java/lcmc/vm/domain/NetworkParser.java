@@ -63,6 +63,13 @@ public class NetworkParser {
         parseNetConfig(XMLTools.getChildNode(netNode, "network"), name, autostartString);
     }
 
+    /** Copies the parsed networks from the other parser. */
+    public void copyNetworks(final NetworkParser other) {
+        netToConfigs.putAll(other.netToConfigs);
+        netNamesConfigsMap.putAll(other.netNamesConfigsMap);
+        networkMap = new LinkedHashMap<>(other.networkMap);
+    }
+
     /** Parses the libvirt network config file. */
     private void parseNetConfig(final Node networkNode, final String nameInFilename, final String autostartString) {
         final Map<Value, NetworkData> newNetworkMap = Maps.newHashMap();
@@ -70,15 +70,51 @@ public class VMParser {
     private final Collection<String> usedMacAddresses = new HashSet<>();
     private final Collection<String> sourceFileDirs = new TreeSet<>();
 
+    /** Returns the data of the domain, or empty data, if the domain is not known. */
     private DomainData getDomainData(final String domainName) {
-        DomainData domainData = domainDataMap.get(domainName);
+        final DomainData domainData = domainDataMap.get(domainName);
         if (domainData == null) {
-            domainData = new DomainData(domainName);
-            domainDataMap.put(domainName, domainData);
+            return new DomainData(domainName);
         }
         return domainData;
     }
 
+    /** Returns the data of the domain for the parser, it is created, if the domain is new. */
+    private DomainData getOrCreateDomainData(final String domainName) {
+        return domainDataMap.computeIfAbsent(domainName, DomainData::new);
+    }
+
+    /**
+     * Copies the parsed data of the domains, that are not in the excluded
+     * names, from the other parser. The data is shared, it doesn't change
+     * after it was parsed.
+     */
+    public void copyDomains(final VMParser other, final Collection<String> excludedNames) {
+        for (final String domainName : other.domainNames) {
+            if (!excludedNames.contains(domainName)) {
+                domainNames.add(domainName);
+            }
+        }
+        for (final Map.Entry<String, DomainData> domainData : other.domainDataMap.entrySet()) {
+            if (excludedNames.contains(domainData.getKey())) {
+                continue;
+            }
+            domainDataMap.put(domainData.getKey(), domainData.getValue());
+            usedMacAddresses.addAll(domainData.getValue().getInterfacesMap().keySet());
+            for (final DiskData diskData : domainData.getValue().getDisksMap().values()) {
+                final String dir = Tools.getDirectoryPart(diskData.getSourceFile());
+                if (dir != null) {
+                    sourceFileDirs.add(dir);
+                }
+            }
+        }
+        for (final Map.Entry<Value, String> configToName : other.configsToNames.entrySet()) {
+            if (!excludedNames.contains(configToName.getValue())) {
+                configsToNames.put(configToName.getKey(), configToName.getValue());
+            }
+        }
+    }
+
     public void parseVM(final Node vmNode, final Host definedOnHost, final Map<String, String> namesToConfigs) {
         /* one vm */
         if (vmNode == null) {
@@ -88,7 +124,7 @@ public class VMParser {
         final String domainName = XMLTools.getAttribute(vmNode, VMParams.VM_PARAM_NAME);
         final String autostart = XMLTools.getAttribute(vmNode, VMParams.VM_PARAM_AUTOSTART);
         final String virshOptions = XMLTools.getAttribute(vmNode, VMParams.VM_PARAM_VIRSH_OPTIONS);
-        val domainData = getDomainData(domainName);
+        val domainData = getOrCreateDomainData(domainName);
         if (virshOptions != null) {
             domainData.setParameter(VMParams.VM_PARAM_VIRSH_OPTIONS, virshOptions);
         }
@@ -211,7 +247,7 @@ public class VMParser {
                     }
                 }
             }
-            val domainData = getDomainData(domainName);
+            val domainData = getOrCreateDomainData(domainName);
             domainData.setRunning(running);
             domainData.setSuspended(suspended);
         }
@@ -234,7 +270,7 @@ public class VMParser {
             final Node option = options.item(i);
             if (VMParams.VM_PARAM_NAME.equals(option.getNodeName())) {
                 final String domainName = XMLTools.getText(option);
-                domainData = Optional.of(getDomainData(domainName));
+                domainData = Optional.of(getOrCreateDomainData(domainName));
                 if (!domainNames.contains(domainName)) {
                     domainNames.add(domainName);
                 }
@@ -24,10 +24,20 @@
 package lcmc.vm.domain;
 
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -54,9 +64,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.Ssh;
 import lcmc.cluster.infrastructure.ssh.SshOutput;
-import lcmc.common.domain.ConvertCmdCallback;
 import lcmc.common.domain.StringValue;
 import lcmc.common.domain.Unit;
 import lcmc.common.domain.Value;
@@ -197,38 +206,31 @@ public class VmsXml {
     private final ReadWriteLock mXMLDocumentLock = new ReentrantReadWriteLock();
     private final Lock mXMLDocumentReadLock = mXMLDocumentLock.readLock();
     private final Lock mXMLDocumentWriteLock = mXMLDocumentLock.writeLock();
-    private Document xmlDocument = null;
+    /** The <vm> elements by the domain name, the unchanged ones are shared with the previous vms xml. */
+    private Map<String, Node> vmNodes = null;
+    private List<Node> netNodes = new ArrayList<>();
+    private Node versionNode = null;
+    private String md5 = null;
     private String oldConfig = null;
+    /** Hashes of the <vm> elements from the helper. */
+    private final Map<String, String> domainHashes = new HashMap<>();
 
     public void init(final Host definedOnHost) {
         this.definedOnHost = definedOnHost;
     }
 
     public Node getDomainNode(final String domainName) {
+        final Node vmNode;
         mXMLDocumentReadLock.lock();
-        final Document document;
         try {
-            document = xmlDocument;
+            vmNode = vmNodes == null ? null : vmNodes.get(domainName);
         } finally {
             mXMLDocumentReadLock.unlock();
         }
-        final XPath xpath = XPathFactory.newInstance().newXPath();
-        final Node domainNode;
-        try {
-            final String path = "//vms/vm[@name='" + domainName + "']/config/domain";
-            final NodeList domainNodes = (NodeList) xpath.evaluate(path, document, XPathConstants.NODESET);
-            if (domainNodes.getLength() == 1) {
-                domainNode = domainNodes.item(0);
-            } else if (domainNodes.getLength() >= 1) {
-                LOG.appError("getDomainNode: " + domainNodes.getLength() + " supposedly unique " + domainName + " configs.");
-                return null;
-            } else {
-                LOG.appWarning("getDomainNode: could not find xml for " + domainName);
-                return null;
-            }
-        } catch (final XPathExpressionException e) {
-            LOG.appError("getDomainNode: could not evaluate: ", e);
-            return null;
+        final Node configNode = vmNode == null ? null : XMLTools.getChildNode(vmNode, "config");
+        final Node domainNode = configNode == null ? null : XMLTools.getChildNode(configNode, "domain");
+        if (domainNode == null) {
+            LOG.appWarning("getDomainNode: could not find xml for " + domainName);
         }
         return domainNode;
     }
@@ -665,10 +667,7 @@ public class VmsXml {
     }
 
     public boolean parseXml() {
-        final String command = definedOnHost.getHostParser().getDistCommand("VMSXML.GetData", (ConvertCmdCallback) null);
-        final SshOutput ret = definedOnHost.captureCommand(new ExecCommandConfig().command(command)
-                                                                                  .silentCommand()
-                                                                                  .silentOutput());
+        final SshOutput ret = definedOnHost.captureHelperRequest("Agent.GetVMInfo", Ssh.DEFAULT_COMMAND_TIMEOUT);
         if (ret.getExitCode() != 0) {
             return false;
         }
@@ -682,35 +681,214 @@ public class VmsXml {
     public boolean parseXml(final String xml) {
         oldConfig = xml;
         final Document document = XMLTools.getXMLDocument(xml);
-        mXMLDocumentWriteLock.lock();
-        try {
-            xmlDocument = document;
-        } finally {
-            mXMLDocumentWriteLock.unlock();
-        }
         if (document == null) {
             return false;
         }
         final Node vmsNode = XMLTools.getChildNode(document, "vms");
-        final String md5 = XMLTools.getAttribute(vmsNode, "md5");
-        if (md5 == null || md5.equals(definedOnHost.getVMInfoMD5())) {
+        if (vmsNode == null) {
             return false;
         }
-        definedOnHost.setVMInfoMD5(md5);
-        final NodeList vms = vmsNode.getChildNodes();
-        for (int i = 0; i < vms.getLength(); i++) {
-            final Node node = vms.item(i);
+        final Map<String, Node> newVmNodes = new LinkedHashMap<>();
+        final List<Node> newNetNodes = new ArrayList<>();
+        Node newVersionNode = null;
+        final NodeList nodes = vmsNode.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            final Node node = nodes.item(i);
             if ("net".equals(node.getNodeName())) {
-                networkParser.parseNetwork(node);
+                newNetNodes.add(node);
             } else if ("vm".equals(node.getNodeName())) {
-                vmParser.parseVM(node, definedOnHost, namesToConfigs);
+                newVmNodes.put(XMLTools.getAttribute(node, VMParams.VM_PARAM_NAME), node);
             } else if ("version".equals(node.getNodeName())) {
-                definedOnHost.getHostParser().setLibvirtVersion(XMLTools.getText(node));
+                newVersionNode = node;
+            }
+        }
+        final String newMd5 = XMLTools.getAttribute(vmsNode, "md5");
+        setNodes(newMd5, newVmNodes, newNetNodes, newVersionNode);
+        if (newMd5 == null || newMd5.equals(definedOnHost.getVMInfoMD5())) {
+            return false;
+        }
+        definedOnHost.setVMInfoMD5(newMd5);
+        for (final Node netNode : newNetNodes) {
+            networkParser.parseNetwork(netNode);
+        }
+        for (final Map.Entry<String, Node> vmNode : newVmNodes.entrySet()) {
+            vmParser.parseVM(vmNode.getValue(), definedOnHost, namesToConfigs);
+            domainHashes.put(vmNode.getKey(), XMLTools.getAttribute(vmNode.getValue(), "hash"));
+        }
+        if (newVersionNode != null) {
+            definedOnHost.getHostParser().setLibvirtVersion(XMLTools.getText(newVersionNode));
+        }
+        return true;
+    }
+
+    /** Returns whether the vms xml from the helper contains only changed domains. */
+    public static boolean isDelta(final String xml) {
+        final int vmsStart = xml.indexOf("<vms ");
+        if (vmsStart < 0) {
+            return false;
+        }
+        final int vmsEnd = xml.indexOf('>', vmsStart);
+        return vmsEnd > 0 && xml.substring(vmsStart, vmsEnd).contains("delta=\"true\"");
+    }
+
+    /**
+     * Parses the delta vms xml with the changed domains into this empty
+     * object. The data of the unchanged domains is copied from the previous
+     * vms xml, that doesn't change, so only the changed domains are parsed.
+     * Returns false, if the delta can't be merged or the merged domains
+     * don't match the domains on the host, the whole vms xml must be fetched
+     * again then.
+     */
+    public boolean mergeXml(final VmsXml previous, final String xml) {
+        final Document delta = XMLTools.getXMLDocument(xml);
+        if (delta == null) {
+            return false;
+        }
+        final Node deltaVmsNode = XMLTools.getChildNode(delta, "vms");
+        if (deltaVmsNode == null || !"true".equals(XMLTools.getAttribute(deltaVmsNode, "delta"))) {
+            return false;
+        }
+        final Map<String, Node> previousVmNodes;
+        final List<Node> previousNetNodes;
+        final Node previousVersionNode;
+        previous.mXMLDocumentReadLock.lock();
+        try {
+            previousVmNodes = previous.vmNodes;
+            previousNetNodes = previous.netNodes;
+            previousVersionNode = previous.versionNode;
+        } finally {
+            previous.mXMLDocumentReadLock.unlock();
+        }
+        if (previousVmNodes == null) {
+            return false;
+        }
+        final Map<String, Node> changedVmNodes = new LinkedHashMap<>();
+        final Set<String> changedDomains = new HashSet<>();
+        final List<Node> deltaNetNodes = new ArrayList<>();
+        Node deltaVersionNode = null;
+        final NodeList nodes = deltaVmsNode.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            final Node node = nodes.item(i);
+            if ("vm".equals(node.getNodeName())) {
+                final String name = XMLTools.getAttribute(node, VMParams.VM_PARAM_NAME);
+                changedDomains.add(name);
+                changedVmNodes.put(name, node);
+            } else if ("removed-vm".equals(node.getNodeName())) {
+                changedDomains.add(XMLTools.getAttribute(node, VMParams.VM_PARAM_NAME));
+            } else if ("net".equals(node.getNodeName())) {
+                deltaNetNodes.add(node);
+            } else if ("version".equals(node.getNodeName())) {
+                deltaVersionNode = node;
+            }
+        }
+        final Map<String, String> mergedHashes = new HashMap<>(previous.domainHashes);
+        mergedHashes.keySet().removeAll(changedDomains);
+        for (final Map.Entry<String, Node> vmNode : changedVmNodes.entrySet()) {
+            mergedHashes.put(vmNode.getKey(), XMLTools.getAttribute(vmNode.getValue(), "hash"));
+        }
+        final String vmHashes = XMLTools.getAttribute(deltaVmsNode, "vm-hashes");
+        if (vmHashes != null && !vmHashes.equals(getVmHashes(mergedHashes))) {
+            LOG.debug1("mergeXml: " + definedOnHost.getName() + ": merged domains don't match");
+            return false;
+        }
+        final String newMd5 = XMLTools.getAttribute(deltaVmsNode, "md5");
+        if (newMd5 == null) {
+            return false;
+        }
+        definedOnHost.setVMInfoMD5(newMd5);
+
+        vmParser.copyDomains(previous.vmParser, changedDomains);
+        for (final Map.Entry<String, String> nameToConfig : previous.namesToConfigs.entrySet()) {
+            if (!changedDomains.contains(nameToConfig.getKey())) {
+                namesToConfigs.put(nameToConfig.getKey(), nameToConfig.getValue());
+            }
+        }
+        for (final Node vmNode : changedVmNodes.values()) {
+            vmParser.parseVM(vmNode, definedOnHost, namesToConfigs);
+        }
+        domainHashes.putAll(mergedHashes);
+        final Map<String, Node> mergedVmNodes = new LinkedHashMap<>(previousVmNodes);
+        mergedVmNodes.keySet().removeAll(changedDomains);
+        mergedVmNodes.putAll(changedVmNodes);
+
+        /* all networks are sent, if any of them changed */
+        final List<Node> mergedNetNodes;
+        if (deltaNetNodes.isEmpty()) {
+            networkParser.copyNetworks(previous.networkParser);
+            mergedNetNodes = previousNetNodes;
+        } else {
+            for (final Node netNode : deltaNetNodes) {
+                networkParser.parseNetwork(netNode);
             }
+            mergedNetNodes = deltaNetNodes;
         }
+        final Node mergedVersionNode;
+        if (deltaVersionNode == null) {
+            mergedVersionNode = previousVersionNode;
+        } else {
+            definedOnHost.getHostParser().setLibvirtVersion(XMLTools.getText(deltaVersionNode));
+            mergedVersionNode = deltaVersionNode;
+        }
+        setNodes(newMd5, mergedVmNodes, mergedNetNodes, mergedVersionNode);
         return true;
     }
 
+    private void setNodes(final String newMd5,
+                          final Map<String, Node> newVmNodes,
+                          final List<Node> newNetNodes,
+                          final Node newVersionNode) {
+        mXMLDocumentWriteLock.lock();
+        try {
+            md5 = newMd5;
+            vmNodes = newVmNodes;
+            netNodes = newNetNodes;
+            versionNode = newVersionNode;
+        } finally {
+            mXMLDocumentWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the names of the domains, that were added, changed or removed
+     * since the previous vms xml.
+     */
+    public Set<String> getChangedDomains(final VmsXml previous) {
+        final Set<String> changedDomains = new TreeSet<>();
+        for (final Map.Entry<String, String> domainHash : domainHashes.entrySet()) {
+            if (!Objects.equals(domainHash.getValue(), previous.domainHashes.get(domainHash.getKey()))) {
+                changedDomains.add(domainHash.getKey());
+            }
+        }
+        for (final String name : previous.domainHashes.keySet()) {
+            if (!domainHashes.containsKey(name)) {
+                changedDomains.add(name);
+            }
+        }
+        return changedDomains;
+    }
+
+    /**
+     * Returns the md5 of the "name hash" lines of all domains sorted by the
+     * name, like the helper computes it.
+     */
+    private static String getVmHashes(final Map<String, String> domainHashes) {
+        final Map<String, String> hashes = new TreeMap<>(domainHashes);
+        final StringBuilder lines = new StringBuilder(50 * hashes.size());
+        for (final Map.Entry<String, String> hash : hashes.entrySet()) {
+            lines.append(hash.getKey()).append(' ').append(hash.getValue()).append('\n');
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(lines.toString().getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(2 * digest.length);
+            for (final byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public Collection<String> getDomainNames() {
         return vmParser.getDomainNames();
     }
@@ -953,10 +1131,47 @@ public class VmsXml {
         return vmParser.getUsedMacAddresses();
     }
 
+    /** Returns the vms xml, a merged one is put together from the elements first. */
     public String getConfig() {
+        if (oldConfig == null) {
+            oldConfig = getMergedConfig();
+        }
         return oldConfig;
     }
 
+    private String getMergedConfig() {
+        final Document document = createDocument();
+        final Element vmsNode = (Element) document.appendChild(document.createElement("vms"));
+        mXMLDocumentReadLock.lock();
+        try {
+            if (vmNodes == null) {
+                return null;
+            }
+            if (md5 != null) {
+                vmsNode.setAttribute("md5", md5);
+            }
+            if (versionNode != null) {
+                vmsNode.appendChild(document.importNode(versionNode, true));
+            }
+            for (final Node netNode : netNodes) {
+                vmsNode.appendChild(document.importNode(netNode, true));
+            }
+            for (final Node vmNode : vmNodes.values()) {
+                vmsNode.appendChild(document.importNode(vmNode, true));
+            }
+        } finally {
+            mXMLDocumentReadLock.unlock();
+        }
+        try {
+            final StreamResult res = new StreamResult(new StringWriter());
+            TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), res);
+            return res.getWriter().toString();
+        } catch (final TransformerException e) {
+            LOG.appWarning("getMergedConfig: could not serialize the vms xml", e);
+            return null;
+        }
+    }
+
     private Document createDocument() {
         final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
 
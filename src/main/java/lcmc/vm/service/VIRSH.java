@@ -22,10 +22,12 @@
 
 package lcmc.vm.service;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.common.domain.util.Tools;
 import lcmc.configs.DistResource;
 import lcmc.host.domain.Host;
@@ -36,7 +38,7 @@ import lcmc.host.domain.Host;
 public final class VIRSH {
     private static final Map<String, String> VIRSH_COMMANDS = new HashMap<>();
     static {
-        VIRSH_COMMANDS.put("autostart", "VIRSH.Autostart");
+        VIRSH_COMMANDS.put("autostart", "VIRSH.Batch.Autostart");
     }
 
     /** Executes the specified virsh commands on the specified host. */
@@ -52,28 +54,32 @@ public final class VIRSH {
 
 
     /**
-     * Executes the specified virsh commands on the specified hosts.
+     * Executes the specified virsh commands on the specified hosts, in one
+     * virsh process per host. The hosts run them at once. Returns whether
+     * all the commands succeeded.
      */
-    private static void execCommand(final Host[] hosts, final Map<Host, String> hostCommands) {
-        for (final Host host : hosts) {
-            final String commands = hostCommands.get(host);
-            if (!commands.isEmpty()) {
-                execCommand(host, commands);
-            }
-        }
+    private static boolean execCommand(final HostFanOut hostFanOut,
+                                       final Host[] hosts,
+                                       final Map<Host, VirshBatch> hostBatches) {
+        final HostFanOut.Report<Boolean> report = hostFanOut.check("VIRSH.execCommand", Arrays.asList(hosts), host -> {
+            final VirshBatch batch = hostBatches.get(host);
+            return batch == null || !batch.execute().contains(false);
+        });
+        report.showErrors();
+        return report.isOk();
     }
 
-    /** Sets paramters with virsh command. */
-    public static void setParameters(final Host[] hosts,
-                                     final String domainName,
-                                     final Map<String, String> parameters,
-                                     final String options) {
-        final Map<Host, String> hostCommands = new HashMap<>();
+    /** Sets paramters with virsh command, returns whether it succeeded. */
+    public static boolean setParameters(final HostFanOut hostFanOut,
+                                        final Host[] hosts,
+                                        final String domainName,
+                                        final Map<String, String> parameters,
+                                        final String options) {
+        final Map<Host, VirshBatch> hostBatches = new HashMap<>();
         final Map<String, String> replaceHash = new HashMap<>();
         replaceHash.put("@DOMAIN@", domainName);
-        replaceHash.put("@OPTIONS@", options);
         for (final Host host : hosts) {
-            final StringBuilder commands = new StringBuilder(100);
+            final VirshBatch batch = new VirshBatch(host, options);
             for (final Map.Entry<String, String> paramEntry : parameters.entrySet()) {
                 String command = host.getDistCommand(VIRSH_COMMANDS.get(paramEntry.getKey()), replaceHash);
                 if (command == null) {
@@ -90,14 +96,11 @@ public final class VIRSH {
                     }
                     command = command.replaceAll("@VALUE@", value);
                 }
-                if (commands.length() > 0) {
-                    commands.append(" && ");
-                }
-                commands.append(command);
-                hostCommands.put(host, commands.toString());
+                batch.add(command);
             }
+            hostBatches.put(host, batch);
         }
-        execCommand(hosts, hostCommands);
+        return execCommand(hostFanOut, hosts, hostBatches);
     }
 
     /** Starts virtual domain. */
@@ -0,0 +1,125 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.vm.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lcmc.cluster.infrastructure.ssh.ExecCommandConfig;
+import lcmc.common.domain.util.Tools;
+import lcmc.host.domain.Host;
+import lcmc.logger.Logger;
+import lcmc.logger.LoggerFactory;
+
+/**
+ * Runs several virsh commands in one virsh process, so that virsh connects to
+ * libvirtd only once. Every command is followed by an echoed marker, so that
+ * the output and the result of every command can be found out. Unlike with
+ * "&&", the following commands run even if one of them fails.
+ */
+final class VirshBatch {
+    private static final Logger LOG = LoggerFactory.getLogger(VirshBatch.class);
+    private static final String MARKER = "lcmc-virsh done-";
+
+    private final Host host;
+    private final String options;
+    private final List<String> commands = new ArrayList<>();
+
+    VirshBatch(final Host host, final String options) {
+        this.host = host;
+        this.options = options;
+    }
+
+    /** Adds virsh command without the "virsh" and the connection options. */
+    void add(final String command) {
+        commands.add(command);
+    }
+
+    boolean isEmpty() {
+        return commands.isEmpty();
+    }
+
+    /** Returns one command, that runs all the virsh commands. */
+    String getCommand() {
+        final StringBuilder virshCommands = new StringBuilder(100);
+        for (int i = 0; i < commands.size(); i++) {
+            if (i > 0) {
+                virshCommands.append(" ; ");
+            }
+            virshCommands.append(commands.get(i)).append(" ; echo ").append(MARKER).append(i);
+        }
+        final Map<String, String> replaceHash = new HashMap<>();
+        replaceHash.put("@OPTIONS@", options);
+        replaceHash.put("@COMMANDS@", virshCommands.toString());
+        return host.getDistCommand("VIRSH.Batch", replaceHash);
+    }
+
+    /**
+     * Executes the commands and returns their results. A command failed if it
+     * printed an error, or if virsh exited before it was reached. The virsh's
+     * exit code is the one of the last command. The stderr is not redirected,
+     * the terminal of the session gets the errors in order with the markers.
+     */
+    List<Boolean> execute() {
+        if (isEmpty() || !host.isConnected()) {
+            return Collections.nCopies(commands.size(), true);
+        }
+        final String command = getCommand();
+        final var ret = host.captureCommandProgressIndicator(
+                Tools.getString("VIRSH.ExecutingCommand") + ' ' + Tools.join(" ; ", commands) + "...",
+                new ExecCommandConfig().command(command));
+        final List<Boolean> results = parseResults(ret.getOutput(), ret.getExitCode(), commands.size());
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i)) {
+                LOG.appWarning("execute: " + host.getName() + ": virsh command failed: " + commands.get(i));
+            }
+        }
+        return results;
+    }
+
+    /** Returns results of the commands from the virsh output and exit code. */
+    static List<Boolean> parseResults(final String output, final int exitCode, final int count) {
+        final List<Boolean> results = new ArrayList<>(count);
+        boolean failed = false;
+        if (output != null) {
+            for (final String line : output.split("\\r?\\n")) {
+                if (line.startsWith(MARKER)) {
+                    if (results.size() < count) {
+                        results.add(!failed);
+                    }
+                    failed = false;
+                } else if (line.startsWith("error:")) {
+                    failed = true;
+                }
+            }
+        }
+        while (results.size() < count) {
+            results.add(false);
+        }
+        if (exitCode != 0 && count > 0) {
+            results.set(count - 1, false);
+        }
+        return results;
+    }
+}
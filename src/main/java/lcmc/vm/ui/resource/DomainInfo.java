@@ -61,6 +61,7 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import org.w3c.dom.Node;
 
 import lcmc.Exceptions;
+import lcmc.cluster.infrastructure.ssh.HostFanOut;
 import lcmc.cluster.ui.ClusterBrowser;
 import lcmc.cluster.ui.resource.NetInfo;
 import lcmc.cluster.ui.widget.Check;
@@ -580,6 +581,7 @@ public class DomainInfo extends EditableInfo {
     private final Provider<GraphicsInfo> graphicsInfoProvider;
     private final Provider<SoundInfo> soundInfoProvider;
     private final Provider<SerialInfo> serialInfoProvider;
+    private final HostFanOut hostFanOut;
     private final Provider<ParallelInfo> parallelInfoProvider;
     private final Provider<VideoInfo> videoInfoProvider;
     private final Provider<VmsXml> vmsXmlProvider;
@@ -591,7 +593,8 @@ public class DomainInfo extends EditableInfo {
             Provider<ParallelInfo> parallelInfoProvider, Provider<FilesystemInfo> filesystemInfoProvider,
             Provider<InterfaceInfo> interfaceInfoProvider, Provider<InputDevInfo> inputDevInfoProvider,
             Provider<GraphicsInfo> graphicsInfoProvider, Provider<VideoInfo> videoInfoProvider, Provider<VmsXml> vmsXmlProvider,
-            Provider<SoundInfo> soundInfoProvider, ClusterTreeMenu clusterTreeMenu, Provider<SerialInfo> serialInfoProvider) {
+            Provider<SoundInfo> soundInfoProvider, ClusterTreeMenu clusterTreeMenu, Provider<SerialInfo> serialInfoProvider,
+            HostFanOut hostFanOut) {
         super(application, swingUtils, access, mainData, widgetFactory);
         this.swingUtils = swingUtils;
         this.progressIndicator = progressIndicator;
@@ -609,6 +612,7 @@ public class DomainInfo extends EditableInfo {
         this.soundInfoProvider = soundInfoProvider;
         this.clusterTreeMenu = clusterTreeMenu;
         this.serialInfoProvider = serialInfoProvider;
+        this.hostFanOut = hostFanOut;
     }
 
     public void einit(final String name, final Browser browser) {
@@ -2584,7 +2588,7 @@ public class DomainInfo extends EditableInfo {
                 }
             }
         }
-        VIRSH.setParameters(definedOnHosts.toArray(new Host[0]), getDomainName(), parameters, getVirshOptions());
+        VIRSH.setParameters(hostFanOut, definedOnHosts.toArray(new Host[0]), getDomainName(), parameters, getVirshOptions());
         getResource().setNew(false);
         if (Application.isLive(runMode)) {
             storeComboBoxValues(params);
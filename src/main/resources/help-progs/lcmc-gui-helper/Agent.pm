@@ -0,0 +1,341 @@
+package Agent;
+
+our $PING_INTERVAL;
+our $FRAME_VERSION;
+our $COMPRESS_MIN_SIZE;
+our $COMPRESSION; # negotiated compression method or undef
+our $COMPRESS_CPU; # cpu time of the compression in seconds
+our @HELPER_OPTIONS;
+our %STREAMS; # stream id -> {pid, fh, buffer, section, request} or {next_ping} for ping
+
+#
+# The agent runs the helper actions as streams, that are multiplexed over
+# its stdin and stdout, so that only one ssh session is needed per host.
+# The GUI sends lines:
+#   start <id> [<option>...] <action>
+#   request <id> [<option>...] <action> [<argument>...]
+#   stop <id>
+#   compress <method>
+# The output is sent back in frames:
+#   #<version> <type> <stream id> <length in bytes>[ <compression>]\n<payload>
+# The marked sections of the output, like --hw-info-start--...--hw-info-end--
+# or ---start---...---done---, are sent as one frame each, so that the GUI
+# doesn't have to look for the markers. The stream 0 is the agent itself, it
+# sends the "ready", "keepalive", "warning" and "compress" frames. The exit
+# code is sent in the "exit" frame of the stream. If the compression is on,
+# the bigger payloads are zlib compressed and base64 encoded and the
+# keepalives have the cpu time of the compression in microseconds.
+# The requests are answered with one "response" frame with the whole output
+# and the "exit" frame, the stream id is the id of the request. They run in
+# a forked agent, so that the helper doesn't have to be compiled again.
+sub init {
+    $PING_INTERVAL = 5;
+    $FRAME_VERSION = 1;
+    $COMPRESS_MIN_SIZE = 1024;
+    $COMPRESSION = undef;
+    $COMPRESS_CPU = 0;
+    %STREAMS = ();
+}
+
+sub run {
+    my $helper_options = shift;
+    @HELPER_OPTIONS = @$helper_options;
+    $SIG{PIPE} = "IGNORE";
+    $SIG{HUP} = $SIG{TERM} = sub {
+        stop_agent();
+        exit 0;
+    };
+    set_terminal();
+    serve();
+    stop_agent();
+}
+
+# serve
+# Runs the commands from the GUI and sends the output of the streams, till
+# the GUI is gone.
+sub serve {
+    send_frame("ready", 0) or return;
+    my $input = "";
+    my $keepalive = time;
+    while (1) {
+        my $select = IO::Select->new(\*STDIN,
+            grep { $_ } map { $$_{fh} } values %STREAMS);
+        for my $fh ($select->can_read(1)) {
+            if (fileno($fh) == fileno(STDIN)) {
+                my $read = sysread STDIN, $input, 4096, length $input;
+                return if !$read;
+                while ($input =~ s/^(.*?)\r?\n//) {
+                    do_command($1);
+                }
+            }
+            else {
+                read_stream($fh) or return;
+            }
+        }
+        my $now = time;
+        for my $id (keys %STREAMS) {
+            my $next_ping = $STREAMS{$id}{next_ping};
+            if (defined $next_ping && $now >= $next_ping) {
+                send_frame("ping", $id) or return;
+                $STREAMS{$id}{next_ping} = $now + $PING_INTERVAL;
+            }
+        }
+        if ($now - $keepalive >= Control::get_keepalive_interval()) {
+            send_frame("keepalive", 0,
+                $COMPRESSION ? int($COMPRESS_CPU * 1000000) : "") or return;
+            $keepalive = $now;
+        }
+    }
+}
+
+sub do_command {
+    my $command = shift;
+    my ($op, $id, @args) = split /\s+/, $command;
+    return if !$op;
+    if ($op eq "compress") {
+        set_compression($id);
+        return;
+    }
+    my @options = grep { /^--/ } @args;
+    my @actions = grep { !/^--/ } @args;
+    my ($action, @arguments) = @actions;
+    if (!defined $id || $id !~ /^\d+$/ || $id == 0) {
+        send_frame("warning", 0, "wrong command: $command");
+        return;
+    }
+    if ($op eq "start" || $op eq "request") {
+        if ($STREAMS{$id}
+            || !$action
+            || $action !~ /^[\w-]+$/
+            || $action eq "agent"
+            || ($op eq "start" && @arguments)
+            || (grep { !/^[\w.\/:-]+$/ } @arguments)
+            || grep { !/^--[\w-]+(=[\w.-]*)?$/ } @options) {
+            send_frame("warning", 0, "can't $op: $command");
+            send_frame("exit", $id, 1);
+            return;
+        }
+        if ($op eq "start") {
+            start_stream($id, $action, @options);
+        }
+        else {
+            start_request($id, $action, \@options, \@arguments);
+        }
+    }
+    elsif ($op eq "stop") {
+        stop_stream($id);
+    }
+}
+
+# start_stream
+# Runs the helper with the action in its own process group, the output goes
+# to a pipe that is read by the agent. The ping stream is done by the agent
+# itself.
+sub start_stream {
+    my ($id, $action, @options) = @_;
+    if ($action eq "ping") {
+        $STREAMS{$id} = {next_ping => 0};
+        return;
+    }
+    my ($reader, $writer);
+    if (!pipe $reader, $writer) {
+        send_frame("exit", $id, 1);
+        return;
+    }
+    my $pid = fork();
+    if (!defined $pid) {
+        close $reader;
+        close $writer;
+        send_frame("exit", $id, 1);
+        return;
+    }
+    if (!$pid) {
+        close $reader;
+        POSIX::setsid();
+        open STDIN, "</dev/null";
+        open STDOUT, ">&", $writer;
+        open STDERR, ">&", $writer;
+        exec($^X, $0, @HELPER_OPTIONS, @options, $action) or POSIX::_exit(127);
+    }
+    close $writer;
+    $STREAMS{$id} = {pid => $pid, fh => $reader, buffer => ""};
+}
+
+# start_request
+# Runs the action in a forked agent, the output is sent at the end in one
+# frame.
+sub start_request {
+    my ($id, $action, $options, $arguments) = @_;
+    my ($reader, $writer);
+    if (!pipe $reader, $writer) {
+        send_frame("exit", $id, 1);
+        return;
+    }
+    my $pid = fork();
+    if (!defined $pid) {
+        close $reader;
+        close $writer;
+        send_frame("exit", $id, 1);
+        return;
+    }
+    if (!$pid) {
+        close $reader;
+        POSIX::setsid();
+        $SIG{PIPE} = $SIG{HUP} = $SIG{TERM} = "DEFAULT";
+        %STREAMS = ();
+        open STDIN, "</dev/null";
+        open STDOUT, ">&", $writer;
+        open STDERR, ">&", $writer;
+        select STDOUT;
+        $| = 1;
+        eval { Main::start([@HELPER_OPTIONS, @$options, $action, @$arguments]) };
+        print STDERR $@ if $@;
+        # the output is flushed by the close, _exit doesn't run the END
+        # blocks and destructors of the agent's copies in the child
+        close STDOUT;
+        close STDERR;
+        POSIX::_exit($@ ? 1 : 0);
+    }
+    close $writer;
+    $STREAMS{$id} = {pid => $pid, fh => $reader, buffer => "", request => 1};
+}
+
+sub stop_stream {
+    my $id = shift;
+    my $stream = $STREAMS{$id} or return;
+    if (!$$stream{pid}) {
+        delete $STREAMS{$id};
+        send_frame("exit", $id, 143);
+        return;
+    }
+    kill "TERM", -$$stream{pid};
+}
+
+# set_compression
+# Only zlib is supported, if the modules are not installed, the frames are
+# sent uncompressed.
+sub set_compression {
+    my $method = shift // "";
+    $COMPRESSION = undef;
+    if ($method eq "zlib"
+        && eval { require Compress::Zlib; require MIME::Base64; 1 }) {
+        $COMPRESSION = $method;
+    }
+    send_frame("compress", 0, $COMPRESSION // "none");
+}
+
+# stop_agent
+# Stops the streams and removes the control file, that belongs to the GUI
+# session of the agent.
+sub stop_agent {
+    stop_all();
+    Control::remove_control_file();
+}
+
+sub stop_all {
+    for my $stream (values %STREAMS) {
+        kill "TERM", -$$stream{pid} if $$stream{pid};
+    }
+}
+
+# read_stream
+# Reads the output of the stream and sends it in frames. The exit code is
+# sent after the stream is closed. Returns false, if the GUI is gone.
+sub read_stream {
+    my $fh = shift;
+    my ($id) = grep { $STREAMS{$_}{fh} && $STREAMS{$_}{fh} == $fh } keys %STREAMS;
+    return 1 if !defined $id;
+    my $stream = $STREAMS{$id};
+    my $read = sysread $fh, $$stream{buffer}, 4096, length $$stream{buffer};
+    if ($$stream{request}) {
+        return 1 if $read;
+        send_frame("response", $id, $$stream{buffer}) or return 0;
+    }
+    else {
+        while ($$stream{buffer} =~ s/^(.*)\n//) {
+            stream_line($id, $stream, $1) or return 0;
+        }
+        return 1 if $read;
+        if (length $$stream{buffer}) {
+            stream_line($id, $stream, $$stream{buffer}) or return 0;
+        }
+    }
+    close $fh;
+    waitpid $$stream{pid}, 0;
+    my $exit_code = $? & 127 ? 128 + ($? & 127) : $? >> 8;
+    delete $STREAMS{$id};
+    return send_frame("exit", $id, $exit_code);
+}
+
+# stream_line
+# Collects the lines of a marked section and sends the section as one frame.
+# The first line of the info frames is the timestamp. Empty lines and resets
+# are keepalives of the stream, that are not needed, other lines are sent in
+# the "out" frames.
+sub stream_line {
+    my ($id, $stream, $line) = @_;
+    my $section = $$stream{section};
+    if ($section) {
+        my $end = $$section{end};
+        if ($line =~ /^(.*)\Q$end\E$/) {
+            $$section{payload} .= "$1\n" if length $1;
+            $$section{payload} .= "$end\n" if $$section{with_end};
+            delete $$stream{section};
+            return send_frame($$section{type}, $id, $$section{payload});
+        }
+        $$section{payload} .= "$line\n";
+        return 1;
+    }
+    if ($line =~ /^--([\w-]+)-info-start--(\d*)$/) {
+        $$stream{section} = {type => $1,
+            end => "--$1-info-end--",
+            payload => "$2\n"};
+    }
+    elsif ($line eq "---start---") {
+        $$stream{section} = {type => "cluster",
+            end => "---done---",
+            with_end => 1,
+            payload => "$line\n"};
+    }
+    elsif ($line eq "--nm--") {
+        return send_frame("nm", $id);
+    }
+    elsif ($line ne "" && $line ne "---reset---") {
+        return send_frame("out", $id, "$line\n");
+    }
+    return 1;
+}
+
+# send_frame
+# The payload is sent as UTF-8, other encodings are assumed to be latin1.
+# The payload is compressed, if it gets smaller.
+sub send_frame {
+    my ($type, $id, $payload) = @_;
+    $payload //= "";
+    my $copy = $payload;
+    utf8::encode($payload) if !utf8::decode($copy);
+    my $compression = "";
+    if ($COMPRESSION && length $payload >= $COMPRESS_MIN_SIZE) {
+        my $start = Time::HiRes::clock();
+        my $compressed = MIME::Base64::encode_base64(
+            Compress::Zlib::compress($payload), "");
+        $COMPRESS_CPU += Time::HiRes::clock() - $start;
+        if (length $compressed < length $payload) {
+            $payload = $compressed;
+            $compression = " $COMPRESSION";
+        }
+    }
+    return print "#$FRAME_VERSION $type $id " . length($payload)
+        . "$compression\n" . $payload;
+}
+
+# The commands from the GUI must not come back in the output and the
+# newlines in the frames must not be changed by the terminal.
+sub set_terminal {
+    return if !-t STDIN;
+    my $termios = POSIX::Termios->new();
+    $termios->getattr(0) or return;
+    $termios->setlflag($termios->getlflag() & ~POSIX::ECHO());
+    $termios->setoflag($termios->getoflag() & ~POSIX::OPOST());
+    $termios->setattr(0, POSIX::TCSANOW());
+}
@@ -1,20 +1,47 @@
 package Cluster;
 
-our $CLUSTER_INFO_INTERVAL;
+our $EVENTS_QUIET_PERIOD;
+our $EVENTS_MAX_LATENCY;
+our $EVENTS_COALESCED;
+our $EVENTS_EMITTED;
 our $OCF_DIR;
 our $OCF_RESOURCE_DIR = $OCF_DIR;
 our $STONITH_ADMIN_PROG;
 our $PCMK_SERVICE_AGENTS;
 our @SERVICE_CLASSES;
+our $RA_CACHE_DIR;
+our $RA_CACHE_WORKERS;
 
 sub init() {
-    $CLUSTER_INFO_INTERVAL = 10;
+    # seconds, events that come within the quiet period are coalesced into
+    # one snapshot, but it is never delayed more than the max latency.
+    $EVENTS_QUIET_PERIOD = 0.5;
+    $EVENTS_MAX_LATENCY = 2;
+    $EVENTS_COALESCED = 0;
+    $EVENTS_EMITTED = 0;
     $OCF_DIR = "/usr/lib/ocf";
     $OCF_RESOURCE_DIR = $OCF_DIR . "/resource.d";
     $STONITH_ADMIN_PROG = "/usr/sbin/stonith_admin";
     $PCMK_SERVICE_AGENTS = "crm_resource --list-agents ";
 
     @SERVICE_CLASSES = ("service", "systemd", "upstart");
+    # meta-data of the agents, every file starts with the mtime and size of
+    # the agent, that it is from.
+    $RA_CACHE_DIR = "/var/cache/lcmc/resource-agents";
+    $RA_CACHE_WORKERS = 4;
+}
+
+#
+# Sets the coalescing window in milliseconds.
+sub set_events_window {
+    my $quiet_period = shift;
+    my $max_latency = shift;
+    if (defined $quiet_period && $quiet_period =~ /^\d+$/) {
+        $EVENTS_QUIET_PERIOD = $quiet_period / 1000;
+    }
+    if (defined $max_latency && $max_latency =~ /^\d+$/) {
+        $EVENTS_MAX_LATENCY = $max_latency / 1000;
+    }
 }
 
 sub get_cluster_events {
@@ -29,7 +56,7 @@ sub get_cluster_events {
         # kid
         while (1) {
             print "---reset---\n"; # reset timeout
-            sleep $CLUSTER_INFO_INTERVAL;
+            sleep Control::get_keepalive_interval();
         }
     }
 }
@@ -37,7 +64,7 @@ sub get_cluster_events {
 sub do_cluster_events {
     my $libpath = Host_software::get_hb_lib_path();
     my $hb_version = Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
-    my $info = get_cluster_info($hb_version);
+    my ($info, $cib) = get_cluster_info($hb_version);
     my $pcmk_path = "/usr/libexec/pacemaker:/usr/lib/heartbeat:/usr/lib64/heartbeat:/usr/lib/pacemaker:/usr/lib64/pacemaker:/usr/lib/x86_64-linux-gnu/pacemaker
 ";
     my $command;
@@ -55,31 +82,63 @@ sub do_cluster_events {
         print "---start---\n";
         print $info;
         print "---done---\n";
-        my $prev_info = 0;
+        my $prev_info = $info;
+        my $prev_cib = $cib;
         if (!open EVENTS, "$command|") {
             Log::print_warning("can't execute $command\n");
             return;
         }
         else {
-            while (<EVENTS>) {
-                # pcmk 1.1.8, it's an error, but
-                # still indicates an event
-                if (/signon to CIB failed/i) {
-                    print "ERROR: signon to CIB failed";
-                    return;
+            my $select = IO::Select->new(\*EVENTS);
+            my $buffer = "";
+            my $events = 0;
+            my $first_event = 0;
+            my $last_event = 0;
+            my $last_emitted = 0;
+            while (1) {
+                if ($events) {
+                    my $now = Time::HiRes::time();
+                    my $timeout = $last_event + $EVENTS_QUIET_PERIOD - $now;
+                    my $latency_left = $first_event + $EVENTS_MAX_LATENCY - $now;
+                    $timeout = $latency_left if $latency_left < $timeout;
+                    # the GUI can slow down or pause the updates
+                    my $interval = Control::get_interval("cluster");
+                    if (defined $interval) {
+                        my $interval_left = $last_emitted + $interval - $now;
+                        $timeout = $interval_left if $interval_left > $timeout;
+                    }
+                    if (defined $interval && $timeout <= 0) {
+                        ($prev_info, $prev_cib) =
+                            emit_cluster_info($hb_version, $events, $prev_info, $prev_cib);
+                        $last_emitted = Time::HiRes::time();
+                        $events = 0;
+                        next;
+                    }
+                    # the control is checked every second
+                    next if !$select->can_read(!defined $interval || $timeout > 1 ? 1 : $timeout);
                 }
-                elsif (/error:/
-                    || /Diff: ---/
-                    || /Local-only Change:/) {
-                    my $cluster_info = get_cluster_info($hb_version);
-                    if ($cluster_info ne $prev_info) {
-                        print "---start---\n";
-                        print $cluster_info;
-                        print "---done---\n";
-                        $prev_info = $cluster_info;
+                my $read = sysread EVENTS, $buffer, 4096, length $buffer;
+                last if !$read;
+                while ($buffer =~ s/^(.*)\n//) {
+                    my $line = $1;
+                    # pcmk 1.1.8, it's an error, but
+                    # still indicates an event
+                    if ($line =~ /signon to CIB failed/i) {
+                        print "ERROR: signon to CIB failed";
+                        return;
+                    }
+                    elsif ($line =~ /error:/
+                        || $line =~ /Diff: ---/
+                        || $line =~ /Local-only Change:/) {
+                        $last_event = Time::HiRes::time();
+                        $first_event = $last_event if !$events;
+                        $events++;
                     }
                 }
             }
+            if ($events) {
+                emit_cluster_info($hb_version, $events, $prev_info, $prev_cib);
+            }
         }
     }
     else {
@@ -87,6 +146,29 @@ sub do_cluster_events {
     }
 }
 
+#
+# Prints one snapshot for the coalesced events, if something changed.
+# Returns the new previous info and cib.
+sub emit_cluster_info {
+    my $hb_version = shift;
+    my $events = shift;
+    my $prev_info = shift;
+    my $prev_cib = shift;
+    $EVENTS_COALESCED += $events - 1;
+    my ($cluster_info, $cluster_cib) = get_cluster_info($hb_version, $prev_cib);
+    if ($cluster_info eq $prev_info) {
+        return ($prev_info, $prev_cib);
+    }
+    $EVENTS_EMITTED++;
+    my $events_section = "events";
+    print "---start---\n";
+    print $cluster_info;
+    print "$events_section\nok\ncoalesced:$EVENTS_COALESCED\n"
+          . "emitted:$EVENTS_EMITTED\n>>>$events_section\n";
+    print "---done---\n";
+    return ($cluster_info, $cluster_cib);
+}
+
 #
 # Get info from ptest and make xml from it. This is used only to find out
 # if a resource is running, not running and/or unmanaged
@@ -211,6 +293,84 @@ sub get_resource_status {
             }
         }
     }
+    return format_resource_status(\%resources, \%role, \%unmanaged,
+                                  \%allocation_scores, \@fenced_nodes);
+}
+
+#
+# Get the live status from crm_mon xml output. It's much cheaper than running
+# the policy engine, but there are no allocation scores. Returns empty list if
+# crm_mon can't output xml.
+sub get_live_resource_status {
+    my $crm_mon = Command::_exec("crm_mon -1 -r --output-as=xml 2>/dev/null");
+    if ($crm_mon !~ /<resources/) {
+        # pacemaker < 2.0.3
+        $crm_mon = Command::_exec("crm_mon -1 -r --as-xml 2>/dev/null");
+    }
+    if ($crm_mon !~ /<resources/) {
+        return ();
+    }
+    my %role;
+    my %unmanaged;
+    my %resources;
+    my @fenced_nodes;
+    my $res;
+    my $what;
+    for my $line (split /\n/, $crm_mon) {
+        if ($line =~ /<resource\s/) {
+            $res = undef;
+            my ($id) = $line =~ /\bid="([^"]+)"/;
+            next if !$id;
+            $id =~ s/:\d+$//;
+            $resources{$id}++;
+            my ($managed) = $line =~ /\bmanaged="([^"]+)"/;
+            if ($managed && $managed eq "false") {
+                $unmanaged{$id}++;
+            }
+            my ($state) = $line =~ /\brole="([^"]+)"/;
+            $state = lc($state || "");
+            if ($state eq "master" || $state eq "promoted") {
+                $what = "master";
+            }
+            elsif ($state eq "slave" || $state eq "unpromoted") {
+                $what = "slave";
+            }
+            elsif ($state =~ /^(started|starting|stopping|migrating)$/) {
+                $what = "started";
+            }
+            else {
+                next;
+            }
+            if ($line !~ /\/>\s*$/) {
+                $res = $id;
+            }
+        }
+        elsif ($line =~ /<\/resource>/) {
+            $res = undef;
+        }
+        elsif ($line =~ /<node\s[^>]*\bname="([^"]+)"/) {
+            my $on = $1;
+            if ($res) {
+                $role{$res}{$on} = $what if !$role{$res}{$on};
+            }
+            elsif ($line =~ /\bunclean="true"/) {
+                push @fenced_nodes, $on;
+            }
+        }
+    }
+    return format_resource_status(\%resources, \%role, \%unmanaged, {},
+                                  \@fenced_nodes);
+}
+
+#
+# Returns resource_status xml and fenced nodes xml.
+sub format_resource_status {
+    my ($resources, $role, $unmanaged, $allocation_scores, $fenced_nodes) = @_;
+    my %resources = %$resources;
+    my %role = %$role;
+    my %unmanaged = %$unmanaged;
+    my %allocation_scores = %$allocation_scores;
+    my @fenced_nodes = @$fenced_nodes;
     my $fenced_nodes_ret = "";
     if (@fenced_nodes > 0) {
         $fenced_nodes_ret .= "<fenced>\n";
@@ -253,19 +413,92 @@ sub get_resource_status {
     return("", $fenced_nodes_ret);
 }
 
+#
+# Returns the cluster info and the raw cib. If the previous cib is passed and
+# crm_diff can produce a versioned patchset, only the patch is sent in the
+# cibpatch section, otherwise the whole cib is sent in the cibadmin section.
 sub get_cluster_info {
     my $hb_version = shift;
-    my ($info, $fenced_nodes) = get_resource_status($hb_version);
+    my $prev_cib = shift;
+    my ($info, $fenced_nodes) = get_live_resource_status();
+    if (!defined $info) {
+        ($info, $fenced_nodes) = get_resource_status($hb_version);
+    }
     # TODO: use cib.xml if cibadmin can't connect
     my $cibinfo = Command::_exec("/usr/sbin/cibadmin -Ql || cat /var/lib/pacemaker/cib/cib.xml /var/lib/heartbeat/crm/cib.xml 2>/dev/null");
     if ($cibinfo) {
         my $res_status = "res_status";
+        my $status = "$res_status\nok\n$info\n>>>$res_status\n";
+        my $patch = get_cib_patch($prev_cib, $cibinfo);
+        if ($patch) {
+            my $cibpatch = "cibpatch";
+            return ($status
+                    . "$cibpatch\nok\n<pcmk>\n$fenced_nodes$patch</pcmk>\n"
+                    . ">>>$cibpatch\n",
+                    $cibinfo);
+        }
         my $cibquery = "cibadmin";
-        return "$res_status\nok\n$info\n>>>$res_status\n"
-            . "$cibquery\nok\n<pcmk>\n$fenced_nodes$cibinfo</pcmk>\n"
-            . ">>>$cibquery\n";
+        return ($status
+                . "$cibquery\nok\n<pcmk>\n$fenced_nodes$cibinfo</pcmk>\n"
+                . ">>>$cibquery\n",
+                $cibinfo);
+    }
+    return ("\n", "");
+}
+
+#
+# Returns the v2 patchset between two cibs or an empty string, if the full cib
+# should be sent instead. It's the case if the version is missing, crm_diff is
+# too old or the patch is not smaller than the cib.
+sub get_cib_patch {
+    my $old_cib = shift;
+    my $new_cib = shift;
+    if (!$old_cib || $old_cib eq $new_cib) {
+        return "";
+    }
+    for my $cib ($old_cib, $new_cib) {
+        if ($cib !~ /<cib\s[^>]*\bepoch="/ || $cib !~ /<cib\s[^>]*\bnum_updates="/) {
+            return "";
+        }
+    }
+    # the directory is created with mode 0700 and a random name, so that
+    # nobody else can put or replace the files in it
+    my $dir = eval { File::Temp::tempdir("lcmc.cib.XXXXXX", TMPDIR => 1) };
+    if (!$dir) {
+        return "";
+    }
+    my $old_file = "$dir/old";
+    my $new_file = "$dir/new";
+    my $patch = "";
+    if (write_file($old_file, $old_cib) && write_file($new_file, $new_cib)) {
+        $patch = Command::_exec("crm_diff --original $old_file --new $new_file 2>/dev/null");
     }
-    return "\n";
+    unlink $old_file, $new_file;
+    rmdir $dir;
+    if ($patch !~ /<diff\s[^>]*format="2"/
+        || $patch !~ /<source\s[^>]*\bnum_updates="/
+        || length($patch) >= length($new_cib)) {
+        return "";
+    }
+    return $patch;
+}
+
+sub write_file {
+    my $file = shift;
+    my $content = shift;
+    open my $fh, ">", $file or return 0;
+    print $fh $content;
+    return close $fh;
+}
+
+#
+# Prints resource status with allocation scores. It runs the policy engine, so
+# it is called only on demand.
+sub get_allocation_scores {
+    my $libpath = Host_software::get_hb_lib_path();
+    my $hb_version = Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
+    my ($info) = get_resource_status($hb_version);
+    print $info;
 }
 
 sub get_cluster_metadata {
@@ -292,6 +525,14 @@ sub get_existing_resources {
 
 sub get_resource_agents {
     my $type = shift // "";
+    if ("hashes" eq $type) {
+        get_resource_agent_hashes();
+        return;
+    }
+    if ("selected" eq $type) {
+        get_selected_resource_agents(@_);
+        return;
+    }
     my $existing_rscs_ocf;
     my $existing_rscs_stonith;
     if ("configured" eq $type) {
@@ -318,6 +559,81 @@ sub get_resource_agents {
     }
 }
 
+# get_resource_agent_hashes
+# Prints the md5 of every ocf and fence agent, so that the GUI can fetch
+# only the meta-data, that it doesn't have cached. The old stonith devices
+# are one agent without a hash.
+sub get_resource_agent_hashes {
+    if (opendir my $dfh, "$OCF_RESOURCE_DIR") {
+        for my $prov (sort grep {/^[^.]/} readdir $dfh) {
+            opendir my $d2fh, "$OCF_RESOURCE_DIR/$prov" or next;
+            for my $s (sort grep {/^[^.]/ && !/\.metadata$/} readdir $d2fh) {
+                print "ra-hash:ocf:$prov:$s "
+                    . get_file_md5("$OCF_RESOURCE_DIR/$prov/$s") . "\n";
+            }
+        }
+    }
+    if (!-e $STONITH_ADMIN_PROG) {
+        print "ra-hash:stonith-old -\n";
+        return;
+    }
+    for my $name (get_stonith_names()) {
+        print "ra-hash:stonith:$name " . get_file_md5("/usr/sbin/$name") . "\n";
+    }
+}
+
+# get_selected_resource_agents
+# Prints the meta-data of the agents from get_resource_agent_hashes, every
+# agent after its "ra-cache:<agent>" line.
+sub get_selected_resource_agents {
+    my @agents = grep { is_valid_agent($_) } @_;
+    update_ra_cache(map {
+        my ($class, $prov, $s) = split /:/;
+        $class eq "ocf" ? ocf_meta_data_job($prov, $s)
+            : $class eq "stonith" ? stonith_meta_data_job($prov)
+            : ();
+    } @agents);
+    for my $agent (@agents) {
+        my ($class, $prov, $s) = split /:/, $agent;
+        print "ra-cache:$agent\n";
+        if ($class eq "ocf") {
+            if (!-f "$OCF_RESOURCE_DIR/$prov/$s") {
+                unlink get_ra_cache_file($agent);
+                next;
+            }
+            print "provider:$prov\n";
+            get_ocf_resource($prov, $s, 0);
+        }
+        elsif ($class eq "stonith") {
+            print "provider:heartbeat\n";
+            print "master:\n";
+            print_stonith_meta_data($prov);
+        }
+        elsif ($class eq "stonith-old") {
+            print "provider:heartbeat\n";
+            print "master:\n";
+            get_stonith_devices_old();
+        }
+    }
+}
+
+# ocf:<provider>:<agent>, stonith:<agent> or stonith-old
+sub is_valid_agent {
+    my ($class, @names) = split /:/, shift;
+    my $name_count = $class eq "ocf" ? 2 : $class eq "stonith" ? 1 : 0;
+    return 0 if @names != $name_count;
+    return !grep { !/^[\w-][\w.-]*$/ } @names;
+}
+
+sub get_file_md5 {
+    my $file = shift;
+    open my $fh, "<", $file or return "-";
+    binmode $fh;
+    my $md5 = Digest::MD5->new->addfile($fh)->hexdigest;
+    close $fh;
+    return $md5;
+}
+
 sub get_ocf_resources {
     my $type = shift // "";
     my $existing_rscs = shift;
@@ -325,22 +641,29 @@ sub get_ocf_resources {
     if ("quick" eq $type) {
         $quick = 1;
     }
+    my %agents; # provider -> agents
     if ("configured" eq $type) {
         for my $prov (keys %{$existing_rscs}) {
-            print "provider:$prov\n";
-            for my $s (keys %{$$existing_rscs{$prov}}) {
-                get_ocf_resource($prov, $s, $quick);
-            }
+            $agents{$prov} = [keys %{$$existing_rscs{$prov}}];
         }
     }
     else {
         opendir my $dfh, "$OCF_RESOURCE_DIR" or return;
         for my $prov (sort grep {/^[^.]/} readdir $dfh) {
-            print "provider:$prov\n";
             opendir my $d2fh, "$OCF_RESOURCE_DIR/$prov" or next;
-            for my $s (sort grep {/^[^.]/ && !/\.metadata$/} readdir $d2fh) {
-                get_ocf_resource($prov, $s, $quick);
-            }
+            $agents{$prov} = [sort grep {/^[^.]/ && !/\.metadata$/} readdir $d2fh];
+        }
+        remove_stale_ra_cache("ocf",
+            map { my $prov = $_; map { "ocf:$prov:$_" } @{$agents{$prov}} } keys %agents);
+    }
+    if (!$quick) {
+        update_ra_cache(map { my $prov = $_; map { ocf_meta_data_job($prov, $_) } @{$agents{$prov}} }
+            keys %agents);
+    }
+    for my $prov (sort keys %agents) {
+        print "provider:$prov\n";
+        for my $s (@{$agents{$prov}}) {
+            get_ocf_resource($prov, $s, $quick);
         }
     }
 }
@@ -357,9 +680,145 @@ sub get_ocf_resource {
         my $ra_name = $s;
         $ra_name =~ s/\.sh$//;
         print "ra-name:$ra_name\n";
-        print "master:";
-        print Command::_exec("grep -wl crm_master $OCF_RESOURCE_DIR/$prov/$s;echo;") . "\n";
-        print Command::_exec("OCF_RESKEY_vmxpath=a OCF_ROOT=$OCF_DIR $OCF_RESOURCE_DIR/$prov/$s meta-data 2>/dev/null");
+        print get_ra_cache(ocf_meta_data_job($prov, $s));
+    }
+}
+
+sub ocf_meta_data_job {
+    my $prov = shift;
+    my $s = shift;
+    my $file = "$OCF_RESOURCE_DIR/$prov/$s";
+    return ["ocf:$prov:$s", get_file_signature($file), sub {
+        my $master = Command::_exec("grep -wl crm_master $file;echo;");
+        my $metadata = Command::_exec("OCF_RESKEY_vmxpath=a OCF_ROOT=$OCF_DIR $file meta-data 2>/dev/null");
+        return ("master:$master\n$metadata", is_valid_meta_data($metadata));
+    }];
+}
+
+sub stonith_meta_data_job {
+    my $name = shift;
+    my $signature = get_file_signature($STONITH_ADMIN_PROG) . " "
+        . get_file_signature("/usr/sbin/$name");
+    return ["stonith:$name", $signature, sub {
+        my $metadata = Command::_exec("$STONITH_ADMIN_PROG -M -a $name");
+        my $valid = is_valid_meta_data($metadata);
+        $metadata =~ s/(<resource-agent.*?)\>/$1 class="stonith">/;
+        return ($metadata, $valid);
+    }];
+}
+
+# is_valid_meta_data
+# Whether the meta-data command, that ran last, succeeded and its output
+# can be cached.
+sub is_valid_meta_data {
+    my $metadata = shift;
+    return !$Command::COMMAND_ERRNO && $metadata =~ /<resource-agent/;
+}
+
+sub get_file_signature {
+    my $file = shift;
+    my @stat = stat $file or return "-";
+    return "$stat[9]:$stat[7]";
+}
+
+sub get_ra_cache_file {
+    my $name = shift;
+    $name =~ s/[^\w.:-]/_/g;
+    return "$RA_CACHE_DIR/$name";
+}
+
+# get_ra_cache
+# Returns the cached output of the job, if its signature is the same, or
+# the output of the job otherwise. The job is [name, signature, code], the
+# code returns the output and whether it is valid and can be cached.
+sub get_ra_cache {
+    my $job = shift;
+    my ($name, $signature, $code) = @$job;
+    my $cached = read_ra_cache($name, $signature);
+    return $cached if defined $cached;
+    my ($output, $valid) = $code->();
+    write_ra_cache($name, $signature, $output) if $valid;
+    return $output;
+}
+
+sub read_ra_cache {
+    my $name = shift;
+    my $signature = shift;
+    return undef if $signature =~ /^-/;
+    open my $fh, "<", get_ra_cache_file($name) or return undef;
+    my $first_line = <$fh>;
+    if (!defined $first_line || $first_line ne "$signature\n") {
+        close $fh;
+        return undef;
+    }
+    local $/;
+    my $output = <$fh> // "";
+    close $fh;
+    return $output;
+}
+
+sub write_ra_cache {
+    my $name = shift;
+    my $signature = shift;
+    my $output = shift;
+    return if $signature =~ /^-/ || !make_ra_cache_dir();
+    my $file = get_ra_cache_file($name);
+    open my $fh, ">", "$file.$$" or return;
+    print $fh "$signature\n$output";
+    close $fh or return;
+    rename "$file.$$", $file;
+}
+
+# remove_stale_ra_cache
+# Removes the cached meta-data of the agents of the class, that are not in
+# the list anymore.
+sub remove_stale_ra_cache {
+    my ($class, @names) = @_;
+    my %current = map { (get_ra_cache_file($_) => 1) } @names;
+    opendir my $dfh, $RA_CACHE_DIR or return;
+    for my $file (readdir $dfh) {
+        next if index($file, "$class:") != 0 || $file =~ /\.\d+$/;
+        unlink "$RA_CACHE_DIR/$file" if !$current{"$RA_CACHE_DIR/$file"};
+    }
+    closedir $dfh;
+}
+
+sub make_ra_cache_dir {
+    return 1 if -d $RA_CACHE_DIR && -w $RA_CACHE_DIR;
+    my $dir = "";
+    for my $part (grep { $_ } split /\//, $RA_CACHE_DIR) {
+        $dir .= "/$part";
+        mkdir $dir, 0700 if !-d $dir;
+    }
+    return -d $RA_CACHE_DIR && -w $RA_CACHE_DIR;
+}
+
+# update_ra_cache
+# Runs the jobs, that are not cached, in at most $RA_CACHE_WORKERS
+# processes at once, so that the agents are then read from the cache.
+sub update_ra_cache {
+    return if !make_ra_cache_dir();
+    my @jobs = grep { !defined read_ra_cache($$_[0], $$_[1]) } @_;
+    my %workers;
+    for my $job (@jobs) {
+        while (keys %workers >= $RA_CACHE_WORKERS) {
+            my $pid = waitpid -1, 0;
+            last if $pid <= 0;
+            delete $workers{$pid};
+        }
+        my $pid = fork();
+        last if !defined $pid; # the rest is done without the workers
+        if (!$pid) {
+            my ($output, $valid) = $$job[2]->();
+            write_ra_cache($$job[0], $$job[1], $output) if $valid;
+            POSIX::_exit(0);
+        }
+        $workers{$pid} = 1;
+    }
+    while (keys %workers) {
+        my $pid = waitpid -1, 0;
+        last if $pid <= 0;
+        delete $workers{$pid};
     }
 }
 
@@ -416,23 +875,41 @@ sub get_stonith_devices {
 
     }
 
+    my @names = get_stonith_names();
+    if ($quick) {
+        print "ra:$_\n" for @names;
+        return;
+    }
+    if ($configured) {
+        @names = grep { $configured_devs{$_} } @names;
+    }
+    else {
+        remove_stale_ra_cache("stonith", map { "stonith:$_" } @names);
+    }
+    update_ra_cache(map { stonith_meta_data_job($_) } @names);
+    for my $name (@names) {
+        print_stonith_meta_data($name);
+    }
+}
+
+# The list ends with the number of the devices, that is skipped.
+sub get_stonith_names {
+    my @names;
     for my $name (Command::_exec("$STONITH_ADMIN_PROG -I")) {
-        chomp $name;
-        if ($quick) {
-            print "ra:$name\n";
-            next;
-        }
-        if ($configured && !$configured_devs{$name}) {
-            next;
-        }
-        my $metadata = Command::_exec("$STONITH_ADMIN_PROG -M -a $name");
-        $metadata =~ s/(<resource-agent.*?)\>/$1 class="stonith">/;
-        if (!$metadata) {
-            next;
-        }
-        print "ra-name:$name\n";
-        print $metadata;
+        $name =~ s/^\s+|\s+$//g;
+        push @names, $name if $name =~ /^[\w.-]+$/;
+    }
+    return @names;
+}
+
+sub print_stonith_meta_data {
+    my $name = shift;
+    my $metadata = get_ra_cache(stonith_meta_data_job($name));
+    if (!$metadata) {
+        return;
     }
+    print "ra-name:$name\n";
+    print $metadata;
 }
 
 # squeeze, natty
@@ -0,0 +1,65 @@
+package Control;
+
+our $CONTROL_FILE;
+our $CONTROL_MTIME;
+our %INTERVALS; # daemon -> seconds, undef if the daemon is paused
+our %DEFAULT_INTERVALS;
+our $KEEPALIVE_INTERVAL;
+
+#
+# The GUI changes the intervals of the daemons by writing lines like
+# "hw:10", "drbd:0" or "cluster:off" into the control file. The interval is
+# the minimal time in seconds between two updates of the daemon, "off" pauses
+# it.
+sub init {
+    my $control_id = shift;
+    %DEFAULT_INTERVALS = (hw => 10,
+        drbd => 0,
+        cluster => 0);
+    %INTERVALS = %DEFAULT_INTERVALS;
+    # something must be printed before the GUI times out the command
+    $KEEPALIVE_INTERVAL = 10;
+    $CONTROL_MTIME = "";
+    if ($control_id && $control_id =~ /^[\w-]+$/) {
+        $CONTROL_FILE = "/tmp/lcmc.control.$control_id";
+    }
+}
+
+sub get_keepalive_interval {
+    return $KEEPALIVE_INTERVAL;
+}
+
+# Removes the control file, when the GUI session is gone.
+sub remove_control_file {
+    return if !$CONTROL_FILE;
+    unlink $CONTROL_FILE;
+}
+
+#
+# Returns interval of the daemon in seconds or undef if it is paused.
+sub get_interval {
+    my $daemon = shift;
+    read_control();
+    return $INTERVALS{$daemon};
+}
+
+sub is_paused {
+    my $daemon = shift;
+    return !defined get_interval($daemon);
+}
+
+# Reads the control file, if it changed.
+sub read_control {
+    return if !$CONTROL_FILE;
+    my $mtime = (Time::HiRes::stat($CONTROL_FILE))[9] // "";
+    return if $mtime eq $CONTROL_MTIME;
+    $CONTROL_MTIME = $mtime;
+    %INTERVALS = %DEFAULT_INTERVALS;
+    open my $fh, $CONTROL_FILE or return;
+    while (<$fh>) {
+        if (/^(\w+):\s*(\d+|off)\s*$/ && exists $DEFAULT_INTERVALS{$1}) {
+            $INTERVALS{$1} = $2 eq "off" ? undef : $2;
+        }
+    }
+    close $fh;
+}
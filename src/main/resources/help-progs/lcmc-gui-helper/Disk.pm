@@ -4,10 +4,20 @@ our $LV_CACHE;
 our $VG_CACHE;
 our $LVM_ALL_CACHE_FILES;
 our $LVM_CACHE_FILE;
+our $DISK_CACHE_KEY;
+our $DISK_CACHE; # [by uuids, by ids, dm devices, device -> resolved link]
+our @DISK_CACHE_DIRS;
 
 sub init() {
     $LVM_ALL_CACHE_FILES = "/tmp/lcmc.lvm.*";
     $LVM_CACHE_FILE = "/tmp/lcmc.lvm.$$";
+    $DISK_CACHE_KEY = "";
+    # links to the block devices are created or removed in these directories
+    @DISK_CACHE_DIRS = ("/dev",
+        "/dev/disk",
+        "/dev/disk/by-uuid",
+        "/dev/disk/by-id",
+        "/dev/mapper");
 }
 
 # get_mount
@@ -135,24 +145,53 @@ sub get_lvm {
 }
 
 # this is used if the devices is dm but not lvm
+# The dm names are read from /sys/dev/block/<major>:<minor>/dm/name, without
+# sysfs major and minor numbers of the /dev/mapper devices are used.
 sub get_device_mapper_hash {
     my %major_minor_hash;
     my $dir = "/dev/mapper";
+    my $sysfs = "/sys/dev/block";
+    if (opendir(SYSFS, $sysfs)) {
+        for my $major_minor (grep {/^\d+:\d+$/} readdir(SYSFS)) {
+            my $name = read_sysfs("$sysfs/$major_minor/dm/name");
+            if ($name && -b "$dir/$name") {
+                $major_minor_hash{$major_minor} = "$dir/$name";
+            }
+        }
+        closedir SYSFS;
+        return \%major_minor_hash;
+    }
     if (opendir(DIR, $dir)) {
         for (grep {$_ !~ /^\./ && -b "$dir/$_"} readdir(DIR)) {
-            my $out = Command::_exec("/sbin/dmsetup info $dir/$_ 2>&1");
-            if ($out) {
-                my ($major, $minor) =
-                    $out =~ /^Major.*?(\d+)\D+(\d+)/m;
-                $major_minor_hash{"$major:$minor"} = "$dir/$_";
-            }
-
+            my $rdev = (stat "$dir/$_")[6];
+            my $major = (($rdev >> 8) & 0xfff) | (($rdev >> 32) & ~0xfff);
+            my $minor = ($rdev & 0xff) | (($rdev >> 12) & ~0xff);
+            $major_minor_hash{"$major:$minor"} = "$dir/$_";
         }
         closedir DIR;
     }
     return \%major_minor_hash;
 }
 
+# returns first line of the sysfs file without new line or undef
+sub read_sysfs {
+    my $file = shift;
+    open my $fh, $file or return;
+    my $value = <$fh>;
+    close $fh;
+    chomp $value if defined $value;
+    return $value;
+}
+
+# resolves all symlinks like readlink -f, but without the fork
+sub resolve_link {
+    my $path = shift;
+    if (!-e $path) {
+        return $path;
+    }
+    return Cwd::abs_path($path) // $path;
+}
+
 # get_raid()
 #
 # returns hash with devices that are in the raid.
@@ -194,8 +233,7 @@ sub get_disk_uuid_map {
     my %ids;
     if (opendir(DIR, $dir)) {
         for (grep {$_ !~ /^\./ && -l "$dir/$_"} readdir(DIR)) {
-            my $dev = Command::_exec("readlink -f \"$dir/$_\"", 2);
-            chomp $dev;
+            my $dev = resolve_link("$dir/$_");
             $ids{$dev} = "$dir/$_";
         }
         closedir DIR;
@@ -208,8 +246,7 @@ sub get_disk_id_map {
     my %ids;
     if (opendir(DIR, $dir)) {
         for (grep {$_ !~ /^\./ && -l "$dir/$_"} readdir(DIR)) {
-            my $dev = Command::_exec("readlink -f \"$dir/$_\"", 2);
-            chomp $dev;
+            my $dev = resolve_link("$dir/$_");
             push @{$ids{$dev}}, "$dir/$_";
         }
         closedir DIR;
@@ -232,16 +269,16 @@ sub get_disk_info {
         $lvm_major_minor_to_dev,
         $lvm_major_minor_to_group,
         $lvm_major_minor_to_lv_name) = get_lvm($use_lvm_cache);
-    my $dm_major_minor_to_dev = get_device_mapper_hash();
     my $dev_to_mount = get_mount($drbd_devs);
     my $dev_to_swap = get_swaps();
     # read partition table
     open PT, "/proc/partitions" or Log::disk_info_error("cannot open /proc/partitions");
+    my @partitions = <PT>;
+    close PT;
+    my ($by_uuids, $by_ids, $dm_major_minor_to_dev, $resolved) = get_disk_links(\@partitions);
     my $info;
     my $device_mapper_major = get_device_mapper_major();
-    my $by_uuids = get_disk_uuid_map("/dev/disk/by-uuid");
-    my $by_ids = get_disk_id_map("/dev/disk/by-id");
-    while (<PT>) {
+    for (@partitions) {
         next if /^major / || /^$/; # skip header
         chomp;
         my ($major, $minor, $blocks, $name) = split;
@@ -302,8 +339,7 @@ sub get_disk_info {
             Log::disk_info_warning("unknown partition: $_");
             $device = "/dev/$name";
         }
-        my $readlink = Command::_exec("readlink -f $device", 2);
-        chomp $readlink;
+        my $readlink = $$resolved{$device} //= resolve_link($device);
         my $dev_sec = $$by_uuids{$readlink} || $readlink || $device;
 
         my $mount = $$dev_to_mount{$device} || $$dev_to_mount{$dev_sec};
@@ -326,11 +362,31 @@ sub get_disk_info {
         $info .= " pv:" . $$pvs{$name} if defined $$pvs{$name};
         $info .= "\n";
     }
-    close PT;
 
     return $info;
 }
 
+# get_disk_links()
+#
+# returns the /dev/disk links, dm devices and a hash for the resolved links of
+# the devices. They are cached, till /proc/partitions or any of the
+# directories with the links change.
+sub get_disk_links {
+    my $partitions = shift;
+    my $key = join "", @$partitions;
+    for my $dir (@DISK_CACHE_DIRS) {
+        $key .= "$dir:" . ((Time::HiRes::stat($dir))[9] // "") . "\n";
+    }
+    if ($key ne $DISK_CACHE_KEY) {
+        $DISK_CACHE = [ get_disk_uuid_map("/dev/disk/by-uuid"),
+            get_disk_id_map("/dev/disk/by-id"),
+            get_device_mapper_hash(),
+            {} ];
+        $DISK_CACHE_KEY = $key;
+    }
+    return @$DISK_CACHE;
+}
+
 # returns volume group info
 sub get_vg_info {
     my $use_cache = shift // 0;
@@ -4,12 +4,16 @@ our $DRBD_INFO_INTERVAL;
 our $PROC_DRBD;
 our $DRBD_PROXY_GET_PLUGINS;
 our $DRBD_PROXY_SHOW;
+our @DRBD_CONFIG_FILES;
+our $CONFIG_CHECK_INTERVAL;
 
 sub init {
     $DRBD_INFO_INTERVAL = 10;
     $PROC_DRBD = "/proc/drbd";
     $DRBD_PROXY_GET_PLUGINS = "drbd-proxy-ctl -c 'show avail-plugins'";
     $DRBD_PROXY_SHOW = "drbd-proxy-ctl -c show";
+    @DRBD_CONFIG_FILES = ("/etc/drbd.conf", "/etc/drbd.d/*");
+    $CONFIG_CHECK_INTERVAL = 1;
 }
 
 sub get_drbd_events {
@@ -24,7 +28,7 @@ sub get_drbd_events {
     else {
         while (1) {
             print "\n"; # reset timeout
-            sleep $DRBD_INFO_INTERVAL;
+            sleep Control::get_keepalive_interval();
         }
     }
 }
@@ -41,33 +45,77 @@ sub do_drbd_events {
     } elsif ($v1 < 9) {
         $command = "/sbin/drbdsetup all events";
     } else {
-        $command = "/sbin/drbdsetup all events2";
+        $command = "/sbin/drbdsetup all events2 --statistics";
     }
     my $prev_drbd_info = 0;
     if (!open EVENTS, "$command|") {
         Log::print_warning("can't execute $command\n");
         return;
     }
-    else {
-        while (<EVENTS>) {
-            if ($_ && $_ !~ /\d+\s+(ZZ|\?\?)/) {
-                my $drbd_info = get_drbd_dump_xml();
-                if ($drbd_info ne $prev_drbd_info) {
-                    print "--drbd-info-start--"
-                        . `date +%s%N`;
-                    print $drbd_info;
-                    print "--drbd-info-end--\n";
-                    $prev_drbd_info = $drbd_info;
-                }
-                print "--event-info-start--" . `date +%s%N`;
-                print "$_";
-                print "--event-info-end--\n";
+    my $select = IO::Select->new(\*EVENTS);
+    my $buffer = "";
+    my $dump_pending = 0;
+    my $last_dump = 0;
+    my $config_signature;
+    my $last_check = 0;
+    while (1) {
+        my $now = Time::HiRes::time();
+        if ($now >= $last_check + $CONFIG_CHECK_INTERVAL) {
+            my $signature = get_config_signature();
+            if (!defined $config_signature || $signature ne $config_signature) {
+                $config_signature = $signature;
+                $dump_pending = 1;
             }
+            $last_check = $now;
+        }
+        if ($dump_pending) {
+            ($prev_drbd_info, $dump_pending, $last_dump) =
+                print_drbd_dump($prev_drbd_info, $last_dump);
+        }
+        next if !$select->can_read($CONFIG_CHECK_INTERVAL);
+        my $read = sysread EVENTS, $buffer, 4096, length $buffer;
+        last if !$read;
+        while ($buffer =~ s/^(.*\n)//) {
+            my $line = $1;
+            print $line if $line !~ /\d+\s+(ZZ|\?\?)/;
         }
     }
     close EVENTS;
 }
 
+# get_config_signature
+# Returns names, sizes and mtimes of the drbd config files. The config is
+# dumped again only if they change, the events don't change it.
+sub get_config_signature {
+    my @signature;
+    for my $file (map { glob } @DRBD_CONFIG_FILES) {
+        my @stat = stat $file or next;
+        push @signature, "$file:$stat[7]:$stat[9]";
+    }
+    return join " ", @signature;
+}
+
+# print_drbd_dump
+# Prints the drbd config if it changed. The dump is expensive, so the GUI can
+# slow it down or pause it, the events are always forwarded unchanged. Returns the last
+# printed config, whether the dump is still pending and the time of the last
+# dump.
+sub print_drbd_dump {
+    my $prev_drbd_info = shift;
+    my $last_dump = shift;
+    my $interval = Control::get_interval("drbd");
+    if (!defined $interval || Time::HiRes::time() < $last_dump + $interval) {
+        return ($prev_drbd_info, 1, $last_dump);
+    }
+    my $drbd_info = get_drbd_dump_xml();
+    if ($drbd_info ne $prev_drbd_info) {
+        printf "--drbd-info-start--%d\n", Time::HiRes::time() * 1000000000;
+        print $drbd_info;
+        print "--drbd-info-end--\n";
+    }
+    return ($drbd_info, 0, Time::HiRes::time());
+}
+
 sub get_drbd_info {
     print "--drbd-info-start--" . `date +%s%N`;
     print get_drbd_dump_xml();
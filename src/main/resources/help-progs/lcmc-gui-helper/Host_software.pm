@@ -1,79 +1,34 @@
 package Host_software;
 our $PROC_DRBD;
+our @PACKAGE_DBS;
+our $VERSIONS_CACHE_KEY;
+our $VERSIONS_CACHE;
 
 sub init() {
     $PROC_DRBD = "/proc/drbd";
+    # they change, if packages are installed or upgraded
+    @PACKAGE_DBS = ("/var/lib/dpkg/status",
+        "/var/lib/rpm/Packages",
+        "/var/lib/rpm/rpmdb.sqlite",
+        "/usr/lib/sysimage/rpm/rpmdb.sqlite");
+    $VERSIONS_CACHE_KEY = "";
 }
 
 sub get_cluster_versions {
     my $libpath = get_hb_lib_path();
-    my $pacemaker_controld = find_pacemaker_controld();
-    my $hb_version = Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
-    if ($hb_version) {
-        $hb_version =~ s/\s+.*//;
-        chomp $hb_version;
-    }
-    my $pm_version = Command::_exec("$pacemaker_controld --version 2>/dev/null") || "";
-    if (!$pm_version) {
-        $pm_version = Command::_exec("$pacemaker_controld version 2>/dev/null") || "";
-    }
-    $pm_version =~ s/^Pacemaker\s+//;
-    $pm_version =~ s/^CRM Version:\s+//;
-    $pm_version =~ s/\s+.*//;
-    chomp $pm_version;
-
-    # there is no reliable way to find the installed corosync and openais
-    # version, so it is best effort or just "ok" if it is installed
-    # after that only the package managers will be asked.
+    my ($hb_version,
+        $pm_version,
+        $cs_version,
+        $ais_version,
+        $drbd_version,
+        $drbd_mod_version) = get_cached_versions($libpath);
     my $cs_prog = "/usr/sbin/corosync";
-    my $cs_version = "";
     my $cs_script = "corosync";
-    my $corosync_1_2_5_file = "/tmp/corosync-1.2.5-beware";
-    if (-e $cs_prog) {
-        if (-e $corosync_1_2_5_file) {
-            $cs_version = "1.2.5!";
-        }
-        else {
-            my ($cs_version_string) = Command::_exec("$cs_prog -v") =~ /('.*?')/;
-            # workaround for opensuse
-            $cs_version_string =~ s/'UNKNOWN'/'2.3.1'/;
-            ($cs_version) = $cs_version_string =~ /'(\d+\.\d+\.\d+)'/;
-            if ($cs_version && "1.2.5" eq $cs_version) {
-                # workaround so that corosync 1.2.5 does not fill up
-                # shared momory.
-                if (open TMP, ">$corosync_1_2_5_file") {
-                    close TMP;
-                }
-            }
-            else {
-                unlink $corosync_1_2_5_file;
-            }
-        }
-        if (!$cs_version) {
-            $cs_version = "ok";
-        }
-    }
     my $ais_prog = "/usr/sbin/aisexec";
     my $ais_script = "openais";
     if (!-e "/etc/init.d/openais" && -e "/etc/init.d/openais-legacy") {
         $ais_script = "openais-legacy";
     }
-    my $ais_version = "";
-    if (-e $ais_prog) {
-        if (!(Command::_system("/usr/bin/file $ais_prog 2>/dev/null"
-            . "|grep 'shell script' > /dev/null") >> 8)
-            && -e "/etc/init.d/openais") {
-            $ais_version = "wrapper";
-        }
-        if (!$ais_version) {
-            $ais_version =
-                Command::_exec("grep -a -o 'subrev [0-9]* version [0-9.]*' /usr/sbin/aisexec|sed 's/.* //'");
-            chomp $ais_version;
-        }
-        if (!$ais_version) {
-            $ais_version = "ok";
-        }
-    }
     my $pcmk_prog = "/usr/sbin/pacemakerd";
     my $pcmk_script = "pacemaker";
     my $drbdp_script = "drbdproxy";
@@ -138,12 +93,6 @@ sub get_cluster_versions {
     if ($service && $service =~ /^service\.ver=(\d+)/m) {
         $pcmk_svc_ver = $1;
     }
-    # drbd version
-    my ($drbd_version) =
-        Command::_exec("echo|/sbin/drbdadm help 2>/dev/null") =~ /Version:\s+(\S+)/;
-    $drbd_version = "" if !$drbd_version;
-    my $drbd_mod_version = Command::_exec("(/sbin/modinfo -F version drbd 2>/dev/null|grep . || /sbin/modinfo -F description drbd 2>/dev/null|sed 's/.* v//')", 2) || "";
-    chomp $drbd_mod_version;
     return "hb:$hb_version\n"
         . "pm:$pm_version\n"
         . "cs:$cs_version\n"
@@ -170,6 +119,111 @@ sub get_cluster_versions {
         . "hb-lib-path:$libpath\n"
 }
 
+#
+# Returns versions of heartbeat, pacemaker, corosync, openais, drbd utils and
+# drbd module. They are cached, till the package database or any of the
+# binaries change, because the probes are expensive.
+sub get_cached_versions {
+    my $libpath = shift;
+    my $pacemaker_controld = find_pacemaker_controld() // "";
+    my $kernel = (POSIX::uname())[2];
+    my $key = "";
+    for my $file (@PACKAGE_DBS,
+        "$libpath/heartbeat",
+        $pacemaker_controld,
+        "/usr/sbin/corosync",
+        "/usr/sbin/aisexec",
+        "/etc/init.d/openais",
+        "/tmp/corosync-1.2.5-beware",
+        "/sbin/drbdadm",
+        "/lib/modules/$kernel/modules.dep") {
+        $key .= "$file:" . ((Time::HiRes::stat($file))[9] // "") . "\n";
+    }
+    if ($key ne $VERSIONS_CACHE_KEY) {
+        $VERSIONS_CACHE = [ get_versions($libpath, $pacemaker_controld) ];
+        $VERSIONS_CACHE_KEY = $key;
+    }
+    return @$VERSIONS_CACHE;
+}
+
+sub get_versions {
+    my $libpath = shift;
+    my $pacemaker_controld = shift;
+    my $hb_version = Command::_exec("$libpath/heartbeat -V 2>/dev/null") || "";
+    if ($hb_version) {
+        $hb_version =~ s/\s+.*//;
+        chomp $hb_version;
+    }
+    my $pm_version = Command::_exec("$pacemaker_controld --version 2>/dev/null") || "";
+    if (!$pm_version) {
+        $pm_version = Command::_exec("$pacemaker_controld version 2>/dev/null") || "";
+    }
+    $pm_version =~ s/^Pacemaker\s+//;
+    $pm_version =~ s/^CRM Version:\s+//;
+    $pm_version =~ s/\s+.*//;
+    chomp $pm_version;
+
+    # there is no reliable way to find the installed corosync and openais
+    # version, so it is best effort or just "ok" if it is installed
+    # after that only the package managers will be asked.
+    my $cs_prog = "/usr/sbin/corosync";
+    my $cs_version = "";
+    my $corosync_1_2_5_file = "/tmp/corosync-1.2.5-beware";
+    if (-e $cs_prog) {
+        if (-e $corosync_1_2_5_file) {
+            $cs_version = "1.2.5!";
+        }
+        else {
+            my ($cs_version_string) = Command::_exec("$cs_prog -v") =~ /('.*?')/;
+            # workaround for opensuse
+            $cs_version_string =~ s/'UNKNOWN'/'2.3.1'/;
+            ($cs_version) = $cs_version_string =~ /'(\d+\.\d+\.\d+)'/;
+            if ($cs_version && "1.2.5" eq $cs_version) {
+                # workaround so that corosync 1.2.5 does not fill up
+                # shared momory.
+                if (open TMP, ">$corosync_1_2_5_file") {
+                    close TMP;
+                }
+            }
+            else {
+                unlink $corosync_1_2_5_file;
+            }
+        }
+        if (!$cs_version) {
+            $cs_version = "ok";
+        }
+    }
+    my $ais_prog = "/usr/sbin/aisexec";
+    my $ais_version = "";
+    if (-e $ais_prog) {
+        if (!(Command::_system("/usr/bin/file $ais_prog 2>/dev/null"
+            . "|grep 'shell script' > /dev/null") >> 8)
+            && -e "/etc/init.d/openais") {
+            $ais_version = "wrapper";
+        }
+        if (!$ais_version) {
+            $ais_version =
+                Command::_exec("grep -a -o 'subrev [0-9]* version [0-9.]*' /usr/sbin/aisexec|sed 's/.* //'");
+            chomp $ais_version;
+        }
+        if (!$ais_version) {
+            $ais_version = "ok";
+        }
+    }
+    # drbd version
+    my ($drbd_version) =
+        Command::_exec("echo|/sbin/drbdadm help 2>/dev/null") =~ /Version:\s+(\S+)/;
+    $drbd_version = "" if !$drbd_version;
+    my $drbd_mod_version = Command::_exec("(/sbin/modinfo -F version drbd 2>/dev/null|grep . || /sbin/modinfo -F description drbd 2>/dev/null|sed 's/.* v//')", 2) || "";
+    chomp $drbd_mod_version;
+    return ($hb_version,
+        $pm_version,
+        $cs_version,
+        $ais_version,
+        $drbd_version,
+        $drbd_mod_version);
+}
+
 # return -1 if ver1 is smaller than ver2 etc. 1.0.9.1 and 1.0.9 are considered
 # equal and return 0.
 sub compare_versions {
@@ -263,8 +317,7 @@ STATUS
 # /usr/lib64/heartbeat
 #
 sub get_hb_lib_path {
-    my $arch = Command::_exec("uname -m", 2);
-    chomp $arch;
+    my $arch = (POSIX::uname())[4];
     if ($arch eq "x86_64" && -e "/usr/lib64") {
         return "/usr/lib64/heartbeat";
     }
@@ -26,6 +26,11 @@ $| = 1;
 use Fcntl qw(F_GETFL F_SETFL O_NONBLOCK);
 use POSIX qw(:errno_h); # EAGAIN
 use Digest::MD5;
+use Cwd ();
+use File::Temp ();
+use IO::Select;
+use IPC::Open2 ();
+use Time::HiRes ();
 
 use Socket;
 
@@ -44,13 +49,25 @@ for (keys %ENV) {
     # options
     our $CMD_LOG_OP = "--cmd-log";
     our $LOG_TIME_OP = "--log-time";
+    our $EVENTS_QUIET_PERIOD_OP = "--events-quiet-period";
+    our $EVENTS_MAX_LATENCY_OP = "--events-max-latency";
+    our $CONTROL_OP = "--control";
     our $CMD_LOG_DEFAULT = 0;
     our $LOG_TIME_DEFAULT = 300;
 
-    our $HW_INFO_INTERVAL = 10;
+    # with libvirt events, all domains are checked only every n-th interval
+    our $VM_SWEEP_INTERVALS = 30;
 
     our $NO_LVM_CACHE = 0;
 
+    # sections of the hw info, that are sent by the daemon only if they change
+    our @HW_INFO_SECTIONS = ("net-info", "bridge-info", "disk-info",
+        "disk-space", "vg-info", "filesystems-info", "crypto-info",
+        "qemu-keymaps-info", "cpu-map-model-info", "cpu-map-vendor-info",
+        "mount-points-info", "gui-info", "installation-info",
+        "gui-options-info", "version-info", "drbd-proxy-info");
+    our %HW_INFO_SENT; # section -> md5 of the section, that was sent
+
     start(\@ARGV);
 
     sub start {
@@ -59,12 +76,14 @@ for (keys %ENV) {
         my $do_log = $$helper_options{$CMD_LOG_OP} || $CMD_LOG_DEFAULT;
         my $log_time = $$helper_options{$LOG_TIME_OP} || $LOG_TIME_DEFAULT;
         Log::init($do_log, $log_time);
+        Control::init($$helper_options{$CONTROL_OP});
         Disk::init();
         Drbd::init();
         Drbd_proxy::init();
         Host_software::init();
         VM::init();
         Cluster::init();
+        Agent::init();
         my $action = shift @$action_options || die;
         if ($action eq "all") {
             Disk::clear_lvm_cache();
@@ -97,6 +116,9 @@ for (keys %ENV) {
             print "version-info\n";
             print Host_software::get_version_info();
         }
+        elsif ($action eq "agent") {
+            Agent::run([grep { /^--/ } @$argv]);
+        }
         elsif ($action eq "hw-info-daemon") {
             start_hw_info_daemon();
         }
@@ -174,6 +196,8 @@ for (keys %ENV) {
             Drbd::get_drbd_xml();
         }
         elsif ($action eq "get-cluster-events") {
+            Cluster::set_events_window($$helper_options{$EVENTS_QUIET_PERIOD_OP},
+                                       $$helper_options{$EVENTS_MAX_LATENCY_OP});
             my $ret = Cluster::get_cluster_events();
             if ($ret) {
                 print "---start---\n";
@@ -182,6 +206,9 @@ for (keys %ENV) {
                 exit 1;
             }
         }
+        elsif ($action eq "get-allocation-scores") {
+            Cluster::get_allocation_scores();
+        }
         elsif ($action eq "get-cluster-metadata") {
             Cluster::get_cluster_metadata();
         }
@@ -220,64 +247,135 @@ for (keys %ENV) {
 
     # periodic stuff
     sub start_hw_info_daemon {
-        my $prev_hw_info = 0;
-        my $prev_hw_info_lazy = 0;
         my $prev_vm_info = 0;
         my $prev_drbd_info = 0;
         my $count = 0;
+        my $vm_count = 0;
         my $use_lvm_cache = 0;
         while (1) {
             print "\n";
-            if (Disk::noLvmCache()) {
-                $use_lvm_cache = 0;
-                Disk::useLvmCache();
+            my $start = Time::HiRes::time();
+            if (Control::is_paused("hw")) {
+                # all domains are checked, when it's resumed
+                $vm_count = 0;
             }
-            my $drbd_devs = Drbd::get_drbd_devs();
-            if ($count % 5 == 0) {
-                my $hw_info = get_hw_info();
+            else {
+                if (Disk::noLvmCache()) {
+                    $use_lvm_cache = 0;
+                    Disk::useLvmCache();
+                }
+                my $drbd_devs = Drbd::get_drbd_devs();
+                my $hw_info;
+                if ($count % 5 == 0) {
+                    $hw_info = get_hw_info();
+                    $count = 0;
+                }
+                else {
+                    $hw_info = get_hw_info_lazy();
+                }
                 $hw_info .= "vg-info\n";
                 $hw_info .= Disk::get_vg_info($use_lvm_cache);
                 $hw_info .= "disk-info\n";
                 $hw_info .= Disk::get_disk_info($use_lvm_cache, $drbd_devs);
-                if ($hw_info ne $prev_hw_info) {
+                my $hw_info_delta = get_hw_info_delta($hw_info);
+                if ($hw_info_delta) {
                     print "--hw-info-start--" . `date +%s%N`;
-                    print $hw_info;
-                    $prev_hw_info = $hw_info;
+                    print $hw_info_delta;
                     print "--hw-info-end--\n";
                 }
-                $count = 0;
-            }
-            else {
-                my $hw_info_lazy = get_hw_info_lazy();
-                $hw_info_lazy .= "vg-info\n";
-                $hw_info_lazy .= Disk::get_vg_info($use_lvm_cache);
-                $hw_info_lazy .= "disk-info\n";
-                $hw_info_lazy .= Disk::get_disk_info($use_lvm_cache, $drbd_devs);
-                if ($hw_info_lazy ne $prev_hw_info_lazy) {
-                    print "--hw-info-start--" . `date +%s%N`;
-                    print $hw_info_lazy;
-                    print "--hw-info-end--\n";
-                    $prev_hw_info_lazy = $hw_info_lazy;
+                $use_lvm_cache = 1;
+                if ($vm_count % $VM_SWEEP_INTERVALS == 0 || !VM::has_vm_events()) {
+                    $prev_vm_info = print_vm_info(VM::get_vm_info(), $prev_vm_info);
+                    VM::start_vm_events();
+                    $vm_count = 0;
                 }
+                $vm_count++;
+                my $drbd_info = Drbd::get_drbd_dump_xml();
+                if ($drbd_info ne $prev_drbd_info) {
+                    print "--drbd-info-start--" . `date +%s%N`;
+                    print $drbd_info;
+                    print "--drbd-info-end--\n";
+                    $prev_drbd_info = $drbd_info;
+                }
+                $count++;
+            }
+            my $vm_events_dropped;
+            ($prev_vm_info, $vm_events_dropped) = wait_for_next_hw_info($start, $prev_vm_info);
+            if ($vm_events_dropped) {
+                $vm_count = 0;
+            }
+        }
+    }
+
+    #
+    # Waits till the hw info interval from the start is over. Changed domains
+    # are printed meanwhile. The interval can be changed or the daemon paused
+    # by the GUI, so the control is checked every second. Returns the
+    # previous vm info and whether domain events were dropped, while it was
+    # paused.
+    sub wait_for_next_hw_info {
+        my $start = shift;
+        my $prev_vm_info = shift;
+        my $keepalive = $start;
+        my $vm_events_dropped = 0;
+        while (1) {
+            my $now = Time::HiRes::time();
+            my $interval = Control::get_interval("hw");
+            if (defined $interval && $interval < 1) {
+                $interval = 1;
+            }
+            last if defined $interval && $now >= $start + $interval;
+            if ($now - $keepalive >= Control::get_keepalive_interval()) {
+                print "\n";
+                $keepalive = $now;
             }
-            $use_lvm_cache = 1;
-            my $vm_info = VM::get_vm_info();
-            if ($vm_info ne $prev_vm_info) {
-                print "--vm-info-start--" . `date +%s%N`;
-                print $vm_info;
-                print "--vm-info-end--\n";
-                $prev_vm_info = $vm_info;
+            my $wait = defined $interval ? $start + $interval - $now : 1;
+            $wait = 1 if $wait > 1;
+            my $changed = VM::wait_for_vm_events($wait);
+            if ($changed && defined $interval) {
+                $prev_vm_info = print_vm_info(VM::update_vm_info($changed), $prev_vm_info);
             }
-            my $drbd_info = Drbd::get_drbd_dump_xml();
-            if ($drbd_info ne $prev_drbd_info) {
-                print "--drbd-info-start--" . `date +%s%N`;
-                print $drbd_info;
-                print "--drbd-info-end--\n";
-                $prev_drbd_info = $drbd_info;
+            elsif ($changed) {
+                $vm_events_dropped = 1;
             }
-            sleep $HW_INFO_INTERVAL;
-            $count++;
         }
+        return ($prev_vm_info, $vm_events_dropped);
+    }
+
+    sub print_vm_info {
+        my $vm_info = shift;
+        my $prev_vm_info = shift;
+        if ($vm_info ne $prev_vm_info) {
+            print "--vm-info-start--" . `date +%s%N`;
+            print VM::get_vm_delta();
+            print "--vm-info-end--\n";
+        }
+        return $vm_info;
+    }
+
+    #
+    # Returns sections of the hw info, that changed since they were sent last
+    # time, or an empty string. The first section lists when the sections
+    # were read, so that the GUI can merge them with other hw info.
+    sub get_hw_info_delta {
+        my $hw_info = shift;
+        my $section_re = join "|", map {quotemeta} @HW_INFO_SECTIONS;
+        my @sections = split /^($section_re)\n/m, $hw_info;
+        shift @sections; # before the first section
+        my $time = sprintf "%.0f", Time::HiRes::time() * 1000000000;
+        my $timestamps = "";
+        my $out = "";
+        while (@sections) {
+            my $name = shift @sections;
+            my $section = shift @sections // "";
+            my $md5 = Digest::MD5::md5_hex($section);
+            next if defined $HW_INFO_SENT{$name} && $HW_INFO_SENT{$name} eq $md5;
+            $HW_INFO_SENT{$name} = $md5;
+            $timestamps .= "$name $time\n";
+            $out .= "$name\n$section";
+        }
+        return "" if !$out;
+        return "section-timestamps\n$timestamps$out";
     }
 
     sub get_hw_info {
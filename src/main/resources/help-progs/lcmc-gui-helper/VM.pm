@@ -4,10 +4,37 @@ our $VIRSH_COMMAND;
 our %DISABLE_VM_OPTIONS; # it'll be populated for options that give an error
 our $VIRSH_COMMAND_NO_RO;
 our @VM_OPTIONS;
+our %VM_CACHE; # options -> domain name -> <vm> element
+our $VM_VERSION;
+our $VM_NETWORKS;
+our %VM_EVENTS; # options -> virsh event file handle
+our %VM_EVENTS_BUFFER;
+our $VM_EVENTS_SETTLE;
+our %VM_EVENTS_FAILURES; # options -> how many times the listener exited
+our %VM_EVENTS_RETRY; # options -> time, when the listener can be started again
+our $VM_EVENTS_BACKOFF;
+our $VM_EVENTS_MAX_FAILURES;
+our %VIRSH_SESSIONS; # virsh command with options -> session
+our $VIRSH_SESSION_TIMEOUT;
+our $VIRSH_SESSION_COUNT;
+our %VM_SENT; # domain name -> hash of the <vm> element, that was sent
+our $VM_SENT_NETWORKS;
 
 sub init() {
     $VIRSH_COMMAND = "virsh -r";
     $VIRSH_COMMAND_NO_RO = "virsh";
+    $VM_VERSION = "";
+    $VM_NETWORKS = "";
+    # seconds, wait for more events that belong to the same change
+    $VM_EVENTS_SETTLE = 0.2;
+    # seconds, the first wait before a listener that exited is started
+    # again, it doubles with every failure
+    $VM_EVENTS_BACKOFF = 10;
+    # the connection is only polled after that many failures
+    $VM_EVENTS_MAX_FAILURES = 5;
+    # seconds, after that the virsh session is considered stuck
+    $VIRSH_SESSION_TIMEOUT = 30;
+    $VIRSH_SESSION_COUNT = 0;
     @VM_OPTIONS = ("",
         "-c 'xen:///'",
         "-c lxc:///",
@@ -71,8 +98,7 @@ sub get_vm_networks {
         my ($name) = /([^\/]+).xml/;
         next if !$name;
         chomp;
-        my $config = Command::_exec("$VIRSH_COMMAND net-dumpxml $name 2>/dev/null")
-            || "";
+        my $config = virsh($VIRSH_COMMAND, "", "net-dumpxml $name") || "";
         if ($config) {
             $out .= "<net name=\"$name\" config=\"$_\"";
             if ($autostart{$name}) {
@@ -90,26 +116,24 @@ sub get_vm_networks {
 }
 
 
+#
+# Gets info about all domains. The result is cached per domain, so that
+# update_vm_info can refetch only the domains that changed.
 sub get_vm_info {
-    my $networks = get_vm_networks();
-    my %autostart;
-    for (Command::_exec("ls /etc/libvirt/qemu/autostart/*.xml 2>/dev/null; ls /etc/xen/auto/ 2>/dev/null")) {
-        my ($name) = /([^\/]+).xml/;
-        next if !$name;
-        $autostart{$name}++;
-    }
-    my $libvirt_version = "";
-    if (Command::_exec("$VIRSH_COMMAND version 2>/dev/null") =~ /libvirt\s+([0-9\.]+)/) {
-        $libvirt_version = $1;
+    $VM_NETWORKS = get_vm_networks();
+    my $autostart = get_vm_autostart();
+    $VM_VERSION = "";
+    if (virsh($VIRSH_COMMAND, "", "version") =~ /libvirt\s+([0-9\.]+)/) {
+        $VM_VERSION = $1;
     }
-    my $out = "<version>$libvirt_version</version>\n";
+    %VM_CACHE = ();
     OPTIONS:
     for my $options (@VM_OPTIONS) {
         if ($DISABLE_VM_OPTIONS{$options}) {
             next;
         }
         my $header = 1;
-        for (Command::_exec("$VIRSH_COMMAND $options list --all 2>&1")) {
+        for (virsh($VIRSH_COMMAND, $options, "list --all", 1)) {
             if ($header) {
                 if (/^-{5}/) {
                     $header = 0;
@@ -124,56 +148,312 @@ sub get_vm_info {
             }
             my ($name) = /^\s*\S+\s+(\S+)/;
             next if !$name;
-            chomp;
-            my $info =
-                Command::_exec("$VIRSH_COMMAND $options dominfo $name 2>/dev/null|grep -v 'CPU time'")
-                    || "";
-            next if !$info;
-            my $vncdisplay =
-                Command::_exec("$VIRSH_COMMAND $options vncdisplay $name 2>/dev/null") || "";
-            my $config_in_etc;
-            #if (open CONFIG, $_) {
-            #	local $/;
-            #	$config_in_etc = <CONFIG>;
-            #	close CONFIG;
-            #}
-            my $config;
-            $config =
-                Command::_exec("$VIRSH_COMMAND_NO_RO $options dumpxml --security-info $name 2>/dev/null") || "";
-            $out .= "<vm name=\"$name\"";
-            if ($autostart{$name}) {
-                $out .= ' autostart="True"';
-            }
-            else {
-                $out .= ' autostart="False"';
+            my $vm = get_vm($options, $name, $autostart);
+            if ($vm) {
+                $VM_CACHE{$options}{$name} = $vm;
             }
-            if ($options) {
-                $out .= ' virsh-options="' . $options . '"';
-            }
-            $out .= ">\n";
-            $out .= "<info>\n";
-            $out .= $info;
-            $out .= "</info>\n";
-            $out .= "<vncdisplay>$vncdisplay</vncdisplay>\n";
-            if ($config) {
-                $out .= "<config>\n";
-                $out .= $config;
-                $out .= "</config>\n";
+        }
+    }
+    return get_cached_vm_info();
+}
+
+#
+# Refetches only the changed domains, options -> domain names, and returns
+# info about all domains.
+sub update_vm_info {
+    my $changed = shift;
+    my $autostart = get_vm_autostart();
+    for my $options (keys %$changed) {
+        for my $name (keys %{$$changed{$options}}) {
+            my $vm = get_vm($options, $name, $autostart);
+            if ($vm) {
+                $VM_CACHE{$options}{$name} = $vm;
             }
-            if ($config_in_etc) {
-                $out .= "<config-in-etc>\n";
-                $out .= "<![CDATA[$config_in_etc]]>";
-                $out .= "</config-in-etc>\n";
+            else {
+                # undefined
+                delete $VM_CACHE{$options}{$name};
             }
-            $out .= "</vm>\n";
         }
     }
-    if ($networks) {
-        $out .= $networks;
-    }
+    return get_cached_vm_info();
+}
+
+sub get_cached_vm_info {
+    my ($out) = get_cached_vms();
     my $md5 = Digest::MD5::md5_hex($out);
     my $ret = "<vms md5=\"$md5\">\n";
     $ret .= $out;
     $ret .= "</vms>\n";
     return $ret;
 }
+
+#
+# Returns the content of the <vms> element and domain name -> hashed <vm>
+# element. If there are more domains with the same name, the last one wins,
+# like in the GUI.
+sub get_cached_vms {
+    my $out = "<version>$VM_VERSION</version>\n";
+    my %vms;
+    for my $options (@VM_OPTIONS) {
+        for my $name (sort keys %{$VM_CACHE{$options} || {}}) {
+            my $vm = $VM_CACHE{$options}{$name};
+            my $hash = Digest::MD5::md5_hex($vm);
+            $vm =~ s/^<vm /<vm hash="$hash" /;
+            $out .= $vm;
+            $vms{$name} = [$hash, $vm];
+        }
+    }
+    if ($VM_NETWORKS) {
+        $out .= $VM_NETWORKS;
+    }
+    return ($out, \%vms);
+}
+
+#
+# Like get_cached_vm_info, but after the first call it returns only the
+# domains that changed since the last call, the removed domains as
+# <removed-vm> elements and the networks only if they changed. The md5 is
+# always the md5 of the whole info, the vm-hashes is the md5 of the
+# "name hash" lines of all domains, so that the GUI can check the merge.
+sub get_vm_delta {
+    my ($out, $vms) = get_cached_vms();
+    my $md5 = Digest::MD5::md5_hex($out);
+    my $networks_hash = Digest::MD5::md5_hex($VM_NETWORKS);
+    if (!defined $VM_SENT_NETWORKS) {
+        %VM_SENT = map {$_ => $$vms{$_}[0]} keys %$vms;
+        $VM_SENT_NETWORKS = $networks_hash;
+        return "<vms md5=\"$md5\">\n$out</vms>\n";
+    }
+    my $delta = "<version>$VM_VERSION</version>\n";
+    for my $name (sort keys %$vms) {
+        my ($hash, $vm) = @{$$vms{$name}};
+        if (!defined $VM_SENT{$name} || $VM_SENT{$name} ne $hash) {
+            $delta .= $vm;
+            $VM_SENT{$name} = $hash;
+        }
+    }
+    for my $name (sort keys %VM_SENT) {
+        if (!$$vms{$name}) {
+            $delta .= "<removed-vm name=\"$name\"/>\n";
+            delete $VM_SENT{$name};
+        }
+    }
+    if ($networks_hash ne $VM_SENT_NETWORKS) {
+        $delta .= $VM_NETWORKS;
+        $VM_SENT_NETWORKS = $networks_hash;
+    }
+    my $vm_hashes = Digest::MD5::md5_hex(join "", map {"$_ $$vms{$_}[0]\n"} sort keys %$vms);
+    return "<vms md5=\"$md5\" vm-hashes=\"$vm_hashes\" delta=\"true\">\n$delta</vms>\n";
+}
+
+sub get_vm_autostart {
+    my %autostart;
+    for (Command::_exec("ls /etc/libvirt/qemu/autostart/*.xml 2>/dev/null; ls /etc/xen/auto/ 2>/dev/null")) {
+        my ($name) = /([^\/]+).xml/;
+        next if !$name;
+        $autostart{$name}++;
+    }
+    return \%autostart;
+}
+
+#
+# Returns <vm> element for one domain or an empty string if it doesn't exist.
+sub get_vm {
+    my $options = shift;
+    my $name = shift;
+    my $autostart = shift;
+    my $info = join "", grep {!/CPU time/} virsh($VIRSH_COMMAND, $options, "dominfo $name");
+    return "" if !$info;
+    my $vncdisplay = virsh($VIRSH_COMMAND, $options, "vncdisplay $name") || "";
+    my $config = virsh($VIRSH_COMMAND_NO_RO, $options, "dumpxml --security-info $name") || "";
+    my $out = "<vm name=\"$name\"";
+    if ($$autostart{$name}) {
+        $out .= ' autostart="True"';
+    }
+    else {
+        $out .= ' autostart="False"';
+    }
+    if ($options) {
+        $out .= ' virsh-options="' . $options . '"';
+    }
+    $out .= ">\n";
+    $out .= "<info>\n";
+    $out .= $info;
+    $out .= "</info>\n";
+    $out .= "<vncdisplay>$vncdisplay</vncdisplay>\n";
+    if ($config) {
+        $out .= "<config>\n";
+        $out .= $config;
+        $out .= "</config>\n";
+    }
+    $out .= "</vm>\n";
+    return $out;
+}
+
+#
+# Runs the virsh command in a long-lived virsh shell, one for every virsh
+# command and connection options, so that virsh doesn't have to connect to
+# libvirtd for every command. The output of every command is terminated by
+# an echoed marker. Error messages are dropped, unless $with_errors is set.
+# If the shell can't be used, a new virsh process is started. Returns lines
+# in list context.
+sub virsh {
+    my $virsh = shift;
+    my $options = shift;
+    my $command = shift;
+    my $with_errors = shift;
+    my $key = $options ? "$virsh $options" : $virsh;
+    my $out;
+    my $session = $VIRSH_SESSIONS{$key} // start_virsh_session($key);
+    if ($session) {
+        $out = virsh_session_exec($session, $command, $with_errors);
+        if (!defined $out) {
+            Log::print_warning("virsh session failed: $key\n");
+            stop_virsh_session($key);
+            # don't try it again
+            $VIRSH_SESSIONS{$key} = 0;
+        }
+    }
+    if (!defined $out) {
+        $out = Command::_exec("$key $command " . ($with_errors ? "2>&1" : "2>/dev/null")) || "";
+    }
+    if (wantarray) {
+        return split /^/, $out;
+    }
+    return $out;
+}
+
+#
+# Starts virsh shell. The stdout must be line buffered, otherwise the
+# markers would get stuck in the buffer, so it works only if stdbuf is
+# available.
+sub start_virsh_session {
+    my $key = shift;
+    if (!Command::_exec("command -v stdbuf 2>/dev/null")) {
+        return $VIRSH_SESSIONS{$key} = 0;
+    }
+    my ($out, $in);
+    my $pid = eval {IPC::Open2::open2($out, $in, "stdbuf -oL $key 2>&1")};
+    if (!$pid) {
+        return $VIRSH_SESSIONS{$key} = 0;
+    }
+    Log::_log(Log::_log_time() . " virsh session $pid: $key", 1);
+    $VIRSH_SESSIONS{$key} = {pid => $pid, in => $in, out => $out, buffer => ""};
+    return $VIRSH_SESSIONS{$key};
+}
+
+sub stop_virsh_session {
+    my $key = shift;
+    my $session = $VIRSH_SESSIONS{$key};
+    return if !$session;
+    close $$session{in};
+    kill 'TERM', $$session{pid};
+    close $$session{out};
+    waitpid $$session{pid}, 0;
+    delete $VIRSH_SESSIONS{$key};
+}
+
+#
+# Executes one command in the virsh shell. Returns the output or undef if
+# the shell died or got stuck.
+sub virsh_session_exec {
+    my $session = shift;
+    my $command = shift;
+    my $with_errors = shift;
+    my $count = ++$VIRSH_SESSION_COUNT;
+    # the output differs from the command, in case it's echoed
+    my $marker = "lcmc-virsh done-$count";
+    local $SIG{PIPE} = 'IGNORE';
+    my $in = $$session{in};
+    print $in "$command\necho lcmc-virsh \"done-$count\"\n" or return;
+    $in->flush();
+    my $select = IO::Select->new($$session{out});
+    my $end = Time::HiRes::time() + $VIRSH_SESSION_TIMEOUT;
+    while ($$session{buffer} !~ /\Q$marker\E\n/) {
+        my $wait = $end - Time::HiRes::time();
+        return if $wait <= 0 || !$select->can_read($wait);
+        my $read = sysread $$session{out}, $$session{buffer}, 4096, length $$session{buffer};
+        return if !$read;
+    }
+    $$session{buffer} =~ s/\A(.*?)\Q$marker\E\n//s;
+    my $out = $1;
+    $out =~ s/^virsh [#>] //mg;
+    if (!$with_errors) {
+        $out =~ s/^error:.*\n//mg;
+    }
+    return $out;
+}
+
+#
+# Subscribes to libvirt events for every working connection, that is not
+# subscribed yet. A listener that exited is started again after a backoff
+# and not at all after $VM_EVENTS_MAX_FAILURES failures in a row.
+sub start_vm_events {
+    for my $options (@VM_OPTIONS) {
+        if ($DISABLE_VM_OPTIONS{$options}
+            || $VM_EVENTS{$options}
+            || ($VM_EVENTS_FAILURES{$options} // 0) >= $VM_EVENTS_MAX_FAILURES
+            || ($VM_EVENTS_RETRY{$options} // 0) > Time::HiRes::time()) {
+            next;
+        }
+        my $fh;
+        if (open $fh, "$VIRSH_COMMAND $options event --all --loop 2>/dev/null |") {
+            $VM_EVENTS{$options} = $fh;
+            $VM_EVENTS_BUFFER{$options} = "";
+        }
+    }
+}
+
+sub has_vm_events {
+    return scalar keys %VM_EVENTS;
+}
+
+#
+# Waits for libvirt events at most $timeout seconds. Returns options ->
+# domain names that changed or undef, if there were no events. Event
+# listeners that exit, e.g. if virsh doesn't know the event command, are
+# dropped and their connection is polled till the backoff is over.
+sub wait_for_vm_events {
+    my $timeout = shift;
+    if (!has_vm_events()) {
+        Time::HiRes::sleep($timeout);
+        return;
+    }
+    my %changed;
+    my $end = Time::HiRes::time() + $timeout;
+    while (1) {
+        my %handles = map { fileno($VM_EVENTS{$_}) => $_ } keys %VM_EVENTS;
+        last if !%handles;
+        my $select = IO::Select->new(map { $VM_EVENTS{$_} } keys %VM_EVENTS);
+        my $wait = $end - Time::HiRes::time();
+        if (%changed && $wait > $VM_EVENTS_SETTLE) {
+            $wait = $VM_EVENTS_SETTLE;
+        }
+        last if $wait <= 0;
+        my @ready = $select->can_read($wait);
+        last if !@ready;
+        for my $fh (@ready) {
+            my $options = $handles{fileno($fh)};
+            my $read = sysread $fh, $VM_EVENTS_BUFFER{$options}, 4096,
+                length $VM_EVENTS_BUFFER{$options};
+            if (!$read) {
+                close $fh;
+                delete $VM_EVENTS{$options};
+                delete $VM_EVENTS_BUFFER{$options};
+                my $failures = ++$VM_EVENTS_FAILURES{$options};
+                $VM_EVENTS_RETRY{$options} = Time::HiRes::time()
+                    + $VM_EVENTS_BACKOFF * 2 ** ($failures - 1);
+                next;
+            }
+            while ($VM_EVENTS_BUFFER{$options} =~ s/^(.*)\n//) {
+                my $line = $1;
+                if ($line =~ /for domain '?([\w.:+-]+?)'?(?::|\s|$)/) {
+                    $changed{$options}{$1}++;
+                    # the listener works
+                    delete $VM_EVENTS_FAILURES{$options};
+                }
+            }
+        }
+    }
+    return %changed ? \%changed : undef;
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import lcmc.host.domain.Host;
+
+class CommandExecutorTest {
+    private final CommandExecutor commandExecutor = new CommandExecutor(3, 2);
+    private final Host host1 = mock(Host.class);
+    private final Host host2 = mock(Host.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger finished = new AtomicInteger(0);
+
+    @Test
+    void commandsShouldBeQueuedOverTheLimits() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            commandExecutor.submit(host1, true, this::waitForRelease);
+        }
+        commandExecutor.submit(host2, true, this::waitForRelease);
+        commandExecutor.submit(host2, true, this::waitForRelease);
+
+        assertThat(commandExecutor.getRunning()).isEqualTo(3);
+        assertThat(commandExecutor.getQueued()).isEqualTo(2);
+
+        release.countDown();
+        waitForFinished(5);
+        assertThat(commandExecutor.getRunning()).isZero();
+        assertThat(commandExecutor.getQueued()).isZero();
+    }
+
+    @Test
+    void queuedCommandShouldBeCanceled() throws InterruptedException {
+        commandExecutor.submit(host1, true, this::waitForRelease);
+        commandExecutor.submit(host1, true, this::waitForRelease);
+        final CommandExecutor.Task queued = commandExecutor.submit(host1, true, this::waitForRelease);
+
+        assertThat(queued.cancel()).isTrue();
+        assertThat(queued.cancel()).isFalse();
+
+        release.countDown();
+        waitForFinished(2);
+        assertThat(commandExecutor.getQueued()).isZero();
+        assertThat(finished.get()).isEqualTo(2);
+    }
+
+    @Test
+    void unboundedCommandShouldRunRightAway() throws InterruptedException {
+        commandExecutor.submit(host1, true, this::waitForRelease);
+        commandExecutor.submit(host1, true, this::waitForRelease);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        commandExecutor.submit(host1, false, ran::countDown);
+
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    void commandSubmittedFromCommandShouldNotWaitInQueue() throws InterruptedException {
+        final CountDownLatch nestedRan = new CountDownLatch(1);
+        final CountDownLatch outerRan = new CountDownLatch(1);
+        commandExecutor.submit(host1, true, this::waitForRelease);
+        commandExecutor.submit(host1, true, () -> {
+            commandExecutor.submit(host1, true, nestedRan::countDown);
+            try {
+                if (nestedRan.await(5, TimeUnit.SECONDS)) {
+                    outerRan.countDown();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertThat(outerRan.await(5, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    private void waitForRelease() {
+        try {
+            release.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished.incrementAndGet();
+    }
+
+    private void waitForFinished(final int count) throws InterruptedException {
+        for (int i = 0; i < 500 && (finished.get() < count || commandExecutor.getRunning() > 0); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(finished.get()).isEqualTo(count);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Session;
+
+/**
+ * Session, that answers the commands of the shell session like the bash
+ * would. The replier returns the output and the exit code line of the
+ * command, without the sentinel, or null, if the command should hang.
+ */
+final class FakeShell {
+    private static final Pattern COMMAND_PATTERN =
+            Pattern.compile("^bash -c '(.*)' </dev/null 2>&1; echo \"(\\S+) \\$\\?\"$");
+
+    private final Session session = mock(Session.class);
+    private final Function<String, String> replier;
+    private final List<String> commands = new ArrayList<>();
+    private final List<String> shellCommands = new ArrayList<>();
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private byte[] stdoutData = new byte[0];
+    private int stdoutPos = 0;
+    private boolean closed = false;
+
+    FakeShell(final Function<String, String> replier) throws IOException {
+        this.replier = replier;
+        when(session.getStdout()).thenReturn(new Stdout());
+        when(session.getStderr()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(session.getStdin()).thenReturn(new Stdin());
+        when(session.waitForCondition(anyInt(), anyLong())).thenAnswer(invocation -> waitForCondition(invocation.getArgument(1)));
+        doAnswer(invocation -> {
+            shellCommands.add(invocation.getArgument(0));
+            return null;
+        }).when(session).execCommand(anyString());
+        doAnswer(invocation -> {
+            close();
+            return null;
+        }).when(session).close();
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    /** Returns the commands, that the shell ran. */
+    synchronized List<String> getCommands() {
+        return new ArrayList<>(commands);
+    }
+
+    /** Returns the commands, with which the shell was started. */
+    synchronized List<String> getShellCommands() {
+        return new ArrayList<>(shellCommands);
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /** The shell exits. */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private synchronized int waitForCondition(final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (stdoutPos >= stdoutData.length && !closed) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return ChannelCondition.TIMEOUT;
+            }
+            wait(remaining);
+        }
+        if (stdoutPos < stdoutData.length) {
+            return ChannelCondition.STDOUT_DATA;
+        }
+        return ChannelCondition.EOF | ChannelCondition.CLOSED;
+    }
+
+    private synchronized void processLine(final String input) {
+        final Matcher matcher = COMMAND_PATTERN.matcher(input);
+        if (!matcher.matches()) {
+            return;
+        }
+        final String command = matcher.group(1).replace("'\\''", "'");
+        commands.add(command);
+        final String reply = replier.apply(command);
+        if (reply == null) {
+            return;
+        }
+        final int exitCodeStart = reply.lastIndexOf('\n', reply.length() - 2) + 1;
+        appendStdout(reply.substring(0, exitCodeStart) + matcher.group(2) + ' ' + reply.substring(exitCodeStart));
+    }
+
+    /** The shell writes the output. */
+    synchronized void appendStdout(final String output) {
+        final byte[] bytes = output.getBytes(StandardCharsets.UTF_8);
+        final byte[] data = new byte[stdoutData.length - stdoutPos + bytes.length];
+        System.arraycopy(stdoutData, stdoutPos, data, 0, stdoutData.length - stdoutPos);
+        System.arraycopy(bytes, 0, data, stdoutData.length - stdoutPos, bytes.length);
+        stdoutData = data;
+        stdoutPos = 0;
+        notifyAll();
+    }
+
+    private final class Stdout extends InputStream {
+        @Override
+        public int read() {
+            synchronized (FakeShell.this) {
+                return stdoutPos < stdoutData.length ? stdoutData[stdoutPos++] & 0xff : -1;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            synchronized (FakeShell.this) {
+                if (stdoutPos >= stdoutData.length) {
+                    return closed ? -1 : 0;
+                }
+                final int n = Math.min(len, stdoutData.length - stdoutPos);
+                System.arraycopy(stdoutData, stdoutPos, b, off, n);
+                stdoutPos += n;
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (FakeShell.this) {
+                return stdoutData.length - stdoutPos;
+            }
+        }
+    }
+
+    private final class Stdin extends OutputStream {
+        @Override
+        public void write(final int b) throws IOException {
+            if (isClosed()) {
+                throw new IOException("closed");
+            }
+            if (b == '\n') {
+                processLine(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+}
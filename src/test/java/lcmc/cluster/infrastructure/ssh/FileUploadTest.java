@@ -0,0 +1,60 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class FileUploadTest {
+    @Test
+    void textShouldEndWithNewline() {
+        final FileUpload upload = new FileUpload().text("config");
+
+        assertThat(new String(upload.getContent(), StandardCharsets.UTF_8)).isEqualTo("config\n");
+    }
+
+    @Test
+    void newFileShouldBeRenamed() {
+        final FileUpload upload = new FileUpload().remoteFilename("/etc/x.conf").mode("0600");
+
+        assertThat(upload.getCommands("write")).isEqualTo("mkdir -p /etc/;write && chmod 0600 /etc/x.conf.new"
+                                                          + "&& mv /etc/x.conf.new /etc/x.conf");
+    }
+
+    @Test
+    void backupShouldBeKeptIfTheFileChanged() {
+        final FileUpload upload = new FileUpload().remoteFilename("/etc/x.conf")
+                                                  .makeBackup(true)
+                                                  .installCommand("install")
+                                                  .preCommand("pre")
+                                                  .postCommand("post");
+
+        assertThat(upload.getCommands("write"))
+                .isEqualTo("pre;cp /etc/x.conf{,.bak} 2>/dev/null;mkdir -p /etc/;write&& install && post"
+                           + " && if ! diff /etc/x.conf{,.bak}>/dev/null 2>&1; then mv /etc/x.conf{.bak,.`date +'%s'`}"
+                           + " 2>/dev/null;true; else rm -f /etc/x.conf.bak; fi ");
+    }
+}
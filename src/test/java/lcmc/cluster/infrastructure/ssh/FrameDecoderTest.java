@@ -0,0 +1,97 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.Test;
+
+class FrameDecoderTest {
+    @Test
+    void framesShouldBeDecodedFromOneChunk() {
+        final FrameDecoder decoder = new FrameDecoder();
+
+        final List<Frame> frames = decoder.decode("#1 ready 0 0\n#1 hw 1 6\n12\nab\n#1 exit 1 1\n0");
+
+        assertThat(frames).extracting(Frame::getType).containsExactly("ready", "hw", "exit");
+        assertThat(frames).extracting(Frame::getStream).containsExactly(0, 1, 1);
+        assertThat(frames).extracting(Frame::getPayload).containsExactly("", "12\nab\n", "0");
+    }
+
+    @Test
+    void frameShouldBeDecodedWhenComplete() {
+        final FrameDecoder decoder = new FrameDecoder();
+
+        assertThat(decoder.decode("#1 out")).isEmpty();
+        assertThat(decoder.decode(" 2 4\nab")).isEmpty();
+        final List<Frame> frames = decoder.decode("c\n#1 out");
+
+        assertThat(frames).extracting(Frame::getPayload).containsExactly("abc\n");
+        assertThat(decoder.decode(" 2 1\nd")).extracting(Frame::getPayload).containsExactly("d");
+    }
+
+    @Test
+    void lengthShouldBeInUtf8Bytes() {
+        final FrameDecoder decoder = new FrameDecoder();
+
+        final List<Frame> frames = decoder.decode("#1 out 1 9\nč€😀#1 out 1 1\nx");
+
+        assertThat(frames).extracting(Frame::getPayload).containsExactly("č€😀", "x");
+    }
+
+    @Test
+    void outputOutsideOfFramesShouldBeSkipped() {
+        final FrameDecoder decoder = new FrameDecoder();
+
+        final List<Frame> frames = decoder.decode("[sudo] password:\r\n#2 out 1 1\nx\n#1 nm 3 0\n");
+
+        assertThat(frames).extracting(Frame::getType).containsExactly("nm");
+        assertThat(frames).extracting(Frame::getStream).containsExactly(3);
+    }
+
+    @Test
+    void compressedFrameShouldBeInflated() {
+        final String payload = "12\n<vm>čaj</vm>\n";
+        final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        final Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        final byte[] deflated = new byte[100];
+        final int len = deflater.deflate(deflated);
+        deflater.end();
+        final String encoded = Base64.getEncoder().encodeToString(Arrays.copyOf(deflated, len));
+        final CompressionStats stats = new CompressionStats();
+        final FrameDecoder decoder = new FrameDecoder(stats);
+
+        final List<Frame> frames = decoder.decode("#1 vm 1 " + encoded.length() + " zlib\n" + encoded + "#1 zz 1 1 xz\n");
+
+        assertThat(frames).extracting(Frame::getPayload).containsExactly(payload);
+        assertThat(stats.getRawBytes()).isEqualTo(bytes.length);
+        assertThat(stats.getSavedBytes()).isEqualTo(bytes.length - encoded.length());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import lcmc.host.domain.Host;
+
+class HostFanOutTest {
+    private final HostFanOut hostFanOut = new HostFanOut(4, 1000);
+    private final Host host1 = mock(Host.class);
+    private final Host host2 = mock(Host.class);
+    private final Host host3 = mock(Host.class);
+
+    @Test
+    void operationShouldRunOnAllHostsAtOnce() {
+        final CountDownLatch allStarted = new CountDownLatch(3);
+
+        final HostFanOut.Report<Boolean> report = hostFanOut.fanOut("test", Arrays.asList(host1, host2, host3), host -> {
+            allStarted.countDown();
+            try {
+                return allStarted.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                return false;
+            }
+        });
+
+        assertThat(report.isOk()).isTrue();
+        assertThat(report.getResults()).containsKeys(host1, host2, host3).doesNotContainValue(false);
+    }
+
+    @Test
+    void failedAndTimedOutHostsShouldBeReported() {
+        final HostFanOut.Report<String> report = hostFanOut.fanOut("test", Arrays.asList(host1, host2, host3), host -> {
+            if (host == host2) {
+                throw new IllegalStateException("failed");
+            }
+            if (host == host3) {
+                try {
+                    Thread.sleep(10000);
+                } catch (final InterruptedException e) {
+                    return "interrupted";
+                }
+            }
+            return "ok";
+        });
+
+        assertThat(report.isOk()).isFalse();
+        assertThat(report.getResults()).containsOnlyKeys(host1);
+        assertThat(report.getErrors()).containsOnlyKeys(host2, host3);
+        assertThat(report.getErrors().get(host3)).startsWith("timeout");
+    }
+
+    @Test
+    void timeoutShouldCountTheTimeInTheQueue() {
+        final HostFanOut oneHostFanOut = new HostFanOut(1, 200);
+
+        final HostFanOut.Report<String> report = oneHostFanOut.fanOut("test", Arrays.asList(host1, host2), host -> {
+            Uninterruptibles.sleepUninterruptibly(600, TimeUnit.MILLISECONDS);
+            return "ok";
+        });
+
+        assertThat(report.getResults()).isEmpty();
+        assertThat(report.getErrors().get(host1)).startsWith("timeout after");
+        assertThat(report.getErrors().get(host2)).startsWith("timeout in the queue");
+    }
+
+    @Test
+    void nestedOperationShouldRunInTheSameThread() {
+        final Set<Thread> nestedThreads = new HashSet<>();
+
+        final HostFanOut.Report<Boolean> report = hostFanOut.fanOut("test", Arrays.asList(host1, host2), host -> {
+            final Thread thread = Thread.currentThread();
+            final HostFanOut.Report<Thread> nested =
+                    hostFanOut.fanOut("nested", Arrays.asList(host1, host2, host3), h -> Thread.currentThread());
+            synchronized (nestedThreads) {
+                nestedThreads.addAll(nested.getResults().values());
+            }
+            return nested.getResults().values().stream().allMatch(t -> t == thread);
+        });
+
+        assertThat(report.getResults()).containsValues(true, true);
+        assertThat(nestedThreads).hasSize(2);
+    }
+
+    @Test
+    void falseResultsShouldBeShownAsErrors() {
+        final HostFanOut.Report<Boolean> report = hostFanOut.fanOut("test", Arrays.asList(host1, host2), host -> host == host1);
+
+        report.failedIfFalse();
+        report.showErrors();
+
+        assertThat(report.getResults()).containsOnlyKeys(host1);
+        assertThat(report.getErrors()).containsOnlyKeys(host2);
+        verify(host1, never()).progressIndicatorFailed(anyString());
+        verify(host2).progressIndicatorFailed("test: failed");
+    }
+}
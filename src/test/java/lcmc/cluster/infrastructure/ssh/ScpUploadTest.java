@@ -0,0 +1,47 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ScpUploadTest {
+    @Test
+    void modeShouldHaveFourDigits() {
+        assertThat(ScpUpload.getScpMode("755")).isEqualTo("0755");
+        assertThat(ScpUpload.getScpMode("644")).isEqualTo("0644");
+        assertThat(ScpUpload.getScpMode("0600")).isEqualTo("0600");
+        assertThat(ScpUpload.getScpMode("4755")).isEqualTo("4755");
+    }
+
+    @Test
+    void missingModeShouldBeDefault() {
+        assertThat(ScpUpload.getScpMode(null)).isEqualTo("0644");
+    }
+
+    @Test
+    void symbolicModeShouldBePrivate() {
+        assertThat(ScpUpload.getScpMode("u+x")).isEqualTo("0600");
+        assertThat(ScpUpload.getScpMode("0888")).isEqualTo("0600");
+    }
+}
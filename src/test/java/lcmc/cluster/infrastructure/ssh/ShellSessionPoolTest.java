@@ -0,0 +1,152 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lcmc.host.domain.Host;
+
+class ShellSessionPoolTest {
+    private final ShellSessionPool pool = new ShellSessionPool(2, 60000);
+    private final SshConnection connection = mock(SshConnection.class);
+    private final Host host = mock(Host.class);
+    private final List<FakeShell> fakeShells = new ArrayList<>();
+    private boolean shellsFail = false;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(host.getName()).thenReturn("host");
+        when(host.getUsername()).thenReturn("user");
+        when(host.isUseSudo()).thenReturn(false);
+        when(connection.openSession()).thenAnswer(invocation -> {
+            final FakeShell fakeShell = new FakeShell(command -> "0\n");
+            if (shellsFail) {
+                fakeShell.close();
+            }
+            fakeShells.add(fakeShell);
+            return fakeShell.getSession();
+        });
+    }
+
+    @Test
+    void onlySudoCommandsShouldRunWhollyWithSudo() {
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@bash -c \"echo \\\"a;b\\\" | cat\"")).isTrue();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@/usr/sbin/crm_mon -1")).isTrue();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@cat '/etc/a;b'")).isTrue();
+
+        assertThat(ShellSessionPool.runsWhollyWithSudo("ls /etc")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("echo @DMCSUDO@")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@cat /etc/a | grep b")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@cat /etc/a > /tmp/b")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@true; @DMCSUDO@false")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@echo \"$(id -u)\"")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@echo `id -u`")).isFalse();
+        assertThat(ShellSessionPool.runsWhollyWithSudo("@DMCSUDO@echo \"a")).isFalse();
+    }
+
+    @Test
+    void releasedShellShouldBeReused() throws IOException {
+        final ShellSession shellSession = pool.borrow(host, connection, false);
+        pool.release(shellSession, true);
+
+        assertThat(pool.borrow(host, connection, false)).isSameAs(shellSession);
+        verify(connection, times(1)).openSession();
+    }
+
+    @Test
+    void failedShellShouldBeDiscarded() throws IOException {
+        final ShellSession shellSession = pool.borrow(host, connection, false);
+        pool.release(shellSession, false);
+
+        assertThat(fakeShells.get(0).isClosed()).isTrue();
+        assertThat(pool.borrow(host, connection, false)).isNotSameAs(shellSession);
+        verify(connection, times(2)).openSession();
+    }
+
+    @Test
+    void exitedShellShouldNotBeBorrowed() throws IOException {
+        final ShellSession shellSession = pool.borrow(host, connection, false);
+        pool.release(shellSession, true);
+        fakeShells.get(0).close();
+
+        assertThat(pool.borrow(host, connection, false)).isNotSameAs(shellSession);
+    }
+
+    @Test
+    void noShellShouldBeBorrowedOverTheLimit() {
+        assertThat(pool.borrow(host, connection, false)).isNotNull();
+        assertThat(pool.borrow(host, connection, false)).isNotNull();
+
+        assertThat(pool.borrow(host, connection, false)).isNull();
+    }
+
+    @Test
+    void rootShellShouldBeStartedWithSudo() {
+        when(host.isUseSudo()).thenReturn(true);
+
+        final ShellSession rootShell = pool.borrow(host, connection, true);
+        final ShellSession plainShell = pool.borrow(host, connection, false);
+
+        assertThat(rootShell).isNotSameAs(plainShell);
+        assertThat(fakeShells.get(0).getShellCommands()).containsExactly("sudo -E -n bash --noprofile --norc");
+        assertThat(fakeShells.get(1).getShellCommands()).containsExactly("bash --noprofile --norc");
+    }
+
+    @Test
+    void shellsShouldBeClosedIfSudoSettingChanges() {
+        final ShellSession idleShell = pool.borrow(host, connection, false);
+        final ShellSession busyShell = pool.borrow(host, connection, false);
+        pool.release(idleShell, true);
+
+        when(host.isUseSudo()).thenReturn(true);
+        final ShellSession newShell = pool.borrow(host, connection, false);
+
+        assertThat(newShell).isNotSameAs(idleShell).isNotSameAs(busyShell);
+        assertThat(fakeShells.get(0).isClosed()).isTrue();
+        pool.release(busyShell, true);
+        assertThat(fakeShells.get(1).isClosed()).isTrue();
+    }
+
+    @Test
+    void failedShellShouldNotBeStartedAgainWithTheSamePassword() throws IOException {
+        shellsFail = true;
+
+        assertThat(pool.borrow(host, connection, false)).isNull();
+        assertThat(pool.borrow(host, connection, false)).isNull();
+        verify(connection, times(1)).openSession();
+
+        shellsFail = false;
+        when(host.getSudoPassword()).thenReturn("secret");
+        assertThat(pool.borrow(host, connection, false)).isNotNull();
+    }
+}
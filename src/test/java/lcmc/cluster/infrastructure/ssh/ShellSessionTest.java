@@ -0,0 +1,125 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ShellSessionTest {
+    private static final int TIMEOUT = 2000;
+
+    private final SshConnection connection = mock(SshConnection.class);
+
+    @Test
+    void outputAndExitCodeShouldBeReturned() throws IOException {
+        final ShellSession shellSession = open(new FakeShell(command -> command.equals("true") ? "0\n" : "a\nb\n3\n"));
+
+        final SshOutput ret = shellSession.exec("echo a; echo b; exit 3", TIMEOUT, null);
+
+        assertThat(ret.getOutput()).isEqualTo("a\r\nb\r\n");
+        assertThat(ret.getExitCode()).isEqualTo(3);
+    }
+
+    @Test
+    void commandShouldBeQuoted() throws IOException {
+        final FakeShell fakeShell = new FakeShell(command -> "0\n");
+        final ShellSession shellSession = open(fakeShell);
+
+        shellSession.exec("echo 'a' \"b\"", TIMEOUT, null);
+
+        assertThat(fakeShell.getCommands()).containsExactly("true", "echo 'a' \"b\"");
+    }
+
+    @Test
+    void outputShouldBePassedWithoutSentinel() throws IOException {
+        final ShellSession shellSession = open(new FakeShell(command -> command.equals("true") ? "0\n" : "line 1\nline 2\n0\n"));
+        final List<String> passed = new ArrayList<>();
+
+        shellSession.exec("cat file", TIMEOUT, passed::add);
+
+        assertThat(String.join("", passed)).isEqualTo("line 1\r\nline 2\r\n");
+    }
+
+    @Test
+    void wrongExitCodeShouldFail() throws IOException {
+        final ShellSession shellSession = open(new FakeShell(command -> command.equals("true") ? "0\n" : "out\nx\n"));
+
+        assertThatThrownBy(() -> shellSession.exec("cat file", TIMEOUT, null)).isInstanceOf(IOException.class)
+                                                                              .hasMessageContaining("wrong exit code");
+    }
+
+    @Test
+    void commandShouldTimeOutEvenIfItWritesOutput() throws IOException {
+        final FakeShell fakeShell = new FakeShell(command -> command.equals("true") ? "0\n" : null);
+        final ShellSession shellSession = open(fakeShell);
+        final Thread writer = new Thread(() -> {
+            for (int i = 0; i < 40; i++) {
+                fakeShell.appendStdout("x\n");
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        writer.start();
+        final long start = System.currentTimeMillis();
+
+        assertThatThrownBy(() -> shellSession.exec("yes", 300, null)).isInstanceOf(ShellSession.TimeoutException.class);
+        assertThat(System.currentTimeMillis() - start).isLessThan(1500);
+        writer.interrupt();
+    }
+
+    @Test
+    void checkShouldFailIfShellExited() throws IOException {
+        final FakeShell fakeShell = new FakeShell(command -> "0\n");
+        final ShellSession shellSession = open(fakeShell);
+
+        assertThat(shellSession.check(TIMEOUT)).isTrue();
+        fakeShell.close();
+
+        assertThat(shellSession.check(TIMEOUT)).isFalse();
+        assertThat(shellSession.isClosed()).isTrue();
+    }
+
+    @Test
+    void openShouldFailIfShellIsNotReady() throws IOException {
+        final FakeShell fakeShell = new FakeShell(command -> command.equals("true") ? "1\n" : "0\n");
+        when(connection.openSession()).thenReturn(fakeShell.getSession());
+
+        assertThatThrownBy(() -> ShellSession.open(connection, "bash", null, "key", TIMEOUT)).isInstanceOf(IOException.class);
+        assertThat(fakeShell.isClosed()).isTrue();
+    }
+
+    private ShellSession open(final FakeShell fakeShell) throws IOException {
+        when(connection.openSession()).thenReturn(fakeShell.getSession());
+        return ShellSession.open(connection, "bash", null, "key", TIMEOUT);
+    }
+}
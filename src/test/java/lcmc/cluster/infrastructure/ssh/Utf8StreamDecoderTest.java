@@ -0,0 +1,47 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.cluster.infrastructure.ssh;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class Utf8StreamDecoderTest {
+    @Test
+    void splitCharacterShouldBeDecodedWithTheNextRead() {
+        final Utf8StreamDecoder decoder = new Utf8StreamDecoder(16);
+        final byte[] bytes = "aü€".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(decoder.decode(new byte[]{bytes[0], bytes[1]}, 2).toString()).isEqualTo("a");
+        assertThat(decoder.decode(new byte[]{bytes[2], bytes[3]}, 2).toString()).isEqualTo("ü");
+        assertThat(decoder.decode(new byte[]{bytes[4], bytes[5]}, 2).toString()).isEqualTo("€");
+    }
+
+    @Test
+    void wrongBytesShouldBeReplaced() {
+        final Utf8StreamDecoder decoder = new Utf8StreamDecoder(16);
+
+        assertThat(decoder.decode(new byte[]{'a', (byte) 0xff, 'b'}, 3).toString()).isEqualTo("a�b");
+    }
+}
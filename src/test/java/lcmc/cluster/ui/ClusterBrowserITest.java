@@ -4,6 +4,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -13,6 +14,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import lcmc.AppContext;
+import lcmc.cluster.infrastructure.ssh.Frame;
 import lcmc.common.domain.Application;
 import lcmc.common.domain.util.Tools;
 import lcmc.common.ui.main.MainPresenter;
@@ -44,21 +46,17 @@ class ClusterBrowserITest {
             final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
             assertThat(cb).describedAs("cb is null").isNotNull();
 
-            StringBuffer buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertThat(buffer.toString()).isEqualTo("cdab");
-
-            buffer = new StringBuffer();
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertThat(buffer.toString()).isEqualTo("ab");
-
-            buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertThat(buffer.toString()).isEqualTo("cdab");
-
-            buffer = new StringBuffer("cd");
-            cb.parseClusterOutput("a---reset---\r\nb---reset---\r\nc", buffer, host, nolatch, Application.RunMode.LIVE);
-            assertThat(buffer.toString()).isEqualTo("cdabc");
+            final int skipped = cb.getClusterStatus().getSkippedSnapshots();
+            cb.parseClusterFrames(Arrays.asList(clusterFrame("---start---\n---done---\n"),
+                                                clusterFrame("---start---\n---done---\n"),
+                                                clusterFrame("---start---\n---done---\n")),
+                                  host, nolatch, Application.RunMode.LIVE);
+            assertThat(cb.getClusterStatus().getSkippedSnapshots()).isEqualTo(skipped + 2);
+            assertThat(host.isCrmStatusOk()).describedAs("empty snapshot").isFalse();
+
+            cb.parseClusterFrames(Collections.singletonList(new Frame(Frame.OUT, 0, "a\n")),
+                                  host, nolatch, Application.RunMode.LIVE);
+            assertThat(cb.getClusterStatus().getSkippedSnapshots()).isEqualTo(skipped + 2);
         }
 
         final List<String> files = new ArrayList<>();
@@ -136,7 +134,7 @@ class ClusterBrowserITest {
             for (final Host host : integrationTestLauncher.getHosts()) {
                 final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
                 cb.setDisabledDuringLoad(true);
-                cb.parseClusterOutput(cib, new StringBuffer(), host, firstTime, runMode);
+                cb.parseClusterFrames(Collections.singletonList(clusterFrame(cib)), host, firstTime, runMode);
                 swingUtils.waitForSwing();
                 cb.setDisabledDuringLoad(false);
                 cb.getCrmGraph().repaint();
@@ -145,11 +143,13 @@ class ClusterBrowserITest {
             for (final Host host : integrationTestLauncher.getHosts()) {
                 final ClusterBrowser cb = host.getBrowser().getClusterBrowser();
                 swingUtils.waitForSwing();
-                cb.parseClusterOutput(emptyCib, new StringBuffer(), host, firstTime, runMode);
+                cb.parseClusterFrames(Collections.singletonList(clusterFrame(emptyCib)), host, firstTime, runMode);
                 swingUtils.waitForSwing();
             }
         }
     }
 
-
+    private static Frame clusterFrame(final String payload) {
+        return new Frame(Frame.CLUSTER, 0, payload);
+    }
 }
@@ -16,4 +16,10 @@ class GuiHelperFilesTest {
         assertThat(guiHelper).contains("#!/usr/bin/perl");
         assertThat(guiHelper).contains("package Log");
     }
+
+    @Test
+    void hashShouldBeOfTheInstalledHelper() {
+        assertThat(guiHelperFiles.getGuiHelperHash()).matches("[0-9a-f]{64}");
+        assertThat(guiHelperFiles.getGuiHelper()).isEqualTo(guiHelperFiles.readGuiHelper());
+    }
 }
\ No newline at end of file
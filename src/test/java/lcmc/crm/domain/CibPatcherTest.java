@@ -0,0 +1,71 @@
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lcmc.common.domain.XMLTools;
+import lombok.val;
+
+class CibPatcherTest {
+    private static final String CIB = "<pcmk><fenced></fenced>"
+                                      + "<cib admin_epoch=\"0\" epoch=\"5\" num_updates=\"3\">"
+                                      + "<configuration><resources>"
+                                      + "<primitive id=\"a\" class=\"ocf\"/>"
+                                      + "<primitive id=\"b\" class=\"ocf\"/>"
+                                      + "</resources></configuration>"
+                                      + "</cib></pcmk>";
+
+    private final CibPatcher cibPatcher = new CibPatcher();
+
+    @BeforeEach
+    void setUp() {
+        cibPatcher.setCib(XMLTools.getXMLDocument(CIB));
+    }
+
+    @Test
+    void shouldApplyPatch() {
+        val cib = cibPatcher.applyPatch(patch("0", "5", "3",
+                "<change operation=\"create\" path=\"/cib/configuration/resources\" position=\"1\">"
+                + "<primitive id=\"c\" class=\"lsb\"/></change>"
+                + "<change operation=\"delete\" path=\"/cib/configuration/resources/primitive[@id='a']\"/>"
+                + "<change operation=\"modify\" path=\"/cib/configuration/resources/primitive[@id='b']\">"
+                + "<change-list><change-attr name=\"class\" operation=\"set\" value=\"stonith\"/></change-list>"
+                + "</change>"));
+
+        assertThat(cib).isPresent();
+        val cibXml = cibPatcher.getCibXml();
+        assertThat(cibXml).contains("epoch=\"6\"");
+        assertThat(cibXml).contains("<node>n1</node>");
+        assertThat(cibXml).doesNotContain("id=\"a\"");
+        assertThat(cibXml).containsSubsequence("<primitive class=\"lsb\" id=\"c\"/>",
+                                                  "<primitive class=\"stonith\" id=\"b\"/>");
+    }
+
+    @Test
+    void shouldRequireResyncOnVersionMismatch() {
+        assertThat(cibPatcher.applyPatch(patch("0", "4", "3", ""))).isEmpty();
+        assertThat(cibPatcher.applyPatch(patch("0", "5", "3", ""))).isEmpty();
+        assertThat(cibPatcher.getCibXml()).isNull();
+    }
+
+    @Test
+    void shouldRequireResyncWithoutVersion() {
+        assertThat(cibPatcher.applyPatch("<pcmk><diff format=\"2\"></diff></pcmk>")).isEmpty();
+    }
+
+    @Test
+    void shouldRequireResyncOnMissingPath() {
+        assertThat(cibPatcher.applyPatch(patch("0", "5", "3",
+                "<change operation=\"delete\" path=\"/cib/configuration/resources/primitive[@id='x']\"/>")))
+                .isEmpty();
+    }
+
+    private String patch(final String adminEpoch, final String epoch, final String numUpdates, final String changes) {
+        return "<pcmk><fenced><node>n1</node></fenced><diff format=\"2\"><version>"
+               + "<source admin_epoch=\"" + adminEpoch + "\" epoch=\"" + epoch + "\" num_updates=\"" + numUpdates + "\"/>"
+               + "<target admin_epoch=\"0\" epoch=\"6\" num_updates=\"0\"/>"
+               + "</version>" + changes + "</diff></pcmk>";
+    }
+}
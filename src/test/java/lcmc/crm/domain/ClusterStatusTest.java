@@ -0,0 +1,94 @@
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.w3c.dom.Document;
+
+import lcmc.cluster.infrastructure.ssh.CommandExecutor;
+import lcmc.cluster.infrastructure.ssh.SshOutput;
+import lcmc.common.ui.Access;
+import lcmc.host.domain.Host;
+
+@ExtendWith(MockitoExtension.class)
+class ClusterStatusTest {
+    private static final String CIB = "<pcmk><fenced></fenced>"
+                                      + "<cib admin_epoch=\"0\" epoch=\"5\" num_updates=\"3\">"
+                                      + "<configuration><resources>"
+                                      + "<primitive id=\"a\" class=\"ocf\"/>"
+                                      + "</resources></configuration>"
+                                      + "</cib></pcmk>";
+
+    @Mock
+    private Access access;
+    @Mock
+    private CommandExecutor commandExecutor;
+    @Mock
+    private Host host;
+    @Mock
+    private CrmXml crmXml;
+
+    private ClusterStatus clusterStatus;
+
+    @BeforeEach
+    void setUp() {
+        when(host.captureHelperRequestProgressIndicator(anyString(), anyString(), anyInt()))
+                .thenReturn(new SshOutput("", 1));
+        when(crmXml.parseCibQuery(any(Document.class))).thenReturn(new CibQuery());
+        clusterStatus = new ClusterStatus(access, commandExecutor);
+        clusterStatus.init(host, crmXml);
+    }
+
+    @Test
+    void patchShouldBeAppliedToTheParsedCib() {
+        assertThat(clusterStatus.parseStatus(command("cibadmin", CIB))).isTrue();
+        assertThat(clusterStatus.parseStatus(command("cibpatch", patch("5", "6")))).isTrue();
+
+        verify(crmXml, times(2)).parseCibQuery(any(Document.class));
+        verify(crmXml, never()).parseCibQuery(anyString());
+        assertThat(clusterStatus.takeCibResyncNeeded()).isFalse();
+        assertThat(clusterStatus.getCibXml()).contains("epoch=\"6\"").contains("id=\"b\"");
+    }
+
+    @Test
+    void failedPatchShouldRequireResyncOnce() {
+        assertThat(clusterStatus.parseStatus(command("cibadmin", CIB))).isTrue();
+        assertThat(clusterStatus.parseStatus(command("cibpatch", patch("4", "6")))).isFalse();
+
+        assertThat(clusterStatus.takeCibResyncNeeded()).isTrue();
+        assertThat(clusterStatus.takeCibResyncNeeded()).isFalse();
+        assertThat(clusterStatus.getCibXml()).isNull();
+
+        assertThat(clusterStatus.parseStatus(command("cibpatch", patch("5", "6")))).isFalse();
+        assertThat(clusterStatus.takeCibResyncNeeded()).isTrue();
+
+        assertThat(clusterStatus.parseStatus(command("cibadmin", CIB))).isTrue();
+        assertThat(clusterStatus.parseStatus(command("cibpatch", patch("5", "6")))).isTrue();
+        assertThat(clusterStatus.takeCibResyncNeeded()).isFalse();
+    }
+
+    private String command(final String command, final String data) {
+        return "---start---\n" + command + "\nok\n" + data + "\n>>>" + command + "\n---done---\n";
+    }
+
+    private String patch(final String sourceEpoch, final String targetEpoch) {
+        return "<pcmk><fenced></fenced><diff format=\"2\"><version>"
+               + "<source admin_epoch=\"0\" epoch=\"" + sourceEpoch + "\" num_updates=\"3\"/>"
+               + "<target admin_epoch=\"0\" epoch=\"" + targetEpoch + "\" num_updates=\"0\"/>"
+               + "</version>"
+               + "<change operation=\"create\" path=\"/cib/configuration/resources\" position=\"1\">"
+               + "<primitive id=\"b\" class=\"lsb\"/></change>"
+               + "</diff></pcmk>";
+    }
+}
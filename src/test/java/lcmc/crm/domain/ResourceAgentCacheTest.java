@@ -0,0 +1,76 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.crm.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import lombok.val;
+
+class ResourceAgentCacheTest {
+    private static final String HASHES = "ra-hash:ocf:heartbeat:Dummy 1111\n"
+                                         + "ra-hash:ocf:heartbeat:IPaddr2 2222\n"
+                                         + "ra-hash:stonith:fence_ipmilan -\n";
+    private static final String META_DATA = "ra-cache:ocf:heartbeat:Dummy\n"
+                                            + "provider:heartbeat\n"
+                                            + "ra-name:Dummy\n"
+                                            + "<resource-agent name=\"Dummy\">\n"
+                                            + "</resource-agent>\n"
+                                            + "ra-cache:stonith:fence_ipmilan\n"
+                                            + "provider:heartbeat\n"
+                                            + "master:\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void savedMetaDataShouldBeUsedIfTheHashIsTheSame() {
+        val hashes = ResourceAgentCache.parseHashes(HASHES);
+        val cache = new ResourceAgentCache(tempDir.resolve("ras"), "2.1.5");
+        cache.update(hashes, ResourceAgentCache.parseMetaData(META_DATA));
+        cache.save();
+
+        val loadedCache = new ResourceAgentCache(tempDir.resolve("ras"), "2.1.5");
+        loadedCache.load();
+        hashes.put("ocf:heartbeat:Dummy", "3333");
+
+        assertThat(loadedCache.getStaleAgents(hashes)).containsExactly("ocf:heartbeat:Dummy", "ocf:heartbeat:IPaddr2");
+        assertThat(loadedCache.getMetaData(hashes)).isEqualTo("provider:heartbeat\nmaster:\n");
+    }
+
+    @Test
+    void cacheOfOtherPacemakerShouldNotBeUsed() {
+        val hashes = ResourceAgentCache.parseHashes(HASHES);
+        val cache = new ResourceAgentCache(tempDir.resolve("ras"), "2.1.5");
+        cache.update(hashes, ResourceAgentCache.parseMetaData(META_DATA));
+        cache.save();
+
+        val loadedCache = new ResourceAgentCache(tempDir.resolve("ras"), "2.1.6");
+        loadedCache.load();
+
+        assertThat(loadedCache.getStaleAgents(hashes)).hasSize(3);
+    }
+}
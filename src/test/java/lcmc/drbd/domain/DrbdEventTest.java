@@ -0,0 +1,47 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.drbd.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class DrbdEventTest {
+    @Test
+    void events2LineShouldBeParsed() {
+        final DrbdEvent event = DrbdEvent.parse("change path name:r0 peer-node-id:1 local:ipv4:192.168.133.80:7788 established:yes\n")
+                                         .get();
+
+        assertThat(event.getAction()).isEqualTo("change");
+        assertThat(event.isState("path")).isTrue();
+        assertThat(event.getResourceName()).isEqualTo("r0");
+        assertThat(event.getVolume()).isEqualTo("0");
+        assertThat(event.get("local")).isEqualTo("ipv4:192.168.133.80:7788");
+    }
+
+    @Test
+    void otherLinesShouldNotBeParsed() {
+        assertThat(DrbdEvent.parse("40 ST 0,r0[0] { cs:WFReportParams ro:Secondary/Unknown ds:Attaching/DUnknown r--- }"))
+                .isEmpty();
+        assertThat(DrbdEvent.parse("exists -").get().isState("resource")).isFalse();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+
+package lcmc.drbd.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import lcmc.drbd.domain.DrbdVolumeMetrics.Metric;
+import org.junit.jupiter.api.Test;
+
+class DrbdVolumeMetricsTest {
+    private static DrbdEvent event(final String line) {
+        return DrbdEvent.parse(line).get();
+    }
+
+    @Test
+    void countersShouldBeStoredAsRates() {
+        final DrbdVolumeMetrics metrics = new DrbdVolumeMetrics();
+
+        metrics.record(event("change peer-device name:r0 volume:0 received:100 sent:1000 out-of-sync:8"), 1000);
+        metrics.record(event("change peer-device name:r0 volume:0 received:300 sent:1000 out-of-sync:4"), 3000);
+
+        assertThat(metrics.getValues(Metric.RECEIVED)).containsExactly(100.0);
+        assertThat(metrics.getValues(Metric.SENT)).containsExactly(0.0);
+        assertThat(metrics.getValues(Metric.OUT_OF_SYNC)).containsExactly(8.0, 4.0);
+        assertThat(metrics.getValues(Metric.AL_WRITES)).isEmpty();
+    }
+
+    @Test
+    void oldestValuesShouldBeDropped() {
+        final DrbdVolumeMetrics metrics = new DrbdVolumeMetrics();
+
+        for (int i = 0; i < DrbdVolumeMetrics.CAPACITY + 5; i++) {
+            metrics.record(event("change peer-device name:r0 volume:0 dbdt1:" + i), i);
+        }
+
+        final double[] values = metrics.getValues(Metric.RESYNC_RATE);
+        assertThat(values).hasSize(DrbdVolumeMetrics.CAPACITY);
+        assertThat(values[0]).isEqualTo(5.0);
+        assertThat(values[DrbdVolumeMetrics.CAPACITY - 1]).isEqualTo(DrbdVolumeMetrics.CAPACITY + 4.0);
+    }
+
+    @Test
+    void countersOfPeersShouldBeKeptApart() {
+        final DrbdVolumeMetrics metrics = new DrbdVolumeMetrics();
+
+        metrics.record(event("change peer-device name:r0 peer-node-id:1 volume:0 sent:1000"), 1000);
+        metrics.record(event("change peer-device name:r0 peer-node-id:2 volume:0 sent:5000"), 1000);
+        metrics.record(event("change peer-device name:r0 peer-node-id:1 volume:0 sent:3000"), 2000);
+        metrics.record(event("change peer-device name:r0 peer-node-id:2 volume:0 sent:5500"), 2000);
+        metrics.record(event("change peer-device name:r0 peer-node-id:1 volume:0 sent:4000"), 3000);
+
+        assertThat(metrics.getPeers()).containsExactly("1", "2");
+        assertThat(metrics.getValues("1", Metric.SENT)).containsExactly(2000.0, 1000.0);
+        assertThat(metrics.getValues("2", Metric.SENT)).containsExactly(500.0);
+        assertThat(metrics.getValues(Metric.SENT)).containsExactly(2000.0, 1500.0);
+    }
+}
@@ -320,6 +320,16 @@ class DrbdXmlTest {
         assertThat(blockDevice.isSplitBrain()).isTrue();
     }
 
+    @Test
+    void drbdInfoShouldBeBetweenTheStartAndTheEndLine() {
+        assertThat(DrbdXml.getDrbdInfo("--drbd-info-start--1234\n<config/>\n--drbd-info-end--\n"))
+                .isEqualTo("<config/>\n");
+        assertThat(DrbdXml.getDrbdInfo("--drbd-info-start--1234\r\n<config/>\r\n--drbd-info-end--\r\n"))
+                .isEqualTo("<config/>\r\n");
+        assertThat(DrbdXml.getDrbdInfo("--drbd-info-start--1234")).isNull();
+        assertThat(DrbdXml.getDrbdInfo("error\n")).isNull();
+    }
+
     private boolean drbdEventsConnect() {
         boolean ret = drbdXml.parseDrbdEvent("host1", List.of("host2"), drbdGraph, "create resource name:r0 role:Secondary suspended:no may_promote:no promotion_score:0");
         drbdXml.parseDrbdEvent("host1", List.of("host2"), drbdGraph, "create device name:r0 volume:0 minor:0 backing_dev:none disk:Diskless client:no quorum:yes");
@@ -81,6 +81,6 @@ final class ResourceInfoITest {
     }
 
     private ResourceInfo createResourceInfo() {
-        return new ResourceInfo(null, null, null, null, null, null, null, null, null, null);
+        return new ResourceInfo(null, null, null, null, null, null, null, null, null, null, null);
     }
 }
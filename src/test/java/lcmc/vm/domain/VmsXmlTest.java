@@ -23,12 +23,27 @@ package lcmc.vm.domain;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import lcmc.common.domain.StringValue;
+import lcmc.host.domain.Host;
 
 
+@ExtendWith(MockitoExtension.class)
 class VmsXmlTest {
+    @Mock
+    private Host host;
+
     @Test
     void testConvertKilobytes() {
         assertThat(VmsXml.convertKilobytes("aa")).describedAs("wrong").isEqualTo(new StringValue("aa", VmsXml.getUnitKiBytes()));
@@ -80,4 +95,173 @@ class VmsXmlTest {
         assertThat(VmsXml.convertToKilobytes(new StringValue("P"))).isEqualTo(-1);
         assertThat(VmsXml.convertToKilobytes(new StringValue("-3"))).isEqualTo(-1);
     }
+
+    @Test
+    void testIsDelta() {
+        assertThat(VmsXml.isDelta("<vms md5=\"1234\" delta=\"true\">\n<version>1.2.3</version>\n</vms>\n")).isTrue();
+        assertThat(VmsXml.isDelta("<vms md5=\"1234\">\n<version>1.2.3</version>\n</vms>\n")).isFalse();
+        assertThat(VmsXml.isDelta("<vms md5=\"1234\">\n<vm name=\"delta=&quot;true&quot;\" delta=\"true\"/>\n</vms>"))
+                .isFalse();
+        assertThat(VmsXml.isDelta("")).isFalse();
+    }
+
+    @Test
+    void mergeXmlShouldReplaceChangedDomain() {
+        final VmsXml previous = parse(vms("1", vm("a", "h1", "1024", "52:54:00:00:00:0a", "/images/a.img")
+                                              + vm("b", "h1", "1024", "52:54:00:00:00:0b", "/images/b.img")));
+        final VmsXml merged = newVmsXml();
+
+        assertThat(merged.mergeXml(previous, delta("2", vmHashes("a", "h2", "b", "h1"),
+                                                  vm("a", "h2", "2048", "52:54:00:00:00:0a", "/images/a.img"))))
+                .isTrue();
+
+        assertThat(merged.getDomainNames()).containsExactlyInAnyOrder("a", "b");
+        assertThat(merged.getValue("a", VMParams.VM_PARAM_MEMORY)).isEqualTo("2048");
+        assertThat(merged.getValue("b", VMParams.VM_PARAM_MEMORY)).isEqualTo("1024");
+        assertThat(previous.getValue("a", VMParams.VM_PARAM_MEMORY)).isEqualTo("1024");
+        assertThat(merged.getDomainNode("a").getTextContent()).contains("2048");
+        assertThat(merged.getDomainNode("b")).isSameAs(previous.getDomainNode("b"));
+        assertThat(merged.getConfig()).contains("md5=\"2\"").contains("hash=\"h2\"").contains("name=\"b\"");
+        assertThat(merged.getChangedDomains(previous)).containsExactly("a");
+    }
+
+    @Test
+    void mergeXmlShouldAddNewDomain() {
+        final VmsXml previous = parse(vms("1", vm("a", "h1", "1024", "52:54:00:00:00:0a", "/images/a.img")));
+        final VmsXml merged = newVmsXml();
+
+        assertThat(merged.mergeXml(previous, delta("2", null,
+                                                  vm("c", "h1", "512", "52:54:00:00:00:0c", "/other/c.img"))))
+                .isTrue();
+
+        assertThat(merged.getDomainNames()).containsExactly("a", "c");
+        assertThat(merged.getUsedMacAddresses()).containsExactlyInAnyOrder("52:54:00:00:00:0a", "52:54:00:00:00:0c");
+        assertThat(merged.getSourceFileDirs()).containsExactly("/images/", "/other/");
+        assertThat(merged.getNameFromConfig("/etc/libvirt/qemu/c.xml")).isEqualTo("c");
+        assertThat(merged.getNameFromConfig("/etc/libvirt/qemu/a.xml")).isEqualTo("a");
+        assertThat(merged.getChangedDomains(previous)).containsExactly("c");
+    }
+
+    @Test
+    void mergeXmlShouldRemoveDomain() {
+        final VmsXml previous = parse(vms("1", vm("a", "h1", "1024", "52:54:00:00:00:0a", "/images/a.img")
+                                              + vm("b", "h1", "1024", "52:54:00:00:00:0b", "/disks/b.img")));
+        final VmsXml merged = newVmsXml();
+
+        assertThat(merged.mergeXml(previous, delta("2", vmHashes("a", "h1"), "<removed-vm name=\"b\"/>"))).isTrue();
+
+        assertThat(merged.getDomainNames()).containsExactly("a");
+        assertThat(merged.getDomainNode("b")).isNull();
+        assertThat(merged.getUsedMacAddresses()).containsExactly("52:54:00:00:00:0a");
+        assertThat(merged.getSourceFileDirs()).containsExactly("/images/");
+        assertThat(merged.getNameFromConfig("/etc/libvirt/qemu/b.xml")).isNull();
+        assertThat(merged.getChangedDomains(previous)).containsExactly("b");
+        assertThat(previous.getDomainNames()).containsExactly("a", "b");
+    }
+
+    @Test
+    void mergeXmlShouldFailIfVmHashesDontMatch() {
+        final VmsXml previous = parse(vms("1", vm("a", "h1", "1024", "52:54:00:00:00:0a", "/images/a.img")
+                                              + vm("b", "h1", "1024", "52:54:00:00:00:0b", "/images/b.img")));
+        final VmsXml merged = newVmsXml();
+
+        assertThat(merged.mergeXml(previous, delta("2", vmHashes("a", "h2"),
+                                                  vm("a", "h2", "2048", "52:54:00:00:00:0a", "/images/a.img"))))
+                .isFalse();
+    }
+
+    @Test
+    void mergeXmlShouldFailWithoutPreviousDomains() {
+        assertThat(newVmsXml().mergeXml(newVmsXml(), delta("2", null, "<removed-vm name=\"a\"/>"))).isFalse();
+    }
+
+    @Test
+    void mergeXmlShouldReplaceNetworks() {
+        final VmsXml previous = parse(vms("1", net("default") + vm("a", "h1", "1024", "52:54:00:00:00:0a", "/a.img")));
+        final VmsXml withOldNetworks = newVmsXml();
+        final VmsXml withNewNetworks = newVmsXml();
+
+        assertThat(withOldNetworks.mergeXml(previous, delta("2", null, "<removed-vm name=\"a\"/>"))).isTrue();
+        assertThat(withNewNetworks.mergeXml(previous, delta("3", null, net("internal")))).isTrue();
+
+        assertThat(withOldNetworks.getNetworks()).containsExactly(new StringValue("default"));
+        assertThat(withNewNetworks.getNetworks()).containsExactly(new StringValue("internal"));
+        assertThat(withNewNetworks.getDomainNames()).containsExactly("a");
+    }
+
+    @Test
+    void changedDomainsShouldContainChangedAddedAndRemovedDomains() {
+        final VmsXml previous = parse(vms("1", vm("a", "h1", "1024", "52:54:00:00:00:0a", "/a.img")
+                                              + vm("b", "h1", "1024", "52:54:00:00:00:0b", "/b.img")
+                                              + vm("c", "h1", "1024", "52:54:00:00:00:0c", "/c.img")));
+        final VmsXml current = parse(vms("2", vm("a", "h2", "2048", "52:54:00:00:00:0a", "/a.img")
+                                             + vm("c", "h1", "1024", "52:54:00:00:00:0c", "/c.img")
+                                             + vm("d", "h1", "1024", "52:54:00:00:00:0d", "/d.img")));
+
+        assertThat(current.getChangedDomains(previous)).containsExactly("a", "b", "d");
+        assertThat(current.getChangedDomains(current)).isEmpty();
+    }
+
+    private VmsXml newVmsXml() {
+        final VmsXml vmsXml = new VmsXml();
+        ReflectionTestUtils.setField(vmsXml, "networkParser", new NetworkParser());
+        ReflectionTestUtils.setField(vmsXml, "vmParser", new VMParser());
+        vmsXml.init(host);
+        return vmsXml;
+    }
+
+    private VmsXml parse(final String xml) {
+        final VmsXml vmsXml = newVmsXml();
+        assertThat(vmsXml.parseXml(xml)).isTrue();
+        return vmsXml;
+    }
+
+    private static String vms(final String md5, final String content) {
+        return "<vms md5=\"" + md5 + "\">\n" + content + "</vms>\n";
+    }
+
+    private static String delta(final String md5, final String vmHashes, final String content) {
+        return "<vms md5=\"" + md5 + "\"" + (vmHashes == null ? "" : " vm-hashes=\"" + vmHashes + "\"")
+               + " delta=\"true\">\n" + content + "</vms>\n";
+    }
+
+    private static String vm(final String name,
+                             final String hash,
+                             final String memory,
+                             final String mac,
+                             final String sourceFile) {
+        return "<vm name=\"" + name + "\" hash=\"" + hash + "\"><config><domain type=\"kvm\">"
+               + "<name>" + name + "</name><memory>" + memory + "</memory><devices>"
+               + "<disk type=\"file\" device=\"disk\"><source file=\"" + sourceFile + "\"/>"
+               + "<target dev=\"vda\" bus=\"virtio\"/></disk>"
+               + "<interface type=\"network\"><mac address=\"" + mac + "\"/><source network=\"default\"/></interface>"
+               + "<input type=\"tablet\" bus=\"usb\"/>"
+               + "</devices></domain></config></vm>\n";
+    }
+
+    private static String net(final String name) {
+        return "<net name=\"" + name + "\" config=\"/etc/libvirt/qemu/networks/" + name + ".xml\">"
+               + "<network><name>" + name + "</name><uuid>" + name + "-uuid</uuid></network></net>\n";
+    }
+
+    /** Returns the md5 of the sorted "name hash" lines, like the helper. */
+    private static String vmHashes(final String... namesAndHashes) {
+        final Map<String, String> hashes = new TreeMap<>();
+        for (int i = 0; i < namesAndHashes.length; i += 2) {
+            hashes.put(namesAndHashes[i], namesAndHashes[i + 1]);
+        }
+        final StringBuilder lines = new StringBuilder();
+        for (final Map.Entry<String, String> hash : hashes.entrySet()) {
+            lines.append(hash.getKey()).append(' ').append(hash.getValue()).append('\n');
+        }
+        try {
+            final StringBuilder hex = new StringBuilder();
+            for (final byte b : MessageDigest.getInstance("MD5").digest(lines.toString().getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * This file is part of LCMC written by Rasto Levrinc.
+ *
+ * Copyright (C) 2014, Rastislav Levrinc.
+ *
+ * The LCMC is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your option)
+ * any later version.
+ *
+ * The LCMC is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LCMC; see the file COPYING.  If not, write to
+ * the Free Software Foundation, 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package lcmc.vm.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class VirshBatchTest {
+    @Test
+    void allCommandsShouldSucceed() {
+        final String output = "Domain vm1 marked as autostarted\n\nlcmc-virsh done-0\n"
+                              + "Domain vm1 started\n\nlcmc-virsh done-1\n";
+
+        assertThat(VirshBatch.parseResults(output, 0, 2)).containsExactly(true, true);
+    }
+
+    @Test
+    void failedCommandShouldNotAffectOthers() {
+        final String output = "error: failed to get domain 'vm1'\n\nlcmc-virsh done-0\n"
+                              + "Domain vm2 started\n\nlcmc-virsh done-1\n";
+
+        assertThat(VirshBatch.parseResults(output, 0, 2)).containsExactly(false, true);
+    }
+
+    @Test
+    void commandsAfterExitShouldFail() {
+        final String output = "error: failed to connect to the hypervisor\n";
+
+        assertThat(VirshBatch.parseResults(output, 0, 2)).containsExactly(false, false);
+        assertThat(VirshBatch.parseResults(null, 1, 1)).containsExactly(false);
+    }
+
+    @Test
+    void exitCodeShouldFailLastCommand() {
+        final String output = "Domain vm1 marked as autostarted\n\nlcmc-virsh done-0\n"
+                              + "\nlcmc-virsh done-1\n";
+
+        assertThat(VirshBatch.parseResults(output, 1, 2)).containsExactly(true, false);
+    }
+}